@@ -1,12 +1,24 @@
 package com.payments.advice;
 
+import com.payments.exception.DuplicatePaymentException;
 import com.payments.exception.DuplicateUsernameException;
+import com.payments.exception.IdempotencyKeyConflictException;
+import com.payments.exception.IngestionJobNotFoundException;
+import com.payments.exception.InvalidAmountException;
+import com.payments.exception.InvalidCursorException;
+import com.payments.exception.InvalidStatusTransitionException;
+import com.payments.exception.PaymentFileTooLargeException;
 import com.payments.exception.PaymentNotFoundException;
+import com.payments.exception.PaymentQueueFullException;
+import com.payments.exception.RateLimitExceededException;
+import com.payments.exception.ShardMigrationException;
 import com.payments.exception.UserNotFoundException;
 import com.payments.model.ErrorResponse;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.BadCredentialsException;
@@ -14,6 +26,7 @@ import org.springframework.security.authentication.DisabledException;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.method.annotation.MethodArgumentTypeMismatchException;
 import org.springframework.web.servlet.resource.NoResourceFoundException;
 
 import java.time.LocalDateTime;
@@ -41,6 +54,42 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<>(error, HttpStatus.BAD_REQUEST);
     }
 
+    @ExceptionHandler(MethodArgumentTypeMismatchException.class)
+    public ResponseEntity<ErrorResponse> handleTypeMismatch(MethodArgumentTypeMismatchException ex, HttpServletRequest request) {
+        ErrorResponse error = new ErrorResponse();
+        error.setTimestamp(LocalDateTime.now());
+        error.setStatus(HttpStatus.BAD_REQUEST.value());
+        error.setError("Bad Request");
+        error.setMessage(ex.getName() + ": invalid value '" + ex.getValue() + "'");
+        error.setPath(request.getRequestURI());
+
+        return new ResponseEntity<>(error, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(InvalidCursorException.class)
+    public ResponseEntity<ErrorResponse> handleInvalidCursor(InvalidCursorException ex, HttpServletRequest request) {
+        ErrorResponse error = new ErrorResponse();
+        error.setTimestamp(LocalDateTime.now());
+        error.setStatus(HttpStatus.BAD_REQUEST.value());
+        error.setError("Bad Request");
+        error.setMessage(ex.getMessage());
+        error.setPath(request.getRequestURI());
+
+        return new ResponseEntity<>(error, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(InvalidAmountException.class)
+    public ResponseEntity<ErrorResponse> handleInvalidAmount(InvalidAmountException ex, HttpServletRequest request) {
+        ErrorResponse error = new ErrorResponse();
+        error.setTimestamp(LocalDateTime.now());
+        error.setStatus(HttpStatus.BAD_REQUEST.value());
+        error.setError("Bad Request");
+        error.setMessage(ex.getMessage());
+        error.setPath(request.getRequestURI());
+
+        return new ResponseEntity<>(error, HttpStatus.BAD_REQUEST);
+    }
+
     @ExceptionHandler(BadCredentialsException.class)
     public ResponseEntity<ErrorResponse> handleBadCredentialsException(
             BadCredentialsException ex,
@@ -117,6 +166,28 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.NOT_FOUND).body(err);
     }
 
+    @ExceptionHandler(IngestionJobNotFoundException.class)
+    public ResponseEntity<ErrorResponse> handleIngestionJobNotFound(IngestionJobNotFoundException ex, HttpServletRequest request) {
+        ErrorResponse err = new ErrorResponse();
+        err.setTimestamp(LocalDateTime.now());
+        err.setStatus(HttpStatus.NOT_FOUND.value());
+        err.setError(HttpStatus.NOT_FOUND.getReasonPhrase());
+        err.setMessage(ex.getMessage());
+        err.setPath(request.getRequestURI());
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(err);
+    }
+
+    @ExceptionHandler(PaymentFileTooLargeException.class)
+    public ResponseEntity<ErrorResponse> handlePaymentFileTooLarge(PaymentFileTooLargeException ex, HttpServletRequest request) {
+        ErrorResponse err = new ErrorResponse();
+        err.setTimestamp(LocalDateTime.now());
+        err.setStatus(HttpStatus.CONTENT_TOO_LARGE.value());
+        err.setError(HttpStatus.CONTENT_TOO_LARGE.getReasonPhrase());
+        err.setMessage(ex.getMessage());
+        err.setPath(request.getRequestURI());
+        return ResponseEntity.status(HttpStatus.CONTENT_TOO_LARGE).body(err);
+    }
+
     @ExceptionHandler(DuplicateUsernameException.class)
     public ResponseEntity<ErrorResponse> handleDuplicateUsername(DuplicateUsernameException ex) {
         ErrorResponse error = new ErrorResponse();
@@ -127,6 +198,91 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<>(error, HttpStatus.CONFLICT);
     }
 
+    @ExceptionHandler(IdempotencyKeyConflictException.class)
+    public ResponseEntity<ErrorResponse> handleIdempotencyKeyConflict(IdempotencyKeyConflictException ex, HttpServletRequest request) {
+        ErrorResponse err = new ErrorResponse();
+        err.setTimestamp(LocalDateTime.now());
+        err.setStatus(HttpStatus.UNPROCESSABLE_CONTENT.value());
+        err.setError(HttpStatus.UNPROCESSABLE_CONTENT.getReasonPhrase());
+        err.setMessage(ex.getMessage());
+        err.setPath(request.getRequestURI());
+        return ResponseEntity.status(HttpStatus.UNPROCESSABLE_CONTENT).body(err);
+    }
+
+    @ExceptionHandler(PaymentQueueFullException.class)
+    public ResponseEntity<ErrorResponse> handlePaymentQueueFull(PaymentQueueFullException ex, HttpServletRequest request) {
+        log.warn(ex.getMessage());
+        ErrorResponse err = new ErrorResponse();
+        err.setTimestamp(LocalDateTime.now());
+        err.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        err.setError(HttpStatus.SERVICE_UNAVAILABLE.getReasonPhrase());
+        err.setMessage(ex.getMessage());
+        err.setPath(request.getRequestURI());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(err);
+    }
+
+    @ExceptionHandler(ShardMigrationException.class)
+    public ResponseEntity<ErrorResponse> handleShardMigration(ShardMigrationException ex, HttpServletRequest request) {
+        log.warn(ex.getMessage());
+        ErrorResponse err = new ErrorResponse();
+        err.setTimestamp(LocalDateTime.now());
+        err.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        err.setError(HttpStatus.SERVICE_UNAVAILABLE.getReasonPhrase());
+        err.setMessage(ex.getMessage());
+        err.setPath(request.getRequestURI());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(err);
+    }
+
+    @ExceptionHandler(DuplicatePaymentException.class)
+    public ResponseEntity<ErrorResponse> handleDuplicatePayment(DuplicatePaymentException ex, HttpServletRequest request) {
+        log.warn(ex.getMessage());
+        ErrorResponse err = new ErrorResponse();
+        err.setTimestamp(LocalDateTime.now());
+        err.setStatus(HttpStatus.CONFLICT.value());
+        err.setError(HttpStatus.CONFLICT.getReasonPhrase());
+        err.setMessage(ex.getMessage());
+        err.setPath(request.getRequestURI());
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(err);
+    }
+
+    @ExceptionHandler(RateLimitExceededException.class)
+    public ResponseEntity<ErrorResponse> handleRateLimitExceeded(RateLimitExceededException ex, HttpServletRequest request) {
+        ErrorResponse err = new ErrorResponse();
+        err.setTimestamp(LocalDateTime.now());
+        err.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        err.setError(HttpStatus.TOO_MANY_REQUESTS.getReasonPhrase());
+        err.setMessage(ex.getMessage());
+        err.setPath(request.getRequestURI());
+        // whole seconds, rounded up so that a client retrying on time is not rejected again
+        long retryAfter = Math.max(1, (ex.getRetryAfter().toMillis() + 999) / 1000);
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(retryAfter))
+                .body(err);
+    }
+
+    @ExceptionHandler(InvalidStatusTransitionException.class)
+    public ResponseEntity<ErrorResponse> handleInvalidStatusTransition(InvalidStatusTransitionException ex, HttpServletRequest request) {
+        ErrorResponse err = new ErrorResponse();
+        err.setTimestamp(LocalDateTime.now());
+        err.setStatus(HttpStatus.CONFLICT.value());
+        err.setError(HttpStatus.CONFLICT.getReasonPhrase());
+        err.setMessage(ex.getMessage());
+        err.setPath(request.getRequestURI());
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(err);
+    }
+
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity<ErrorResponse> handleOptimisticLockingFailure(OptimisticLockingFailureException ex, HttpServletRequest request) {
+        log.warn(ex.getMessage());
+        ErrorResponse err = new ErrorResponse();
+        err.setTimestamp(LocalDateTime.now());
+        err.setStatus(HttpStatus.CONFLICT.value());
+        err.setError(HttpStatus.CONFLICT.getReasonPhrase());
+        err.setMessage("The payment was modified concurrently, reload it and retry.");
+        err.setPath(request.getRequestURI());
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(err);
+    }
+
     @ExceptionHandler(Exception.class)
     public ResponseEntity<ErrorResponse> handleGenericException(Exception ex, HttpServletRequest request) {
         log.error(ex.getMessage(), ex);
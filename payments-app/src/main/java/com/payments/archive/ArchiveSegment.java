@@ -0,0 +1,440 @@
+package com.payments.archive;
+
+import com.payments.dto.PaymentRow;
+import com.payments.entity.PartyEntity;
+import com.payments.entity.PaymentEntity;
+import com.payments.model.PaymentMethod;
+import com.payments.model.PaymentStatus;
+import com.payments.util.Money;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Immutable, column-oriented file of archived payments.
+ * <p>
+ * The file starts with a header holding the row count, the min/max {@code createdAt} and {@code paymentId} of
+ * its rows and the compressed length of every column. Each column follows as its own deflate block, so a reader
+ * decompresses only the columns it needs. Times are epoch microseconds, {@code createdAt} is delta encoded since
+ * rows are written in creation order, amounts are minor units of their currency. Version 1 segments held amounts
+ * at a fixed scale of 2, they are still read and rescaled to the currency.
+ */
+final class ArchiveSegment {
+
+    private static final int MAGIC = 0x50534547;
+    private static final short FORMAT_VERSION = 2;
+    private static final short FIXED_SCALE_VERSION = 1;
+    private static final int FIXED_AMOUNT_SCALE = 2;
+    private static final long NO_TIME = Long.MIN_VALUE;
+    private static final LocalDateTime EPOCH = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    private static final int PAYMENT_ID = 0;
+    private static final int CREATED_AT = 1;
+    private static final int UPDATED_AT = 2;
+    private static final int STATUS = 3;
+    private static final int CURRENCY = 4;
+    private static final int PAYMENT_METHOD = 5;
+    private static final int AMOUNT = 6;
+    private static final int VERSION = 7;
+    private static final int USER_NAME = 8;
+    private static final int DEBTOR = 9;
+    private static final int CREDITOR = 15;
+    private static final int PARTY_COLUMNS = 6;
+    private static final int COLUMN_COUNT = CREDITOR + PARTY_COLUMNS;
+    private static final int HEADER_SIZE = 4 + 2 + 4 + 8 * 2 + 16 * 2 + 2 + 4 * COLUMN_COUNT;
+
+    private final Path file;
+    private final short formatVersion;
+    private final int rows;
+    private final LocalDateTime minCreatedAt;
+    private final LocalDateTime maxCreatedAt;
+    private final UUID minPaymentId;
+    private final UUID maxPaymentId;
+    private final long[] offsets;
+    private final int[] lengths;
+
+    private volatile SoftReference<UUID[]> cachedPaymentIds = new SoftReference<>(null);
+
+    private ArchiveSegment(Path file, short formatVersion, int rows, LocalDateTime minCreatedAt, LocalDateTime maxCreatedAt,
+                           UUID minPaymentId, UUID maxPaymentId, int[] lengths) {
+        this.file = file;
+        this.formatVersion = formatVersion;
+        this.rows = rows;
+        this.minCreatedAt = minCreatedAt;
+        this.maxCreatedAt = maxCreatedAt;
+        this.minPaymentId = minPaymentId;
+        this.maxPaymentId = maxPaymentId;
+        this.lengths = lengths;
+        this.offsets = new long[lengths.length];
+        long offset = HEADER_SIZE;
+        for (int i = 0; i < lengths.length; i++) {
+            offsets[i] = offset;
+            offset += lengths[i];
+        }
+    }
+
+    /**
+     * Write payments, ordered by creation time, to a new segment file. The file is written under a temporary
+     * name, forced to disk and renamed, a segment is either complete or absent.
+     */
+    static ArchiveSegment write(Path file, List<PaymentEntity> payments) throws IOException {
+        byte[][] columns = new byte[COLUMN_COUNT][];
+        columns[PAYMENT_ID] = column(out -> {
+            for (PaymentEntity p : payments) {
+                out.writeLong(p.getPaymentId().getMostSignificantBits());
+                out.writeLong(p.getPaymentId().getLeastSignificantBits());
+            }
+        });
+        columns[CREATED_AT] = column(out -> {
+            long previous = 0;
+            for (PaymentEntity p : payments) {
+                long micros = micros(p.getCreatedAt());
+                out.writeLong(micros - previous);
+                previous = micros;
+            }
+        });
+        columns[UPDATED_AT] = longColumn(payments, p -> p.getUpdatedAt() == null ? NO_TIME : micros(p.getUpdatedAt()));
+        columns[STATUS] = stringColumn(payments, p -> p.getStatus().getValue());
+        columns[CURRENCY] = stringColumn(payments, PaymentEntity::getCurrency);
+        columns[PAYMENT_METHOD] = stringColumn(payments, p -> p.getPaymentMethod().getValue());
+        columns[AMOUNT] = longColumn(payments, PaymentEntity::getAmountMinor);
+        columns[VERSION] = longColumn(payments, PaymentEntity::getVersion);
+        columns[USER_NAME] = stringColumn(payments, PaymentEntity::getUserName);
+        writePartyColumns(columns, DEBTOR, payments, PaymentEntity::getDebtor);
+        writePartyColumns(columns, CREDITOR, payments, PaymentEntity::getCreditor);
+
+        UUID minId = payments.getFirst().getPaymentId();
+        UUID maxId = minId;
+        LocalDateTime minCreated = payments.getFirst().getCreatedAt();
+        LocalDateTime maxCreated = minCreated;
+        for (PaymentEntity p : payments) {
+            minId = p.getPaymentId().compareTo(minId) < 0 ? p.getPaymentId() : minId;
+            maxId = p.getPaymentId().compareTo(maxId) > 0 ? p.getPaymentId() : maxId;
+            minCreated = p.getCreatedAt().isBefore(minCreated) ? p.getCreatedAt() : minCreated;
+            maxCreated = p.getCreatedAt().isAfter(maxCreated) ? p.getCreatedAt() : maxCreated;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putShort(FORMAT_VERSION).putInt(payments.size())
+                .putLong(micros(minCreated)).putLong(micros(maxCreated))
+                .putLong(minId.getMostSignificantBits()).putLong(minId.getLeastSignificantBits())
+                .putLong(maxId.getMostSignificantBits()).putLong(maxId.getLeastSignificantBits())
+                .putShort((short) COLUMN_COUNT);
+        int[] lengths = new int[COLUMN_COUNT];
+        for (int i = 0; i < COLUMN_COUNT; i++) {
+            lengths[i] = columns[i].length;
+            header.putInt(lengths[i]);
+        }
+        header.flip();
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, header);
+            for (byte[] column : columns) {
+                writeFully(channel, ByteBuffer.wrap(column));
+            }
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+        return new ArchiveSegment(file, FORMAT_VERSION, payments.size(), minCreated, maxCreated, minId, maxId, lengths);
+    }
+
+    /**
+     * Read the header of a segment file, the columns are read on demand.
+     */
+    static ArchiveSegment open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not an archive segment: " + file);
+            }
+            short formatVersion = header.getShort();
+            if (formatVersion != FORMAT_VERSION && formatVersion != FIXED_SCALE_VERSION) {
+                throw new IOException("Unsupported archive segment version " + formatVersion + ": " + file);
+            }
+            int rows = header.getInt();
+            LocalDateTime minCreated = fromMicros(header.getLong());
+            LocalDateTime maxCreated = fromMicros(header.getLong());
+            UUID minId = new UUID(header.getLong(), header.getLong());
+            UUID maxId = new UUID(header.getLong(), header.getLong());
+            if (header.getShort() != COLUMN_COUNT) {
+                throw new IOException("Unexpected column count in archive segment: " + file);
+            }
+            int[] lengths = new int[COLUMN_COUNT];
+            for (int i = 0; i < COLUMN_COUNT; i++) {
+                lengths[i] = header.getInt();
+            }
+            return new ArchiveSegment(file, formatVersion, rows, minCreated, maxCreated, minId, maxId, lengths);
+        }
+    }
+
+    Path file() {
+        return file;
+    }
+
+    int rows() {
+        return rows;
+    }
+
+    LocalDateTime maxCreatedAt() {
+        return maxCreatedAt;
+    }
+
+    LocalDateTime minCreatedAt() {
+        return minCreatedAt;
+    }
+
+    boolean mayContain(UUID paymentId) {
+        return paymentId.compareTo(minPaymentId) >= 0 && paymentId.compareTo(maxPaymentId) <= 0;
+    }
+
+    /**
+     * Payment ids of all rows, in row order. Every lookup of an id that is not in the table probes them, so the
+     * decoded ids are kept as long as memory allows. The returned array is shared and must not be modified.
+     */
+    UUID[] paymentIds() throws IOException {
+        UUID[] ids = cachedPaymentIds.get();
+        if (ids != null) {
+            return ids;
+        }
+        ids = new UUID[rows];
+        try (DataInputStream in = read(PAYMENT_ID)) {
+            for (int i = 0; i < rows; i++) {
+                ids[i] = new UUID(in.readLong(), in.readLong());
+            }
+        }
+        cachedPaymentIds = new SoftReference<>(ids);
+        return ids;
+    }
+
+    LocalDateTime[] createdAt() throws IOException {
+        LocalDateTime[] values = new LocalDateTime[rows];
+        try (DataInputStream in = read(CREATED_AT)) {
+            long micros = 0;
+            for (int i = 0; i < rows; i++) {
+                micros += in.readLong();
+                values[i] = fromMicros(micros);
+            }
+        }
+        return values;
+    }
+
+    PaymentStatus[] statuses() throws IOException {
+        String[] values = strings(STATUS);
+        PaymentStatus[] statuses = new PaymentStatus[rows];
+        for (int i = 0; i < rows; i++) {
+            statuses[i] = PaymentStatus.fromValue(values[i]);
+        }
+        return statuses;
+    }
+
+    PaymentMethod[] paymentMethods() throws IOException {
+        String[] values = strings(PAYMENT_METHOD);
+        PaymentMethod[] methods = new PaymentMethod[rows];
+        for (int i = 0; i < rows; i++) {
+            methods[i] = PaymentMethod.fromValue(values[i]);
+        }
+        return methods;
+    }
+
+    String[] currencies() throws IOException {
+        return strings(CURRENCY);
+    }
+
+    /**
+     * Amounts in minor units of the currency of their row.
+     */
+    long[] amounts() throws IOException {
+        long[] amounts = longs(AMOUNT);
+        if (formatVersion == FIXED_SCALE_VERSION) {
+            String[] currencies = currencies();
+            for (int i = 0; i < rows; i++) {
+                amounts[i] = Money.rescale(amounts[i], FIXED_AMOUNT_SCALE, currencies[i]);
+            }
+        }
+        return amounts;
+    }
+
+    /**
+     * Read one row as the payment read projection. The columns after the payment ids are stored back to back and
+     * read with a single file read, each is decompressed only up to the row.
+     */
+    PaymentRow row(int index, UUID paymentId) throws IOException {
+        byte[] block = readBlock(CREATED_AT, COLUMN_COUNT - 1);
+        long createdAt = 0;
+        try (DataInputStream in = inflate(block, CREATED_AT, CREATED_AT)) {
+            for (int i = 0; i <= index; i++) {
+                createdAt += in.readLong();
+            }
+        }
+        long updatedAt = longAt(block, UPDATED_AT, index);
+        String currency = stringAt(block, CURRENCY, index);
+        long amount = longAt(block, AMOUNT, index);
+        if (formatVersion == FIXED_SCALE_VERSION) {
+            amount = Money.rescale(amount, FIXED_AMOUNT_SCALE, currency);
+        }
+        String[] debtor = partyAt(block, DEBTOR, index);
+        String[] creditor = partyAt(block, CREDITOR, index);
+        return new PaymentRow(paymentId, amount, currency, PaymentStatus.fromValue(stringAt(block, STATUS, index)),
+                PaymentMethod.fromValue(stringAt(block, PAYMENT_METHOD, index)), fromMicros(createdAt),
+                updatedAt == NO_TIME ? null : fromMicros(updatedAt), longAt(block, VERSION, index),
+                debtor[0], debtor[1], debtor[2], debtor[3], debtor[4], debtor[5],
+                creditor[0], creditor[1], creditor[2], creditor[3], creditor[4], creditor[5]);
+    }
+
+    private String[] partyAt(byte[] block, int firstColumn, int index) throws IOException {
+        String[] party = new String[PARTY_COLUMNS];
+        for (int i = 0; i < PARTY_COLUMNS; i++) {
+            party[i] = stringAt(block, firstColumn + i, index);
+        }
+        return party;
+    }
+
+    private long longAt(byte[] block, int column, int index) throws IOException {
+        try (DataInputStream in = inflate(block, CREATED_AT, column)) {
+            in.skipNBytes((long) index * Long.BYTES);
+            return in.readLong();
+        }
+    }
+
+    private String stringAt(byte[] block, int column, int index) throws IOException {
+        try (DataInputStream in = inflate(block, CREATED_AT, column)) {
+            for (int i = 0; i < index; i++) {
+                if (in.readBoolean()) {
+                    in.skipNBytes(in.readUnsignedShort());
+                }
+            }
+            return in.readBoolean() ? in.readUTF() : null;
+        }
+    }
+
+    private long[] longs(int column) throws IOException {
+        long[] values = new long[rows];
+        try (DataInputStream in = read(column)) {
+            for (int i = 0; i < rows; i++) {
+                values[i] = in.readLong();
+            }
+        }
+        return values;
+    }
+
+    private String[] strings(int column) throws IOException {
+        String[] values = new String[rows];
+        try (DataInputStream in = read(column)) {
+            for (int i = 0; i < rows; i++) {
+                values[i] = in.readBoolean() ? in.readUTF() : null;
+            }
+        }
+        return values;
+    }
+
+    private DataInputStream read(int column) throws IOException {
+        return inflate(readBlock(column, column), column, column);
+    }
+
+    /**
+     * Read the compressed columns {@code first} to {@code last}, which are stored back to back, in one go.
+     */
+    private byte[] readBlock(int first, int last) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(Math.toIntExact(offsets[last] + lengths[last] - offsets[first]));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            readFully(channel, block, offsets[first]);
+        }
+        return block.array();
+    }
+
+    private DataInputStream inflate(byte[] block, int firstColumn, int column) {
+        int start = Math.toIntExact(offsets[column] - offsets[firstColumn]);
+        return new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(block, start, lengths[column])));
+    }
+
+    private static void writePartyColumns(byte[][] columns, int firstColumn, List<PaymentEntity> payments,
+                                          Function<PaymentEntity, PartyEntity> party) throws IOException {
+        List<Function<PartyEntity, String>> fields = List.of(PartyEntity::getName, PartyEntity::getAccountNumber,
+                PartyEntity::getBankCode, PartyEntity::getAddress, PartyEntity::getEmail, PartyEntity::getPhoneNumber);
+        for (int i = 0; i < PARTY_COLUMNS; i++) {
+            Function<PartyEntity, String> field = fields.get(i);
+            columns[firstColumn + i] = stringColumn(payments, p -> party.apply(p) == null ? null : field.apply(party.apply(p)));
+        }
+    }
+
+    private static byte[] longColumn(List<PaymentEntity> payments, Function<PaymentEntity, Long> value) throws IOException {
+        return column(out -> {
+            for (PaymentEntity p : payments) {
+                out.writeLong(value.apply(p));
+            }
+        });
+    }
+
+    private static byte[] stringColumn(List<PaymentEntity> payments, Function<PaymentEntity, String> value) throws IOException {
+        return column(out -> {
+            for (PaymentEntity p : payments) {
+                String v = value.apply(p);
+                out.writeBoolean(v != null);
+                if (v != null) {
+                    out.writeUTF(v);
+                }
+            }
+        });
+    }
+
+    private static byte[] column(ColumnWriter writer) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, deflater))) {
+            writer.write(out);
+        } finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Truncated archive segment");
+            }
+        }
+    }
+
+    private static long micros(LocalDateTime time) {
+        return ChronoUnit.MICROS.between(EPOCH, time);
+    }
+
+    private static LocalDateTime fromMicros(long micros) {
+        return EPOCH.plus(micros, ChronoUnit.MICROS);
+    }
+
+    @FunctionalInterface
+    private interface ColumnWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+}
@@ -0,0 +1,192 @@
+package com.payments.archive;
+
+import com.payments.config.ArchiveProperties;
+import com.payments.dto.PaymentRow;
+import com.payments.dto.PaymentStatisticsRow;
+import com.payments.entity.PaymentEntity;
+import com.payments.model.PaymentMethod;
+import com.payments.model.PaymentStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Local-disk archive of payments moved out of the payments table, one {@link ArchiveSegment} file per archived
+ * chunk. The headers of all segments are kept in memory, their min/max {@code paymentId} and {@code createdAt}
+ * decide which segments a lookup or an aggregation has to open at all.
+ */
+@Slf4j
+@Component
+public class PaymentArchive {
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d{19})\\.seg");
+
+    private final Path directory;
+    private final Object writeLock = new Object();
+
+    private volatile List<ArchiveSegment> segments;
+    private long lastSegment;
+
+    public PaymentArchive(ArchiveProperties properties) {
+        this.directory = properties.directory();
+        this.segments = open();
+    }
+
+    private List<ArchiveSegment> open() {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        List<ArchiveSegment> opened = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.sorted().toList()) {
+                Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    opened.add(ArchiveSegment.open(file));
+                    lastSegment = Math.max(lastSegment, Long.parseLong(matcher.group(1)));
+                } else if (file.getFileName().toString().endsWith(".tmp")) {
+                    // left over from a write interrupted before the rename, its payments are still in the table
+                    Files.delete(file);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open payment archive " + directory, e);
+        }
+        log.info("Opened payment archive {} with {} segments", directory, opened.size());
+        return List.copyOf(opened);
+    }
+
+    /**
+     * Write payments, ordered by creation time, to a new segment. Returns once the segment is on disk.
+     */
+    public void write(List<PaymentEntity> payments) {
+        if (payments.isEmpty()) {
+            return;
+        }
+        synchronized (writeLock) {
+            try {
+                Files.createDirectories(directory);
+                long segment = lastSegment + 1;
+                ArchiveSegment written = ArchiveSegment.write(
+                        directory.resolve("segment-%019d.seg".formatted(segment)), payments);
+                lastSegment = segment;
+                List<ArchiveSegment> updated = new ArrayList<>(segments);
+                updated.add(written);
+                segments = List.copyOf(updated);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot write payment archive segment", e);
+            }
+        }
+    }
+
+    public int segmentCount() {
+        return segments.size();
+    }
+
+    public Optional<PaymentRow> find(UUID paymentId) {
+        try {
+            for (ArchiveSegment segment : segments) {
+                if (!segment.mayContain(paymentId)) {
+                    continue;
+                }
+                UUID[] ids = segment.paymentIds();
+                for (int i = 0; i < ids.length; i++) {
+                    if (ids[i].equals(paymentId)) {
+                        return Optional.of(segment.row(i, paymentId));
+                    }
+                }
+            }
+            return Optional.empty();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read payment archive", e);
+        }
+    }
+
+    /**
+     * The given payments that are already archived, e.g. by a run that stopped before deleting them from the table.
+     */
+    public Set<UUID> findArchived(Collection<UUID> paymentIds) {
+        Set<UUID> archived = new HashSet<>();
+        try {
+            for (ArchiveSegment segment : segments) {
+                if (paymentIds.stream().noneMatch(segment::mayContain)) {
+                    continue;
+                }
+                for (UUID id : segment.paymentIds()) {
+                    if (paymentIds.contains(id)) {
+                        archived.add(id);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read payment archive", e);
+        }
+        return archived;
+    }
+
+    /**
+     * Aggregate the archived payments like the statistics queries over the payments table. Only the columns the
+     * aggregation needs are decompressed.
+     *
+     * @param since Null for overall totals, otherwise per-minute totals of the payments created since then
+     */
+    public List<PaymentStatisticsRow> aggregateStatistics(LocalDateTime since) {
+        Map<StatisticsKey, Sum> totals = new HashMap<>();
+        try {
+            for (ArchiveSegment segment : segments) {
+                if (since != null && segment.maxCreatedAt().isBefore(since)) {
+                    continue;
+                }
+                String[] currencies = segment.currencies();
+                PaymentStatus[] statuses = segment.statuses();
+                PaymentMethod[] methods = segment.paymentMethods();
+                long[] amounts = segment.amounts();
+                LocalDateTime[] createdAt = since == null ? null : segment.createdAt();
+                for (int i = 0; i < segment.rows(); i++) {
+                    if (createdAt != null && createdAt[i].isBefore(since)) {
+                        continue;
+                    }
+                    LocalDateTime minute = createdAt == null ? null : createdAt[i].truncatedTo(ChronoUnit.MINUTES);
+                    Sum sum = totals.computeIfAbsent(new StatisticsKey(minute, currencies[i], statuses[i], methods[i]),
+                            key -> new Sum());
+                    sum.count++;
+                    sum.amount += amounts[i];
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read payment archive", e);
+        }
+        return totals.entrySet().stream()
+                .map(entry -> new PaymentStatisticsRow(entry.getKey().minute(), entry.getKey().currency(),
+                        entry.getKey().status(), entry.getKey().paymentMethod(), entry.getValue().count,
+                        entry.getValue().amount))
+                .toList();
+    }
+
+    private record StatisticsKey(LocalDateTime minute, String currency, PaymentStatus status,
+                                 PaymentMethod paymentMethod) {
+    }
+
+    private static final class Sum {
+
+        private long count;
+        private long amount;
+    }
+}
@@ -0,0 +1,116 @@
+package com.payments.archive;
+
+import com.payments.config.ArchiveProperties;
+import com.payments.entity.PartyEntity;
+import com.payments.entity.PaymentEntity;
+import com.payments.model.PaymentStatus;
+import com.payments.repository.PartyRepository;
+import com.payments.repository.PaymentRepository;
+import com.payments.sharding.PaymentShards;
+import com.payments.util.PaymentStatusTransitions;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Moves payments in a final status out of the payments table into the {@link PaymentArchive}. Each chunk is
+ * claimed with a skip-locked select, written to a segment and deleted in a single transaction, and chunks are
+ * drained until nothing old enough is left, shard by shard. A run that stops after writing a segment but before
+ * its delete commits leaves the payments in both places, the next run finds them archived and only deletes them.
+ */
+@Slf4j
+@Component
+public class PaymentArchiver {
+
+    private static final Set<PaymentStatus> ARCHIVED_STATUSES = PaymentStatusTransitions.finalStatuses();
+
+    private final PaymentRepository repository;
+    private final PartyRepository partyRepository;
+    private final PaymentArchive archive;
+    private final TransactionTemplate transactionTemplate;
+    private final PaymentShards paymentShards;
+    private final ArchiveProperties properties;
+    private final Counter archived;
+
+    public PaymentArchiver(PaymentRepository repository,
+                           PartyRepository partyRepository,
+                           PaymentArchive archive,
+                           TransactionTemplate transactionTemplate,
+                           PaymentShards paymentShards,
+                           ArchiveProperties properties,
+                           MeterRegistry meterRegistry) {
+        this.repository = repository;
+        this.partyRepository = partyRepository;
+        this.archive = archive;
+        this.transactionTemplate = transactionTemplate;
+        this.paymentShards = paymentShards;
+        this.properties = properties;
+        this.archived = Counter.builder("payment.archive.archived")
+                .description("Payments moved from the payments table to the archive")
+                .register(meterRegistry);
+        Gauge.builder("payment.archive.segments", archive, PaymentArchive::segmentCount)
+                .description("Segment files in the payment archive")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${payment.archive.interval:1m}")
+    public void archive() {
+        if (!properties.enabled()) {
+            return;
+        }
+        LocalDateTime cutoff = LocalDateTime.now().minus(properties.minAge());
+        for (int shard = 0; shard < paymentShards.shardCount(); shard++) {
+            paymentShards.onShard(shard, () -> archive(cutoff));
+        }
+    }
+
+    private Void archive(LocalDateTime cutoff) {
+        try {
+            int claimed;
+            do {
+                claimed = transactionTemplate.execute(status -> archiveChunk(cutoff));
+            } while (claimed == properties.chunkSize());
+        } catch (RuntimeException ex) {
+            // the chunk stays in the table and is retried on the next run
+            log.error("Archiving payments failed", ex);
+        }
+        return null;
+    }
+
+    private int archiveChunk(LocalDateTime cutoff) {
+        List<PaymentEntity> chunk = repository.findByStatusInAndCreatedAtBeforeOrderByCreatedAtAscIdAsc(
+                ARCHIVED_STATUSES, cutoff, Limit.of(properties.chunkSize()));
+        if (chunk.isEmpty()) {
+            return 0;
+        }
+        // loads the parties of the chunk in one query, the lazy references then resolve from the session
+        Set<Long> partyIds = new HashSet<>();
+        chunk.stream()
+                .flatMap(payment -> Stream.of(payment.getDebtor(), payment.getCreditor()))
+                .filter(Objects::nonNull)
+                .map(PartyEntity::getId)
+                .forEach(partyIds::add);
+        partyRepository.findAllById(partyIds);
+
+        Set<UUID> alreadyArchived = archive.findArchived(chunk.stream().map(PaymentEntity::getPaymentId).toList());
+        archive.write(chunk.stream().filter(payment -> !alreadyArchived.contains(payment.getPaymentId())).toList());
+        repository.deleteAllByIdInBatch(chunk.stream().map(PaymentEntity::getId).toList());
+
+        archived.increment(chunk.size());
+        log.debug("Archived {} payments created up to {}", chunk.size(), chunk.getLast().getCreatedAt());
+        return chunk.size();
+    }
+}
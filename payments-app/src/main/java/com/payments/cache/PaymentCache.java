@@ -0,0 +1,82 @@
+package com.payments.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.payments.config.PaymentCacheProperties;
+import com.payments.config.ReplicaProperties;
+import com.payments.mapper.PaymentMapper;
+import com.payments.model.Payment;
+import com.payments.replica.PrimaryReads;
+import com.payments.util.PaymentIdGenerator;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Size and TTL bounded read-through cache of mapped {@link Payment} models, keyed by the external payment id.
+ * <p>
+ * Callers always receive their own copy, the controller adds request specific links to the instance it gets.
+ * Entries are evicted by {@link PaymentCacheInvalidator} when a payment row changes. Ids are keyed in their
+ * canonical lowercase form, so a lookup spelled differently cannot hold an entry the eviction misses.
+ * <p>
+ * With read replicas only loads that read the primary fill the cache. A replica may not have caught up with
+ * the write that evicted an entry, what it returns is served to the caller but not cached for everyone else.
+ */
+@Slf4j
+@Component
+public class PaymentCache {
+
+    private static final String CACHE_NAME = "payments";
+
+    private final boolean enabled;
+    private final boolean replicaReads;
+    private final PaymentMapper paymentMapper;
+    private final Cache<String, Payment> payments;
+
+    public PaymentCache(PaymentCacheProperties properties, ReplicaProperties replicaProperties,
+                        PaymentMapper paymentMapper, MeterRegistry meterRegistry) {
+        this.enabled = properties.enabled();
+        this.replicaReads = replicaProperties.enabled();
+        this.paymentMapper = paymentMapper;
+        this.payments = Caffeine.newBuilder()
+                .maximumSize(properties.maximumSize())
+                .expireAfterWrite(properties.ttl())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, payments, CACHE_NAME);
+    }
+
+    public Optional<Payment> get(String paymentId, Function<String, Optional<Payment>> loader) {
+        Optional<String> key = canonical(paymentId);
+        if (!enabled || key.isEmpty()) {
+            return loader.apply(paymentId);
+        }
+        if (replicaReads && !PrimaryReads.isRequired()) {
+            Payment cached = payments.getIfPresent(key.get());
+            return cached != null ? Optional.of(paymentMapper.copy(cached)) : loader.apply(key.get());
+        }
+        Payment cached = payments.get(key.get(), id -> loader.apply(id).orElse(null));
+        return Optional.ofNullable(cached).map(paymentMapper::copy);
+    }
+
+    /**
+     * Look up a cached payment without loading it. The returned instance is shared and must not be modified.
+     */
+    public Optional<Payment> peek(String paymentId) {
+        return enabled ? canonical(paymentId).map(payments::getIfPresent) : Optional.empty();
+    }
+
+    public void evict(String paymentId) {
+        canonical(paymentId).ifPresent(payments::invalidate);
+        log.trace("Evicted payment {} from cache", paymentId);
+    }
+
+    private static Optional<String> canonical(String paymentId) {
+        return PaymentIdGenerator.parse(paymentId).map(UUID::toString);
+    }
+}
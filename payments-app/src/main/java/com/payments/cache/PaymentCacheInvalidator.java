@@ -0,0 +1,47 @@
+package com.payments.cache;
+
+import com.payments.entity.PaymentEntity;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import lombok.AllArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * JPA listener on {@link PaymentEntity} that evicts the cached payment whenever its row is written.
+ * The eviction runs after the transaction completes, so a concurrent reader cannot re-cache the old state
+ * between the eviction and the commit.
+ * <p>
+ * Bulk JPQL or native updates bypass entity listeners and must call {@link #evictAll} themselves.
+ */
+@Component
+@AllArgsConstructor
+public class PaymentCacheInvalidator {
+
+    private final PaymentCache paymentCache;
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void onWrite(PaymentEntity entity) {
+        evictAll(List.of(entity.getPaymentId().toString()));
+    }
+
+    public void evictAll(Collection<String> paymentIds) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            paymentIds.forEach(paymentCache::evict);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                paymentIds.forEach(paymentCache::evict);
+            }
+        });
+    }
+}
@@ -0,0 +1,65 @@
+package com.payments.cache;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import com.payments.config.UserCacheProperties;
+import com.payments.entity.User;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cache.spi.RegionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.hibernate.autoconfigure.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.spi.CachingProvider;
+import java.util.OptionalLong;
+
+/**
+ * Hibernate second-level and query cache for {@link User} and its roles, kept in Caffeine behind JCache. Every
+ * region is created here with its bounds, Hibernate fails to start on a cached entity without a configured region
+ * rather than creating an unbounded one. Writes through the entity manager update or evict the regions when their
+ * transaction commits, statistics are enabled so the hit and miss counts show up as {@code hibernate.*} metrics.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "payment.user-cache", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class UserCacheConfiguration {
+
+    @Bean
+    CacheManager userCacheManager(UserCacheProperties properties) {
+        CachingProvider provider = Caching.getCachingProvider(CaffeineCachingProvider.class.getName());
+        CacheManager cacheManager = provider.getCacheManager();
+        CaffeineConfiguration<Object, Object> bounded = new CaffeineConfiguration<>()
+                .setMaximumSize(OptionalLong.of(properties.maximumSize()))
+                .setExpireAfterWrite(OptionalLong.of(properties.ttl().toNanos()))
+                .setStoreByValue(false);
+        create(cacheManager, User.CACHE_REGION, bounded);
+        create(cacheManager, User.ROLES_CACHE_REGION, bounded);
+        create(cacheManager, RegionFactory.DEFAULT_QUERY_RESULTS_REGION_UNQUALIFIED_NAME, bounded);
+        // one entry per table, a timestamp that expired before the query results would let them outlive a write
+        create(cacheManager, RegionFactory.DEFAULT_UPDATE_TIMESTAMPS_REGION_UNQUALIFIED_NAME,
+                new CaffeineConfiguration<>().setStoreByValue(false));
+        return cacheManager;
+    }
+
+    @Bean
+    HibernatePropertiesCustomizer userCacheHibernateProperties(CacheManager userCacheManager) {
+        return hibernateProperties -> {
+            hibernateProperties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, true);
+            hibernateProperties.put(AvailableSettings.USE_QUERY_CACHE, true);
+            hibernateProperties.put(AvailableSettings.CACHE_REGION_FACTORY, ConfigSettings.SIMPLE_FACTORY_NAME);
+            hibernateProperties.put(ConfigSettings.CACHE_MANAGER, userCacheManager);
+            hibernateProperties.put(ConfigSettings.MISSING_CACHE_STRATEGY, "fail");
+            hibernateProperties.put(AvailableSettings.GENERATE_STATISTICS, true);
+        };
+    }
+
+    private static void create(CacheManager cacheManager, String region, CaffeineConfiguration<Object, Object> configuration) {
+        // the default cache manager is shared per class loader and may still hold the region after a context restart
+        if (cacheManager.getCache(region) == null) {
+            cacheManager.createCache(region, configuration);
+        }
+    }
+}
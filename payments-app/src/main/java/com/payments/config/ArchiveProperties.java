@@ -0,0 +1,24 @@
+package com.payments.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Settings for archiving payments in a final status out of the payments table.
+ *
+ * @param enabled   run the archiver, archived payments are read from the directory either way
+ * @param directory directory holding the archive segment files
+ * @param minAge    payments created longer ago than this are archived once their status is final
+ * @param chunkSize maximum number of payments moved per transaction, and per segment file
+ */
+@ConfigurationProperties(prefix = "payment.archive")
+public record ArchiveProperties(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue("data/payment-archive") Path directory,
+        @DefaultValue("30d") Duration minAge,
+        @DefaultValue("1000") int chunkSize
+) {
+}
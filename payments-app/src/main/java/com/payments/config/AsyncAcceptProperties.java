@@ -0,0 +1,38 @@
+package com.payments.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Settings for asynchronous acceptance, where {@code makePayment} journals the payment and answers 202 Accepted
+ * before it is stored.
+ *
+ * @param enabled          honour {@code Prefer: respond-async} on payment creation
+ * @param journalDirectory directory holding the journal segment files
+ * @param segmentSize      size after which the journal rolls over to a new segment file
+ * @param fsync            force every append to disk before the caller is answered
+ * @param workers          number of threads storing journaled payments
+ * @param batchSize        maximum number of payments stored in one transaction
+ * @param pollInterval     how long an idle worker waits for new payments
+ * @param maxPending       maximum number of accepted payments not yet stored before new ones are rejected
+ * @param retryBackoff     pause before payments are retried after a transient database failure
+ * @param rejectedRetention how long a payment that could not be stored is reported as FAILED
+ */
+@ConfigurationProperties(prefix = "payment.async-accept")
+public record AsyncAcceptProperties(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue("data/payment-journal") Path journalDirectory,
+        @DefaultValue("16MB") DataSize segmentSize,
+        @DefaultValue("true") boolean fsync,
+        @DefaultValue("2") int workers,
+        @DefaultValue("200") int batchSize,
+        @DefaultValue("20ms") Duration pollInterval,
+        @DefaultValue("100000") int maxPending,
+        @DefaultValue("1s") Duration retryBackoff,
+        @DefaultValue("1h") Duration rejectedRetention
+) {
+}
@@ -0,0 +1,30 @@
+package com.payments.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings for detecting payments submitted twice without an idempotency key.
+ *
+ * @param enabled    check new payments against the recently submitted ones
+ * @param action     whether a likely duplicate is only flagged on the response or rejected
+ * @param window     how long a payment is remembered
+ * @param buckets    number of time buckets the window is divided into, a payment is forgotten with its bucket
+ * @param maxEntries maximum number of payments remembered over the window, later ones are not checked against
+ */
+@ConfigurationProperties(prefix = "payment.duplicate-detection")
+public record DuplicateDetectionProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("FLAG") Action action,
+        @DefaultValue("60s") Duration window,
+        @DefaultValue("6") int buckets,
+        @DefaultValue("100000") int maxEntries
+) {
+
+    public enum Action {
+        FLAG,
+        REJECT
+    }
+}
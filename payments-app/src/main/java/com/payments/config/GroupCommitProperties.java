@@ -0,0 +1,27 @@
+package com.payments.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings for group-commit mode, where concurrent payment writes share one transaction.
+ *
+ * @param enabled        route {@code makePayment} through the group-commit writer
+ * @param maxBatchSize   maximum number of payments committed in one transaction
+ * @param flushInterval  how long the writer waits for more payments after the first one arrives
+ * @param queueCapacity  maximum number of payments waiting for the writer
+ * @param offerTimeout   how long a caller waits for queue space before the request is rejected
+ * @param commitTimeout  how long a caller waits for its payment to be committed before the request fails
+ */
+@ConfigurationProperties(prefix = "payment.group-commit")
+public record GroupCommitProperties(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue("200") int maxBatchSize,
+        @DefaultValue("5ms") Duration flushInterval,
+        @DefaultValue("10000") int queueCapacity,
+        @DefaultValue("100ms") Duration offerTimeout,
+        @DefaultValue("10s") Duration commitTimeout
+) {
+}
@@ -0,0 +1,21 @@
+package com.payments.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings for the idempotency key store.
+ *
+ * @param cacheMaximumSize  number of keys kept in the in-memory tier
+ * @param cacheExpiry       how long a key stays in the in-memory tier after it was written
+ * @param retention         how long a key is kept in the persisted tier
+ */
+@ConfigurationProperties(prefix = "payment.idempotency")
+public record IdempotencyProperties(
+        @DefaultValue("10000") long cacheMaximumSize,
+        @DefaultValue("10m") Duration cacheExpiry,
+        @DefaultValue("24h") Duration retention
+) {
+}
@@ -0,0 +1,27 @@
+package com.payments.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Settings for bulk ingestion of payment files.
+ *
+ * @param directory    directory holding uploaded files while they are ingested, and the error files of finished jobs
+ * @param maxFileSize  largest file accepted, files are memory-mapped in one piece so this must stay below 2GB
+ * @param chunkSize    approximate number of bytes parsed and stored by one task
+ * @param parallelism  number of threads parsing and storing chunks, each holds a database connection while storing
+ * @param jobRetention how long a finished job and its error file are kept
+ */
+@ConfigurationProperties(prefix = "payment.ingestion")
+public record IngestionProperties(
+        @DefaultValue("data/payment-ingestion") Path directory,
+        @DefaultValue("1GB") DataSize maxFileSize,
+        @DefaultValue("1MB") DataSize chunkSize,
+        @DefaultValue("4") int parallelism,
+        @DefaultValue("24h") Duration jobRetention
+) {
+}
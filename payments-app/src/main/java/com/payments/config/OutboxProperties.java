@@ -0,0 +1,26 @@
+package com.payments.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.nio.file.Path;
+
+/**
+ * Settings for the payment event outbox and its relay.
+ *
+ * @param enabled        write payment events to the outbox and relay them to the sink
+ * @param batchSize      maximum number of events claimed and published per relay transaction
+ * @param sink           where events are published, {@code file} or {@code memory}; the memory sink loses every
+ *                       event on restart and is meant for tests
+ * @param memoryCapacity number of most recent events kept by the in-memory sink
+ * @param file           file the file sink appends events to, one JSON document per line
+ */
+@ConfigurationProperties(prefix = "payment.outbox")
+public record OutboxProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("500") int batchSize,
+        @DefaultValue("file") String sink,
+        @DefaultValue("10000") int memoryCapacity,
+        @DefaultValue("data/payment-events.ndjson") Path file
+) {
+}
@@ -0,0 +1,15 @@
+package com.payments.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Settings for the in-process cache of stored parties.
+ *
+ * @param maximumSize  number of parties kept in memory, keyed by content hash
+ */
+@ConfigurationProperties(prefix = "payment.party-cache")
+public record PartyCacheProperties(
+        @DefaultValue("100000") long maximumSize
+) {
+}
@@ -0,0 +1,15 @@
+package com.payments.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Settings for bulk payment creation.
+ *
+ * @param chunkSize number of batch items persisted per transaction
+ */
+@ConfigurationProperties(prefix = "payment.batch")
+public record PaymentBatchProperties(
+        @DefaultValue("500") int chunkSize
+) {
+}
@@ -0,0 +1,21 @@
+package com.payments.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings for the payment read cache.
+ *
+ * @param enabled      serve {@code getPaymentById} from the cache
+ * @param maximumSize  number of payments kept in memory
+ * @param ttl          how long a payment stays cached after it was loaded
+ */
+@ConfigurationProperties(prefix = "payment.cache")
+public record PaymentCacheProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("10000") long maximumSize,
+        @DefaultValue("30s") Duration ttl
+) {
+}
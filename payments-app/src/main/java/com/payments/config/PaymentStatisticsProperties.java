@@ -0,0 +1,17 @@
+package com.payments.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Settings for the in-process payment statistics.
+ *
+ * @param enabled           keep live totals, disabled the endpoint reports nothing
+ * @param retentionMinutes  number of most recent minute buckets kept in memory
+ */
+@ConfigurationProperties(prefix = "payment.statistics")
+public record PaymentStatisticsProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("1440") int retentionMinutes
+) {
+}
@@ -0,0 +1,19 @@
+package com.payments.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings for the database latency metrics recorded per repository method.
+ *
+ * @param enabled            record connection acquire and statement times and rows read
+ * @param slowQueryThreshold statements running at least this long are logged with their SQL, zero disables the log
+ */
+@ConfigurationProperties(prefix = "payment.query-metrics")
+public record QueryMetricsProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("500ms") Duration slowQueryThreshold
+) {
+}
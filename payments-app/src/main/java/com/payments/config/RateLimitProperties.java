@@ -0,0 +1,41 @@
+package com.payments.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.util.Map;
+
+/**
+ * Settings for rate limiting payment creation per authenticated principal and per debtor account.
+ *
+ * @param enabled  limit payment creation
+ * @param maxKeys  maximum number of principals and of debtor accounts tracked, rarely and least recently seen
+ *                 ones are forgotten first and start again with a full burst
+ * @param defaults limits of principals without a configured role
+ * @param roles    limits per role, a principal with several configured roles gets the most generous ones
+ */
+@ConfigurationProperties(prefix = "payment.rate-limit")
+public record RateLimitProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("100000") int maxKeys,
+        @DefaultValue Limits defaults,
+        Map<String, Limits> roles
+) {
+
+    public RateLimitProperties {
+        roles = roles == null ? Map.of() : Map.copyOf(roles);
+    }
+
+    /**
+     * Both limits are token buckets, a rate of requests per second sustained and a burst allowed at once after a
+     * quiet period. The principal limit counts the payments one principal creates, the debtor limit the payments
+     * debiting one account, whoever creates them.
+     */
+    public record Limits(
+            @DefaultValue("50") double principalRate,
+            @DefaultValue("100") int principalBurst,
+            @DefaultValue("10") double debtorRate,
+            @DefaultValue("20") int debtorBurst
+    ) {
+    }
+}
@@ -0,0 +1,52 @@
+package com.payments.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Settings for sending read-only transactions to read replicas. The replicas of {@code spring.datasource} are
+ * listed here, those of the payment shards with each shard in {@link ShardingProperties}.
+ *
+ * @param enabled             route read-only transactions to replicas
+ * @param replicas            replicas of {@code spring.datasource}, unused when sharding is enabled
+ * @param maxLag              replication lag above which a replica is skipped until it catches up
+ * @param heartbeatInterval   how often the heartbeat the lag is measured with is written to the primary
+ * @param healthCheckInterval how often every replica is checked
+ * @param failureThreshold    consecutive failed checks or connection attempts after which a replica is ejected,
+ *                            one successful check brings it back
+ * @param readYourWrites      how long a client's reads stay on the primary after it wrote, zero to disable
+ * @param maxPinnedClients    maximum number of clients tracked for read-your-writes, the oldest are dropped first
+ */
+@ConfigurationProperties(prefix = "payment.replicas")
+public record ReplicaProperties(
+        @DefaultValue("false") boolean enabled,
+        List<Replica> replicas,
+        @DefaultValue("5s") Duration maxLag,
+        @DefaultValue("1s") Duration heartbeatInterval,
+        @DefaultValue("2s") Duration healthCheckInterval,
+        @DefaultValue("3") int failureThreshold,
+        @DefaultValue("5s") Duration readYourWrites,
+        @DefaultValue("100000") int maxPinnedClients
+) {
+
+    public ReplicaProperties {
+        replicas = replicas == null ? List.of() : List.copyOf(replicas);
+    }
+
+    /**
+     * @param url             JDBC url of the replica
+     * @param username        database user
+     * @param password        database password
+     * @param maximumPoolSize connections pooled for the replica
+     */
+    public record Replica(
+            String url,
+            String username,
+            String password,
+            @DefaultValue("10") int maximumPoolSize
+    ) {
+    }
+}
@@ -2,9 +2,17 @@ package com.payments.config;
 
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @Configuration
-@EnableConfigurationProperties({ExternalLoggingProperties.class})
+@EnableScheduling
+@EnableConfigurationProperties({ExternalLoggingProperties.class, PaymentBatchProperties.class,
+        IdempotencyProperties.class, GroupCommitProperties.class, PaymentCacheProperties.class,
+        AsyncAcceptProperties.class, OutboxProperties.class, PartyCacheProperties.class,
+        PaymentStatisticsProperties.class, ArchiveProperties.class, IngestionProperties.class,
+        DuplicateDetectionProperties.class, RateLimitProperties.class, ShardingProperties.class,
+        ReplicaProperties.class, QueryMetricsProperties.class, SqlBudgetProperties.class,
+        UserCacheProperties.class})
 public class ServiceContext {
 
 }
@@ -0,0 +1,50 @@
+package com.payments.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Settings for spreading payments over several databases. When disabled everything is stored in the single
+ * {@code spring.datasource}, when enabled that datasource is replaced by the listed shards and shard 0 also
+ * holds the tables that are not sharded, such as users.
+ *
+ * @param enabled               route payments to the listed shards
+ * @param shards                connection settings of every shard, the position in the list is the shard number
+ * @param migrationChunkSize    rows copied per transaction when slots are moved between shards
+ * @param migrationDrainTimeout how long a slot move waits for in-flight writes to the slots to finish
+ */
+@ConfigurationProperties(prefix = "payment.sharding")
+public record ShardingProperties(
+        @DefaultValue("false") boolean enabled,
+        List<Shard> shards,
+        @DefaultValue("500") int migrationChunkSize,
+        @DefaultValue("30s") Duration migrationDrainTimeout
+) {
+
+    public ShardingProperties {
+        shards = shards == null ? List.of() : List.copyOf(shards);
+    }
+
+    /**
+     * @param url             JDBC url of the shard
+     * @param username        database user
+     * @param password        database password
+     * @param maximumPoolSize connections pooled for the shard
+     * @param replicas        read replicas of the shard, used when {@code payment.replicas.enabled} is set
+     */
+    public record Shard(
+            String url,
+            String username,
+            String password,
+            @DefaultValue("10") int maximumPoolSize,
+            List<ReplicaProperties.Replica> replicas
+    ) {
+
+        public Shard {
+            replicas = replicas == null ? List.of() : List.copyOf(replicas);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.payments.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.util.Map;
+
+/**
+ * Settings for the SQL statements allowed per HTTP request. Statements are counted by the datasources
+ * instrumented for {@link QueryMetricsProperties}, with those metrics disabled nothing is counted.
+ *
+ * @param enabled          count the statements of every request
+ * @param defaultBudget    statements a request may execute unless its endpoint has its own budget
+ * @param endpoints        budgets per endpoint, keyed by HTTP method and path pattern in brackets, e.g.
+ *                         {@code "[GET /users/{id}]": 2}
+ * @param repeatThreshold  executions of the same SQL shape in one request from which it is reported as a likely
+ *                         N+1 query
+ */
+@ConfigurationProperties(prefix = "payment.sql-budget")
+public record SqlBudgetProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("50") int defaultBudget,
+        Map<String, Integer> endpoints,
+        @DefaultValue("10") int repeatThreshold
+) {
+
+    public SqlBudgetProperties {
+        endpoints = endpoints == null ? Map.of() : Map.copyOf(endpoints);
+    }
+}
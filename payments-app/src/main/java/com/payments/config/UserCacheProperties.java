@@ -0,0 +1,21 @@
+package com.payments.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings for the Hibernate second-level cache of users, their roles and the username lookup.
+ *
+ * @param enabled      serve user lookups, e.g. on login, from the second-level and query cache
+ * @param maximumSize  number of users, role sets and cached lookups each kept in memory
+ * @param ttl          how long a cached entry is kept, bounds how long a change made outside the service goes unseen
+ */
+@ConfigurationProperties(prefix = "payment.user-cache")
+public record UserCacheProperties(
+        @DefaultValue("true") boolean enabled,
+        @DefaultValue("10000") long maximumSize,
+        @DefaultValue("10m") Duration ttl
+) {
+}
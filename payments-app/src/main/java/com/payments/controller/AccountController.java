@@ -0,0 +1,29 @@
+package com.payments.controller;
+
+import com.payments.api.AccountsApi;
+import com.payments.model.AccountBalance;
+import com.payments.model.AccountStatement;
+import com.payments.service.LedgerService;
+import lombok.AllArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@Validated
+@RequestMapping
+@AllArgsConstructor
+public class AccountController implements AccountsApi {
+    private final LedgerService ledgerService;
+
+    @Override
+    public ResponseEntity<AccountBalance> getAccountBalance(String accountNumber) {
+        return ResponseEntity.ok(ledgerService.getAccountBalance(accountNumber));
+    }
+
+    @Override
+    public ResponseEntity<AccountStatement> getAccountStatement(String accountNumber, Integer limit, String cursor) {
+        return ResponseEntity.ok(ledgerService.getAccountStatement(accountNumber, cursor, limit));
+    }
+}
@@ -2,21 +2,41 @@ package com.payments.controller;
 
 
 import com.payments.api.PaymentsApi;
+import com.payments.dto.PaymentSearchFilter;
+import com.payments.duplicate.DuplicatePaymentDetector;
 import com.payments.exception.PaymentNotFoundException;
 import com.payments.hateos.PaymentHateosBuilder;
+import com.payments.model.BatchPaymentRequest;
+import com.payments.model.BatchPaymentResponse;
+import com.payments.model.BulkStatusTransitionRequest;
+import com.payments.model.BulkStatusTransitionResponse;
 import com.payments.model.Payment;
+import com.payments.model.PaymentPage;
 import com.payments.model.PaymentRequest;
+import com.payments.model.PaymentStatus;
+import com.payments.model.PaymentStatusUpdate;
+import com.payments.ratelimit.PaymentRateLimiter;
+import com.payments.service.IdempotencyService;
+import com.payments.service.PaymentIntakeService;
 import com.payments.service.PaymentService;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
 import lombok.AllArgsConstructor;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.net.URI;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.function.Supplier;
 
 @RestController
 @Validated
@@ -25,20 +45,134 @@ import java.net.URI;
 public class PaymentController implements PaymentsApi {
     private final PaymentService paymentService;
     private final PaymentHateosBuilder paymentHateosBuilder;
+    private final IdempotencyService idempotencyService;
+    private final PaymentIntakeService paymentIntakeService;
+    private final DuplicatePaymentDetector duplicatePaymentDetector;
+    private final PaymentRateLimiter paymentRateLimiter;
 
     @Override
-    public ResponseEntity<Payment> getPaymentById(@PathVariable String paymentId) {
-        Payment payment = paymentService.getPaymentById(paymentId)
+    public ResponseEntity<Payment> getPaymentById(@PathVariable String paymentId,
+                                                  @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
+        if (ifNoneMatch != null) {
+            // freshness check reads only the modification time, the payment is not loaded or serialized
+            String currentETag = paymentIntakeService.findAccepted(paymentId)
+                    .map(this::lastModifiedOf)
+                    .or(() -> paymentService.getPaymentLastModified(paymentId))
+                    .map(this::eTagOf)
+                    .orElseThrow(() -> new PaymentNotFoundException(paymentId));
+            if (matchesAny(ifNoneMatch, currentETag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(currentETag).build();
+            }
+        }
+        // accepted payments are looked up first, they leave the intake only once they are stored
+        Payment payment = paymentIntakeService.findAccepted(paymentId)
+                .or(() -> paymentService.getPaymentById(paymentId))
                 .orElseThrow(() -> new PaymentNotFoundException(paymentId));
-        return ResponseEntity.ok(paymentHateosBuilder.addLinks(payment));
+        return ResponseEntity.ok()
+                .eTag(eTagOf(lastModifiedOf(payment)))
+                .body(paymentHateosBuilder.addLinks(payment));
     }
 
     @Override
-    public ResponseEntity<Payment> makePayment(@Valid @RequestBody PaymentRequest paymentRequest) {
-        Payment res = paymentService.makePayment(paymentRequest);
+    public ResponseEntity<PaymentPage> searchPayments(PaymentStatus status, String currency,
+                                                      String debtorAccountNumber, String creditorAccountNumber,
+                                                      LocalDateTime createdFrom, LocalDateTime createdTo,
+                                                      Integer limit, String cursor) {
+        PaymentSearchFilter filter = new PaymentSearchFilter(status, currency, debtorAccountNumber,
+                creditorAccountNumber, createdFrom, createdTo);
+        PaymentPage page = paymentService.searchPayments(filter, cursor, limit);
+        page.getItems().forEach(paymentHateosBuilder::addLinks);
+        return ResponseEntity.ok(page);
+    }
+
+    @Override
+    public ResponseEntity<Payment> makePayment(@Valid @RequestBody PaymentRequest paymentRequest,
+                                               @Size(min = 1, max = 255) @RequestHeader(value = "idempotencyKey", required = false) String idempotencyKey,
+                                               @RequestHeader(value = "Prefer", required = false) String prefer) {
+        paymentRateLimiter.acquire(paymentRequest);
+        boolean async = paymentIntakeService.isEnabled() && prefersAsync(prefer);
+        Supplier<Payment> action = async
+                ? () -> paymentIntakeService.accept(paymentRequest)
+                : () -> paymentService.makePayment(paymentRequest);
+        // a request with an idempotency key is a deliberate submission, only keyless ones are checked for duplicates
+        Payment res;
+        String duplicateOf = null;
+        if (idempotencyKey == null) {
+            DuplicatePaymentDetector.Result result = duplicatePaymentDetector.execute(paymentRequest, action);
+            res = result.payment();
+            duplicateOf = result.duplicateOf();
+        } else {
+            res = idempotencyService.execute(idempotencyKey, paymentRequest, action);
+        }
         Payment paymentWithLinks = paymentHateosBuilder.addLinks(res);
         URI location = paymentHateosBuilder.buildLocationUri(res.getPaymentId());
-        return ResponseEntity.created(location).body(paymentWithLinks);
+        ResponseEntity.BodyBuilder response = async
+                ? ResponseEntity.accepted().header("Preference-Applied", "respond-async")
+                : ResponseEntity.created(location);
+        if (duplicateOf != null) {
+            response.header("Possible-Duplicate-Of", duplicateOf);
+        }
+        return response.location(location).body(paymentWithLinks);
     }
-}
 
+    @Override
+    public ResponseEntity<BatchPaymentResponse> makePayments(@Valid @RequestBody BatchPaymentRequest batchPaymentRequest) {
+        paymentRateLimiter.acquire(batchPaymentRequest.getPayments());
+        BatchPaymentResponse res = paymentService.makePayments(batchPaymentRequest.getPayments());
+        res.getResults().forEach(result -> paymentHateosBuilder.addLinks(result.getPayment()));
+        return ResponseEntity.ok(res);
+    }
+
+    @Override
+    public ResponseEntity<Payment> updatePaymentStatus(@NotNull @PathVariable String paymentId,
+                                                       @Valid @RequestBody PaymentStatusUpdate paymentStatusUpdate) {
+        Payment res = paymentService.updatePaymentStatus(paymentId, paymentStatusUpdate.getStatus(),
+                paymentStatusUpdate.getVersion());
+        return ResponseEntity.ok()
+                .eTag(eTagOf(lastModifiedOf(res)))
+                .body(paymentHateosBuilder.addLinks(res));
+    }
+
+    @Override
+    public ResponseEntity<BulkStatusTransitionResponse> transitionPayments(
+            @Valid @RequestBody BulkStatusTransitionRequest bulkStatusTransitionRequest) {
+        BulkStatusTransitionResponse res = paymentService.transitionPayments(bulkStatusTransitionRequest.getPaymentIds(),
+                bulkStatusTransitionRequest.getStatus(), bulkStatusTransitionRequest.getExpectedStatus());
+        return ResponseEntity.ok(res);
+    }
+
+    private LocalDateTime lastModifiedOf(Payment payment) {
+        return payment.getUpdatedAt() != null ? payment.getUpdatedAt() : payment.getCreatedAt();
+    }
+
+    private String eTagOf(LocalDateTime lastModified) {
+        long micros = ChronoUnit.MICROS.between(LocalDateTime.ofEpochSecond(0, 0, ZoneOffset.UTC), lastModified);
+        return "\"" + Long.toHexString(micros) + "\"";
+    }
+
+    private boolean matchesAny(String ifNoneMatch, String eTag) {
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            // If-None-Match uses the weak comparison, a W/ prefix does not prevent a match
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if (value.equals("*") || value.equals(eTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean prefersAsync(String prefer) {
+        if (prefer == null) {
+            return false;
+        }
+        for (String preference : prefer.split("[,;]")) {
+            if (preference.trim().equalsIgnoreCase("respond-async")) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,45 @@
+package com.payments.controller;
+
+import com.payments.dto.PaymentExportFormat;
+import com.payments.service.PaymentExportService;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.LocalDateTime;
+
+/**
+ * Bulk export of payments for reconciliation. Kept out of the OpenAPI contract because the generated
+ * interfaces cannot return a streaming body.
+ */
+@Slf4j
+@RestController
+@Validated
+@RequestMapping("/payments/export")
+@AllArgsConstructor
+public class PaymentExportController {
+
+    private final PaymentExportService paymentExportService;
+
+    @GetMapping
+    public ResponseEntity<StreamingResponseBody> exportPayments(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime createdFrom,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime createdTo,
+            @RequestParam(defaultValue = "NDJSON") PaymentExportFormat format) {
+        String fileName = "payments-" + createdFrom.toLocalDate() + "." + format.fileExtension();
+        StreamingResponseBody body = out -> paymentExportService.exportPayments(createdFrom, createdTo, format, out);
+        return ResponseEntity.ok()
+                .contentType(format.mediaType())
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(fileName).build().toString())
+                .body(body);
+    }
+}
@@ -0,0 +1,71 @@
+package com.payments.controller;
+
+import com.payments.dto.IngestionJobStatus;
+import com.payments.exception.IngestionJobNotFoundException;
+import com.payments.service.PaymentFileIngestionService;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+
+/**
+ * Bulk ingestion of payment files in CSV or pain.001 format. Kept out of the OpenAPI contract because the
+ * generated interfaces would buffer the uploaded file in memory instead of streaming it to disk.
+ */
+@Slf4j
+@RestController
+@RequestMapping("/payments/files")
+@AllArgsConstructor
+public class PaymentFileController {
+
+    private static final MediaType TEXT_CSV = new MediaType("text", "csv");
+
+    private final PaymentFileIngestionService paymentFileIngestionService;
+
+    @PostMapping(consumes = {"text/csv", MediaType.TEXT_PLAIN_VALUE, MediaType.APPLICATION_XML_VALUE,
+            MediaType.TEXT_XML_VALUE, MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    public ResponseEntity<IngestionJobStatus> submitPaymentFile(
+            @RequestHeader(value = HttpHeaders.CONTENT_DISPOSITION, required = false) String contentDisposition,
+            InputStream content) throws IOException {
+        String fileName = contentDisposition == null ? null : ContentDisposition.parse(contentDisposition).getFilename();
+        IngestionJobStatus job = paymentFileIngestionService.submit(fileName, content);
+        URI location = ServletUriComponentsBuilder.fromCurrentRequestUri()
+                .path("/{jobId}")
+                .buildAndExpand(job.jobId())
+                .toUri();
+        return ResponseEntity.accepted().location(location).body(job);
+    }
+
+    @GetMapping("/{jobId}")
+    public ResponseEntity<IngestionJobStatus> getPaymentFileJob(@PathVariable String jobId) {
+        return ResponseEntity.ok(paymentFileIngestionService.getJob(jobId)
+                .orElseThrow(() -> new IngestionJobNotFoundException(jobId)));
+    }
+
+    @GetMapping("/{jobId}/errors")
+    public ResponseEntity<Resource> getPaymentFileErrors(@PathVariable String jobId) {
+        Resource errors = paymentFileIngestionService.getErrorFile(jobId)
+                .map(FileSystemResource::new)
+                .orElseThrow(() -> new IngestionJobNotFoundException(jobId));
+        return ResponseEntity.ok()
+                .contentType(TEXT_CSV)
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename(jobId + "-errors.csv").build().toString())
+                .body(errors);
+    }
+}
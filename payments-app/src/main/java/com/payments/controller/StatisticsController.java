@@ -0,0 +1,23 @@
+package com.payments.controller;
+
+import com.payments.api.StatisticsApi;
+import com.payments.model.PaymentStatistics;
+import com.payments.service.PaymentStatisticsService;
+import lombok.AllArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@Validated
+@RequestMapping
+@AllArgsConstructor
+public class StatisticsController implements StatisticsApi {
+    private final PaymentStatisticsService paymentStatisticsService;
+
+    @Override
+    public ResponseEntity<PaymentStatistics> getPaymentStatistics(Integer minutes) {
+        return ResponseEntity.ok(paymentStatisticsService.getStatistics(minutes));
+    }
+}
@@ -0,0 +1,8 @@
+package com.payments.dto;
+
+public enum IngestionJobState {
+    QUEUED,
+    RUNNING,
+    COMPLETED,
+    FAILED
+}
@@ -0,0 +1,26 @@
+package com.payments.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Progress of a payment file ingestion. {@code records} counts the payment instructions read so far, each of them
+ * ends up either {@code stored} or {@code failed}.
+ */
+public record IngestionJobStatus(
+        String jobId,
+        String fileName,
+        IngestionJobState state,
+        PaymentFileFormat format,
+        LocalDateTime submittedAt,
+        LocalDateTime startedAt,
+        LocalDateTime completedAt,
+        long sizeBytes,
+        long processedBytes,
+        int percentComplete,
+        long records,
+        long stored,
+        long failed,
+        long recordsPerSecond,
+        String error
+) {
+}
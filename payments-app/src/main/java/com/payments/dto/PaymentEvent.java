@@ -0,0 +1,28 @@
+package com.payments.dto;
+
+import com.payments.model.Payment;
+import com.payments.model.PaymentStatus;
+
+import java.time.LocalDateTime;
+
+/**
+ * Payment event as published by the outbox relay.
+ *
+ * @param eventId        outbox sequence number, increasing in commit order within one relay batch
+ * @param type           kind of event
+ * @param paymentId      payment the event is about
+ * @param status         status of the payment after the event
+ * @param previousStatus status before a single status change, null for bulk transitions and creation
+ * @param occurredAt     time the change was written
+ * @param payment        full payment for {@link PaymentEventType#PAYMENT_CREATED}, null otherwise
+ */
+public record PaymentEvent(
+        long eventId,
+        PaymentEventType type,
+        String paymentId,
+        PaymentStatus status,
+        PaymentStatus previousStatus,
+        LocalDateTime occurredAt,
+        Payment payment
+) {
+}
@@ -0,0 +1,6 @@
+package com.payments.dto;
+
+public enum PaymentEventType {
+    PAYMENT_CREATED,
+    PAYMENT_STATUS_CHANGED
+}
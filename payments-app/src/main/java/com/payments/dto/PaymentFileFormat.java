@@ -0,0 +1,6 @@
+package com.payments.dto;
+
+public enum PaymentFileFormat {
+    CSV,
+    PAIN_001
+}
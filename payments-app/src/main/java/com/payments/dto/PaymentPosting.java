@@ -0,0 +1,15 @@
+package com.payments.dto;
+
+import java.util.UUID;
+
+/**
+ * Columns of a payment the ledger needs to post it.
+ */
+public record PaymentPosting(
+        UUID paymentId,
+        long amountMinor,
+        String currency,
+        String debtorAccountNumber,
+        String creditorAccountNumber
+) {
+}
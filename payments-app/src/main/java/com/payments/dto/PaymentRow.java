@@ -0,0 +1,35 @@
+package com.payments.dto;
+
+import com.payments.model.PaymentMethod;
+import com.payments.model.PaymentStatus;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Flat read projection of a payment and its parties, selected with a constructor expression so that lookups
+ * do not hydrate managed entities. Party columns are null when the payment has no such party.
+ */
+public record PaymentRow(
+        UUID paymentId,
+        long amountMinor,
+        String currency,
+        PaymentStatus status,
+        PaymentMethod paymentMethod,
+        LocalDateTime createdAt,
+        LocalDateTime updatedAt,
+        Long version,
+        String debtorName,
+        String debtorAccountNumber,
+        String debtorBankCode,
+        String debtorAddress,
+        String debtorEmail,
+        String debtorPhoneNumber,
+        String creditorName,
+        String creditorAccountNumber,
+        String creditorBankCode,
+        String creditorAddress,
+        String creditorEmail,
+        String creditorPhoneNumber
+) {
+}
@@ -0,0 +1,21 @@
+package com.payments.dto;
+
+import com.payments.model.PaymentStatus;
+
+import java.time.LocalDateTime;
+
+/**
+ * Filters of a payment search, every {@code null} filter matches all payments.
+ *
+ * @param createdFrom inclusive lower bound of {@code createdAt}
+ * @param createdTo   exclusive upper bound of {@code createdAt}
+ */
+public record PaymentSearchFilter(
+        PaymentStatus status,
+        String currency,
+        String debtorAccountNumber,
+        String creditorAccountNumber,
+        LocalDateTime createdFrom,
+        LocalDateTime createdTo
+) {
+}
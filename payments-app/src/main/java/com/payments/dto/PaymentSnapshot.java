@@ -0,0 +1,24 @@
+package com.payments.dto;
+
+import com.payments.model.PaymentMethod;
+import com.payments.model.PaymentStatus;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Status and statistics dimensions of a payment moved by a set-based status change.
+ */
+public record PaymentSnapshot(
+        UUID paymentId,
+        PaymentStatus status,
+        String currency,
+        PaymentMethod paymentMethod,
+        long amountMinor,
+        LocalDateTime createdAt
+) {
+
+    public PaymentSnapshot withStatus(PaymentStatus status) {
+        return new PaymentSnapshot(paymentId, status, currency, paymentMethod, amountMinor, createdAt);
+    }
+}
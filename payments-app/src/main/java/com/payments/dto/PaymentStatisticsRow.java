@@ -0,0 +1,25 @@
+package com.payments.dto;
+
+import com.payments.model.PaymentMethod;
+import com.payments.model.PaymentStatus;
+
+import java.time.LocalDateTime;
+
+/**
+ * Aggregate of the payments sharing a currency, status and payment method, optionally within one minute of
+ * creation. Used to rebuild the in-process statistics, the amount is the sum in minor units.
+ */
+public record PaymentStatisticsRow(
+        LocalDateTime minute,
+        String currency,
+        PaymentStatus status,
+        PaymentMethod paymentMethod,
+        Long count,
+        Long amountMinor
+) {
+
+    public PaymentStatisticsRow(String currency, PaymentStatus status, PaymentMethod paymentMethod, Long count,
+                                Long amountMinor) {
+        this(null, currency, status, paymentMethod, count, amountMinor);
+    }
+}
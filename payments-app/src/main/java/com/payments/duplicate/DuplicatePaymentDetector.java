@@ -0,0 +1,179 @@
+package com.payments.duplicate;
+
+import com.payments.config.DuplicateDetectionProperties;
+import com.payments.exception.DuplicatePaymentException;
+import com.payments.model.Party;
+import com.payments.model.Payment;
+import com.payments.model.PaymentRequest;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+/**
+ * Catches payments submitted twice within a short window without an idempotency key, such as a double click.
+ * A request is fingerprinted by debtor and creditor account, amount and currency. The fingerprints of recent
+ * payments are kept in a ring of time buckets, each a Bloom filter in front of a map from fingerprint to payment
+ * id, so a check costs a fixed number of bit tests, plus a map lookup on a likely hit, and never queries the
+ * database. A bucket is replaced once it falls out of the window, memory is bounded by {@code maxEntries}.
+ */
+@Slf4j
+@Component
+public class DuplicatePaymentDetector {
+
+    // placeholder id of a payment that is still being stored
+    private static final String PENDING = "pending";
+
+    private final DuplicateDetectionProperties properties;
+    private final AtomicReferenceArray<Bucket> buckets;
+    private final long bucketMillis;
+    private final int bucketCapacity;
+    private final Counter detected;
+    private final Counter untracked;
+
+    public DuplicatePaymentDetector(DuplicateDetectionProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        int bucketCount = Math.max(1, properties.buckets());
+        this.buckets = new AtomicReferenceArray<>(bucketCount);
+        this.bucketMillis = Math.max(1, properties.window().toMillis() / bucketCount);
+        this.bucketCapacity = Math.max(1, properties.maxEntries() / bucketCount);
+        this.detected = Counter.builder("payment.duplicates.detected")
+                .description("Payment requests that match a recent payment")
+                .tag("action", properties.action().name().toLowerCase())
+                .register(meterRegistry);
+        this.untracked = Counter.builder("payment.duplicates.untracked")
+                .description("Payments not remembered for duplicate detection because the window was full")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Create a payment unless it duplicates a recent one. A first payment is remembered once the action returns,
+     * a likely duplicate is either rejected or created and reported with the payment it duplicates.
+     *
+     * @param request Payment request
+     * @param action  Creates the payment
+     * @return The created payment, and the id of the payment it likely duplicates or null
+     * @throws DuplicatePaymentException if the request is a likely duplicate and duplicates are rejected
+     */
+    public Result execute(PaymentRequest request, Supplier<Payment> action) {
+        return execute(request, action, System.currentTimeMillis());
+    }
+
+    /**
+     * @param now {@link System#currentTimeMillis()}
+     */
+    Result execute(PaymentRequest request, Supplier<Payment> action, long now) {
+        if (!properties.enabled()) {
+            return new Result(action.get(), null);
+        }
+        long fingerprint = fingerprint(request);
+        long current = now / bucketMillis;
+        String duplicateOf = find(fingerprint, current);
+        if (duplicateOf != null) {
+            return duplicate(duplicateOf, action);
+        }
+
+        Bucket bucket = bucketOf(current);
+        if (bucket.payments().size() >= bucketCapacity) {
+            untracked.increment();
+            return new Result(action.get(), null);
+        }
+        bucket.bloomFilter().put(fingerprint);
+        duplicateOf = bucket.payments().putIfAbsent(fingerprint, PENDING);
+        if (duplicateOf != null) {
+            // an identical request won the race for this bucket
+            return duplicate(duplicateOf, action);
+        }
+        Payment payment;
+        try {
+            payment = action.get();
+        } catch (RuntimeException e) {
+            bucket.payments().remove(fingerprint, PENDING);
+            throw e;
+        }
+        bucket.payments().replace(fingerprint, PENDING, payment.getPaymentId());
+        return new Result(payment, null);
+    }
+
+    private Result duplicate(String duplicateOf, Supplier<Payment> action) {
+        detected.increment();
+        if (properties.action() == DuplicateDetectionProperties.Action.REJECT) {
+            throw new DuplicatePaymentException(PENDING.equals(duplicateOf)
+                    ? "An identical payment is still being processed, send an idempotencyKey to create it anyway"
+                    : "Payment looks like a duplicate of payment " + duplicateOf + " submitted less than "
+                    + properties.window().toSeconds() + "s ago, send an idempotencyKey to create it anyway");
+        }
+        Payment payment = action.get();
+        log.info("Payment {} looks like a duplicate of payment {}", payment.getPaymentId(), duplicateOf);
+        return new Result(payment, duplicateOf);
+    }
+
+    private String find(long fingerprint, long current) {
+        for (int slot = 0; slot < buckets.length(); slot++) {
+            Bucket bucket = buckets.get(slot);
+            if (bucket == null || bucket.index() <= current - buckets.length()) {
+                continue;
+            }
+            if (bucket.bloomFilter().mightContain(fingerprint)) {
+                String paymentId = bucket.payments().get(fingerprint);
+                if (paymentId != null) {
+                    return paymentId;
+                }
+            }
+        }
+        return null;
+    }
+
+    private Bucket bucketOf(long index) {
+        int slot = (int) Math.floorMod(index, buckets.length());
+        while (true) {
+            Bucket bucket = buckets.get(slot);
+            // a slot holding a later bucket only happens on a clock step back, the later bucket is used
+            if (bucket != null && bucket.index() >= index) {
+                return bucket;
+            }
+            Bucket fresh = new Bucket(index, new FingerprintBloomFilter(bucketCapacity), new ConcurrentHashMap<>());
+            if (buckets.compareAndSet(slot, bucket, fresh)) {
+                return fresh;
+            }
+        }
+    }
+
+    private static long fingerprint(PaymentRequest request) {
+        StringBuilder content = new StringBuilder();
+        Party debtor = request.getDebtor();
+        Party creditor = request.getCreditor();
+        String amount = request.getAmount() == null ? null : request.getAmount().stripTrailingZeros().toPlainString();
+        for (String field : new String[]{debtor == null ? null : debtor.getAccountNumber(),
+                debtor == null ? null : debtor.getBankCode(), creditor == null ? null : creditor.getAccountNumber(),
+                creditor == null ? null : creditor.getBankCode(), amount, request.getCurrency()}) {
+            // length prefixed so that no two different requests produce the same content, -1 marks null
+            if (field == null) {
+                content.append("-1:");
+            } else {
+                content.append(field.length()).append(':').append(field);
+            }
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return ByteBuffer.wrap(digest.digest(content.toString().getBytes(StandardCharsets.UTF_8))).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    public record Result(Payment payment, String duplicateOf) {
+    }
+
+    private record Bucket(long index, FingerprintBloomFilter bloomFilter, ConcurrentMap<Long, String> payments) {
+    }
+}
@@ -0,0 +1,49 @@
+package com.payments.duplicate;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed size Bloom filter over 64-bit fingerprints, sized for about 1% false positives at its capacity. The bit
+ * positions are derived from the two halves of the fingerprint, which is already a cryptographic hash. Safe for
+ * concurrent use, a concurrent {@link #put} may or may not be seen by {@link #mightContain}.
+ */
+final class FingerprintBloomFilter {
+
+    private static final int BITS_PER_ENTRY = 10;
+    private static final int HASHES = 7;
+
+    private final AtomicLongArray words;
+    private final long bits;
+
+    FingerprintBloomFilter(int capacity) {
+        int wordCount = Math.max(1, (int) ((long) capacity * BITS_PER_ENTRY / Long.SIZE) + 1);
+        this.words = new AtomicLongArray(wordCount);
+        this.bits = (long) wordCount * Long.SIZE;
+    }
+
+    void put(long fingerprint) {
+        for (int i = 0; i < HASHES; i++) {
+            long bit = bit(fingerprint, i);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            if ((words.get(word) & mask) == 0) {
+                words.getAndUpdate(word, value -> value | mask);
+            }
+        }
+    }
+
+    boolean mightContain(long fingerprint) {
+        for (int i = 0; i < HASHES; i++) {
+            long bit = bit(fingerprint, i);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long bit(long fingerprint, int i) {
+        long combined = (int) fingerprint + (long) i * (int) (fingerprint >>> 32);
+        return Math.floorMod(combined, bits);
+    }
+}
@@ -0,0 +1,64 @@
+package com.payments.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.annotations.Immutable;
+
+import java.time.LocalDateTime;
+
+/**
+ * Running totals of the ledger entries of an account in one currency, kept in step with the entries so that
+ * the net position of an account is a single row read.
+ */
+@Immutable
+@Entity
+@Table(name = "account_balances", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_account_balances_account_currency", columnNames = {"account_number", "currency"})
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class AccountBalanceEntity {
+
+    public static final String SEQUENCE_NAME = "account_balances_seq";
+
+    // rows are only written by LedgerServiceImpl with plain JDBC increments, the insert takes the next sequence
+    // value in the statement itself, so the sequence must not be pooled
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = SEQUENCE_NAME)
+    @SequenceGenerator(name = SEQUENCE_NAME, sequenceName = SEQUENCE_NAME, allocationSize = 1)
+    private Long id;
+
+    @Column(nullable = false, length = 50)
+    private String accountNumber;
+
+    @Column(nullable = false, length = 3)
+    private String currency;
+
+    // total credits minus total debits, all amounts in minor units of the currency
+    @Column(name = "balance_minor", nullable = false)
+    private long balanceMinor;
+
+    @Column(name = "total_debits_minor", nullable = false)
+    private long totalDebitsMinor;
+
+    @Column(name = "total_credits_minor", nullable = false)
+    private long totalCreditsMinor;
+
+    @Column(nullable = false)
+    private long entryCount;
+
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,32 @@
+package com.payments.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * A one-off data migration that completed on this database, so it is not run again on the next startup, see
+ * {@code LegacyPartyBackfill}. Every shard keeps its own rows, written with plain SQL.
+ */
+@Entity
+@Table(name = "data_migrations")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class DataMigrationEntity {
+
+    @Id
+    @Column(length = 100)
+    private String name;
+
+    @Column(name = "completed_at", nullable = false)
+    private LocalDateTime completedAt;
+}
@@ -0,0 +1,76 @@
+package com.payments.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.domain.Persistable;
+import org.springframework.data.jpa.domain.support.AuditingEntityListener;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * Persisted tier of the idempotency store, keeps the response of the first request made with a key. Keys are
+ * chosen by clients, so they are scoped to the principal that sent them: two clients using the same key get
+ * their own payments.
+ */
+@EntityListeners(AuditingEntityListener.class)
+@Entity
+@Table(name = "idempotency_keys")
+@IdClass(IdempotencyKeyEntity.Key.class)
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class IdempotencyKeyEntity implements Persistable<IdempotencyKeyEntity.Key> {
+
+    @Id
+    @Column(length = 255)
+    private String principal;
+
+    @Id
+    @Column(name = "idempotency_key", length = 255)
+    private String idempotencyKey;
+
+    @Column(nullable = false, length = 64)
+    private String requestHash;
+
+    @Column(nullable = false)
+    private String paymentId;
+
+    @Column(nullable = false, length = 8000)
+    private String responseBody;
+
+    @CreatedDate
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    public IdempotencyKeyEntity(Key key, String requestHash, String paymentId, String responseBody) {
+        this(key.principal(), key.idempotencyKey(), requestHash, paymentId, responseBody, null);
+    }
+
+    @Override
+    public Key getId() {
+        return new Key(principal, idempotencyKey);
+    }
+
+    // keys are assigned, so save() must always insert: a duplicate key has to fail instead of merging
+    @Override
+    public boolean isNew() {
+        return createdAt == null;
+    }
+
+    /**
+     * An idempotency key as sent by one principal.
+     */
+    public record Key(String principal, String idempotencyKey) implements Serializable {
+    }
+}
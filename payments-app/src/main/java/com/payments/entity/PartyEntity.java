@@ -0,0 +1,57 @@
+package com.payments.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.annotations.Immutable;
+
+/**
+ * Debtor or creditor details shared by all payments with identical party data. Rows are deduplicated by a
+ * hash of their content and never change, a party with different details is a different row.
+ */
+@Immutable
+@Entity
+@Table(name = "parties")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class PartyEntity {
+
+    public static final String SEQUENCE_NAME = "parties_seq";
+
+    // parties are only inserted by PartyServiceImpl with plain JDBC, which takes the next sequence value in the
+    // statement itself, so the sequence must not be pooled
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = SEQUENCE_NAME)
+    @SequenceGenerator(name = SEQUENCE_NAME, sequenceName = SEQUENCE_NAME, allocationSize = 1)
+    private Long id;
+
+    // SHA-256 of all party columns, hex encoded
+    @Column(nullable = false, unique = true, length = 64)
+    private String contentHash;
+
+    @Column(nullable = false)
+    private String name;
+
+    @Column(nullable = false, length = 50)
+    private String accountNumber;
+
+    @Column(length = 50)
+    private String bankCode;
+
+    @Column(length = 500)
+    private String address;
+
+    private String email;
+
+    private String phoneNumber;
+}
@@ -1,6 +1,7 @@
 package com.payments.entity;
 
 
+import com.payments.cache.PaymentCacheInvalidator;
 import com.payments.model.PaymentMethod;
 import com.payments.model.PaymentStatus;
 import jakarta.persistence.Column;
@@ -8,41 +9,57 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.EntityListeners;
 import jakarta.persistence.EnumType;
 import jakarta.persistence.Enumerated;
+import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
-import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.LastModifiedDate;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.UUID;
 
-@EntityListeners(AuditingEntityListener.class)
+@EntityListeners({AuditingEntityListener.class, PaymentCacheInvalidator.class})
 @Entity
-@Table(name = "payments")
+@Table(name = "payments", indexes = {
+        @Index(name = "idx_payments_created_at_id", columnList = "created_at, id"),
+        @Index(name = "idx_payments_status_created_at_id", columnList = "status, created_at, id"),
+        @Index(name = "idx_payments_currency_created_at_id", columnList = "currency, created_at, id"),
+        @Index(name = "idx_payments_debtor_account_created_at_id", columnList = "debtor_account_number, created_at, id"),
+        @Index(name = "idx_payments_creditor_account_created_at_id", columnList = "creditor_account_number, created_at, id")
+})
 @Getter
 @Setter
 @NoArgsConstructor
 @AllArgsConstructor
 public class PaymentEntity {
+    // Sequence ids (pooled optimizer) let Hibernate batch inserts, IDENTITY would force one round trip per row
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "payments_seq")
+    @SequenceGenerator(name = "payments_seq", sequenceName = "payments_seq", allocationSize = 50)
     private Long id;
 
+    // native uuid column, 16 bytes per key instead of a 36 character string
     @Column(nullable = false, unique = true)
-    private String paymentId;
+    private UUID paymentId;
 
     @Column(nullable = false)
     private String userName;
 
-    @Column(nullable = false, precision = 10, scale = 2)
-    private BigDecimal amount;
+    // minor units of the currency, see Money
+    @Column(name = "amount_minor", nullable = false)
+    private long amountMinor;
 
     @Column(nullable = false, length = 3)
     private String currency;
@@ -55,46 +72,38 @@ public class PaymentEntity {
     @Column(nullable = false)
     private PaymentMethod paymentMethod;
 
-    @Column(name = "debtor_name")
-    private String debtorName;
+    // parties are deduplicated in their own table, the account numbers stay here as search keys
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "debtor_party_id")
+    private PartyEntity debtor;
 
-    @Column(name = "debtor_account_number")
+    @Column(name = "debtor_account_number", length = 50)
     private String debtorAccountNumber;
 
-    @Column(name = "debtor_bank_code")
-    private String debtorBankCode;
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "creditor_party_id")
+    private PartyEntity creditor;
 
-    @Column(name = "debtor_address", length = 500)
-    private String debtorAddress;
-
-    @Column(name = "debtor_email")
-    private String debtorEmail;
-
-    @Column(name = "debtor_phone_number")
-    private String debtorPhoneNumber;
-
-    @Column(name = "creditor_name")
-    private String creditorName;
-
-    @Column(name = "creditor_account_number")
+    @Column(name = "creditor_account_number", length = 50)
     private String creditorAccountNumber;
 
-    @Column(name = "creditor_bank_code")
-    private String creditorBankCode;
-
-    @Column(name = "creditor_address", length = 500)
-    private String creditorAddress;
-
-    @Column(name = "creditor_email")
-    private String creditorEmail;
-
-    @Column(name = "creditor_phone_number")
-    private String creditorPhoneNumber;
-
-    @CreatedDate
+    // not audited, a payment accepted asynchronously is created when it was accepted rather than when it is stored
     @Column(nullable = false, updatable = false)
     private LocalDateTime createdAt;
 
     @LastModifiedDate
     private LocalDateTime updatedAt;
+
+    // optimistic lock, concurrent status changes fail on the stale version instead of holding row locks
+    @Version
+    @Column(nullable = false)
+    private Long version;
+
+    // runs after auditing, which sets updatedAt on creation as well
+    @PrePersist
+    void prePersist() {
+        if (createdAt == null) {
+            createdAt = updatedAt != null ? updatedAt : LocalDateTime.now();
+        }
+    }
 }
\ No newline at end of file
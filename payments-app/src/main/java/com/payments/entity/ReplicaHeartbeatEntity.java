@@ -0,0 +1,29 @@
+package com.payments.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Heartbeat written to the primary database and read back from its replicas to measure their replication lag,
+ * see {@code ReplicaSet}. The table holds a single row, written with plain JDBC.
+ */
+@Entity
+@Table(name = "replica_heartbeat")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReplicaHeartbeatEntity {
+
+    @Id
+    private Integer id;
+
+    @Column(name = "beat_millis", nullable = false)
+    private long beatMillis;
+}
@@ -0,0 +1,28 @@
+package com.payments.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Owner of one payment slot, see {@code PaymentShards}. Only the copy on shard 0 is used.
+ */
+@Entity
+@Table(name = "shard_slots")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class ShardSlotEntity {
+
+    @Id
+    private Integer slot;
+
+    @Column(nullable = false)
+    private int shard;
+}
@@ -0,0 +1,8 @@
+package com.payments.exception;
+
+public class DuplicatePaymentException extends RuntimeException {
+
+    public DuplicatePaymentException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,8 @@
+package com.payments.exception;
+
+public class IdempotencyKeyConflictException extends RuntimeException {
+
+    public IdempotencyKeyConflictException(String idempotencyKey) {
+        super("Idempotency key already used with a different request: " + idempotencyKey);
+    }
+}
@@ -0,0 +1,8 @@
+package com.payments.exception;
+
+public class IngestionJobNotFoundException extends RuntimeException {
+
+    public IngestionJobNotFoundException(String jobId) {
+        super("Ingestion job not found with id: " + jobId);
+    }
+}
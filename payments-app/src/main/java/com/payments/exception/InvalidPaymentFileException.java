@@ -0,0 +1,12 @@
+package com.payments.exception;
+
+public class InvalidPaymentFileException extends RuntimeException {
+
+    public InvalidPaymentFileException(String message) {
+        super(message);
+    }
+
+    public InvalidPaymentFileException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,14 @@
+package com.payments.exception;
+
+import com.payments.model.PaymentStatus;
+
+public class InvalidStatusTransitionException extends RuntimeException {
+
+    public InvalidStatusTransitionException(PaymentStatus from, PaymentStatus to) {
+        super("Payment status cannot change from " + from + " to " + to);
+    }
+
+    public InvalidStatusTransitionException(PaymentStatus to) {
+        super("No payment status can change to " + to);
+    }
+}
@@ -0,0 +1,8 @@
+package com.payments.exception;
+
+public class PaymentFileTooLargeException extends RuntimeException {
+
+    public PaymentFileTooLargeException(String message) {
+        super(message);
+    }
+}
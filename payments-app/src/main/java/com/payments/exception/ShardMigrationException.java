@@ -0,0 +1,8 @@
+package com.payments.exception;
+
+public class ShardMigrationException extends RuntimeException {
+
+    public ShardMigrationException(String message) {
+        super(message);
+    }
+}
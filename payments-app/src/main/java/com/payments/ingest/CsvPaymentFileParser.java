@@ -0,0 +1,209 @@
+package com.payments.ingest;
+
+import com.payments.dto.PaymentFileFormat;
+import com.payments.exception.InvalidPaymentFileException;
+import com.payments.model.PaymentRequest;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Comma separated payment instructions, one per line, after a header line naming the columns. The columns are
+ * the fields of a payment request with the parties flattened ({@code debtorName}, {@code creditorAccountNumber},
+ * ...), in any order and case; unknown columns are ignored. Fields may be quoted, but a quoted field cannot span
+ * lines because chunks are split on line breaks.
+ */
+final class CsvPaymentFileParser implements PaymentFileParser {
+
+    private enum Column {
+        AMOUNT("amount"),
+        CURRENCY("currency"),
+        PAYMENT_METHOD("paymentMethod"),
+        DEBTOR_NAME("debtorName"),
+        DEBTOR_ACCOUNT_NUMBER("debtorAccountNumber"),
+        DEBTOR_BANK_CODE("debtorBankCode"),
+        DEBTOR_ADDRESS("debtorAddress"),
+        DEBTOR_EMAIL("debtorEmail"),
+        DEBTOR_PHONE_NUMBER("debtorPhoneNumber"),
+        CREDITOR_NAME("creditorName"),
+        CREDITOR_ACCOUNT_NUMBER("creditorAccountNumber"),
+        CREDITOR_BANK_CODE("creditorBankCode"),
+        CREDITOR_ADDRESS("creditorAddress"),
+        CREDITOR_EMAIL("creditorEmail"),
+        CREDITOR_PHONE_NUMBER("creditorPhoneNumber");
+
+        private final String header;
+
+        Column(String header) {
+            this.header = header;
+        }
+    }
+
+    private static final Set<Column> REQUIRED = EnumSet.of(Column.AMOUNT, Column.CURRENCY, Column.PAYMENT_METHOD,
+            Column.DEBTOR_NAME, Column.DEBTOR_ACCOUNT_NUMBER, Column.CREDITOR_NAME, Column.CREDITOR_ACCOUNT_NUMBER);
+
+    private final ByteBuffer file;
+    // position of each column in a line by ordinal, -1 if the file does not have it
+    private final int[] positions = new int[Column.values().length];
+    private final int dataStart;
+
+    CsvPaymentFileParser(ByteBuffer file, int start) {
+        this.file = file;
+        int headerEnd = lineEnd(start, file.limit());
+        List<String> header;
+        try {
+            header = split(decode(start, contentEnd(start, headerEnd), new byte[headerEnd - start]));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidPaymentFileException("Invalid CSV header: " + e.getMessage());
+        }
+        Arrays.fill(positions, -1);
+        for (int i = 0; i < header.size(); i++) {
+            for (Column column : Column.values()) {
+                if (column.header.equalsIgnoreCase(header.get(i).strip())) {
+                    positions[column.ordinal()] = i;
+                }
+            }
+        }
+        Set<Column> missing = EnumSet.noneOf(Column.class);
+        REQUIRED.stream().filter(column -> positions[column.ordinal()] < 0).forEach(missing::add);
+        if (!missing.isEmpty()) {
+            throw new InvalidPaymentFileException("CSV header is missing the columns "
+                    + missing.stream().map(column -> column.header).collect(Collectors.joining(", ")));
+        }
+        this.dataStart = Math.min(headerEnd + 1, file.limit());
+    }
+
+    @Override
+    public PaymentFileFormat format() {
+        return PaymentFileFormat.CSV;
+    }
+
+    @Override
+    public List<FileChunk> split(int chunkSize) {
+        List<FileChunk> chunks = new ArrayList<>();
+        int limit = file.limit();
+        int linesBefore = PaymentFileParser.countLines(file, 0, dataStart);
+        for (int start = dataStart; start < limit; ) {
+            int end = start + chunkSize >= limit ? limit : Math.min(lineEnd(start + chunkSize, limit) + 1, limit);
+            chunks.add(new FileChunk(chunks.size(), start, end, chunks.isEmpty() ? linesBefore : 0));
+            start = end;
+        }
+        return chunks;
+    }
+
+    @Override
+    public ParsedChunk parse(FileChunk chunk) {
+        List<ParsedChunk.Instruction> instructions = new ArrayList<>();
+        List<ParsedChunk.Rejection> rejections = new ArrayList<>();
+        byte[] buffer = new byte[256];
+        int line = 0;
+        for (int start = chunk.start(); start < chunk.end(); start++) {
+            int end = lineEnd(start, chunk.end());
+            int contentEnd = contentEnd(start, end);
+            if (contentEnd > start) {
+                if (contentEnd - start > buffer.length) {
+                    buffer = new byte[Math.max(contentEnd - start, buffer.length * 2)];
+                }
+                try {
+                    instructions.add(new ParsedChunk.Instruction(line, toRequest(split(decode(start, contentEnd, buffer)))));
+                } catch (IllegalArgumentException e) {
+                    rejections.add(new ParsedChunk.Rejection(line, e.getMessage()));
+                }
+            }
+            if (end < chunk.end()) {
+                line++;
+            }
+            start = end;
+        }
+        return new ParsedChunk(instructions, rejections, line);
+    }
+
+    private PaymentRequest toRequest(List<String> fields) {
+        PaymentRequest request = new PaymentRequest();
+        request.setAmount(InstructionFields.amount(value(fields, Column.AMOUNT)));
+        request.setCurrency(value(fields, Column.CURRENCY));
+        request.setPaymentMethod(InstructionFields.paymentMethod(value(fields, Column.PAYMENT_METHOD)));
+        request.setDebtor(InstructionFields.party(value(fields, Column.DEBTOR_NAME),
+                value(fields, Column.DEBTOR_ACCOUNT_NUMBER), value(fields, Column.DEBTOR_BANK_CODE),
+                value(fields, Column.DEBTOR_ADDRESS), value(fields, Column.DEBTOR_EMAIL),
+                value(fields, Column.DEBTOR_PHONE_NUMBER)));
+        request.setCreditor(InstructionFields.party(value(fields, Column.CREDITOR_NAME),
+                value(fields, Column.CREDITOR_ACCOUNT_NUMBER), value(fields, Column.CREDITOR_BANK_CODE),
+                value(fields, Column.CREDITOR_ADDRESS), value(fields, Column.CREDITOR_EMAIL),
+                value(fields, Column.CREDITOR_PHONE_NUMBER)));
+        return request;
+    }
+
+    private String value(List<String> fields, Column column) {
+        int position = positions[column.ordinal()];
+        return position < 0 || position >= fields.size() ? null : InstructionFields.text(fields.get(position));
+    }
+
+    private String decode(int from, int to, byte[] buffer) {
+        file.get(from, buffer, 0, to - from);
+        return new String(buffer, 0, to - from, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Offset of the line break ending the line at {@code from}, or {@code to} if there is none.
+     */
+    private int lineEnd(int from, int to) {
+        int i = from;
+        while (i < to && file.get(i) != '\n') {
+            i++;
+        }
+        return i;
+    }
+
+    private int contentEnd(int start, int end) {
+        return end > start && file.get(end - 1) == '\r' ? end - 1 : end;
+    }
+
+    private static List<String> split(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        int i = 0;
+        while (true) {
+            field.setLength(0);
+            if (i < line.length() && line.charAt(i) == '"') {
+                i++;
+                while (true) {
+                    if (i >= line.length()) {
+                        throw new IllegalArgumentException("unterminated quoted field " + (fields.size() + 1));
+                    }
+                    char c = line.charAt(i++);
+                    if (c == '"') {
+                        if (i < line.length() && line.charAt(i) == '"') {
+                            field.append('"');
+                            i++;
+                        } else {
+                            break;
+                        }
+                    } else {
+                        field.append(c);
+                    }
+                }
+                if (i < line.length() && line.charAt(i) != ',') {
+                    throw new IllegalArgumentException("unexpected character after quoted field " + (fields.size() + 1));
+                }
+            } else {
+                int next = line.indexOf(',', i);
+                field.append(line, i, next < 0 ? line.length() : next);
+                i = next < 0 ? line.length() : next;
+            }
+            fields.add(field.toString());
+            if (i >= line.length()) {
+                return fields;
+            }
+            // skip the separator
+            i++;
+        }
+    }
+}
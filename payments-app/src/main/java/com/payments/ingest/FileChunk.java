@@ -0,0 +1,16 @@
+package com.payments.ingest;
+
+/**
+ * Byte range of a mapped payment file that starts and ends on a record boundary.
+ *
+ * @param index       position of the chunk in the file
+ * @param start       offset of the first byte
+ * @param end         offset after the last byte
+ * @param linesBefore line breaks between the end of the previous chunk, or the start of the file, and this chunk
+ */
+record FileChunk(int index, int start, int end, int linesBefore) {
+
+    int length() {
+        return end - start;
+    }
+}
@@ -0,0 +1,56 @@
+package com.payments.ingest;
+
+import com.payments.dto.PaymentFileFormat;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of a running ingestion, updated by the chunk tasks as they read and store records and read by status
+ * requests.
+ */
+public class IngestionProgress {
+
+    private final LongAdder processedBytes = new LongAdder();
+    private final LongAdder records = new LongAdder();
+    private final LongAdder stored = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private volatile PaymentFileFormat format;
+
+    public PaymentFileFormat format() {
+        return format;
+    }
+
+    public long processedBytes() {
+        return processedBytes.sum();
+    }
+
+    public long records() {
+        return records.sum();
+    }
+
+    public long stored() {
+        return stored.sum();
+    }
+
+    public long failed() {
+        return failed.sum();
+    }
+
+    void started(PaymentFileFormat format) {
+        this.format = format;
+    }
+
+    void recordsRead(long records, long rejected) {
+        this.records.add(records);
+        this.failed.add(rejected);
+    }
+
+    void recordsStored(long stored, long failed) {
+        this.stored.add(stored);
+        this.failed.add(failed);
+    }
+
+    void bytesProcessed(long bytes) {
+        processedBytes.add(bytes);
+    }
+}
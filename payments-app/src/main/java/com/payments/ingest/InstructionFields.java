@@ -0,0 +1,66 @@
+package com.payments.ingest;
+
+import com.payments.model.Party;
+import com.payments.model.PaymentMethod;
+
+import java.math.BigDecimal;
+
+/**
+ * Conversions shared by the file formats. Failures throw {@link IllegalArgumentException} with the message that
+ * ends up in the error file.
+ */
+final class InstructionFields {
+
+    private InstructionFields() {
+    }
+
+    static String text(String value) {
+        if (value == null) {
+            return null;
+        }
+        String stripped = value.strip();
+        return stripped.isEmpty() ? null : stripped;
+    }
+
+    static BigDecimal amount(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return new BigDecimal(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("amount: not a number: " + value);
+        }
+    }
+
+    static PaymentMethod paymentMethod(String value) {
+        if (value == null) {
+            return null;
+        }
+        for (PaymentMethod method : PaymentMethod.values()) {
+            if (method.getValue().equalsIgnoreCase(value)) {
+                return method;
+            }
+        }
+        throw new IllegalArgumentException("paymentMethod: unknown payment method: " + value);
+    }
+
+    /**
+     * @return The party, or null if none of its fields is present
+     */
+    static Party party(String name, String accountNumber, String bankCode, String address, String email,
+                       String phoneNumber) {
+        if (name == null && accountNumber == null && bankCode == null && address == null && email == null
+                && phoneNumber == null) {
+            return null;
+        }
+        Party party = new Party();
+        party.setName(name);
+        party.setAccountNumber(accountNumber);
+        party.setBankCode(bankCode);
+        party.setAddress(address);
+        party.setEmail(email);
+        party.setPhoneNumber(phoneNumber);
+        return party;
+    }
+}
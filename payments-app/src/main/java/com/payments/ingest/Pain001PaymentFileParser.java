@@ -0,0 +1,288 @@
+package com.payments.ingest;
+
+import com.payments.dto.PaymentFileFormat;
+import com.payments.exception.InvalidPaymentFileException;
+import com.payments.model.Party;
+import com.payments.model.PaymentMethod;
+import com.payments.model.PaymentRequest;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ISO 20022 customer credit transfer initiation ({@code pain.001}). The file is split on {@code <CdtTrfTxInf>}
+ * boundaries found by a byte search, the debtor of each {@code <PmtInf>} block is read once while splitting and
+ * handed to all chunks of the block. Chunks are parsed by a non-validating StAX reader wrapped in a synthetic root
+ * element, so elements must not carry a namespace prefix; the default namespace of the document is ignored.
+ * <p>
+ * Credit transfers are stored with payment method {@code NET_BANKING} unless the block names one of the payment
+ * methods as proprietary local instrument.
+ */
+final class Pain001PaymentFileParser implements PaymentFileParser {
+
+    private static final byte[] PAYMENT_INFORMATION_START = ascii("<PmtInf>");
+    private static final byte[] PAYMENT_INFORMATION_END = ascii("</PmtInf>");
+    private static final byte[] TRANSACTION_START = ascii("<CdtTrfTxInf>");
+    private static final String TRANSACTION = "CdtTrfTxInf";
+
+    private final ByteBuffer file;
+    private final XMLInputFactory inputFactory;
+    // debtor and payment method by chunk index, filled by split
+    private final List<PaymentInformation> chunkInformation = new ArrayList<>();
+
+    Pain001PaymentFileParser(ByteBuffer file) {
+        this.file = file;
+        this.inputFactory = XMLInputFactory.newFactory();
+        inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    @Override
+    public PaymentFileFormat format() {
+        return PaymentFileFormat.PAIN_001;
+    }
+
+    @Override
+    public List<FileChunk> split(int chunkSize) {
+        List<FileChunk> chunks = new ArrayList<>();
+        int limit = file.limit();
+        int counted = 0;
+        int position = 0;
+        int blockStart;
+        while ((blockStart = indexOf(PAYMENT_INFORMATION_START, position, limit)) >= 0) {
+            int blockEnd = indexOf(PAYMENT_INFORMATION_END, blockStart, limit);
+            if (blockEnd < 0) {
+                throw new InvalidPaymentFileException("Unterminated <PmtInf> block at line "
+                        + (PaymentFileParser.countLines(file, 0, blockStart) + 1));
+            }
+            int transactionsStart = indexOf(TRANSACTION_START, blockStart, blockEnd);
+            if (transactionsStart >= 0) {
+                PaymentInformation information = readPaymentInformation(blockStart, transactionsStart);
+                for (int start = transactionsStart; start < blockEnd; ) {
+                    int end = start + chunkSize >= blockEnd ? -1 : indexOf(TRANSACTION_START, start + chunkSize, blockEnd);
+                    end = end < 0 ? blockEnd : end;
+                    chunks.add(new FileChunk(chunks.size(), start, end, PaymentFileParser.countLines(file, counted, start)));
+                    chunkInformation.add(information);
+                    counted = end;
+                    start = end;
+                }
+            }
+            position = blockEnd + PAYMENT_INFORMATION_END.length;
+        }
+        if (chunks.isEmpty() && position == 0) {
+            throw new InvalidPaymentFileException("No <PmtInf> block found, the file is not a pain.001 document");
+        }
+        return chunks;
+    }
+
+    @Override
+    public ParsedChunk parse(FileChunk chunk) {
+        PaymentInformation information = chunkInformation.get(chunk.index());
+        List<ParsedChunk.Instruction> instructions = new ArrayList<>();
+        List<ParsedChunk.Rejection> rejections = new ArrayList<>();
+        XMLStreamReader reader = null;
+        try {
+            reader = inputFactory.createXMLStreamReader(wrap("<Chunk>", chunk.start(), chunk.end(), "</Chunk>"));
+            reader.nextTag();
+            while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                int line = reader.getLocation().getLineNumber() - 1;
+                if (!TRANSACTION.equals(localName(reader))) {
+                    rejections.add(new ParsedChunk.Rejection(line, "unexpected element <" + localName(reader) + ">"));
+                    readElement(reader);
+                    continue;
+                }
+                Map<String, String> transaction = readElement(reader);
+                try {
+                    instructions.add(new ParsedChunk.Instruction(line, toRequest(information, transaction)));
+                } catch (IllegalArgumentException e) {
+                    rejections.add(new ParsedChunk.Rejection(line, e.getMessage()));
+                }
+            }
+        } catch (XMLStreamException e) {
+            int line = e.getLocation() != null ? Math.max(0, e.getLocation().getLineNumber() - 1) : 0;
+            rejections.add(new ParsedChunk.Rejection(line,
+                    "malformed XML, the rest of the payment information block was skipped: " + e.getMessage()));
+        } finally {
+            close(reader);
+        }
+        return new ParsedChunk(instructions, rejections,
+                PaymentFileParser.countLines(file, chunk.start(), chunk.end()));
+    }
+
+    private PaymentInformation readPaymentInformation(int start, int end) {
+        XMLStreamReader reader = null;
+        try {
+            reader = inputFactory.createXMLStreamReader(wrap("", start, end, "</PmtInf>"));
+            reader.nextTag();
+            Map<String, String> block = readElement(reader);
+            Party debtor = InstructionFields.party(block.get("Dbtr/Nm"),
+                    firstOf(block, "DbtrAcct/Id/IBAN", "DbtrAcct/Id/Othr/Id"),
+                    firstOf(block, "DbtrAgt/FinInstnId/BICFI", "DbtrAgt/FinInstnId/BIC"),
+                    block.get("Dbtr/PstlAdr/AdrLine"),
+                    block.get("Dbtr/CtctDtls/EmailAdr"),
+                    firstOf(block, "Dbtr/CtctDtls/MobNb", "Dbtr/CtctDtls/PhneNb"));
+            return new PaymentInformation(debtor, paymentMethod(block.get("PmtTpInf/LclInstrm/Prtry")));
+        } catch (XMLStreamException e) {
+            throw new InvalidPaymentFileException("Malformed <PmtInf> block at line "
+                    + (PaymentFileParser.countLines(file, 0, start) + 1) + ": " + e.getMessage(), e);
+        } finally {
+            close(reader);
+        }
+    }
+
+    private static PaymentRequest toRequest(PaymentInformation information, Map<String, String> transaction) {
+        PaymentRequest request = new PaymentRequest();
+        request.setAmount(InstructionFields.amount(transaction.get("Amt/InstdAmt")));
+        request.setCurrency(transaction.get("Amt/InstdAmt@Ccy"));
+        request.setPaymentMethod(information.paymentMethod());
+        request.setDebtor(information.debtor());
+        request.setCreditor(InstructionFields.party(transaction.get("Cdtr/Nm"),
+                firstOf(transaction, "CdtrAcct/Id/IBAN", "CdtrAcct/Id/Othr/Id"),
+                firstOf(transaction, "CdtrAgt/FinInstnId/BICFI", "CdtrAgt/FinInstnId/BIC"),
+                transaction.get("Cdtr/PstlAdr/AdrLine"),
+                transaction.get("Cdtr/CtctDtls/EmailAdr"),
+                firstOf(transaction, "Cdtr/CtctDtls/MobNb", "Cdtr/CtctDtls/PhneNb")));
+        return request;
+    }
+
+    private static PaymentMethod paymentMethod(String localInstrument) {
+        try {
+            PaymentMethod method = InstructionFields.paymentMethod(InstructionFields.text(localInstrument));
+            return method != null ? method : PaymentMethod.NET_BANKING;
+        } catch (IllegalArgumentException e) {
+            return PaymentMethod.NET_BANKING;
+        }
+    }
+
+    /**
+     * Read the element the reader is positioned on up to its end tag. Returns the text of the nested elements and
+     * the attributes, keyed by path relative to the element ({@code Amt/InstdAmt}, {@code Amt/InstdAmt@Ccy}).
+     * Repeated elements, like address lines, are joined.
+     */
+    private static Map<String, String> readElement(XMLStreamReader reader) throws XMLStreamException {
+        Map<String, String> values = new HashMap<>();
+        List<String> path = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        int depth = 0;
+        while (true) {
+            int event = reader.next();
+            switch (event) {
+                case XMLStreamConstants.START_ELEMENT -> {
+                    depth++;
+                    path.add(localName(reader));
+                    text.setLength(0);
+                    for (int i = 0; i < reader.getAttributeCount(); i++) {
+                        values.put(String.join("/", path) + "@" + reader.getAttributeLocalName(i),
+                                reader.getAttributeValue(i));
+                    }
+                }
+                case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA -> text.append(reader.getText());
+                case XMLStreamConstants.END_ELEMENT -> {
+                    if (depth == 0) {
+                        return values;
+                    }
+                    String value = InstructionFields.text(text.toString());
+                    if (value != null) {
+                        values.merge(String.join("/", path), value, (first, next) -> first + ", " + next);
+                    }
+                    text.setLength(0);
+                    path.removeLast();
+                    depth--;
+                }
+                default -> {
+                }
+            }
+        }
+    }
+
+    // without namespace processing the reader reports prefixed names as they are written
+    private static String localName(XMLStreamReader reader) {
+        String name = reader.getLocalName();
+        return name.substring(name.indexOf(':') + 1);
+    }
+
+    private static String firstOf(Map<String, String> values, String... keys) {
+        for (String key : keys) {
+            String value = values.get(key);
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    private InputStream wrap(String prefix, int start, int end, String suffix) {
+        return new SequenceInputStream(new SequenceInputStream(
+                new ByteArrayInputStream(ascii(prefix)), new ByteBufferInputStream(file.slice(start, end - start))),
+                new ByteArrayInputStream(ascii(suffix)));
+    }
+
+    private int indexOf(byte[] pattern, int from, int to) {
+        for (int i = from; i <= to - pattern.length; i++) {
+            if (file.get(i) != pattern[0]) {
+                continue;
+            }
+            int j = 1;
+            while (j < pattern.length && file.get(i + j) == pattern[j]) {
+                j++;
+            }
+            if (j == pattern.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void close(XMLStreamReader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (XMLStreamException ignored) {
+                // nothing to release, the input is a mapped buffer
+            }
+        }
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private record PaymentInformation(Party debtor, PaymentMethod paymentMethod) {
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.payments.ingest;
+
+import com.payments.model.PaymentRequest;
+
+import java.util.List;
+
+/**
+ * Payment instructions read from a {@link FileChunk}. Line numbers are zero-based and relative to the start of
+ * the chunk, they are turned into file line numbers once the line counts of all preceding chunks are known.
+ *
+ * @param instructions instructions that could be read, not yet validated
+ * @param rejections   instructions that could not be read
+ * @param lines        line breaks in the chunk
+ */
+record ParsedChunk(List<Instruction> instructions, List<Rejection> rejections, int lines) {
+
+    record Instruction(int line, PaymentRequest request) {
+    }
+
+    record Rejection(int line, String message) {
+    }
+}
@@ -0,0 +1,267 @@
+package com.payments.ingest;
+
+import com.payments.config.IngestionProperties;
+import com.payments.config.PaymentBatchProperties;
+import com.payments.exception.InvalidAmountException;
+import com.payments.model.BatchItemStatus;
+import com.payments.model.BatchPaymentResponse;
+import com.payments.model.BatchPaymentResult;
+import com.payments.model.PaymentRequest;
+import com.payments.ratelimit.PaymentRateLimiter;
+import com.payments.service.PaymentService;
+import com.payments.util.Money;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Ingests payment files in CSV or pain.001 format. The file is memory-mapped and split into chunks on record
+ * boundaries, a fork-join pool then parses, validates and stores the chunks in parallel. Each chunk is stored
+ * through {@link PaymentService#makePayments}, so it gets the same batched inserts, party resolution, outbox
+ * events and per-item fallback as a batch request.
+ * <p>
+ * Instructions that cannot be read, are invalid or cannot be stored are written to an error file with their line
+ * number. Line numbers are only known once all chunks before a chunk are counted, so the rejections are kept in
+ * memory until the whole file is done. Payments are stored no faster than the rate limit of the principal who
+ * submitted the file allows.
+ */
+@Slf4j
+@Component
+public class PaymentFileIngester {
+
+    private static final byte[] UTF8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+    private final PaymentService paymentService;
+    private final Validator validator;
+    private final IngestionProperties properties;
+    private final PaymentBatchProperties batchProperties;
+    private final PaymentRateLimiter paymentRateLimiter;
+    private final ForkJoinPool pool;
+    private final Counter storedCounter;
+    private final Counter failedCounter;
+
+    public PaymentFileIngester(PaymentService paymentService,
+                               Validator validator,
+                               IngestionProperties properties,
+                               PaymentBatchProperties batchProperties,
+                               PaymentRateLimiter paymentRateLimiter,
+                               MeterRegistry meterRegistry) {
+        this.paymentService = paymentService;
+        this.validator = validator;
+        this.properties = properties;
+        this.batchProperties = batchProperties;
+        this.paymentRateLimiter = paymentRateLimiter;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.pool = new ForkJoinPool(Math.max(1, properties.parallelism()), forkJoinPool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+            thread.setName("payment-ingestion-" + threadCount.getAndIncrement());
+            return thread;
+        }, null, false);
+        this.storedCounter = Counter.builder("payment.ingestion.records")
+                .description("Payment instructions read from ingested files")
+                .tag("outcome", "stored")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("payment.ingestion.records")
+                .description("Payment instructions read from ingested files")
+                .tag("outcome", "failed")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Ingest a file, returning once every chunk is stored and the error file is written.
+     *
+     * @param file        File to ingest, at most 2GB
+     * @param errorFile   CSV file the rejected instructions are written to
+     * @param submittedBy Principal who submitted the file, its payments are stored at the rate allowed to it
+     * @param progress    Counters updated as chunks finish
+     * @throws IOException if the file cannot be mapped or the error file cannot be written
+     * @throws com.payments.exception.InvalidPaymentFileException if the file is not in a supported format
+     */
+    public void ingest(Path file, Path errorFile, Authentication submittedBy, IngestionProgress progress)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            PaymentFileParser parser = parserFor(mapped);
+            progress.started(parser.format());
+
+            long start = System.nanoTime();
+            List<FileChunk> chunks = parser.split((int) properties.chunkSize().toBytes());
+            ChunkResult[] results = new ChunkResult[chunks.size()];
+            pool.invoke(new ChunkTask(parser, chunks, results, 0, chunks.size(), submittedBy, progress));
+            writeErrors(errorFile, chunks, results);
+            log.info("Ingested {} as {} in {} chunks, {} stored and {} rejected in {} ms", file.getFileName(),
+                    parser.format(), chunks.size(), progress.stored(), progress.failed(),
+                    (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    // pain.001 is XML, anything else is taken for CSV
+    private static PaymentFileParser parserFor(ByteBuffer file) {
+        int start = 0;
+        if (file.limit() >= UTF8_BOM.length && file.get(0) == UTF8_BOM[0] && file.get(1) == UTF8_BOM[1]
+                && file.get(2) == UTF8_BOM[2]) {
+            start = UTF8_BOM.length;
+        }
+        int first = start;
+        while (first < file.limit() && Character.isWhitespace(file.get(first))) {
+            first++;
+        }
+        return first < file.limit() && file.get(first) == '<'
+                ? new Pain001PaymentFileParser(file)
+                : new CsvPaymentFileParser(file, start);
+    }
+
+    private ChunkResult process(PaymentFileParser parser, FileChunk chunk, Authentication submittedBy,
+                                IngestionProgress progress) {
+        ParsedChunk parsed = parser.parse(chunk);
+        List<ParsedChunk.Rejection> rejections = new ArrayList<>(parsed.rejections());
+        List<ParsedChunk.Instruction> valid = new ArrayList<>(parsed.instructions().size());
+        for (ParsedChunk.Instruction instruction : parsed.instructions()) {
+            String violations = violations(instruction.request());
+            if (violations == null) {
+                valid.add(instruction);
+            } else {
+                rejections.add(new ParsedChunk.Rejection(instruction.line(), violations));
+            }
+        }
+
+        progress.recordsRead(parsed.instructions().size() + parsed.rejections().size(), rejections.size());
+        failedCounter.increment(rejections.size());
+
+        // stored one batch at a time so that the progress moves while a chunk is being stored
+        int batchSize = Math.max(1, batchProperties.chunkSize());
+        for (int from = 0; from < valid.size(); from += batchSize) {
+            List<ParsedChunk.Instruction> batch = valid.subList(from, Math.min(from + batchSize, valid.size()));
+            awaitRateLimit(submittedBy, batch.size());
+            BatchPaymentResponse response = paymentService.makePayments(
+                    batch.stream().map(ParsedChunk.Instruction::request).toList());
+            for (BatchPaymentResult result : response.getResults()) {
+                if (result.getStatus() == BatchItemStatus.FAILED) {
+                    rejections.add(new ParsedChunk.Rejection(batch.get(result.getIndex()).line(), result.getError()));
+                }
+            }
+            storedCounter.increment(response.getSucceeded());
+            failedCounter.increment(response.getFailed());
+            progress.recordsStored(response.getSucceeded(), response.getFailed());
+        }
+        progress.bytesProcessed(chunk.length());
+        return new ChunkResult(parsed.lines(), rejections);
+    }
+
+    private void awaitRateLimit(Authentication submittedBy, int payments) {
+        try {
+            paymentRateLimiter.await(submittedBy, payments);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the payment rate limit", e);
+        }
+    }
+
+    private String violations(PaymentRequest request) {
+        Set<ConstraintViolation<PaymentRequest>> violations = validator.validate(request);
+        if (violations.isEmpty()) {
+            try {
+                Money.toMinorUnits(request.getAmount(), request.getCurrency());
+                return null;
+            } catch (InvalidAmountException ex) {
+                return "amount: " + ex.getMessage();
+            }
+        }
+        return violations.stream()
+                .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                .sorted()
+                .collect(Collectors.joining("; "));
+    }
+
+    private static void writeErrors(Path errorFile, List<FileChunk> chunks, ChunkResult[] results) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(errorFile)) {
+            writer.write("line,error\n");
+            long chunkLine = 1;
+            for (int i = 0; i < chunks.size(); i++) {
+                chunkLine += chunks.get(i).linesBefore();
+                List<ParsedChunk.Rejection> rejections = new ArrayList<>(results[i].rejections());
+                rejections.sort(Comparator.comparingInt(ParsedChunk.Rejection::line));
+                for (ParsedChunk.Rejection rejection : rejections) {
+                    writer.write(Long.toString(chunkLine + rejection.line()));
+                    writer.write(',');
+                    writer.write(quote(rejection.message()));
+                    writer.write('\n');
+                }
+                chunkLine += results[i].lines();
+            }
+        }
+    }
+
+    private static String quote(String value) {
+        return "\"" + (value == null ? "" : value.replace("\"", "\"\"").replace('\n', ' ')) + "\"";
+    }
+
+    private record ChunkResult(int lines, List<ParsedChunk.Rejection> rejections) {
+    }
+
+    /**
+     * Halves the chunk range until a single chunk is left, which is then processed on the worker that reached it.
+     */
+    private final class ChunkTask extends RecursiveAction {
+
+        private final PaymentFileParser parser;
+        private final List<FileChunk> chunks;
+        private final ChunkResult[] results;
+        private final int from;
+        private final int to;
+        private final Authentication submittedBy;
+        private final IngestionProgress progress;
+
+        ChunkTask(PaymentFileParser parser, List<FileChunk> chunks, ChunkResult[] results, int from, int to,
+                  Authentication submittedBy, IngestionProgress progress) {
+            this.parser = parser;
+            this.chunks = chunks;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+            this.submittedBy = submittedBy;
+            this.progress = progress;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                if (to > from) {
+                    results[from] = process(parser, chunks.get(from), submittedBy, progress);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ChunkTask(parser, chunks, results, from, middle, submittedBy, progress),
+                    new ChunkTask(parser, chunks, results, middle, to, submittedBy, progress));
+        }
+    }
+}
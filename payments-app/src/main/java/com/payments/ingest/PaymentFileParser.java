@@ -0,0 +1,33 @@
+package com.payments.ingest;
+
+import com.payments.dto.PaymentFileFormat;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Reads payment instructions from a memory-mapped file. {@link #split} runs once, {@link #parse} is then called
+ * for the chunks concurrently and must not change any state of the parser.
+ */
+interface PaymentFileParser {
+
+    PaymentFileFormat format();
+
+    /**
+     * @param chunkSize Approximate chunk size in bytes, chunks are extended to the next record boundary
+     * @throws com.payments.exception.InvalidPaymentFileException if the file cannot be ingested at all
+     */
+    List<FileChunk> split(int chunkSize);
+
+    ParsedChunk parse(FileChunk chunk);
+
+    static int countLines(ByteBuffer file, int from, int to) {
+        int lines = 0;
+        for (int i = from; i < to; i++) {
+            if (file.get(i) == '\n') {
+                lines++;
+            }
+        }
+        return lines;
+    }
+}
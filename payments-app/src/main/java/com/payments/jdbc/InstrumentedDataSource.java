@@ -0,0 +1,130 @@
+package com.payments.jdbc;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Reports the time taken to get a connection, the time statements take to execute and the rows their result sets
+ * return to {@link QueryMetrics}, and counts the statements for {@link SqlStatements}. Connections, statements and
+ * result sets are wrapped in JDK proxies that pass every other call straight through.
+ */
+class InstrumentedDataSource extends DelegatingDataSource {
+
+    private final QueryMetrics metrics;
+
+    InstrumentedDataSource(DataSource target, QueryMetrics metrics) {
+        super(target);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        Connection connection = obtainTargetDataSource().getConnection();
+        metrics.connectionAcquired(System.nanoTime() - start);
+        return wrap(connection);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        long start = System.nanoTime();
+        Connection connection = obtainTargetDataSource().getConnection(username, password);
+        metrics.connectionAcquired(System.nanoTime() - start);
+        return wrap(connection);
+    }
+
+    private Connection wrap(Connection connection) {
+        return proxy(Connection.class, connection, (proxy, method, args) -> {
+            Object result = invoke(connection, method, args);
+            if (result instanceof Statement statement) {
+                // createStatement has no SQL, it comes with each execute
+                String sql = args != null && args.length > 0 && args[0] instanceof String text ? text : null;
+                return wrap(statement, sql);
+            }
+            return result;
+        });
+    }
+
+    private Statement wrap(Statement statement, String preparedSql) {
+        Class<? extends Statement> type = statement instanceof CallableStatement ? CallableStatement.class
+                : statement instanceof PreparedStatement ? PreparedStatement.class
+                : Statement.class;
+        return proxy(type, statement, (proxy, method, args) -> {
+            String name = method.getName();
+            if (name.startsWith("execute")) {
+                // a batch of plain statements has no single SQL text, and counts as one round trip
+                String sql = args != null && args.length > 0 && args[0] instanceof String text ? text
+                        : preparedSql != null ? preparedSql : "(batch)";
+                RepositoryCall call = QueryMetrics.current();
+                SqlStatements.executed(sql);
+                long start = System.nanoTime();
+                Object result;
+                try {
+                    result = invoke(statement, method, args);
+                } finally {
+                    metrics.statementExecuted(call, sql, System.nanoTime() - start);
+                }
+                return result instanceof ResultSet resultSet ? wrap(resultSet, call) : result;
+            }
+            Object result = invoke(statement, method, args);
+            return name.equals("getResultSet") && result instanceof ResultSet resultSet
+                    ? wrap(resultSet, QueryMetrics.current())
+                    : result;
+        });
+    }
+
+    private ResultSet wrap(ResultSet resultSet, RepositoryCall call) {
+        long[] rows = new long[1];
+        boolean[] closed = new boolean[1];
+        return proxy(ResultSet.class, resultSet, (proxy, method, args) -> {
+            Object result = invoke(resultSet, method, args);
+            switch (method.getName()) {
+                case "next" -> {
+                    if (Boolean.TRUE.equals(result)) {
+                        rows[0]++;
+                    }
+                }
+                case "close" -> {
+                    if (!closed[0]) {
+                        closed[0] = true;
+                        metrics.rowsRead(call, rows[0]);
+                    }
+                }
+                default -> {
+                }
+            }
+            return result;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<? extends T> type, T target, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(InstrumentedDataSource.class.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> switch (method.getName()) {
+                    // identity semantics, callers keep statements in hash maps keyed by the proxy
+                    case "equals" -> proxy == args[0];
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "toString" -> target.toString();
+                    default -> handler.invoke(proxy, method, args);
+                });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.payments.jdbc;
+
+import com.payments.config.QueryMetricsProperties;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Where the time of a repository call goes: waiting for a pooled connection, executing SQL, and the rest, which is
+ * mostly Hibernate mapping the rows it read. Each is a timer tagged with the repository and method the access was
+ * made for, set by {@link RepositoryMetricsAspect}, along with the rows read. Statements slower than the threshold
+ * are logged with their SQL, without parameter values.
+ */
+@Slf4j
+@Component
+public class QueryMetrics {
+
+    private static final ThreadLocal<RepositoryCall> CURRENT = new ThreadLocal<>();
+
+    private final boolean enabled;
+    private final long slowQueryNanos;
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentMap<RepositoryCall, Meters> meters = new ConcurrentHashMap<>();
+
+    public QueryMetrics(QueryMetricsProperties properties, MeterRegistry meterRegistry) {
+        this.enabled = properties.enabled();
+        this.slowQueryNanos = properties.slowQueryThreshold().isPositive()
+                ? properties.slowQueryThreshold().toNanos()
+                : Long.MAX_VALUE;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Wrap a datasource so that connections and statements it hands out are measured. Wrap the pool itself, not a
+     * lazy proxy in front of it, the proxy only takes a connection when the first statement runs.
+     */
+    public DataSource instrument(DataSource dataSource) {
+        return enabled ? new InstrumentedDataSource(dataSource, this) : dataSource;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    static RepositoryCall current() {
+        RepositoryCall call = CURRENT.get();
+        return call != null ? call : RepositoryCall.NONE;
+    }
+
+    /**
+     * Attribute the database accesses of the current thread to a repository call until {@link #exit}.
+     *
+     * @return The call to restore on exit, set when repository methods call each other
+     */
+    static RepositoryCall enter(RepositoryCall call) {
+        RepositoryCall previous = CURRENT.get();
+        CURRENT.set(call);
+        return previous;
+    }
+
+    static void exit(RepositoryCall previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    void invoked(RepositoryCall call, long nanos, boolean failed) {
+        Meters callMeters = meters(call);
+        (failed ? callMeters.failedInvocations : callMeters.invocations).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    void connectionAcquired(long nanos) {
+        meters(current()).acquire.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    void statementExecuted(RepositoryCall call, String sql, long nanos) {
+        meters(call).statements.record(nanos, TimeUnit.NANOSECONDS);
+        if (nanos >= slowQueryNanos) {
+            log.warn("Slow SQL in {}.{}, {} ms: {}", call.repository(), call.method(),
+                    TimeUnit.NANOSECONDS.toMillis(nanos), sql);
+        }
+    }
+
+    void rowsRead(RepositoryCall call, long rows) {
+        meters(call).rows.record(rows);
+    }
+
+    private Meters meters(RepositoryCall call) {
+        Meters callMeters = meters.get(call);
+        return callMeters != null ? callMeters : meters.computeIfAbsent(call, this::register);
+    }
+
+    private Meters register(RepositoryCall call) {
+        return new Meters(
+                invocationTimer(call, "success"),
+                invocationTimer(call, "error"),
+                Timer.builder("payment.db.connection.acquire")
+                        .description("Time waiting for a pooled database connection")
+                        .tag("repository", call.repository())
+                        .tag("method", call.method())
+                        .register(meterRegistry),
+                Timer.builder("payment.db.statement")
+                        .description("Time executing SQL statements, until the first row is available")
+                        .tag("repository", call.repository())
+                        .tag("method", call.method())
+                        .register(meterRegistry),
+                DistributionSummary.builder("payment.db.rows")
+                        .description("Rows read per query")
+                        .baseUnit("rows")
+                        .tag("repository", call.repository())
+                        .tag("method", call.method())
+                        .register(meterRegistry));
+    }
+
+    private Timer invocationTimer(RepositoryCall call, String outcome) {
+        return Timer.builder("payment.repository.invocation")
+                .description("Time spent in repository methods, including connection, SQL and mapping")
+                .tag("repository", call.repository())
+                .tag("method", call.method())
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private record Meters(Timer invocations, Timer failedInvocations, Timer acquire, Timer statements,
+                          DistributionSummary rows) {
+    }
+}
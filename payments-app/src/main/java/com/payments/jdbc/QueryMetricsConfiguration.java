@@ -0,0 +1,35 @@
+package com.payments.jdbc;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+
+/**
+ * Instruments the {@code spring.datasource} pool when it is used directly, behind a lazy proxy like the shard and
+ * replica configurations use, which instrument their own pools. The proxy defers taking a connection from the
+ * transaction begin to the first statement, so the wait is attributed to the repository method that needed it.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "payment.sharding", name = "enabled", havingValue = "false", matchIfMissing = true)
+@ConditionalOnProperty(prefix = "payment.replicas", name = "enabled", havingValue = "false", matchIfMissing = true)
+public class QueryMetricsConfiguration {
+
+    private static final String DATA_SOURCE_BEAN = "dataSource";
+
+    @Bean
+    static BeanPostProcessor dataSourceInstrumentation(ObjectProvider<QueryMetrics> queryMetrics) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                return bean instanceof DataSource dataSource && DATA_SOURCE_BEAN.equals(beanName)
+                        ? new LazyConnectionDataSourceProxy(queryMetrics.getObject().instrument(dataSource))
+                        : bean;
+            }
+        };
+    }
+}
@@ -0,0 +1,13 @@
+package com.payments.jdbc;
+
+/**
+ * The repository method a database access is made for, the tags of its query metrics.
+ *
+ * @param repository Simple name of the repository interface, {@code none} for accesses outside of repository
+ *                   methods, such as the flush when a transaction commits
+ * @param method     Name of the repository method
+ */
+public record RepositoryCall(String repository, String method) {
+
+    static final RepositoryCall NONE = new RepositoryCall("none", "none");
+}
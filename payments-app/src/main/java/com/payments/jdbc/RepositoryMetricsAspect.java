@@ -0,0 +1,54 @@
+package com.payments.jdbc;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.aop.framework.AopProxyUtils;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Times Spring Data repository methods and attributes the database accesses made inside them to the repository
+ * and method, see {@link QueryMetrics}.
+ */
+@Aspect
+@Component
+public class RepositoryMetricsAspect {
+
+    private final QueryMetrics queryMetrics;
+    private final ConcurrentMap<Class<?>, String> repositoryNames = new ConcurrentHashMap<>();
+
+    public RepositoryMetricsAspect(QueryMetrics queryMetrics) {
+        this.queryMetrics = queryMetrics;
+    }
+
+    @Around("execution(* org.springframework.data.repository.Repository+.*(..))")
+    public Object measure(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (!queryMetrics.isEnabled()) {
+            return joinPoint.proceed();
+        }
+        RepositoryCall call = new RepositoryCall(repositoryName(joinPoint.getTarget()),
+                joinPoint.getSignature().getName());
+        RepositoryCall previous = QueryMetrics.enter(call);
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Object result = joinPoint.proceed();
+            failed = false;
+            return result;
+        } finally {
+            queryMetrics.invoked(call, System.nanoTime() - start, failed);
+            QueryMetrics.exit(previous);
+        }
+    }
+
+    // the target is the proxy Spring Data generates, its first interface is the repository
+    private String repositoryName(Object repository) {
+        return repositoryNames.computeIfAbsent(repository.getClass(), type -> {
+            Class<?>[] interfaces = AopProxyUtils.proxiedUserInterfaces(repository);
+            return interfaces.length > 0 ? interfaces[0].getSimpleName() : type.getSimpleName();
+        });
+    }
+}
@@ -0,0 +1,105 @@
+package com.payments.jdbc;
+
+import com.payments.config.SqlBudgetProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+
+/**
+ * Counts the SQL statements of every HTTP request, including those of the security filters, and reports requests
+ * that exceed the budget of their endpoint or execute the same SQL shape over and over, the signature of an N+1
+ * query. Endpoints are identified by HTTP method and matched path pattern, e.g. {@code GET /users/{id}}, which
+ * keeps the metric tags bounded. Tests count the statements of a request performed with MockMvc with a
+ * {@link SqlStatements#record() recording} of their own. Statements of asynchronous responses, such as exports,
+ * run after the request thread returned and are not counted.
+ */
+@Slf4j
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class SqlBudgetFilter extends OncePerRequestFilter {
+
+    private static final String UNMAPPED = "UNMAPPED";
+
+    private final SqlBudgetProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentMap<String, Meters> meters = new ConcurrentHashMap<>();
+
+    public SqlBudgetFilter(SqlBudgetProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (!properties.enabled()) {
+            chain.doFilter(request, response);
+            return;
+        }
+        SqlStatements.Recording recording = SqlStatements.record();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            recording.close();
+            check(endpointOf(request), recording.counts());
+        }
+    }
+
+    private void check(String endpoint, StatementCounts counts) {
+        Meters endpointMeters = meters.computeIfAbsent(endpoint, this::register);
+        endpointMeters.statements.record(counts.total());
+        int budget = properties.endpoints().getOrDefault(endpoint, properties.defaultBudget());
+        if (counts.total() > budget) {
+            endpointMeters.overBudget.increment();
+            log.warn("{} executed {} SQL statements, its budget is {}: {}", endpoint, counts.total(), budget,
+                    counts.byShape());
+        }
+        Map<String, Long> repeated = counts.byShape().entrySet().stream()
+                .filter(entry -> entry.getValue() >= properties.repeatThreshold())
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+        if (!repeated.isEmpty()) {
+            endpointMeters.repeated.increment();
+            log.warn("{} repeated SQL statements, likely an N+1 query: {}", endpoint, repeated);
+        }
+    }
+
+    private static String endpointOf(HttpServletRequest request) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        return request.getMethod() + " " + (pattern != null ? pattern : UNMAPPED);
+    }
+
+    private Meters register(String endpoint) {
+        return new Meters(
+                DistributionSummary.builder("payment.sql.statements")
+                        .description("SQL statements executed per HTTP request")
+                        .tag("endpoint", endpoint)
+                        .register(meterRegistry),
+                Counter.builder("payment.sql.budget.exceeded")
+                        .description("HTTP requests that executed more SQL statements than their budget")
+                        .tag("endpoint", endpoint)
+                        .register(meterRegistry),
+                Counter.builder("payment.sql.repeated")
+                        .description("HTTP requests that executed the same SQL shape repeatedly")
+                        .tag("endpoint", endpoint)
+                        .register(meterRegistry));
+    }
+
+    private record Meters(DistributionSummary statements, Counter overBudget, Counter repeated) {
+    }
+}
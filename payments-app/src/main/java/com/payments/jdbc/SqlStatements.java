@@ -0,0 +1,131 @@
+package com.payments.jdbc;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Counts the SQL statements executed through the instrumented datasources, per thread, for as long as a
+ * {@link Recording} is open. {@link SqlBudgetFilter} records every HTTP request; tests can record any block of
+ * code, including a request performed with MockMvc on the test thread:
+ * <pre>{@code
+ * try (SqlStatements.Recording recording = SqlStatements.record()) {
+ *     mockMvc.perform(get("/users"));
+ *     assertEquals(1, recording.counts().total());
+ * }
+ * }</pre>
+ * Recordings nest, a statement counts towards every open recording of the thread.
+ */
+public final class SqlStatements {
+
+    private static final ThreadLocal<Recording> CURRENT = new ThreadLocal<>();
+    private static final int MAX_CACHED_SHAPES = 4096;
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+    private static final Pattern IN_LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final ConcurrentMap<String, String> SHAPES = new ConcurrentHashMap<>();
+
+    private SqlStatements() {
+    }
+
+    /**
+     * Start counting the statements of the current thread. The recording must be closed on the same thread,
+     * recordings opened after it first.
+     */
+    public static Recording record() {
+        Recording recording = new Recording(CURRENT.get());
+        CURRENT.set(recording);
+        return recording;
+    }
+
+    /**
+     * The innermost open recording of the current thread, null if there is none.
+     */
+    public static Recording current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Run work on another thread counting towards a recording of the thread that handed it over.
+     */
+    public static <T> T call(Recording recording, Supplier<T> work) {
+        Recording previous = CURRENT.get();
+        CURRENT.set(recording);
+        try {
+            return work.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    static void executed(String sql) {
+        Recording recording = CURRENT.get();
+        if (recording == null) {
+            return;
+        }
+        String shape = shapeOf(sql);
+        for (; recording != null; recording = recording.parent) {
+            recording.add(shape);
+        }
+    }
+
+    static String shapeOf(String sql) {
+        String shape = SHAPES.get(sql);
+        if (shape == null) {
+            shape = WHITESPACE.matcher(sql.trim()).replaceAll(" ").toLowerCase();
+            shape = STRING_LITERAL.matcher(shape).replaceAll("?");
+            shape = NUMBER_LITERAL.matcher(shape).replaceAll("?");
+            shape = IN_LIST.matcher(shape).replaceAll("(?)");
+            // statements with inlined literals could grow the cache without bound
+            if (SHAPES.size() < MAX_CACHED_SHAPES) {
+                SHAPES.put(sql, shape);
+            }
+        }
+        return shape;
+    }
+
+    public static final class Recording implements AutoCloseable {
+
+        private final Recording parent;
+        private final AtomicLong total = new AtomicLong();
+        private final Map<String, AtomicLong> shapes = Collections.synchronizedMap(new LinkedHashMap<>());
+
+        private Recording(Recording parent) {
+            this.parent = parent;
+        }
+
+        private void add(String shape) {
+            total.incrementAndGet();
+            shapes.computeIfAbsent(shape, key -> new AtomicLong()).incrementAndGet();
+        }
+
+        public StatementCounts counts() {
+            Map<String, Long> byShape = new LinkedHashMap<>();
+            synchronized (shapes) {
+                shapes.forEach((shape, count) -> byShape.put(shape, count.get()));
+            }
+            return new StatementCounts(total.get(), Collections.unmodifiableMap(byShape));
+        }
+
+        @Override
+        public void close() {
+            if (CURRENT.get() == this) {
+                if (parent == null) {
+                    CURRENT.remove();
+                } else {
+                    CURRENT.set(parent);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.payments.jdbc;
+
+import java.util.Map;
+
+/**
+ * SQL statements executed while a {@link SqlStatements.Recording} was open.
+ *
+ * @param total   All statements
+ * @param byShape Statements per SQL shape, the SQL with literals replaced by {@code ?} and {@code IN} lists collapsed,
+ *                in the order the shapes were first executed
+ */
+public record StatementCounts(long total, Map<String, Long> byShape) {
+
+    /**
+     * Statements whose shape contains the given text, e.g. a table name.
+     */
+    public long count(String shapeFragment) {
+        String fragment = shapeFragment.toLowerCase();
+        return byShape.entrySet().stream()
+                .filter(entry -> entry.getKey().contains(fragment))
+                .mapToLong(Map.Entry::getValue)
+                .sum();
+    }
+}
@@ -0,0 +1,12 @@
+package com.payments.journal;
+
+import com.payments.model.PaymentRequest;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * A payment accepted for asynchronous storage, as written to the {@link PaymentJournal}.
+ */
+public record JournalEntry(UUID paymentId, LocalDateTime acceptedAt, PaymentRequest request) {
+}
@@ -0,0 +1,243 @@
+package com.payments.journal;
+
+import lombok.extern.slf4j.Slf4j;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Append-only, file-backed journal of accepted payments.
+ * <p>
+ * Entries are written as JSON lines to numbered segment files. The journal counts the entries of each segment
+ * that are not yet stored, once a segment is rolled over and all of its entries are {@link #complete completed}
+ * the file is deleted. With {@code fsync} enabled, concurrent appenders share one {@link FileChannel#force}
+ * call, an append returns only once its entry is on disk.
+ * <p>
+ * Entries of segments left over from a previous run are returned by {@link #open()}, they may include payments
+ * that were already stored just before the shutdown.
+ */
+@Slf4j
+public class PaymentJournal implements Closeable {
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d{19})\\.log");
+
+    private final Path directory;
+    private final long segmentSize;
+    private final boolean fsync;
+    private final ObjectMapper objectMapper;
+    private final Map<Long, AtomicInteger> outstanding = new ConcurrentHashMap<>();
+    private final Object writeLock = new Object();
+    private final Object syncLock = new Object();
+
+    private volatile FileChannel channel;
+    private volatile long currentSegment;
+    private volatile long writeSeq;
+    private long currentSize;
+    private long syncedSeq;
+
+    public PaymentJournal(Path directory, long segmentSize, boolean fsync, ObjectMapper objectMapper) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.fsync = fsync;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Open the journal for appending.
+     *
+     * @return Entries left over from previous runs, oldest first
+     */
+    public List<Record> open() {
+        try {
+            Files.createDirectories(directory);
+            List<Record> recovered = new ArrayList<>();
+            long lastSegment = 0;
+            for (Path file : segmentFiles()) {
+                long segment = segmentOf(file);
+                lastSegment = Math.max(lastSegment, segment);
+                int count = recover(file, segment, recovered);
+                if (count == 0) {
+                    Files.deleteIfExists(file);
+                } else {
+                    outstanding.put(segment, new AtomicInteger(count));
+                }
+            }
+            synchronized (writeLock) {
+                openSegment(lastSegment + 1);
+            }
+            log.info("Payment journal opened in {}, {} entries recovered", directory, recovered.size());
+            return recovered;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open payment journal in " + directory, e);
+        }
+    }
+
+    /**
+     * Append an entry, durable on return when {@code fsync} is enabled.
+     *
+     * @return Segment the entry was written to, to be passed to {@link #complete}
+     */
+    public long append(JournalEntry entry) {
+        byte[] line = (objectMapper.writeValueAsString(entry) + "\n").getBytes(StandardCharsets.UTF_8);
+        long segment;
+        long seq;
+        try {
+            synchronized (writeLock) {
+                if (currentSize > 0 && currentSize + line.length > segmentSize) {
+                    roll();
+                }
+                segment = currentSegment;
+                ByteBuffer buffer = ByteBuffer.wrap(line);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                currentSize += line.length;
+                outstanding.get(segment).incrementAndGet();
+                seq = ++writeSeq;
+            }
+            if (fsync) {
+                sync(seq);
+            }
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not append to payment journal", e);
+        }
+    }
+
+    /**
+     * Mark one entry of the segment as stored. A rolled over segment is deleted once all of its entries are.
+     */
+    public void complete(long segment) {
+        AtomicInteger count = outstanding.get(segment);
+        if (count != null && count.decrementAndGet() == 0 && segment != currentSegment) {
+            deleteSegment(segment, count);
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (writeLock) {
+            synchronized (syncLock) {
+                try {
+                    if (channel != null) {
+                        channel.force(false);
+                        channel.close();
+                    }
+                } catch (IOException e) {
+                    log.warn("Could not close payment journal segment {}", currentSegment, e);
+                }
+            }
+        }
+    }
+
+    private void sync(long seq) throws IOException {
+        synchronized (syncLock) {
+            if (syncedSeq >= seq) {
+                return;
+            }
+            // everything written so far goes out with this force, later waiters find their entry already synced
+            long target = writeSeq;
+            channel.force(false);
+            syncedSeq = target;
+        }
+    }
+
+    private void roll() throws IOException {
+        long previous = currentSegment;
+        synchronized (syncLock) {
+            channel.force(false);
+            channel.close();
+            syncedSeq = writeSeq;
+            openSegment(previous + 1);
+        }
+        AtomicInteger count = outstanding.get(previous);
+        if (count != null && count.get() == 0) {
+            deleteSegment(previous, count);
+        }
+    }
+
+    private void openSegment(long segment) throws IOException {
+        channel = FileChannel.open(pathOf(segment),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        outstanding.put(segment, new AtomicInteger());
+        currentSize = 0;
+        currentSegment = segment;
+    }
+
+    private void deleteSegment(long segment, AtomicInteger count) {
+        // only the caller that removes the counter deletes the file
+        if (!outstanding.remove(segment, count)) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(pathOf(segment));
+            log.debug("Deleted payment journal segment {}", segment);
+        } catch (IOException e) {
+            log.warn("Could not delete payment journal segment {}", segment, e);
+        }
+    }
+
+    private int recover(Path file, long segment, List<Record> recovered) throws IOException {
+        int count = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    recovered.add(new Record(objectMapper.readValue(line, JournalEntry.class), segment));
+                    count++;
+                } catch (JacksonException e) {
+                    // a torn write at the tail of the last segment, the caller was never answered for it
+                    log.warn("Skipping unreadable entry in payment journal segment {}: {}", segment, e.getOriginalMessage());
+                }
+            }
+        }
+        return count;
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> SEGMENT_NAME.matcher(file.getFileName().toString()).matches())
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private long segmentOf(Path file) {
+        Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Not a journal segment: " + file);
+        }
+        return Long.parseLong(matcher.group(1));
+    }
+
+    private Path pathOf(long segment) {
+        return directory.resolve(String.format("segment-%019d.log", segment));
+    }
+
+    /**
+     * A journaled entry and the segment it was written to.
+     */
+    public record Record(JournalEntry entry, long segment) {
+    }
+}
@@ -0,0 +1,35 @@
+package com.payments.mapper;
+
+import com.payments.entity.AccountBalanceEntity;
+import com.payments.entity.LedgerEntryEntity;
+import com.payments.model.CurrencyBalance;
+import com.payments.model.LedgerEntry;
+import com.payments.util.Money;
+import org.springframework.stereotype.Component;
+
+@Component
+public class LedgerMapper {
+
+    public LedgerEntry toModel(LedgerEntryEntity entity) {
+        LedgerEntry entry = new LedgerEntry();
+        entry.setEntryId(entity.getId());
+        entry.setPaymentId(entity.getPaymentId().toString());
+        entry.setDirection(entity.getDirection());
+        entry.setAmount(Money.toDecimal(entity.getAmountMinor(), entity.getCurrency()));
+        entry.setCurrency(entity.getCurrency());
+        entry.setPaymentStatus(entity.getPaymentStatus());
+        entry.setPostedAt(entity.getPostedAt());
+        return entry;
+    }
+
+    public CurrencyBalance toModel(AccountBalanceEntity entity) {
+        CurrencyBalance balance = new CurrencyBalance();
+        balance.setCurrency(entity.getCurrency());
+        balance.setBalance(Money.toDecimal(entity.getBalanceMinor(), entity.getCurrency()));
+        balance.setTotalDebits(Money.toDecimal(entity.getTotalDebitsMinor(), entity.getCurrency()));
+        balance.setTotalCredits(Money.toDecimal(entity.getTotalCreditsMinor(), entity.getCurrency()));
+        balance.setEntryCount(entity.getEntryCount());
+        balance.setUpdatedAt(entity.getUpdatedAt());
+        return balance;
+    }
+}
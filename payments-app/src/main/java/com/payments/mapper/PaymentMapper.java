@@ -1,10 +1,13 @@
 package com.payments.mapper;
 
+import com.payments.dto.PaymentRow;
+import com.payments.entity.PartyEntity;
 import com.payments.entity.PaymentEntity;
 import com.payments.model.Party;
 import com.payments.model.Payment;
 import com.payments.model.PaymentRequest;
 import com.payments.model.PaymentStatus;
+import com.payments.util.Money;
 import org.springframework.stereotype.Component;
 
 import java.util.UUID;
@@ -12,36 +15,25 @@ import java.util.UUID;
 @Component
 public class PaymentMapper {
 
-    public PaymentEntity toEntity(PaymentRequest request) {
+    public PaymentEntity toEntity(PaymentRequest request, UUID paymentId) {
         if (request == null) {
             return null;
         }
         PaymentEntity entity = new PaymentEntity();
-        entity.setPaymentId(UUID.randomUUID().toString());
+        entity.setPaymentId(paymentId);
         entity.setUserName("Admin");
-        entity.setAmount(request.getAmount());
+        entity.setAmountMinor(Money.toMinorUnits(request.getAmount(), request.getCurrency()));
         entity.setCurrency(request.getCurrency());
         entity.setPaymentMethod(request.getPaymentMethod());
         entity.setStatus(PaymentStatus.PENDING);
 
-        // Map debtor details
         if (request.getDebtor() != null) {
-            entity.setDebtorName(request.getDebtor().getName());
+            entity.setDebtor(toPartyEntity(request.getDebtor()));
             entity.setDebtorAccountNumber(request.getDebtor().getAccountNumber());
-            entity.setDebtorBankCode(request.getDebtor().getBankCode());
-            entity.setDebtorAddress(request.getDebtor().getAddress());
-            entity.setDebtorEmail(request.getDebtor().getEmail());
-            entity.setDebtorPhoneNumber(request.getDebtor().getPhoneNumber());
         }
-
-        // Map creditor details
         if (request.getCreditor() != null) {
-            entity.setCreditorName(request.getCreditor().getName());
+            entity.setCreditor(toPartyEntity(request.getCreditor()));
             entity.setCreditorAccountNumber(request.getCreditor().getAccountNumber());
-            entity.setCreditorBankCode(request.getCreditor().getBankCode());
-            entity.setCreditorAddress(request.getCreditor().getAddress());
-            entity.setCreditorEmail(request.getCreditor().getEmail());
-            entity.setCreditorPhoneNumber(request.getCreditor().getPhoneNumber());
         }
 
         return entity;
@@ -53,38 +45,103 @@ public class PaymentMapper {
             return null;
         }
         Payment payment = new Payment();
-        payment.setPaymentId(entity.getPaymentId());
-        payment.setAmount(entity.getAmount());
+        payment.setPaymentId(entity.getPaymentId().toString());
+        payment.setAmount(Money.toDecimal(entity.getAmountMinor(), entity.getCurrency()));
         payment.setCurrency(entity.getCurrency());
         payment.setStatus(entity.getStatus());
         payment.setPaymentMethod(entity.getPaymentMethod());
         payment.setCreatedAt(entity.getCreatedAt());
         payment.setUpdatedAt(entity.getUpdatedAt());
+        payment.setVersion(entity.getVersion());
+
+        if (entity.getDebtor() != null) {
+            payment.setDebtor(toParty(entity.getDebtor()));
+        }
+        if (entity.getCreditor() != null) {
+            payment.setCreditor(toParty(entity.getCreditor()));
+        }
+
+        return payment;
+    }
+
+    public Payment toModel(PaymentRow row) {
+        if (row == null) {
+            return null;
+        }
+        Payment payment = new Payment();
+        payment.setPaymentId(row.paymentId().toString());
+        payment.setAmount(Money.toDecimal(row.amountMinor(), row.currency()));
+        payment.setCurrency(row.currency());
+        payment.setStatus(row.status());
+        payment.setPaymentMethod(row.paymentMethod());
+        payment.setCreatedAt(row.createdAt());
+        payment.setUpdatedAt(row.updatedAt());
+        payment.setVersion(row.version());
 
-        // Map debtor details
-        if (entity.getDebtorName() != null) {
+        if (row.debtorName() != null) {
             Party debtor = new Party();
-            debtor.setName(entity.getDebtorName());
-            debtor.setAccountNumber(entity.getDebtorAccountNumber());
-            debtor.setBankCode(entity.getDebtorBankCode());
-            debtor.setAddress(entity.getDebtorAddress());
-            debtor.setEmail(entity.getDebtorEmail());
-            debtor.setPhoneNumber(entity.getDebtorPhoneNumber());
+            debtor.setName(row.debtorName());
+            debtor.setAccountNumber(row.debtorAccountNumber());
+            debtor.setBankCode(row.debtorBankCode());
+            debtor.setAddress(row.debtorAddress());
+            debtor.setEmail(row.debtorEmail());
+            debtor.setPhoneNumber(row.debtorPhoneNumber());
             payment.setDebtor(debtor);
         }
-
-        // Map creditor details
-        if (entity.getCreditorName() != null) {
+        if (row.creditorName() != null) {
             Party creditor = new Party();
-            creditor.setName(entity.getCreditorName());
-            creditor.setAccountNumber(entity.getCreditorAccountNumber());
-            creditor.setBankCode(entity.getCreditorBankCode());
-            creditor.setAddress(entity.getCreditorAddress());
-            creditor.setEmail(entity.getCreditorEmail());
-            creditor.setPhoneNumber(entity.getCreditorPhoneNumber());
+            creditor.setName(row.creditorName());
+            creditor.setAccountNumber(row.creditorAccountNumber());
+            creditor.setBankCode(row.creditorBankCode());
+            creditor.setAddress(row.creditorAddress());
+            creditor.setEmail(row.creditorEmail());
+            creditor.setPhoneNumber(row.creditorPhoneNumber());
             payment.setCreditor(creditor);
         }
+        return payment;
+    }
 
+    public Payment copy(Payment source) {
+        if (source == null) {
+            return null;
+        }
+        Payment payment = new Payment();
+        payment.setPaymentId(source.getPaymentId());
+        payment.setAmount(source.getAmount());
+        payment.setCurrency(source.getCurrency());
+        payment.setStatus(source.getStatus());
+        payment.setPaymentMethod(source.getPaymentMethod());
+        payment.setCreatedAt(source.getCreatedAt());
+        payment.setUpdatedAt(source.getUpdatedAt());
+        payment.setVersion(source.getVersion());
+        payment.setDebtor(source.getDebtor());
+        payment.setCreditor(source.getCreditor());
         return payment;
     }
-}
\ No newline at end of file
+
+    /**
+     * Unsaved party with the given details, {@link com.payments.service.PartyService#resolveParties} swaps it
+     * for the stored one before the payment is saved.
+     */
+    private PartyEntity toPartyEntity(Party party) {
+        PartyEntity entity = new PartyEntity();
+        entity.setName(party.getName());
+        entity.setAccountNumber(party.getAccountNumber());
+        entity.setBankCode(party.getBankCode());
+        entity.setAddress(party.getAddress());
+        entity.setEmail(party.getEmail());
+        entity.setPhoneNumber(party.getPhoneNumber());
+        return entity;
+    }
+
+    private Party toParty(PartyEntity entity) {
+        Party party = new Party();
+        party.setName(entity.getName());
+        party.setAccountNumber(entity.getAccountNumber());
+        party.setBankCode(entity.getBankCode());
+        party.setAddress(entity.getAddress());
+        party.setEmail(entity.getEmail());
+        party.setPhoneNumber(entity.getPhoneNumber());
+        return party;
+    }
+}
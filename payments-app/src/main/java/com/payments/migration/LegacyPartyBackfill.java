@@ -0,0 +1,166 @@
+package com.payments.migration;
+
+import com.payments.entity.PartyEntity;
+import com.payments.entity.PaymentEntity;
+import com.payments.service.PartyService;
+import com.payments.sharding.PaymentShards;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Moves debtor and creditor details of payments stored before parties had their own table into
+ * {@code parties}. Those payments still have the inline {@code debtor_*} and {@code creditor_*} columns, which
+ * {@code ddl-auto: update} leaves in place, but no party references. On startup, before the service takes
+ * requests, each shard's legacy rows are resolved through {@link PartyService} chunk by chunk and their
+ * {@code debtor_party_id} and {@code creditor_party_id} set. Version and {@code updatedAt} are not touched, the
+ * payment did not change. The old columns are kept, nothing reads them any more.
+ * <p>
+ * A shard that was backfilled is recorded in {@code data_migrations} and skipped from then on, so later startups
+ * do not scan its payments again. Its legacy columns can then be dropped by hand.
+ */
+@Slf4j
+@Component
+public class LegacyPartyBackfill implements SmartInitializingSingleton {
+
+    private static final int CHUNK_SIZE = 500;
+    private static final String LEGACY_COLUMN = "debtor_name";
+    private static final String MIGRATION = "legacy-party-backfill";
+
+    private static final String SELECT_COMPLETED = "select count(*) from data_migrations where name = ?1";
+
+    private static final String INSERT_COMPLETED = "insert into data_migrations (name, completed_at) values (?1, ?2)";
+
+    private static final String SELECT_CHUNK = """
+            select id,
+                   debtor_name, debtor_account_number, debtor_bank_code, debtor_address, debtor_email,
+                   debtor_phone_number,
+                   creditor_name, creditor_account_number, creditor_bank_code, creditor_address, creditor_email,
+                   creditor_phone_number
+            from payments
+            where id > ?1
+              and (debtor_party_id is null and debtor_name is not null and debtor_account_number is not null
+                or creditor_party_id is null and creditor_name is not null and creditor_account_number is not null)
+            order by id""";
+
+    private static final String UPDATE_PARTIES = """
+            update payments
+            set debtor_party_id = coalesce(debtor_party_id, ?1),
+                creditor_party_id = coalesce(creditor_party_id, ?2)
+            where id = ?3""";
+
+    private final EntityManager entityManager;
+    private final PartyService partyService;
+    private final PaymentShards paymentShards;
+    private final TransactionTemplate transactionTemplate;
+
+    public LegacyPartyBackfill(EntityManager entityManager,
+                               PartyService partyService,
+                               PaymentShards paymentShards,
+                               TransactionTemplate transactionTemplate) {
+        this.entityManager = entityManager;
+        this.partyService = partyService;
+        this.paymentShards = paymentShards;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        for (int shard = 0; shard < paymentShards.shardCount(); shard++) {
+            int current = shard;
+            paymentShards.onShard(shard, () -> {
+                backfill(current);
+                return null;
+            });
+        }
+    }
+
+    private void backfill(int shard) {
+        if (!Boolean.TRUE.equals(transactionTemplate.execute(status -> !isCompleted() && hasLegacyColumns()))) {
+            return;
+        }
+        long start = System.nanoTime();
+        long rows = 0;
+        // ids start at 2 - allocationSize, the pooled optimizer takes the first block below the first sequence value
+        long after = Long.MIN_VALUE;
+        while (true) {
+            long from = after;
+            List<Object[]> chunk = transactionTemplate.execute(status -> backfillChunk(from));
+            if (chunk.isEmpty()) {
+                break;
+            }
+            rows += chunk.size();
+            after = ((Number) chunk.getLast()[0]).longValue();
+        }
+        transactionTemplate.executeWithoutResult(status -> entityManager.createNativeQuery(INSERT_COMPLETED)
+                .setParameter(1, MIGRATION)
+                .setParameter(2, LocalDateTime.now())
+                .executeUpdate());
+        if (rows > 0) {
+            log.info("Moved the parties of {} legacy payments on shard {} into the parties table in {} ms", rows,
+                    shard, (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Object[]> backfillChunk(long after) {
+        List<Object[]> rows = entityManager.createNativeQuery(SELECT_CHUNK)
+                .setParameter(1, after)
+                .setMaxResults(CHUNK_SIZE)
+                .getResultList();
+        if (rows.isEmpty()) {
+            return rows;
+        }
+        // unsaved holders only carry the parties to resolve, they never enter the persistence context
+        List<PaymentEntity> holders = rows.stream().map(row -> {
+            PaymentEntity holder = new PaymentEntity();
+            holder.setDebtor(party(row, 1));
+            holder.setCreditor(party(row, 7));
+            return holder;
+        }).toList();
+        partyService.resolveParties(holders);
+        for (int i = 0; i < rows.size(); i++) {
+            PaymentEntity holder = holders.get(i);
+            entityManager.createNativeQuery(UPDATE_PARTIES)
+                    .setParameter(1, holder.getDebtor() != null ? holder.getDebtor().getId() : null)
+                    .setParameter(2, holder.getCreditor() != null ? holder.getCreditor().getId() : null)
+                    .setParameter(3, rows.get(i)[0])
+                    .executeUpdate();
+        }
+        return rows;
+    }
+
+    private static PartyEntity party(Object[] row, int offset) {
+        // a party needs a name and an account number, a legacy row without them keeps no party
+        if (row[offset] == null || row[offset + 1] == null) {
+            return null;
+        }
+        return new PartyEntity(null, null, (String) row[offset], (String) row[offset + 1], (String) row[offset + 2],
+                (String) row[offset + 3], (String) row[offset + 4], (String) row[offset + 5]);
+    }
+
+    private boolean isCompleted() {
+        return ((Number) entityManager.createNativeQuery(SELECT_COMPLETED)
+                .setParameter(1, MIGRATION)
+                .getSingleResult()).longValue() > 0;
+    }
+
+    private boolean hasLegacyColumns() {
+        return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            DatabaseMetaData metaData = connection.getMetaData();
+            String table = metaData.storesUpperCaseIdentifiers() ? "PAYMENTS" : "payments";
+            String column = metaData.storesUpperCaseIdentifiers() ? LEGACY_COLUMN.toUpperCase() : LEGACY_COLUMN;
+            try (ResultSet columns = metaData.getColumns(connection.getCatalog(), null, table, column)) {
+                return columns.next();
+            }
+        });
+    }
+}
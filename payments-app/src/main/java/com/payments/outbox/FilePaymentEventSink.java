@@ -0,0 +1,69 @@
+package com.payments.outbox;
+
+import com.payments.config.OutboxProperties;
+import com.payments.dto.PaymentEvent;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Appends events to a local file, one JSON document per line.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "payment.outbox", name = "sink", havingValue = "file", matchIfMissing = true)
+public class FilePaymentEventSink implements PaymentEventSink {
+
+    private final Path file;
+    private final ObjectMapper objectMapper;
+    private BufferedWriter writer;
+
+    public FilePaymentEventSink(OutboxProperties properties, ObjectMapper objectMapper) {
+        this.file = properties.file();
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public synchronized void publish(List<PaymentEvent> events) {
+        try {
+            if (writer == null) {
+                if (file.getParent() != null) {
+                    Files.createDirectories(file.getParent());
+                }
+                writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            for (PaymentEvent event : events) {
+                writer.write(objectMapper.writeValueAsString(event));
+                writer.newLine();
+            }
+            // one flush per batch, the relay deletes the batch from the outbox once this returns
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write payment events to " + file, e);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            log.warn("Could not close payment event file {}", file, e);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.payments.outbox;
+
+import com.payments.config.OutboxProperties;
+import com.payments.dto.PaymentEvent;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Keeps the most recent events in memory, for tests. The relay deletes published events from the outbox, so
+ * events are lost once they fall out of the memory or the service restarts.
+ */
+@Component
+@ConditionalOnProperty(prefix = "payment.outbox", name = "sink", havingValue = "memory")
+public class InMemoryPaymentEventSink implements PaymentEventSink {
+
+    private final int capacity;
+    private final Deque<PaymentEvent> events;
+
+    public InMemoryPaymentEventSink(OutboxProperties properties) {
+        this.capacity = Math.max(1, properties.memoryCapacity());
+        this.events = new ArrayDeque<>(capacity);
+    }
+
+    @Override
+    public synchronized void publish(List<PaymentEvent> batch) {
+        for (PaymentEvent event : batch) {
+            if (events.size() == capacity) {
+                events.removeFirst();
+            }
+            events.addLast(event);
+        }
+    }
+
+    public synchronized List<PaymentEvent> events() {
+        return List.copyOf(events);
+    }
+
+    public synchronized void clear() {
+        events.clear();
+    }
+}
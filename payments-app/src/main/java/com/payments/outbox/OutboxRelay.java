@@ -0,0 +1,127 @@
+package com.payments.outbox;
+
+import com.payments.config.OutboxProperties;
+import com.payments.dto.PaymentEvent;
+import com.payments.entity.OutboxEventEntity;
+import com.payments.model.Payment;
+import com.payments.repository.OutboxEventRepository;
+import com.payments.sharding.PaymentShards;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import tools.jackson.databind.ObjectMapper;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes outbox events to the {@link PaymentEventSink}. Each batch is claimed with a skip-locked select,
+ * published and deleted with one statement in a single transaction, and batches are drained until the outbox
+ * is empty. Events are ordered by id within an instance, concurrent relays may interleave batches. With sharding
+ * every shard has its own outbox, they are drained one after the other.
+ */
+@Slf4j
+@Component
+public class OutboxRelay {
+
+    private final OutboxEventRepository repository;
+    private final PaymentEventSink sink;
+    private final TransactionTemplate transactionTemplate;
+    private final PaymentShards paymentShards;
+    private final ObjectMapper objectMapper;
+    private final OutboxProperties properties;
+    private final AtomicLong oldestAgeMillis = new AtomicLong();
+    private final Counter published;
+    private final DistributionSummary batchSize;
+    private final Timer lag;
+
+    public OutboxRelay(OutboxEventRepository repository,
+                       PaymentEventSink sink,
+                       TransactionTemplate transactionTemplate,
+                       PaymentShards paymentShards,
+                       ObjectMapper objectMapper,
+                       OutboxProperties properties,
+                       MeterRegistry meterRegistry) {
+        this.repository = repository;
+        this.sink = sink;
+        this.transactionTemplate = transactionTemplate;
+        this.paymentShards = paymentShards;
+        this.objectMapper = objectMapper;
+        this.properties = properties;
+        Gauge.builder("payment.outbox.oldest.age", oldestAgeMillis, age -> age.get() / 1000.0)
+                .description("Age in seconds of the oldest event not yet relayed, as of the last relay run")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        this.published = Counter.builder("payment.outbox.published")
+                .description("Payment events published to the sink")
+                .register(meterRegistry);
+        this.batchSize = DistributionSummary.builder("payment.outbox.batch.size")
+                .description("Payment events published per relay transaction")
+                .register(meterRegistry);
+        this.lag = Timer.builder("payment.outbox.lag")
+                .description("Time from writing a payment event to publishing it")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${payment.outbox.poll-interval:200ms}")
+    public void relay() {
+        if (!properties.enabled()) {
+            return;
+        }
+        long oldest = 0;
+        for (int shard = 0; shard < paymentShards.shardCount(); shard++) {
+            oldest = Math.max(oldest, paymentShards.onShard(shard, this::drain));
+        }
+        oldestAgeMillis.set(oldest);
+    }
+
+    /**
+     * @return Age in milliseconds of the oldest event left in the outbox by a failure, 0 once it is drained
+     */
+    private long drain() {
+        try {
+            int claimed;
+            do {
+                claimed = transactionTemplate.execute(status -> relayBatch());
+            } while (claimed == properties.batchSize());
+            return 0;
+        } catch (RuntimeException ex) {
+            // the batch stays in the outbox and is retried on the next run
+            log.error("Relaying payment events failed", ex);
+            return repository.findFirstByOrderByIdAsc()
+                    .map(oldest -> Duration.between(oldest.getOccurredAt(), LocalDateTime.now()).toMillis())
+                    .orElse(0L);
+        }
+    }
+
+    private int relayBatch() {
+        List<OutboxEventEntity> claimed = repository.findByOrderByIdAsc(Limit.of(properties.batchSize()));
+        if (claimed.isEmpty()) {
+            return 0;
+        }
+        sink.publish(claimed.stream().map(this::toEvent).toList());
+        repository.deleteAllByIdInBatch(claimed.stream().map(OutboxEventEntity::getId).toList());
+
+        LocalDateTime now = LocalDateTime.now();
+        claimed.forEach(event -> lag.record(Duration.between(event.getOccurredAt(), now)));
+        published.increment(claimed.size());
+        batchSize.record(claimed.size());
+        log.debug("Relayed {} payment events", claimed.size());
+        return claimed.size();
+    }
+
+    private PaymentEvent toEvent(OutboxEventEntity entity) {
+        Payment payment = entity.getPayload() == null ? null : objectMapper.readValue(entity.getPayload(), Payment.class);
+        return new PaymentEvent(entity.getId(), entity.getEventType(), entity.getPaymentId().toString(),
+                entity.getStatus(), entity.getPreviousStatus(), entity.getOccurredAt(), payment);
+    }
+}
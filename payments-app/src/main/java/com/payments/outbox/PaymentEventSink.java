@@ -0,0 +1,14 @@
+package com.payments.outbox;
+
+import com.payments.dto.PaymentEvent;
+
+import java.util.List;
+
+/**
+ * Destination of relayed payment events. A batch is removed from the outbox only if {@link #publish} returns
+ * normally, an exception leaves it in place to be published again, so sinks see events at least once.
+ */
+public interface PaymentEventSink {
+
+    void publish(List<PaymentEvent> events);
+}
@@ -0,0 +1,63 @@
+package com.payments.outbox;
+
+import com.payments.config.OutboxProperties;
+import com.payments.dto.PaymentEventType;
+import com.payments.dto.PaymentSnapshot;
+import com.payments.entity.OutboxEventEntity;
+import com.payments.entity.PaymentEntity;
+import com.payments.mapper.PaymentMapper;
+import com.payments.model.PaymentStatus;
+import com.payments.repository.OutboxEventRepository;
+import lombok.AllArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import tools.jackson.databind.ObjectMapper;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Records payment events in the outbox table. Every method joins the caller's transaction, an event is
+ * committed together with the payment change or not at all. {@link OutboxRelay} publishes them afterwards.
+ */
+@Component
+@AllArgsConstructor
+@Transactional(propagation = Propagation.MANDATORY)
+public class PaymentOutbox {
+
+    private final OutboxEventRepository repository;
+    private final PaymentMapper paymentMapper;
+    private final ObjectMapper objectMapper;
+    private final OutboxProperties properties;
+
+    public void paymentsCreated(List<PaymentEntity> payments) {
+        if (!properties.enabled() || payments.isEmpty()) {
+            return;
+        }
+        repository.saveAll(payments.stream()
+                .map(payment -> new OutboxEventEntity(null, PaymentEventType.PAYMENT_CREATED, payment.getPaymentId(),
+                        payment.getStatus(), null, payment.getCreatedAt(),
+                        objectMapper.writeValueAsString(paymentMapper.toModel(payment))))
+                .toList());
+    }
+
+    public void statusChanged(PaymentEntity payment, PaymentStatus previousStatus) {
+        if (!properties.enabled()) {
+            return;
+        }
+        repository.save(new OutboxEventEntity(null, PaymentEventType.PAYMENT_STATUS_CHANGED, payment.getPaymentId(),
+                payment.getStatus(), previousStatus, payment.getUpdatedAt(), null));
+    }
+
+    public void statusChanged(Collection<PaymentSnapshot> before, PaymentStatus status, LocalDateTime occurredAt) {
+        if (!properties.enabled() || before.isEmpty()) {
+            return;
+        }
+        repository.saveAll(before.stream()
+                .map(payment -> new OutboxEventEntity(null, PaymentEventType.PAYMENT_STATUS_CHANGED, payment.paymentId(),
+                        status, payment.status(), occurredAt, null))
+                .toList());
+    }
+}
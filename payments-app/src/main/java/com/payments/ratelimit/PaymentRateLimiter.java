@@ -0,0 +1,205 @@
+package com.payments.ratelimit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.payments.config.RateLimitProperties;
+import com.payments.exception.RateLimitExceededException;
+import com.payments.model.PaymentRequest;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits how fast payments are created, per authenticated principal and per debtor account, so that a single
+ * client or a single account cannot take all the capacity. Each principal and each account has a
+ * {@link RateLimitBucket}. The buckets live in size-bounded caches that evict rarely and least recently seen
+ * keys. A bucket idle long enough to refill holds nothing a new one would not, so an evicted key only loses
+ * its state if it was evicted while still draining. There is deliberately no expiry on access, tracking it
+ * costs more than the rest of the check. The limits of a request are those of the role
+ * of its principal, including the limit applied to its debtor account.
+ * <p>
+ * A batch takes one request per payment it holds, and a file is paced to the rate of the principal who
+ * submitted it, so neither is a way around the limits of single payments.
+ */
+@Slf4j
+@Component
+public class PaymentRateLimiter {
+
+    private static final String ROLE_PREFIX = "ROLE_";
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private final boolean enabled;
+    private final Limits defaults;
+    private final Map<String, Limits> roleLimits = new HashMap<>();
+    private final Cache<String, RateLimitBucket> principals;
+    private final Cache<String, RateLimitBucket> debtors;
+    private final Counter principalRejected;
+    private final Counter debtorRejected;
+
+    public PaymentRateLimiter(RateLimitProperties properties, MeterRegistry meterRegistry) {
+        this.enabled = properties.enabled();
+        this.defaults = Limits.of(properties.defaults());
+        properties.roles().forEach((role, limits) -> roleLimits.put(ROLE_PREFIX + role, Limits.of(limits)));
+        this.principals = newBuckets(properties);
+        this.debtors = newBuckets(properties);
+        this.principalRejected = rejectedCounter(meterRegistry, "principal");
+        this.debtorRejected = rejectedCounter(meterRegistry, "debtor");
+    }
+
+    /**
+     * Take one request from the buckets of the current principal and of the debtor account of the payment.
+     *
+     * @throws RateLimitExceededException if either is exhausted
+     */
+    public void acquire(PaymentRequest request) {
+        if (!enabled) {
+            return;
+        }
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        Limits limits = limitsOf(authentication);
+        long now = System.nanoTime();
+        acquirePrincipal(authentication, limits, now, 1);
+        String debtor = request.getDebtor() == null ? null : request.getDebtor().getAccountNumber();
+        if (debtor != null) {
+            acquireDebtor(debtor, limits, now, 1);
+        }
+    }
+
+    /**
+     * Take a batch of payments at once, one request per payment from the bucket of the current principal and from
+     * the bucket of each debtor account. A batch is allowed while the buckets are not exhausted, however many
+     * payments it holds, and then keeps them exhausted until its payments are paid off at the sustained rate.
+     *
+     * @throws RateLimitExceededException if any of the buckets is exhausted
+     */
+    public void acquire(List<PaymentRequest> requests) {
+        if (!enabled || requests.isEmpty()) {
+            return;
+        }
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        Limits limits = limitsOf(authentication);
+        long now = System.nanoTime();
+        acquirePrincipal(authentication, limits, now, requests.size());
+        Map<String, Integer> debtorPayments = new HashMap<>();
+        for (PaymentRequest request : requests) {
+            if (request.getDebtor() != null && request.getDebtor().getAccountNumber() != null) {
+                debtorPayments.merge(request.getDebtor().getAccountNumber(), 1, Integer::sum);
+            }
+        }
+        debtorPayments.forEach((debtor, payments) -> acquireDebtor(debtor, limits, now, payments));
+    }
+
+    /**
+     * Take payments stored from a file from the bucket of the principal who submitted it, waiting until the bucket
+     * allows them. A file is already accepted when its payments are stored, so it is slowed down to the rate of
+     * its principal rather than rejected. Debtor accounts are not limited, a file commonly debits one account for
+     * all of its payments.
+     *
+     * @param authentication principal who submitted the file, nothing is taken if {@code null}
+     * @param payments       number of payments about to be stored
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void await(Authentication authentication, int payments) throws InterruptedException {
+        if (!enabled || authentication == null || payments <= 0) {
+            return;
+        }
+        Limits limits = limitsOf(authentication);
+        RateLimitBucket bucket = bucket(principals, authentication.getName(), System.nanoTime());
+        long wait;
+        while ((wait = bucket.tryAcquire(System.nanoTime(), limits.principalInterval(), limits.principalTolerance(),
+                payments)) > 0) {
+            log.debug("Payment file of principal {} waits {} ms for its rate limit", authentication.getName(),
+                    wait / 1_000_000);
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    private void acquirePrincipal(Authentication authentication, Limits limits, long now, int payments) {
+        if (authentication == null) {
+            return;
+        }
+        long wait = bucket(principals, authentication.getName(), now)
+                .tryAcquire(now, limits.principalInterval(), limits.principalTolerance(), payments);
+        if (wait > 0) {
+            principalRejected.increment();
+            log.debug("Payment rate limit of principal {} exceeded", authentication.getName());
+            throw new RateLimitExceededException("Too many payments created by this client, retry later",
+                    Duration.ofNanos(wait));
+        }
+    }
+
+    private void acquireDebtor(String debtor, Limits limits, long now, int payments) {
+        long wait = bucket(debtors, debtor, now)
+                .tryAcquire(now, limits.debtorInterval(), limits.debtorTolerance(), payments);
+        if (wait > 0) {
+            debtorRejected.increment();
+            log.debug("Payment rate limit of debtor account {} exceeded", debtor);
+            throw new RateLimitExceededException("Too many payments debiting account " + debtor + ", retry later",
+                    Duration.ofNanos(wait));
+        }
+    }
+
+    // the most generous limits of the configured roles the principal has
+    private Limits limitsOf(Authentication authentication) {
+        if (authentication == null || roleLimits.isEmpty()) {
+            return defaults;
+        }
+        Limits limits = null;
+        for (GrantedAuthority authority : authentication.getAuthorities()) {
+            Limits candidate = roleLimits.get(authority.getAuthority());
+            if (candidate != null && (limits == null || candidate.principalInterval() < limits.principalInterval())) {
+                limits = candidate;
+            }
+        }
+        return limits != null ? limits : defaults;
+    }
+
+    private static RateLimitBucket bucket(Cache<String, RateLimitBucket> buckets, String key, long now) {
+        RateLimitBucket bucket = buckets.getIfPresent(key);
+        return bucket != null ? bucket : buckets.get(key, k -> new RateLimitBucket(now));
+    }
+
+    private static Cache<String, RateLimitBucket> newBuckets(RateLimitProperties properties) {
+        return Caffeine.newBuilder()
+                .maximumSize(properties.maxKeys())
+                .build();
+    }
+
+    private static Counter rejectedCounter(MeterRegistry meterRegistry, String key) {
+        return Counter.builder("payment.rate-limit.rejected")
+                .description("Payment requests rejected by the rate limiter")
+                .tag("key", key)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Limits as bucket parameters, the nanos between two requests at the sustained rate and how far the bucket
+     * may run ahead of now to allow the burst.
+     */
+    private record Limits(long principalInterval, long principalTolerance, long debtorInterval, long debtorTolerance) {
+
+        static Limits of(RateLimitProperties.Limits limits) {
+            long principalInterval = interval(limits.principalRate());
+            long debtorInterval = interval(limits.debtorRate());
+            return new Limits(principalInterval, principalInterval * (Math.max(1, limits.principalBurst()) - 1),
+                    debtorInterval, debtorInterval * (Math.max(1, limits.debtorBurst()) - 1));
+        }
+
+        private static long interval(double ratePerSecond) {
+            if (!(ratePerSecond > 0)) {
+                throw new IllegalArgumentException("Payment rate limits must be positive, got " + ratePerSecond);
+            }
+            return Math.max(1, Math.round(NANOS_PER_SECOND / ratePerSecond));
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.payments.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket kept as a single timestamp, the generic cell rate algorithm. The timestamp is when the bucket
+ * would be full again, each request moves it one emission interval ahead and is allowed as long as it stays
+ * within the burst tolerance of now. A request is one CAS on one long, no lock is taken and nothing allocated.
+ * The rule is passed on every call, so the same bucket can be drained under the rule of whoever calls.
+ */
+final class RateLimitBucket {
+
+    private final AtomicLong fullAt;
+
+    RateLimitBucket(long now) {
+        this.fullAt = new AtomicLong(now);
+    }
+
+    /**
+     * @param now       {@link System#nanoTime()}
+     * @param interval  nanos between requests at the sustained rate
+     * @param tolerance nanos the bucket may run ahead of now, {@code (burst - 1) * interval}
+     * @return 0 if the request is allowed, otherwise the nanos until it would be
+     */
+    long tryAcquire(long now, long interval, long tolerance) {
+        return tryAcquire(now, interval, tolerance, 1);
+    }
+
+    /**
+     * Takes several requests at once. They are allowed as long as the bucket is not exhausted, even when there are
+     * more of them than the burst: the bucket then runs further ahead and takes that much longer to allow the next
+     * request, so a batch larger than the burst is not rejected forever.
+     *
+     * @param now       {@link System#nanoTime()}
+     * @param interval  nanos between requests at the sustained rate
+     * @param tolerance nanos the bucket may run ahead of now, {@code (burst - 1) * interval}
+     * @param permits   number of requests taken
+     * @return 0 if the requests are allowed, otherwise the nanos until they would be
+     */
+    long tryAcquire(long now, long interval, long tolerance, int permits) {
+        while (true) {
+            long current = fullAt.get();
+            long wait = current - tolerance - now;
+            if (wait > 0) {
+                return wait;
+            }
+            if (fullAt.compareAndSet(current, Math.max(current, now) + interval * permits)) {
+                return 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.payments.replica;
+
+import java.util.function.Supplier;
+
+/**
+ * Whether read-only transactions of the current thread must read the primary instead of a replica, because the
+ * client just wrote and has to see its own writes, or because the reader cannot tolerate replication lag.
+ */
+public final class PrimaryReads {
+
+    private static final ThreadLocal<Boolean> REQUIRED = new ThreadLocal<>();
+
+    private PrimaryReads() {
+    }
+
+    public static boolean isRequired() {
+        return REQUIRED.get() != null;
+    }
+
+    /**
+     * Run work with primary reads required or not, e.g. on another thread with the setting of the caller.
+     */
+    public static <T> T call(boolean required, Supplier<T> work) {
+        Boolean previous = REQUIRED.get();
+        set(required);
+        try {
+            return work.get();
+        } finally {
+            set(previous != null);
+        }
+    }
+
+    static void set(boolean required) {
+        if (required) {
+            REQUIRED.set(Boolean.TRUE);
+        } else {
+            REQUIRED.remove();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.payments.replica;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import java.util.Set;
+
+/**
+ * Read-your-writes for authenticated clients: a request that may write reads the primary, and once it succeeded
+ * its principal's reads stay on the primary for a while, until the replicas have most likely caught up.
+ * Anonymous requests always read wherever the routing sends them.
+ */
+public class ReadYourWritesInterceptor implements AsyncHandlerInterceptor {
+
+    private static final Set<String> SAFE_METHODS = Set.of("GET", "HEAD", "OPTIONS");
+
+    private final ReplicaRouting replicaRouting;
+
+    public ReadYourWritesInterceptor(ReplicaRouting replicaRouting) {
+        this.replicaRouting = replicaRouting;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        String client = clientOf();
+        PrimaryReads.set(client != null && (!isSafe(request) || replicaRouting.isPinned(client)));
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        PrimaryReads.set(false);
+        String client = clientOf();
+        if (client != null && !isSafe(request) && ex == null && response.getStatus() < 400) {
+            replicaRouting.pin(client);
+        }
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+                                               Object handler) {
+        PrimaryReads.set(false);
+    }
+
+    private static boolean isSafe(HttpServletRequest request) {
+        return SAFE_METHODS.contains(request.getMethod());
+    }
+
+    private static String clientOf() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication == null || authentication instanceof AnonymousAuthenticationToken
+                ? null : authentication.getName();
+    }
+}
@@ -0,0 +1,81 @@
+package com.payments.replica;
+
+import com.payments.config.ReplicaProperties;
+import com.payments.jdbc.QueryMetrics;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.autoconfigure.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+/**
+ * Read replicas for read-only transactions. The datasource is a lazy proxy: it only takes a connection at the
+ * first statement, when the transaction has marked it read-only, and then takes it from the {@link ReplicaSet}
+ * instead of the primary. Such transactions do not fill the second-level cache, see {@link ReplicaReadsCacheMode}.
+ * With sharding enabled the shard configuration sets up the replicas of every shard, here only those of
+ * {@code spring.datasource}.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "payment.replicas", name = "enabled", havingValue = "true")
+public class ReplicaConfiguration {
+
+    @Bean
+    ReplicaReadsCacheMode replicaReadsCacheMode(EntityManagerFactory entityManagerFactory) {
+        return new ReplicaReadsCacheMode(entityManagerFactory);
+    }
+
+    @Bean
+    ReadYourWritesInterceptor readYourWritesInterceptor(ReplicaRouting replicaRouting) {
+        return new ReadYourWritesInterceptor(replicaRouting);
+    }
+
+    @Bean
+    WebMvcConfigurer readYourWritesConfigurer(ReadYourWritesInterceptor interceptor) {
+        return new WebMvcConfigurer() {
+            @Override
+            public void addInterceptors(InterceptorRegistry registry) {
+                registry.addInterceptor(interceptor);
+            }
+        };
+    }
+
+    // component scanning picks up this class on its own, the condition of the enclosing class does not apply to it
+    @Configuration
+    @ConditionalOnProperty(prefix = "payment.replicas", name = "enabled", havingValue = "true")
+    @ConditionalOnProperty(prefix = "payment.sharding", name = "enabled", havingValue = "false", matchIfMissing = true)
+    static class PrimaryReplicaConfiguration {
+
+        @Bean
+        @ConfigurationProperties("spring.datasource.hikari")
+        HikariDataSource primaryDataSource(DataSourceProperties properties) {
+            return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        }
+
+        @Bean
+        ReplicaRouting replicaRouting(HikariDataSource primaryDataSource, ReplicaProperties properties,
+                                      MeterRegistry meterRegistry) {
+            return new ReplicaRouting(List.of(new ReplicaSet("primary", primaryDataSource, properties.replicas(),
+                    properties, meterRegistry)), properties);
+        }
+
+        @Bean
+        @Primary
+        DataSource dataSource(HikariDataSource primaryDataSource, ReplicaRouting replicaRouting,
+                              QueryMetrics queryMetrics) {
+            LazyConnectionDataSourceProxy dataSource =
+                    new LazyConnectionDataSourceProxy(queryMetrics.instrument(primaryDataSource));
+            dataSource.setReadOnlyDataSource(queryMetrics.instrument(replicaRouting.replicaSets().getFirst()));
+            return dataSource;
+        }
+    }
+}
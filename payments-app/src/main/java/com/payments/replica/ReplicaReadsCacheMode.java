@@ -0,0 +1,40 @@
+package com.payments.replica;
+
+import jakarta.persistence.CacheStoreMode;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.hibernate.jpa.SpecHints;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.transaction.TransactionExecution;
+import org.springframework.transaction.TransactionExecutionListener;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Keeps what a replica returns out of the second-level and query caches. A read-only transaction that may read a
+ * replica only reads the caches, {@link CacheMode#GET}, a lagging replica would otherwise put old entities or
+ * query results there for every reader of the primary. Such a transaction still takes what the cache holds,
+ * entries are put by transactions on the primary and evicted by the writes that change them.
+ */
+class ReplicaReadsCacheMode implements TransactionExecutionListener {
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    ReplicaReadsCacheMode(EntityManagerFactory entityManagerFactory) {
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    @Override
+    public void afterBegin(TransactionExecution transaction, Throwable beginFailure) {
+        if (beginFailure != null || !transaction.isReadOnly() || PrimaryReads.isRequired()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.getResource(entityManagerFactory) instanceof EntityManagerHolder holder) {
+            EntityManager entityManager = holder.getEntityManager();
+            entityManager.unwrap(Session.class).setCacheMode(CacheMode.GET);
+            // find() takes its cache mode from the entity manager properties rather than from the session
+            entityManager.setProperty(SpecHints.HINT_SPEC_CACHE_STORE_MODE, CacheStoreMode.BYPASS);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.payments.replica;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.payments.config.ReplicaProperties;
+import jakarta.annotation.PreDestroy;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.util.List;
+
+/**
+ * The {@link ReplicaSet}s of all primaries, one per shard or one for {@code spring.datasource}, and the clients
+ * recently seen writing, whose reads stay on the primary for {@code payment.replicas.read-your-writes}.
+ */
+public class ReplicaRouting {
+
+    private final List<ReplicaSet> replicaSets;
+    private final Cache<String, Boolean> writers;
+
+    public ReplicaRouting(List<ReplicaSet> replicaSets, ReplicaProperties properties) {
+        this.replicaSets = List.copyOf(replicaSets);
+        this.writers = properties.readYourWrites().isPositive()
+                ? Caffeine.newBuilder()
+                .maximumSize(properties.maxPinnedClients())
+                .expireAfterWrite(properties.readYourWrites())
+                .build()
+                : null;
+    }
+
+    public List<ReplicaSet> replicaSets() {
+        return replicaSets;
+    }
+
+    /**
+     * Keep the client's reads on the primary for a while, it just wrote.
+     */
+    void pin(String client) {
+        if (writers != null) {
+            writers.put(client, Boolean.TRUE);
+        }
+    }
+
+    boolean isPinned(String client) {
+        return writers != null && writers.getIfPresent(client) != null;
+    }
+
+    @Scheduled(fixedDelayString = "${payment.replicas.heartbeat-interval:1s}")
+    public void beat() {
+        replicaSets.forEach(ReplicaSet::beat);
+    }
+
+    @Scheduled(fixedDelayString = "${payment.replicas.health-check-interval:2s}")
+    public void check() {
+        replicaSets.forEach(ReplicaSet::check);
+    }
+
+    @PreDestroy
+    void close() {
+        replicaSets.forEach(ReplicaSet::close);
+    }
+}
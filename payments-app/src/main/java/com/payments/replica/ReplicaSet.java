@@ -0,0 +1,233 @@
+package com.payments.replica;
+
+import com.payments.config.ReplicaProperties;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Connections for read-only transactions of one primary database: from the replica with the fewest connections
+ * in use, or from the primary when none is available or the thread requires {@link PrimaryReads}.
+ * <p>
+ * A replica is available once a check succeeded, until {@code failureThreshold} checks or connection attempts
+ * in a row fail, and while its lag is within {@code maxLag}. The lag is the age of a heartbeat row the primary
+ * rewrites every {@code heartbeatInterval}, as read from the replica, less that interval, so it only needs the
+ * clocks of the application instances to agree.
+ */
+@Slf4j
+public class ReplicaSet extends AbstractDataSource implements Closeable {
+
+    private static final String HEARTBEAT_UPDATE_SQL = "update replica_heartbeat set beat_millis = ? where id = 1";
+    private static final String HEARTBEAT_INSERT_SQL = "insert into replica_heartbeat (id, beat_millis) values (1, ?)";
+    private static final String HEARTBEAT_SELECT_SQL = "select beat_millis from replica_heartbeat where id = 1";
+
+    private final String name;
+    private final DataSource primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final long maxLagMillis;
+    private final long heartbeatMillis;
+    private final int failureThreshold;
+    private final int checkTimeoutSeconds;
+    private final AtomicInteger next = new AtomicInteger();
+    private final Counter replicaReads;
+    private final Counter primaryReads;
+
+    public ReplicaSet(String name, DataSource primary, List<ReplicaProperties.Replica> replicas,
+                      ReplicaProperties properties, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.primary = primary;
+        this.maxLagMillis = properties.maxLag().toMillis();
+        this.heartbeatMillis = properties.heartbeatInterval().toMillis();
+        this.failureThreshold = Math.max(1, properties.failureThreshold());
+        this.checkTimeoutSeconds = (int) Math.max(1, properties.healthCheckInterval().toSeconds());
+        for (ReplicaProperties.Replica settings : replicas) {
+            HikariDataSource pool = DataSourceBuilder.create()
+                    .type(HikariDataSource.class)
+                    .url(settings.url())
+                    .username(settings.username())
+                    .password(settings.password())
+                    .build();
+            pool.setPoolName("payment-" + name + "-replica-" + this.replicas.size());
+            pool.setMaximumPoolSize(settings.maximumPoolSize());
+            pool.setReadOnly(true);
+            // a replica that is down must not hold up reads longer than it takes to eject it
+            pool.setConnectionTimeout(Math.max(250, properties.healthCheckInterval().toMillis()));
+            Replica replica = new Replica(pool);
+            Gauge.builder("payment.replica.lag", replica, r -> r.lagMillis)
+                    .description("Replication lag of the replica, negative while unknown")
+                    .baseUnit("milliseconds")
+                    .tag("replica", pool.getPoolName())
+                    .register(meterRegistry);
+            Gauge.builder("payment.replica.available", replica, r -> r.isAvailable() ? 1 : 0)
+                    .description("Whether the replica serves read-only transactions")
+                    .tag("replica", pool.getPoolName())
+                    .register(meterRegistry);
+            this.replicas.add(replica);
+        }
+        this.replicaReads = readCounter(meterRegistry, "replica");
+        this.primaryReads = readCounter(meterRegistry, "primary");
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (!replicas.isEmpty() && !PrimaryReads.isRequired()) {
+            Set<Replica> tried = new HashSet<>();
+            Replica replica;
+            while ((replica = leastBusy(tried)) != null) {
+                try {
+                    Connection connection = replica.pool.getConnection();
+                    replicaReads.increment();
+                    return connection;
+                } catch (SQLException e) {
+                    tried.add(replica);
+                    replica.failed(e);
+                }
+            }
+        }
+        primaryReads.increment();
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Replica connections use the credentials of their pool");
+    }
+
+    // ties go round robin, so idle replicas share the load instead of the first one taking all of it
+    private Replica leastBusy(Set<Replica> tried) {
+        int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+        Replica best = null;
+        int bestActive = Integer.MAX_VALUE;
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((start + i) % replicas.size());
+            if (!replica.isAvailable() || tried.contains(replica)) {
+                continue;
+            }
+            int active = replica.activeConnections();
+            if (active < bestActive) {
+                best = replica;
+                bestActive = active;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Write the heartbeat to the primary.
+     */
+    void beat() {
+        if (replicas.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        try (Connection connection = primary.getConnection();
+             PreparedStatement update = connection.prepareStatement(HEARTBEAT_UPDATE_SQL)) {
+            update.setLong(1, now);
+            if (update.executeUpdate() == 0) {
+                try (PreparedStatement insert = connection.prepareStatement(HEARTBEAT_INSERT_SQL)) {
+                    insert.setLong(1, now);
+                    insert.executeUpdate();
+                }
+            }
+        } catch (SQLException e) {
+            log.warn("Cannot write the replica heartbeat of {}: {}", name, e.getMessage());
+        }
+    }
+
+    /**
+     * Read the heartbeat from every replica, updating their lag and health.
+     */
+    void check() {
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.pool.getConnection();
+                 PreparedStatement select = connection.prepareStatement(HEARTBEAT_SELECT_SQL)) {
+                select.setQueryTimeout(checkTimeoutSeconds);
+                try (ResultSet rs = select.executeQuery()) {
+                    // no heartbeat yet, the replica has not caught up with the first one
+                    replica.checked(rs.next()
+                            ? Math.max(0, System.currentTimeMillis() - rs.getLong(1) - heartbeatMillis)
+                            : -1);
+                }
+            } catch (SQLException e) {
+                replica.failed(e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        replicas.forEach(replica -> replica.pool.close());
+    }
+
+    private Counter readCounter(MeterRegistry meterRegistry, String target) {
+        return Counter.builder("payment.replica.reads")
+                .description("Connections handed to read-only transactions")
+                .tag("primary", name)
+                .tag("target", target)
+                .register(meterRegistry);
+    }
+
+    private final class Replica {
+
+        private final HikariDataSource pool;
+        private final AtomicInteger failures = new AtomicInteger();
+        private volatile boolean healthy;
+        private volatile long lagMillis = -1;
+
+        private Replica(HikariDataSource pool) {
+            this.pool = pool;
+        }
+
+        boolean isAvailable() {
+            long lag = lagMillis;
+            return healthy && lag >= 0 && lag <= maxLagMillis;
+        }
+
+        int activeConnections() {
+            HikariPoolMXBean mxBean = pool.getHikariPoolMXBean();
+            return mxBean == null ? 0 : mxBean.getActiveConnections();
+        }
+
+        void checked(long lag) {
+            failures.set(0);
+            if (!healthy) {
+                log.info("Replica {} is healthy", pool.getPoolName());
+                healthy = true;
+            }
+            boolean wasLagging = lagMillis < 0 || lagMillis > maxLagMillis;
+            boolean lagging = lag < 0 || lag > maxLagMillis;
+            if (lagging && !wasLagging) {
+                log.warn("Replica {} lags {} ms behind, reading from the primary", pool.getPoolName(), lag);
+            } else if (!lagging && wasLagging) {
+                log.info("Replica {} caught up, lag {} ms", pool.getPoolName(), lag);
+            }
+            lagMillis = lag;
+        }
+
+        void failed(SQLException e) {
+            if (failures.incrementAndGet() >= failureThreshold && healthy) {
+                healthy = false;
+                log.warn("Replica {} ejected after {} failures: {}", pool.getPoolName(), failureThreshold,
+                        e.getMessage());
+            }
+        }
+    }
+}
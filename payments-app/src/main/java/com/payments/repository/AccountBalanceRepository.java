@@ -0,0 +1,13 @@
+package com.payments.repository;
+
+import com.payments.entity.AccountBalanceEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface AccountBalanceRepository extends JpaRepository<AccountBalanceEntity, Long> {
+
+    List<AccountBalanceEntity> findByAccountNumberOrderByCurrencyAsc(String accountNumber);
+}
@@ -0,0 +1,28 @@
+package com.payments.repository;
+
+import com.payments.entity.IdempotencyKeyEntity;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface IdempotencyKeyRepository extends JpaRepository<IdempotencyKeyEntity, IdempotencyKeyEntity.Key> {
+
+    @Modifying
+    @Query("delete from IdempotencyKeyEntity k where k.createdAt < :cutoff")
+    int deleteCreatedBefore(LocalDateTime cutoff);
+
+    @Query("select k from IdempotencyKeyEntity k "
+            + "where k.idempotencyKey > :idempotencyKey or k.idempotencyKey = :idempotencyKey and k.principal > :principal "
+            + "order by k.idempotencyKey, k.principal")
+    List<IdempotencyKeyEntity> findAfter(String idempotencyKey, String principal, Limit limit);
+
+    default List<IdempotencyKeyEntity> findAfter(IdempotencyKeyEntity.Key after, Limit limit) {
+        return findAfter(after.idempotencyKey(), after.principal(), limit);
+    }
+}
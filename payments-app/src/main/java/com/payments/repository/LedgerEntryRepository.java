@@ -0,0 +1,28 @@
+package com.payments.repository;
+
+import com.payments.entity.LedgerEntryEntity;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface LedgerEntryRepository extends JpaRepository<LedgerEntryEntity, Long> {
+
+    List<LedgerEntryEntity> findByAccountNumberOrderByPostedAtDescIdDesc(String accountNumber, Limit limit);
+
+    /**
+     * Entries of an account posted before the given entry, the keyset continuation of a statement. Ids only break
+     * ties, they are not in posting order across shards.
+     */
+    @Query("select e from LedgerEntryEntity e where e.accountNumber = :accountNumber "
+            + "and (e.postedAt < :postedAt or (e.postedAt = :postedAt and e.id < :id)) "
+            + "order by e.postedAt desc, e.id desc")
+    List<LedgerEntryEntity> findByAccountNumberBefore(String accountNumber, LocalDateTime postedAt, Long id,
+                                                      Limit limit);
+
+    List<LedgerEntryEntity> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+}
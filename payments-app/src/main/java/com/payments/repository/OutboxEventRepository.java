@@ -0,0 +1,29 @@
+package com.payments.repository;
+
+import com.payments.entity.OutboxEventEntity;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEventEntity, Long> {
+
+    /**
+     * Claim the oldest events for relaying. Rows locked by another relay are skipped instead of waited on,
+     * so several instances can drain the outbox concurrently. Must be called inside a transaction.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    List<OutboxEventEntity> findByOrderByIdAsc(Limit limit);
+
+    Optional<OutboxEventEntity> findFirstByOrderByIdAsc();
+
+    List<OutboxEventEntity> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+}
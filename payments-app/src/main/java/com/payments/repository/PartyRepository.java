@@ -0,0 +1,14 @@
+package com.payments.repository;
+
+import com.payments.entity.PartyEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface PartyRepository extends JpaRepository<PartyEntity, Long> {
+
+    List<PartyEntity> findByContentHashIn(Collection<String> contentHashes);
+}
@@ -1,13 +1,112 @@
 package com.payments.repository;
 
+import com.payments.dto.PaymentPosting;
+import com.payments.dto.PaymentRow;
+import com.payments.dto.PaymentSnapshot;
+import com.payments.dto.PaymentStatisticsRow;
 import com.payments.entity.PaymentEntity;
+import com.payments.model.PaymentStatus;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Stream;
 
 @Repository
-public interface PaymentRepository extends JpaRepository<PaymentEntity, Long> {
+public interface PaymentRepository extends JpaRepository<PaymentEntity, Long>, JpaSpecificationExecutor<PaymentEntity> {
 
-    Optional<PaymentEntity> findByPaymentId(String paymentId);
-}
\ No newline at end of file
+    @EntityGraph(attributePaths = {"debtor", "creditor"})
+    Optional<PaymentEntity> findByPaymentId(UUID paymentId);
+
+    /**
+     * Read projection of a payment, no entity is loaded into the persistence context.
+     */
+    @Query("select new com.payments.dto.PaymentRow(p.paymentId, p.amountMinor, p.currency, p.status, p.paymentMethod, "
+            + "p.createdAt, p.updatedAt, p.version, "
+            + "d.name, d.accountNumber, d.bankCode, d.address, d.email, d.phoneNumber, "
+            + "c.name, c.accountNumber, c.bankCode, c.address, c.email, c.phoneNumber) "
+            + "from PaymentEntity p left join p.debtor d left join p.creditor c where p.paymentId = :paymentId")
+    Optional<PaymentRow> findRowByPaymentId(UUID paymentId);
+
+    @Query("select new com.payments.dto.PaymentPosting(p.paymentId, p.amountMinor, p.currency, "
+            + "p.debtorAccountNumber, p.creditorAccountNumber) from PaymentEntity p where p.paymentId in :paymentIds")
+    List<PaymentPosting> findPostingsByPaymentIdIn(Collection<UUID> paymentIds);
+
+    /**
+     * Payments in id order with their parties, the keyset scan used to move payments between shards.
+     */
+    @EntityGraph(attributePaths = {"debtor", "creditor"})
+    List<PaymentEntity> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+
+    @Query("select p.paymentId from PaymentEntity p where p.paymentId in :paymentIds")
+    Set<UUID> findExistingPaymentIds(Collection<UUID> paymentIds);
+
+    @Query("select coalesce(p.updatedAt, p.createdAt) from PaymentEntity p where p.paymentId = :paymentId")
+    Optional<LocalDateTime> findLastModifiedByPaymentId(UUID paymentId);
+
+    /**
+     * Stream payments created in {@code [from, to)} through a server-side cursor. Must be consumed inside a
+     * transaction, and callers should detach each entity once written to keep the persistence context empty.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "false")
+    })
+    @Query("select p from PaymentEntity p left join fetch p.debtor left join fetch p.creditor "
+            + "where p.createdAt >= :from and p.createdAt < :to order by p.createdAt, p.id")
+    Stream<PaymentEntity> streamByCreatedAtRange(LocalDateTime from, LocalDateTime to);
+
+    /**
+     * Move every listed payment that is currently in one of {@code from} to {@code to} with a single statement.
+     * Entity listeners do not run for bulk updates, callers must evict cached payments themselves.
+     *
+     * @return Number of payments updated
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update PaymentEntity p set p.status = :to, p.version = p.version + 1, p.updatedAt = :updatedAt "
+            + "where p.paymentId in :paymentIds and p.status in :from")
+    int updateStatus(Collection<UUID> paymentIds, Collection<PaymentStatus> from, PaymentStatus to, LocalDateTime updatedAt);
+
+    /**
+     * Read the listed payments a status update of the current transaction has just moved to {@code status}. That
+     * update stamped them with {@code updatedAt} and holds their row locks until the transaction ends.
+     */
+    @Query("select new com.payments.dto.PaymentSnapshot(p.paymentId, p.status, p.currency, p.paymentMethod, "
+            + "p.amountMinor, p.createdAt) from PaymentEntity p "
+            + "where p.paymentId in :paymentIds and p.status = :status and p.updatedAt = :updatedAt")
+    List<PaymentSnapshot> findUpdatedSnapshots(Collection<UUID> paymentIds, PaymentStatus status, LocalDateTime updatedAt);
+
+    /**
+     * Claim the oldest payments in one of {@code statuses} created before the cutoff, for archiving. Rows locked
+     * by another archiver are skipped instead of waited on. Must be called inside a transaction.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    List<PaymentEntity> findByStatusInAndCreatedAtBeforeOrderByCreatedAtAscIdAsc(Collection<PaymentStatus> statuses,
+                                                                               LocalDateTime createdBefore, Limit limit);
+
+    @Query("select new com.payments.dto.PaymentStatisticsRow(p.currency, p.status, p.paymentMethod, count(p), "
+            + "sum(p.amountMinor)) from PaymentEntity p group by p.currency, p.status, p.paymentMethod")
+    List<PaymentStatisticsRow> aggregateStatistics();
+
+    @Query("select new com.payments.dto.PaymentStatisticsRow(truncate(p.createdAt, minute), p.currency, p.status, "
+            + "p.paymentMethod, count(p), sum(p.amountMinor)) from PaymentEntity p where p.createdAt >= :since "
+            + "group by truncate(p.createdAt, minute), p.currency, p.status, p.paymentMethod")
+    List<PaymentStatisticsRow> aggregateStatisticsPerMinute(LocalDateTime since);
+}
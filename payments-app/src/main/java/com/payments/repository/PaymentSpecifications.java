@@ -0,0 +1,54 @@
+package com.payments.repository;
+
+import com.payments.dto.PaymentSearchFilter;
+import com.payments.entity.PaymentEntity;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Query predicates for payment searches. Every filter is paired with a composite index on
+ * {@link PaymentEntity} that ends in {@code (created_at, id)}, so a page is a bounded range scan in key order.
+ */
+public final class PaymentSpecifications {
+
+    private PaymentSpecifications() {
+    }
+
+    public static Specification<PaymentEntity> matching(PaymentSearchFilter filter) {
+        return (root, query, cb) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            if (filter.status() != null) {
+                predicates.add(cb.equal(root.get("status"), filter.status()));
+            }
+            if (filter.currency() != null) {
+                predicates.add(cb.equal(root.get("currency"), filter.currency()));
+            }
+            if (filter.debtorAccountNumber() != null) {
+                predicates.add(cb.equal(root.get("debtorAccountNumber"), filter.debtorAccountNumber()));
+            }
+            if (filter.creditorAccountNumber() != null) {
+                predicates.add(cb.equal(root.get("creditorAccountNumber"), filter.creditorAccountNumber()));
+            }
+            if (filter.createdFrom() != null) {
+                predicates.add(cb.greaterThanOrEqualTo(root.get("createdAt"), filter.createdFrom()));
+            }
+            if (filter.createdTo() != null) {
+                predicates.add(cb.lessThan(root.get("createdAt"), filter.createdTo()));
+            }
+            return cb.and(predicates.toArray(Predicate[]::new));
+        };
+    }
+
+    /**
+     * Rows strictly after the given key in {@code (createdAt DESC, id DESC)} order.
+     */
+    public static Specification<PaymentEntity> before(LocalDateTime createdAt, Long id) {
+        return (root, query, cb) -> cb.or(
+                cb.lessThan(root.get("createdAt"), createdAt),
+                cb.and(cb.equal(root.get("createdAt"), createdAt), cb.lessThan(root.get("id"), id)));
+    }
+}
@@ -0,0 +1,9 @@
+package com.payments.repository;
+
+import com.payments.entity.ShardSlotEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ShardSlotRepository extends JpaRepository<ShardSlotEntity, Integer> {
+}
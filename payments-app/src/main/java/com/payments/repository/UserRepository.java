@@ -1,15 +1,27 @@
 package com.payments.repository;
 
 import com.payments.entity.User;
+import jakarta.persistence.QueryHint;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Size;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
 
+import java.util.List;
 import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<User, Long> {
 
+    // the login lookup, the cached id resolves from the user region until a write to users or user_roles commits
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
     Optional<User> findByUsername(String username);
 
     boolean existsByUsername(String username);
+
+    // the eager roles would otherwise be loaded with one query per user
+    @Override
+    @EntityGraph(attributePaths = "roles")
+    List<User> findAll();
 }
\ No newline at end of file
@@ -0,0 +1,23 @@
+package com.payments.service;
+
+import com.payments.exception.IdempotencyKeyConflictException;
+import com.payments.model.Payment;
+import com.payments.model.PaymentRequest;
+
+import java.util.function.Supplier;
+
+public interface IdempotencyService {
+
+    /**
+     * Run a payment creation at most once per idempotency key of the authenticated principal.
+     * A repeat of the same key and request returns the stored response without running the action again,
+     * concurrent repeats wait for the request that is already in flight.
+     *
+     * @param idempotencyKey Client supplied key, scoped to the principal that sent it
+     * @param request Payment request the key was sent with
+     * @param action Creates the payment, called only for the first request with the key
+     * @return The payment created for the key
+     * @throws IdempotencyKeyConflictException if the key was used with a different request
+     */
+    Payment execute(String idempotencyKey, PaymentRequest request, Supplier<Payment> action);
+}
@@ -0,0 +1,70 @@
+package com.payments.service;
+
+import com.payments.entity.LedgerEntryEntity;
+import com.payments.entity.PaymentEntity;
+import com.payments.model.AccountBalance;
+import com.payments.model.AccountStatement;
+import com.payments.model.PaymentStatus;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+public interface LedgerService {
+
+    /**
+     * Post the ledger entries of a payment that just changed status. A payment reaching COMPLETED debits the
+     * debtor and credits the creditor, a refund posts the reverse, other statuses post nothing.
+     * Must be called in the transaction that changes the status.
+     *
+     * @param payment Payment with its new status
+     */
+    void statusChanged(PaymentEntity payment);
+
+    /**
+     * Post the ledger entries of payments moved to the same status by a set-based update.
+     * Must be called in the transaction that changes the status.
+     *
+     * @param paymentIds Payments that changed status
+     * @param status Status they were moved to
+     * @param occurredAt Time of the change
+     */
+    void statusChanged(Collection<UUID> paymentIds, PaymentStatus status, LocalDateTime occurredAt);
+
+    /**
+     * Get the balances of an account, one per currency it has postings in.
+     *
+     * @param accountNumber Account number
+     * @return Balances of the account, empty when it has no postings
+     */
+    AccountBalance getAccountBalance(String accountNumber);
+
+    /**
+     * List the ledger entries of an account, newest first, with keyset paging on the entry id. With sharding the
+     * entries of all shards are merged by id, which is chronological within a shard only.
+     *
+     * @param accountNumber Account number
+     * @param cursor Cursor of the previous page, null for the first page
+     * @param limit Maximum number of entries in the page
+     * @return Page of entries with the cursor of the next page, if any
+     * @throws com.payments.exception.InvalidCursorException if the cursor cannot be decoded
+     */
+    AccountStatement getAccountStatement(String accountNumber, String cursor, int limit);
+
+    /**
+     * Store entries copied from another shard under their original ids and add them to the balances.
+     * Must be called in a transaction bound to the receiving shard.
+     *
+     * @param entries Entries to store
+     */
+    void importEntries(List<LedgerEntryEntity> entries);
+
+    /**
+     * Delete entries moved to another shard and take them out of the balances.
+     * Must be called in a transaction bound to the shard they are deleted from.
+     *
+     * @param entries Entries to delete
+     */
+    void removeEntries(List<LedgerEntryEntity> entries);
+}
@@ -0,0 +1,16 @@
+package com.payments.service;
+
+import com.payments.entity.PaymentEntity;
+
+import java.util.List;
+
+public interface PartyService {
+
+    /**
+     * Replace the unsaved debtor and creditor of each payment with the stored party of the same content,
+     * storing parties that do not exist yet. Must be called in the transaction that saves the payments.
+     *
+     * @param payments Payments about to be saved
+     */
+    void resolveParties(List<PaymentEntity> payments);
+}
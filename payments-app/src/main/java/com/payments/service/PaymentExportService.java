@@ -0,0 +1,23 @@
+package com.payments.service;
+
+import com.payments.dto.PaymentExportFormat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+
+public interface PaymentExportService {
+
+    /**
+     * Write all payments created in a time range to a stream, one row at a time.
+     * Memory use does not depend on the number of payments exported.
+     *
+     * @param from Inclusive lower bound of the creation time
+     * @param to Exclusive upper bound of the creation time
+     * @param format Output format
+     * @param out Stream the rows are written to, left open
+     * @return Number of payments written
+     * @throws IOException if writing to the stream fails
+     */
+    long exportPayments(LocalDateTime from, LocalDateTime to, PaymentExportFormat format, OutputStream out) throws IOException;
+}
@@ -0,0 +1,30 @@
+package com.payments.service;
+
+import com.payments.dto.IngestionJobStatus;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Optional;
+
+public interface PaymentFileIngestionService {
+
+    /**
+     * Store an uploaded payment file and queue it for ingestion. Jobs run one after another, each on all
+     * ingestion threads.
+     *
+     * @param fileName Name of the file as sent by the client, may be null
+     * @param content  File content, read to the end
+     * @return The queued job
+     * @throws IOException if the file cannot be stored
+     * @throws com.payments.exception.PaymentFileTooLargeException if the file exceeds the configured maximum size
+     */
+    IngestionJobStatus submit(String fileName, InputStream content) throws IOException;
+
+    Optional<IngestionJobStatus> getJob(String jobId);
+
+    /**
+     * @return The CSV file listing the rejected lines, once the job is completed
+     */
+    Optional<Path> getErrorFile(String jobId);
+}
@@ -0,0 +1,32 @@
+package com.payments.service;
+
+import com.payments.model.Payment;
+import com.payments.model.PaymentRequest;
+
+import java.util.Optional;
+
+public interface PaymentIntakeService {
+
+    /**
+     * @return Whether asynchronous acceptance is configured
+     */
+    boolean isEnabled();
+
+    /**
+     * Journal a payment for asynchronous storage. The payment gets its id immediately and is stored by a
+     * background worker, the caller does not wait for the database.
+     *
+     * @param paymentRequest Validated payment request
+     * @return The accepted payment in status PENDING
+     * @throws com.payments.exception.PaymentQueueFullException if too many accepted payments are not yet stored
+     */
+    Payment accept(PaymentRequest paymentRequest);
+
+    /**
+     * Look up a payment that was accepted but is not stored yet, or that could not be stored.
+     *
+     * @param paymentId Payment id
+     * @return The payment in status PENDING, or FAILED if it was rejected by the database
+     */
+    Optional<Payment> findAccepted(String paymentId);
+}
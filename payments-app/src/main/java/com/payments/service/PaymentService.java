@@ -1,13 +1,74 @@
 package com.payments.service;
 
+import com.payments.dto.PaymentSearchFilter;
+import com.payments.model.BatchPaymentResponse;
+import com.payments.model.BulkStatusTransitionResponse;
 import com.payments.model.Payment;
+import com.payments.model.PaymentPage;
 import com.payments.model.PaymentRequest;
+import com.payments.model.PaymentStatus;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 public interface PaymentService {
 
     Payment makePayment(PaymentRequest paymentRequest);
 
+    /**
+     * Create payments in bulk. Each request is reported with its own result,
+     * an item that cannot be stored does not fail the others.
+     *
+     * @param paymentRequests Payments to create
+     * @return Per-item results in request order
+     */
+    BatchPaymentResponse makePayments(List<PaymentRequest> paymentRequests);
+
     Optional<Payment> getPaymentById(String paymentId);
-}
\ No newline at end of file
+
+    /**
+     * Get the last modification time of a payment without loading it.
+     *
+     * @param paymentId Payment id
+     * @return Time the payment was last updated, empty if it does not exist
+     */
+    Optional<LocalDateTime> getPaymentLastModified(String paymentId);
+
+    /**
+     * Search payments, newest first, with keyset paging on {@code (createdAt, id)}.
+     *
+     * @param filter Search filters
+     * @param cursor Cursor of the previous page, null for the first page
+     * @param limit Maximum number of payments in the page
+     * @return Page of payments with the cursor of the next page, if any
+     * @throws com.payments.exception.InvalidCursorException if the cursor cannot be decoded
+     */
+    PaymentPage searchPayments(PaymentSearchFilter filter, String cursor, int limit);
+
+    /**
+     * Move a payment to a new status, enforcing the allowed lifecycle transitions.
+     * Setting the status the payment already has is a no-op.
+     *
+     * @param paymentId Payment id
+     * @param status Target status
+     * @param expectedVersion Version the change is based on, null to apply it to the current version
+     * @return The updated payment
+     * @throws com.payments.exception.PaymentNotFoundException if the payment does not exist
+     * @throws com.payments.exception.InvalidStatusTransitionException if the transition is not allowed
+     * @throws org.springframework.dao.OptimisticLockingFailureException if the payment changed concurrently
+     */
+    Payment updatePaymentStatus(String paymentId, PaymentStatus status, Long expectedVersion);
+
+    /**
+     * Move many payments to the same status with one set-based update. Payments that do not exist or are not
+     * in a status allowing the transition are skipped.
+     *
+     * @param paymentIds Payments to move
+     * @param status Target status
+     * @param expectedStatus Only move payments in this status, null for any status allowing the transition
+     * @return Number of payments updated and skipped
+     * @throws com.payments.exception.InvalidStatusTransitionException if the target cannot be reached
+     */
+    BulkStatusTransitionResponse transitionPayments(List<String> paymentIds, PaymentStatus status, PaymentStatus expectedStatus);
+}
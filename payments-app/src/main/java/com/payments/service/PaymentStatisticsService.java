@@ -0,0 +1,44 @@
+package com.payments.service;
+
+import com.payments.dto.PaymentSnapshot;
+import com.payments.entity.PaymentEntity;
+import com.payments.model.PaymentStatistics;
+import com.payments.model.PaymentStatus;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface PaymentStatisticsService {
+
+    /**
+     * Count newly stored payments. Applied once the caller's transaction commits.
+     *
+     * @param payments Payments just saved
+     */
+    void paymentsCreated(List<PaymentEntity> payments);
+
+    /**
+     * Move a payment from its previous status to its current one. Applied once the caller's transaction commits.
+     *
+     * @param payment Payment with its new status
+     * @param previousStatus Status it had before
+     */
+    void statusChanged(PaymentEntity payment, PaymentStatus previousStatus);
+
+    /**
+     * Move payments changed by a set-based update to their new status. Applied once the caller's transaction
+     * commits.
+     *
+     * @param before State of the payments before the update
+     * @param status Status they were moved to
+     */
+    void statusChanged(Collection<PaymentSnapshot> before, PaymentStatus status);
+
+    /**
+     * Read the current totals from memory.
+     *
+     * @param minutes Number of most recent minute buckets to include
+     * @return Overall totals and the totals of the requested minutes
+     */
+    PaymentStatistics getStatistics(int minutes);
+}
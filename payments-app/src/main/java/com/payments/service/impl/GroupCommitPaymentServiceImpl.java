@@ -0,0 +1,312 @@
+package com.payments.service.impl;
+
+import com.payments.config.GroupCommitProperties;
+import com.payments.dto.PaymentSearchFilter;
+import com.payments.entity.PaymentEntity;
+import com.payments.exception.PaymentQueueFullException;
+import com.payments.mapper.PaymentMapper;
+import com.payments.model.BatchPaymentResponse;
+import com.payments.model.BulkStatusTransitionResponse;
+import com.payments.model.Payment;
+import com.payments.model.PaymentPage;
+import com.payments.model.PaymentRequest;
+import com.payments.model.PaymentStatus;
+import com.payments.outbox.PaymentOutbox;
+import com.payments.repository.PaymentRepository;
+import com.payments.service.PartyService;
+import com.payments.service.PaymentService;
+import com.payments.service.PaymentStatisticsService;
+import com.payments.sharding.PaymentShards;
+import com.payments.util.Money;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Group-commit mode for {@link PaymentService#makePayment}. Callers enqueue their payment and wait on a future,
+ * a single writer drains the queue into one transaction and one JDBC batch per tick or per {@code maxBatchSize}
+ * payments. Callers do not hold a database connection while they wait.
+ * <p>
+ * A caller that already runs in a transaction, like the creation under an idempotency key, writes its payment
+ * directly in that transaction instead.
+ * <p>
+ * Callers wait at most {@code commitTimeout}. Payments still queued when the writer stops or dies are failed,
+ * their callers get a 503 instead of waiting for a writer that is gone.
+ * <p>
+ * Reads and bulk creation are delegated to {@link PaymentServiceImpl}.
+ */
+@Slf4j
+@Service
+@Primary
+@ConditionalOnProperty(prefix = "payment.group-commit", name = "enabled", havingValue = "true")
+public class GroupCommitPaymentServiceImpl implements PaymentService, SmartLifecycle {
+
+    private final PaymentService delegate;
+    private final PaymentMapper paymentMapper;
+    private final PaymentRepository repository;
+    private final PaymentOutbox paymentOutbox;
+    private final PartyService partyService;
+    private final PaymentStatisticsService paymentStatisticsService;
+    private final TransactionTemplate transactionTemplate;
+    private final PaymentShards paymentShards;
+    private final GroupCommitProperties properties;
+    private final BlockingQueue<PendingWrite> queue;
+    private final DistributionSummary batchSize;
+    private final Timer flushTimer;
+
+    private volatile boolean running;
+    private Thread writer;
+
+    public GroupCommitPaymentServiceImpl(@Qualifier("paymentServiceImpl") PaymentService delegate,
+                                         PaymentMapper paymentMapper,
+                                         PaymentRepository repository,
+                                         PaymentOutbox paymentOutbox,
+                                         PartyService partyService,
+                                         PaymentStatisticsService paymentStatisticsService,
+                                         TransactionTemplate transactionTemplate,
+                                         PaymentShards paymentShards,
+                                         GroupCommitProperties properties,
+                                         MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.paymentMapper = paymentMapper;
+        this.repository = repository;
+        this.paymentOutbox = paymentOutbox;
+        this.partyService = partyService;
+        this.paymentStatisticsService = paymentStatisticsService;
+        this.transactionTemplate = transactionTemplate;
+        this.paymentShards = paymentShards;
+        this.properties = properties;
+        this.queue = new ArrayBlockingQueue<>(properties.queueCapacity());
+        Gauge.builder("payment.commit.queue.depth", queue, BlockingQueue::size)
+                .description("Payments waiting for the group-commit writer")
+                .register(meterRegistry);
+        this.batchSize = DistributionSummary.builder("payment.commit.batch.size")
+                .description("Payments committed per group-commit transaction")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("payment.commit.flush.time")
+                .description("Time to commit one group-commit batch")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Payment makePayment(PaymentRequest paymentRequest) {
+        // the payment has to commit or roll back with the caller's writes, on the shard the caller is bound to,
+        // and waiting for the writer while holding a connection could leave the writer without one
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return delegate.makePayment(paymentRequest);
+        }
+        if (!running) {
+            throw new PaymentQueueFullException("Payment writer is not accepting payments");
+        }
+        // an invalid amount would fail the whole group and force it to be replayed item by item
+        Money.toMinorUnits(paymentRequest.getAmount(), paymentRequest.getCurrency());
+        PendingWrite write = new PendingWrite(paymentRequest, paymentShards.nextPaymentId(), new CompletableFuture<>());
+        try {
+            if (!queue.offer(write, properties.offerTimeout().toNanos(), TimeUnit.NANOSECONDS)) {
+                throw new PaymentQueueFullException("Payment queue is full, retry later");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PaymentQueueFullException("Interrupted while queueing payment");
+        }
+        try {
+            return write.result().get(properties.commitTimeout().toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            // still queued means never written, once the writer took it the payment may yet commit
+            String outcome = queue.remove(write) ? "retry later" : "its outcome is unknown";
+            write.result().cancel(false);
+            throw new PaymentQueueFullException("Payment was not committed within "
+                    + properties.commitTimeout().toMillis() + " ms, " + outcome);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PaymentQueueFullException("Interrupted while waiting for the payment to be committed");
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException("Group commit failed", ex.getCause());
+        }
+    }
+
+    @Override
+    public BatchPaymentResponse makePayments(List<PaymentRequest> paymentRequests) {
+        return delegate.makePayments(paymentRequests);
+    }
+
+    @Override
+    public Optional<Payment> getPaymentById(String paymentId) {
+        return delegate.getPaymentById(paymentId);
+    }
+
+    @Override
+    public Optional<LocalDateTime> getPaymentLastModified(String paymentId) {
+        return delegate.getPaymentLastModified(paymentId);
+    }
+
+    @Override
+    public PaymentPage searchPayments(PaymentSearchFilter filter, String cursor, int limit) {
+        return delegate.searchPayments(filter, cursor, limit);
+    }
+
+    @Override
+    public Payment updatePaymentStatus(String paymentId, PaymentStatus status, Long expectedVersion) {
+        return delegate.updatePaymentStatus(paymentId, status, expectedVersion);
+    }
+
+    @Override
+    public BulkStatusTransitionResponse transitionPayments(List<String> paymentIds, PaymentStatus status,
+                                                           PaymentStatus expectedStatus) {
+        return delegate.transitionPayments(paymentIds, status, expectedStatus);
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        writer = Thread.ofPlatform().name("payment-group-commit").start(this::drainLoop);
+        log.info("Group-commit writer started, maxBatchSize={} flushInterval={}",
+                properties.maxBatchSize(), properties.flushInterval());
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        try {
+            // the writer finishes whatever is still queued before it exits
+            writer.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // a caller that saw the writer running may have queued after it drained the queue
+        failQueued();
+        log.info("Group-commit writer stopped");
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void drainLoop() {
+        int maxBatchSize = Math.max(1, properties.maxBatchSize());
+        long flushIntervalNanos = properties.flushInterval().toNanos();
+        List<PendingWrite> batch = new ArrayList<>(maxBatchSize);
+
+        try {
+            while (running || !queue.isEmpty()) {
+                try {
+                    PendingWrite first = queue.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    long deadline = System.nanoTime() + flushIntervalNanos;
+                    while (batch.size() < maxBatchSize) {
+                        if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0) {
+                            continue;
+                        }
+                        long remaining = deadline - System.nanoTime();
+                        PendingWrite next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                    }
+                    flush(batch);
+                    batch.clear();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    log.warn("Group-commit writer interrupted, {} payments still queued", queue.size() + batch.size());
+                    return;
+                } catch (RuntimeException e) {
+                    log.error("Group-commit writer failed to flush a batch", e);
+                    batch.forEach(write -> write.result().completeExceptionally(e));
+                    batch.clear();
+                }
+            }
+        } finally {
+            // interrupted or killed by an Error, nothing drains the queue any more
+            running = false;
+            batch.forEach(write -> write.result().completeExceptionally(
+                    new PaymentQueueFullException("Payment writer stopped")));
+            failQueued();
+        }
+    }
+
+    private void failQueued() {
+        List<PendingWrite> queued = new ArrayList<>();
+        queue.drainTo(queued);
+        queued.forEach(write -> write.result().completeExceptionally(
+                new PaymentQueueFullException("Payment writer stopped")));
+        if (!queued.isEmpty()) {
+            log.warn("Failed {} payments queued for the stopped group-commit writer", queued.size());
+        }
+    }
+
+    private void flush(List<PendingWrite> batch) {
+        batchSize.record(batch.size());
+        Timer.Sample sample = Timer.start();
+        try {
+            // a transaction writes to one shard, a batch spanning several commits once per shard
+            paymentShards.partition(batch, PendingWrite::paymentId).values().forEach(this::flushShard);
+        } finally {
+            sample.stop(flushTimer);
+        }
+    }
+
+    private void flushShard(List<PendingWrite> batch) {
+        try {
+            List<Payment> saved = transactionTemplate.execute(status -> save(batch));
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result().complete(saved.get(i));
+            }
+        } catch (RuntimeException ex) {
+            log.warn("Group commit of {} payments failed, retrying individually: {}", batch.size(), ex.getMessage());
+            for (PendingWrite write : batch) {
+                try {
+                    Payment payment = transactionTemplate.execute(status -> save(List.of(write)).getFirst());
+                    write.result().complete(payment);
+                } catch (RuntimeException itemEx) {
+                    write.result().completeExceptionally(itemEx);
+                }
+            }
+        }
+    }
+
+    private List<Payment> save(List<PendingWrite> batch) {
+        // mapped per attempt, a failed attempt leaves ids on the entities it tried to persist
+        batch.forEach(write -> paymentShards.bindForWrite(write.paymentId()));
+        List<PaymentEntity> entities = batch.stream()
+                .map(write -> paymentMapper.toEntity(write.request(), write.paymentId()))
+                .toList();
+        partyService.resolveParties(entities);
+        List<PaymentEntity> saved = repository.saveAll(entities);
+        paymentOutbox.paymentsCreated(saved);
+        paymentStatisticsService.paymentsCreated(saved);
+        repository.flush();
+        return saved.stream().map(paymentMapper::toModel).toList();
+    }
+
+    private record PendingWrite(PaymentRequest request, UUID paymentId, CompletableFuture<Payment> result) {
+    }
+}
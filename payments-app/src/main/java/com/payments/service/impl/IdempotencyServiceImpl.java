@@ -0,0 +1,158 @@
+package com.payments.service.impl;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.payments.config.IdempotencyProperties;
+import com.payments.entity.IdempotencyKeyEntity;
+import com.payments.exception.IdempotencyKeyConflictException;
+import com.payments.model.Payment;
+import com.payments.model.PaymentRequest;
+import com.payments.repository.IdempotencyKeyRepository;
+import com.payments.sharding.PaymentShards;
+import com.payments.service.IdempotencyService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import tools.jackson.databind.ObjectMapper;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Two tier idempotency store: a bounded Caffeine cache of in-flight and completed keys in front of the
+ * {@code idempotency_keys} table. The cache holds a future per key, so concurrent duplicates join the
+ * execution that is already running instead of racing it. Both tiers are keyed by the authenticated principal
+ * and the key, a key sent by another client is a different key.
+ */
+@Slf4j
+@Service
+public class IdempotencyServiceImpl implements IdempotencyService {
+
+    private final IdempotencyKeyRepository repository;
+    private final TransactionTemplate transactionTemplate;
+    private final PaymentShards paymentShards;
+    private final ObjectMapper objectMapper;
+    private final IdempotencyProperties properties;
+    private final AsyncCache<IdempotencyKeyEntity.Key, StoredResponse> responses;
+
+    public IdempotencyServiceImpl(IdempotencyKeyRepository repository,
+                                  TransactionTemplate transactionTemplate,
+                                  PaymentShards paymentShards,
+                                  ObjectMapper objectMapper,
+                                  IdempotencyProperties properties) {
+        this.repository = repository;
+        this.transactionTemplate = transactionTemplate;
+        this.paymentShards = paymentShards;
+        this.objectMapper = objectMapper;
+        this.properties = properties;
+        this.responses = Caffeine.newBuilder()
+                .maximumSize(properties.cacheMaximumSize())
+                .expireAfterWrite(properties.cacheExpiry())
+                .buildAsync();
+    }
+
+    @Override
+    public Payment execute(String idempotencyKey, PaymentRequest request, Supplier<Payment> action) {
+        String requestHash = hash(request);
+        IdempotencyKeyEntity.Key key = new IdempotencyKeyEntity.Key(principal(), idempotencyKey);
+        CompletableFuture<StoredResponse> pending = new CompletableFuture<>();
+        CompletableFuture<StoredResponse> existing = responses.asMap().putIfAbsent(key, pending);
+        if (existing != null) {
+            log.debug("Idempotency key {} of {} already known, replaying response", idempotencyKey, key.principal());
+            return replay(idempotencyKey, requestHash, await(existing));
+        }
+
+        try {
+            StoredResponse stored = findOrExecute(key, requestHash, action);
+            pending.complete(stored);
+            return replay(idempotencyKey, requestHash, stored);
+        } catch (RuntimeException ex) {
+            // failed executions are not remembered, the client may retry with the same key
+            responses.asMap().remove(key, pending);
+            pending.completeExceptionally(ex);
+            throw ex;
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${payment.idempotency.purge-interval:1h}")
+    public void purgeExpiredKeys() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(properties.retention());
+        int deleted = paymentShards.onEachShard(shard -> transactionTemplate.execute(
+                status -> repository.deleteCreatedBefore(cutoff))).stream().mapToInt(Integer::intValue).sum();
+        log.debug("Purged {} idempotency keys created before {}", deleted, cutoff);
+    }
+
+    private StoredResponse findOrExecute(IdempotencyKeyEntity.Key key, String requestHash, Supplier<Payment> action) {
+        try {
+            // the key decides the shard, the payment created under it is placed on the same one
+            return transactionTemplate.execute(status -> {
+                paymentShards.bindForWrite(key.idempotencyKey());
+                return repository.findById(key)
+                        .map(StoredResponse::of)
+                        .orElseGet(() -> {
+                            Payment payment = action.get();
+                            IdempotencyKeyEntity entity = new IdempotencyKeyEntity(key, requestHash,
+                                    payment.getPaymentId(), objectMapper.writeValueAsString(payment));
+                            return StoredResponse.of(repository.saveAndFlush(entity));
+                        });
+            });
+        } catch (DataIntegrityViolationException ex) {
+            // another instance stored the key first, our payment was rolled back with the key insert
+            log.debug("Idempotency key {} of {} stored concurrently, using the stored response", key.idempotencyKey(),
+                    key.principal());
+            return paymentShards.onShard(paymentShards.shardOf(key.idempotencyKey()), () -> repository.findById(key))
+                    .map(StoredResponse::of)
+                    .orElseThrow(() -> ex);
+        }
+    }
+
+    private Payment replay(String idempotencyKey, String requestHash, StoredResponse stored) {
+        if (!stored.requestHash().equals(requestHash)) {
+            throw new IdempotencyKeyConflictException(idempotencyKey);
+        }
+        // every caller gets its own copy, the controller adds links to the returned instance
+        return objectMapper.readValue(stored.responseBody(), Payment.class);
+    }
+
+    // requests without a principal share one scope, only authenticated clients can create payments
+    private static String principal() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null ? authentication.getName() : "";
+    }
+
+    private StoredResponse await(CompletableFuture<StoredResponse> inFlight) {
+        try {
+            return inFlight.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw ex;
+        }
+    }
+
+    private String hash(PaymentRequest request) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(objectMapper.writeValueAsBytes(request)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private record StoredResponse(String requestHash, String responseBody) {
+
+        static StoredResponse of(IdempotencyKeyEntity entity) {
+            return new StoredResponse(entity.getRequestHash(), entity.getResponseBody());
+        }
+    }
+}
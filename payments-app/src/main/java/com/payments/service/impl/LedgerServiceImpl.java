@@ -0,0 +1,344 @@
+package com.payments.service.impl;
+
+import com.payments.dto.LedgerCursor;
+import com.payments.dto.PaymentPosting;
+import com.payments.entity.AccountBalanceEntity;
+import com.payments.entity.LedgerEntryEntity;
+import com.payments.entity.PaymentEntity;
+import com.payments.mapper.LedgerMapper;
+import com.payments.model.AccountBalance;
+import com.payments.model.AccountStatement;
+import com.payments.model.LedgerDirection;
+import com.payments.model.PaymentStatus;
+import com.payments.repository.AccountBalanceRepository;
+import com.payments.repository.LedgerEntryRepository;
+import com.payments.repository.PaymentRepository;
+import com.payments.service.LedgerService;
+import com.payments.sharding.PaymentShards;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Double-entry ledger over completed payments. Entries are appended and the balance of every account they touch
+ * is incremented in the transaction that changes the payment status, so balances never drift from the entries.
+ */
+@Slf4j
+@Service
+public class LedgerServiceImpl implements LedgerService {
+
+    private static final String UNIQUE_VIOLATION = "23505";
+    private static final String UPDATE_SQL = "update account_balances set balance_minor = balance_minor + ?, "
+            + "total_debits_minor = total_debits_minor + ?, total_credits_minor = total_credits_minor + ?, "
+            + "entry_count = entry_count + ?, "
+            + "updated_at = ? where account_number = ? and currency = ?";
+    private static final String IMPORT_SQL = "insert into ledger_entries (id, account_number, payment_id, direction, "
+            + "amount_minor, currency, payment_status, posted_at) values (?, ?, ?, ?, ?, ?, ?, ?)";
+    // newest first; ids start at a different offset on every shard, so they only break ties
+    private static final Comparator<LedgerEntryEntity> STATEMENT_ORDER = Comparator
+            .comparing(LedgerEntryEntity::getPostedAt)
+            .thenComparing(LedgerEntryEntity::getId)
+            .reversed();
+
+    private final LedgerEntryRepository entryRepository;
+    private final AccountBalanceRepository balanceRepository;
+    private final PaymentRepository paymentRepository;
+    private final LedgerMapper ledgerMapper;
+    private final PaymentShards paymentShards;
+    private final EntityManager entityManager;
+    private final String insertSql;
+
+    public LedgerServiceImpl(LedgerEntryRepository entryRepository,
+                             AccountBalanceRepository balanceRepository,
+                             PaymentRepository paymentRepository,
+                             LedgerMapper ledgerMapper,
+                             PaymentShards paymentShards,
+                             EntityManager entityManager,
+                             EntityManagerFactory entityManagerFactory) {
+        this.entryRepository = entryRepository;
+        this.balanceRepository = balanceRepository;
+        this.paymentRepository = paymentRepository;
+        this.ledgerMapper = ledgerMapper;
+        this.paymentShards = paymentShards;
+        this.entityManager = entityManager;
+        Dialect dialect = entityManagerFactory.unwrap(SessionFactoryImplementor.class).getJdbcServices().getDialect();
+        this.insertSql = "insert into account_balances (id, account_number, currency, balance_minor, "
+                + "total_debits_minor, total_credits_minor, entry_count, updated_at) values ("
+                + dialect.getSequenceSupport().getSelectSequenceNextValString(AccountBalanceEntity.SEQUENCE_NAME)
+                + ", ?, ?, ?, ?, ?, ?, ?)";
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void statusChanged(PaymentEntity payment) {
+        if (!posts(payment.getStatus())) {
+            return;
+        }
+        LocalDateTime postedAt = payment.getUpdatedAt() != null ? payment.getUpdatedAt() : LocalDateTime.now();
+        post(List.of(new PaymentPosting(payment.getPaymentId(), payment.getAmountMinor(), payment.getCurrency(),
+                payment.getDebtorAccountNumber(), payment.getCreditorAccountNumber())), payment.getStatus(), postedAt);
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void statusChanged(Collection<UUID> paymentIds, PaymentStatus status, LocalDateTime occurredAt) {
+        if (!posts(status) || paymentIds.isEmpty()) {
+            return;
+        }
+        post(paymentRepository.findPostingsByPaymentIdIn(paymentIds), status, occurredAt);
+    }
+
+    /**
+     * Every shard keeps the balance of the postings of its own payments, the account balance is their sum.
+     */
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public AccountBalance getAccountBalance(String accountNumber) {
+        Map<String, AccountBalanceEntity> byCurrency = new TreeMap<>();
+        paymentShards.queryEachShard(() -> balanceRepository.findByAccountNumberOrderByCurrencyAsc(accountNumber))
+                .forEach(rows -> rows.forEach(row -> byCurrency.merge(row.getCurrency(), row, LedgerServiceImpl::sum)));
+        AccountBalance balance = new AccountBalance();
+        balance.setAccountNumber(accountNumber);
+        balance.setBalances(byCurrency.values().stream()
+                .map(ledgerMapper::toModel)
+                .toList());
+        return balance;
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public AccountStatement getAccountStatement(String accountNumber, String cursor, int limit) {
+        LedgerCursor before = cursor == null ? null : LedgerCursor.decode(cursor);
+        // one extra row tells whether a next page exists without a count query
+        List<LedgerEntryEntity> rows = paymentShards.queryEachShard(() -> before == null
+                        ? entryRepository.findByAccountNumberOrderByPostedAtDescIdDesc(accountNumber,
+                        Limit.of(limit + 1))
+                        : entryRepository.findByAccountNumberBefore(accountNumber, before.postedAt(), before.id(),
+                        Limit.of(limit + 1)))
+                .stream()
+                .flatMap(List::stream)
+                .sorted(STATEMENT_ORDER)
+                .limit(limit + 1)
+                .toList();
+
+        boolean hasNext = rows.size() > limit;
+        List<LedgerEntryEntity> pageRows = hasNext ? rows.subList(0, limit) : rows;
+        AccountStatement statement = new AccountStatement();
+        statement.setAccountNumber(accountNumber);
+        statement.setItems(pageRows.stream().map(ledgerMapper::toModel).toList());
+        if (hasNext) {
+            LedgerEntryEntity last = pageRows.getLast();
+            statement.setNextCursor(new LedgerCursor(last.getPostedAt(), last.getId()).encode());
+        }
+        return statement;
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void importEntries(List<LedgerEntryEntity> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement insert = connection.prepareStatement(IMPORT_SQL)) {
+                for (LedgerEntryEntity entry : entries) {
+                    insert.setLong(1, entry.getId());
+                    insert.setString(2, entry.getAccountNumber());
+                    insert.setObject(3, entry.getPaymentId());
+                    insert.setString(4, entry.getDirection().name());
+                    insert.setLong(5, entry.getAmountMinor());
+                    insert.setString(6, entry.getCurrency());
+                    insert.setString(7, entry.getPaymentStatus().name());
+                    insert.setTimestamp(8, Timestamp.valueOf(entry.getPostedAt()));
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+        });
+        applyBalances(deltasOf(entries), LocalDateTime.now());
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void removeEntries(List<LedgerEntryEntity> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        entryRepository.deleteAllByIdInBatch(entries.stream().map(LedgerEntryEntity::getId).toList());
+        Map<BalanceKey, BalanceDelta> deltas = deltasOf(entries);
+        deltas.values().forEach(BalanceDelta::negate);
+        applyBalances(deltas, LocalDateTime.now());
+    }
+
+    private static Map<BalanceKey, BalanceDelta> deltasOf(List<LedgerEntryEntity> entries) {
+        Map<BalanceKey, BalanceDelta> deltas = new TreeMap<>(BalanceKey.ORDER);
+        for (LedgerEntryEntity entry : entries) {
+            BalanceDelta delta = deltas.computeIfAbsent(new BalanceKey(entry.getAccountNumber(), entry.getCurrency()),
+                    key -> new BalanceDelta());
+            if (entry.getDirection() == LedgerDirection.DEBIT) {
+                delta.debit(entry.getAmountMinor());
+            } else {
+                delta.credit(entry.getAmountMinor());
+            }
+        }
+        return deltas;
+    }
+
+    private static AccountBalanceEntity sum(AccountBalanceEntity a, AccountBalanceEntity b) {
+        return new AccountBalanceEntity(null, a.getAccountNumber(), a.getCurrency(),
+                Math.addExact(a.getBalanceMinor(), b.getBalanceMinor()),
+                Math.addExact(a.getTotalDebitsMinor(), b.getTotalDebitsMinor()),
+                Math.addExact(a.getTotalCreditsMinor(), b.getTotalCreditsMinor()),
+                a.getEntryCount() + b.getEntryCount(),
+                a.getUpdatedAt().isAfter(b.getUpdatedAt()) ? a.getUpdatedAt() : b.getUpdatedAt());
+    }
+
+    private static boolean posts(PaymentStatus status) {
+        return status == PaymentStatus.COMPLETED || status == PaymentStatus.REFUNDED;
+    }
+
+    private void post(List<PaymentPosting> postings, PaymentStatus status, LocalDateTime postedAt) {
+        List<LedgerEntryEntity> entries = new ArrayList<>(postings.size() * 2);
+        // sorted so that concurrent postings lock balance rows in the same order and cannot deadlock
+        Map<BalanceKey, BalanceDelta> deltas = new TreeMap<>(BalanceKey.ORDER);
+        for (PaymentPosting posting : postings) {
+            if (posting.debtorAccountNumber() == null || posting.creditorAccountNumber() == null) {
+                log.warn("Payment {} has no debtor or creditor account, not posted to the ledger", posting.paymentId());
+                continue;
+            }
+            boolean refund = status == PaymentStatus.REFUNDED;
+            String debited = refund ? posting.creditorAccountNumber() : posting.debtorAccountNumber();
+            String credited = refund ? posting.debtorAccountNumber() : posting.creditorAccountNumber();
+
+            entries.add(new LedgerEntryEntity(null, debited, posting.paymentId(), LedgerDirection.DEBIT,
+                    posting.amountMinor(), posting.currency(), status, postedAt));
+            entries.add(new LedgerEntryEntity(null, credited, posting.paymentId(), LedgerDirection.CREDIT,
+                    posting.amountMinor(), posting.currency(), status, postedAt));
+            deltas.computeIfAbsent(new BalanceKey(debited, posting.currency()), key -> new BalanceDelta())
+                    .debit(posting.amountMinor());
+            deltas.computeIfAbsent(new BalanceKey(credited, posting.currency()), key -> new BalanceDelta())
+                    .credit(posting.amountMinor());
+        }
+        if (entries.isEmpty()) {
+            return;
+        }
+        entryRepository.saveAll(entries);
+        applyBalances(deltas, postedAt);
+        log.debug("Posted {} ledger entries for {} payments moved to {}", entries.size(), postings.size(), status);
+    }
+
+    /**
+     * Add the deltas to the balance rows with one batch of in-place increments, the database serializes
+     * concurrent increments of the same row. Accounts without a balance row get one inserted under a savepoint,
+     * if a concurrent transaction inserted it first the insert is rolled back and the increment applied instead.
+     * Plain JDBC keeps the failed statements out of the session.
+     */
+    private void applyBalances(Map<BalanceKey, BalanceDelta> deltas, LocalDateTime postedAt) {
+        Timestamp updatedAt = Timestamp.valueOf(postedAt);
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            List<Map.Entry<BalanceKey, BalanceDelta>> pending = new ArrayList<>(deltas.entrySet());
+            int[] counts;
+            try (PreparedStatement update = connection.prepareStatement(UPDATE_SQL)) {
+                for (Map.Entry<BalanceKey, BalanceDelta> delta : pending) {
+                    bindUpdate(update, delta.getKey(), delta.getValue(), updatedAt);
+                    update.addBatch();
+                }
+                counts = update.executeBatch();
+            }
+
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] != 0) {
+                    continue;
+                }
+                BalanceKey key = pending.get(i).getKey();
+                BalanceDelta delta = pending.get(i).getValue();
+                Savepoint savepoint = connection.setSavepoint();
+                try (PreparedStatement insert = connection.prepareStatement(insertSql)) {
+                    insert.setString(1, key.accountNumber());
+                    insert.setString(2, key.currency());
+                    insert.setLong(3, delta.balance());
+                    insert.setLong(4, delta.debits);
+                    insert.setLong(5, delta.credits);
+                    insert.setLong(6, delta.entries);
+                    insert.setTimestamp(7, updatedAt);
+                    insert.executeUpdate();
+                    connection.releaseSavepoint(savepoint);
+                } catch (SQLException e) {
+                    if (!UNIQUE_VIOLATION.equals(e.getSQLState())) {
+                        throw e;
+                    }
+                    connection.rollback(savepoint);
+                    try (PreparedStatement update = connection.prepareStatement(UPDATE_SQL)) {
+                        bindUpdate(update, key, delta, updatedAt);
+                        update.executeUpdate();
+                    }
+                }
+            }
+        });
+    }
+
+    private static void bindUpdate(PreparedStatement update, BalanceKey key, BalanceDelta delta, Timestamp updatedAt)
+            throws SQLException {
+        update.setLong(1, delta.balance());
+        update.setLong(2, delta.debits);
+        update.setLong(3, delta.credits);
+        update.setLong(4, delta.entries);
+        update.setTimestamp(5, updatedAt);
+        update.setString(6, key.accountNumber());
+        update.setString(7, key.currency());
+    }
+
+    private record BalanceKey(String accountNumber, String currency) {
+
+        static final Comparator<BalanceKey> ORDER = Comparator.comparing(BalanceKey::accountNumber)
+                .thenComparing(BalanceKey::currency);
+    }
+
+    private static final class BalanceDelta {
+
+        // minor units, an overflow fails the posting instead of wrapping around
+        private long debits;
+        private long credits;
+        private long entries;
+
+        void debit(long amount) {
+            debits = Math.addExact(debits, amount);
+            entries++;
+        }
+
+        void credit(long amount) {
+            credits = Math.addExact(credits, amount);
+            entries++;
+        }
+
+        long balance() {
+            return Math.subtractExact(credits, debits);
+        }
+
+        void negate() {
+            debits = Math.negateExact(debits);
+            credits = Math.negateExact(credits);
+            entries = -entries;
+        }
+    }
+}
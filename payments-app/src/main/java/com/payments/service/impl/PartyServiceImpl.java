@@ -0,0 +1,216 @@
+package com.payments.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.payments.config.PartyCacheProperties;
+import com.payments.entity.PartyEntity;
+import com.payments.entity.PaymentEntity;
+import com.payments.repository.PartyRepository;
+import com.payments.service.PartyService;
+import com.payments.sharding.PaymentShards;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Deduplicates parties by content hash. Known parties come from a Caffeine cache keyed by the hash, so a repeat
+ * party costs neither a query nor a write. Unknown parties are inserted in the caller's transaction, concurrent
+ * writers of the same new party do not fail each other. Every shard stores the parties of its own payments,
+ * so there is one cache per shard.
+ */
+@Slf4j
+@Service
+public class PartyServiceImpl implements PartyService {
+
+    private static final String CACHE_NAME = "parties";
+    private static final int INSERT_CHUNK_SIZE = 100;
+    private static final String UNIQUE_VIOLATION = "23505";
+
+    private final PartyRepository repository;
+    private final EntityManager entityManager;
+    private final PaymentShards paymentShards;
+    private final List<Cache<String, PartyEntity>> parties;
+    private final String insertSql;
+
+    public PartyServiceImpl(PartyRepository repository,
+                            EntityManager entityManager,
+                            EntityManagerFactory entityManagerFactory,
+                            PaymentShards paymentShards,
+                            PartyCacheProperties properties,
+                            MeterRegistry meterRegistry) {
+        this.repository = repository;
+        this.entityManager = entityManager;
+        this.paymentShards = paymentShards;
+        Dialect dialect = entityManagerFactory.unwrap(SessionFactoryImplementor.class).getJdbcServices().getDialect();
+        this.insertSql = "insert into parties (id, content_hash, name, account_number, bank_code, address, email, phone_number) "
+                + "values (" + dialect.getSequenceSupport().getSelectSequenceNextValString(PartyEntity.SEQUENCE_NAME)
+                + ", ?, ?, ?, ?, ?, ?, ?)";
+        this.parties = new ArrayList<>(paymentShards.shardCount());
+        for (int shard = 0; shard < paymentShards.shardCount(); shard++) {
+            Cache<String, PartyEntity> cache = Caffeine.newBuilder()
+                    .maximumSize(properties.maximumSize() / paymentShards.shardCount())
+                    .recordStats()
+                    .build();
+            CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME, "shard", Integer.toString(shard));
+            parties.add(cache);
+        }
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void resolveParties(List<PaymentEntity> payments) {
+        Map<String, PartyEntity> unresolved = new LinkedHashMap<>();
+        for (PaymentEntity payment : payments) {
+            collect(payment.getDebtor(), unresolved);
+            collect(payment.getCreditor(), unresolved);
+        }
+        if (unresolved.isEmpty()) {
+            return;
+        }
+
+        Cache<String, PartyEntity> cache = parties.get(paymentShards.currentShard());
+        Map<String, PartyEntity> resolved = new HashMap<>(cache.getAllPresent(unresolved.keySet()));
+        if (resolved.size() < unresolved.size()) {
+            // sorted so that concurrent writers of the same new parties insert them in the same order and
+            // wait for each other instead of deadlocking on the unique hash
+            Map<String, PartyEntity> missing = new TreeMap<>(unresolved);
+            missing.keySet().removeAll(resolved.keySet());
+            resolved.putAll(store(missing, cache));
+        }
+
+        for (PaymentEntity payment : payments) {
+            if (payment.getDebtor() != null && payment.getDebtor().getId() == null) {
+                payment.setDebtor(resolved.get(payment.getDebtor().getContentHash()));
+            }
+            if (payment.getCreditor() != null && payment.getCreditor().getId() == null) {
+                payment.setCreditor(resolved.get(payment.getCreditor().getContentHash()));
+            }
+        }
+    }
+
+    private void collect(PartyEntity party, Map<String, PartyEntity> unresolved) {
+        if (party == null || party.getId() != null) {
+            return;
+        }
+        if (party.getContentHash() == null) {
+            party.setContentHash(hash(party));
+        }
+        unresolved.putIfAbsent(party.getContentHash(), party);
+    }
+
+    private Map<String, PartyEntity> store(Map<String, PartyEntity> missing, Cache<String, PartyEntity> cache) {
+        List<PartyEntity> candidates = new ArrayList<>(missing.values());
+        int inserted = 0;
+        for (int from = 0; from < candidates.size(); from += INSERT_CHUNK_SIZE) {
+            inserted += insertIfAbsent(candidates.subList(from, Math.min(from + INSERT_CHUNK_SIZE, candidates.size())));
+        }
+        Map<String, PartyEntity> stored = new HashMap<>();
+        repository.findByContentHashIn(missing.keySet()).forEach(party -> stored.put(party.getContentHash(), party));
+        log.debug("Resolved {} uncached parties, {} of them new", missing.size(), inserted);
+
+        // cached only once committed, a rolled back insert must not leave a dangling id in the cache
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache.putAll(stored);
+                }
+            });
+        }
+        return stored;
+    }
+
+    /**
+     * Insert the parties whose hash is not stored yet. The chunk goes in as one JDBC batch under a savepoint,
+     * if a concurrent transaction stored one of them first the chunk is rolled back to the savepoint and
+     * replayed row by row, skipping the duplicates. Plain JDBC keeps the failed statements out of the session.
+     */
+    private int insertIfAbsent(List<PartyEntity> chunk) {
+        return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            Savepoint savepoint = connection.setSavepoint();
+            try (PreparedStatement insert = connection.prepareStatement(insertSql)) {
+                for (PartyEntity party : chunk) {
+                    bind(insert, party);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+                connection.releaseSavepoint(savepoint);
+                return chunk.size();
+            } catch (SQLException batchFailure) {
+                connection.rollback(savepoint);
+            }
+
+            int inserted = 0;
+            try (PreparedStatement insert = connection.prepareStatement(insertSql)) {
+                for (PartyEntity party : chunk) {
+                    Savepoint row = connection.setSavepoint();
+                    try {
+                        bind(insert, party);
+                        insert.executeUpdate();
+                        connection.releaseSavepoint(row);
+                        inserted++;
+                    } catch (SQLException e) {
+                        if (!UNIQUE_VIOLATION.equals(e.getSQLState())) {
+                            throw e;
+                        }
+                        connection.rollback(row);
+                    }
+                }
+            }
+            return inserted;
+        });
+    }
+
+    private void bind(PreparedStatement insert, PartyEntity party) throws SQLException {
+        insert.setString(1, party.getContentHash());
+        insert.setString(2, party.getName());
+        insert.setString(3, party.getAccountNumber());
+        insert.setString(4, party.getBankCode());
+        insert.setString(5, party.getAddress());
+        insert.setString(6, party.getEmail());
+        insert.setString(7, party.getPhoneNumber());
+    }
+
+    private String hash(PartyEntity party) {
+        StringBuilder content = new StringBuilder();
+        for (String field : new String[]{party.getName(), party.getAccountNumber(), party.getBankCode(),
+                party.getAddress(), party.getEmail(), party.getPhoneNumber()}) {
+            // length prefixed so that no two different parties produce the same content, -1 marks null
+            if (field == null) {
+                content.append("-1:");
+            } else {
+                content.append(field.length()).append(':').append(field);
+            }
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(content.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.payments.service.impl;
+
+import com.payments.dto.PaymentExportFormat;
+import com.payments.entity.PartyEntity;
+import com.payments.entity.PaymentEntity;
+import com.payments.mapper.PaymentMapper;
+import com.payments.repository.PaymentRepository;
+import com.payments.service.PaymentExportService;
+import com.payments.sharding.PaymentShards;
+import com.payments.util.Money;
+import jakarta.persistence.EntityManager;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+@Slf4j
+@Service
+@AllArgsConstructor
+public class PaymentExportServiceImpl implements PaymentExportService {
+
+    private static final String CSV_HEADER = "paymentId,amount,currency,status,paymentMethod,"
+            + "debtorName,debtorAccountNumber,debtorBankCode,"
+            + "creditorName,creditorAccountNumber,creditorBankCode,createdAt,updatedAt";
+    private static final Comparator<PaymentEntity> EXPORT_ORDER = Comparator.comparing(PaymentEntity::getCreatedAt)
+            .thenComparing(PaymentEntity::getId);
+
+    private final PaymentRepository repository;
+    private final PaymentMapper paymentMapper;
+    private final ObjectMapper objectMapper;
+    private final EntityManager entityManager;
+    private final PaymentShards paymentShards;
+
+    @Override
+    @Transactional(readOnly = true)
+    public long exportPayments(LocalDateTime from, LocalDateTime to, PaymentExportFormat format, OutputStream out) throws IOException {
+        log.info("Exporting payments created between {} and {} as {}", from, to, format);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        if (format == PaymentExportFormat.CSV) {
+            writer.write(CSV_HEADER);
+            writer.write('\n');
+        }
+
+        long count = 0;
+        // the persistence context would otherwise hold every exported row until the transaction ends
+        try (Stream<PaymentEntity> rows = paymentShards.streamEachShard(
+                () -> repository.streamByCreatedAtRange(from, to).peek(this::detach), EXPORT_ORDER)) {
+            Iterator<PaymentEntity> iterator = rows.iterator();
+            while (iterator.hasNext()) {
+                PaymentEntity entity = iterator.next();
+                if (format == PaymentExportFormat.CSV) {
+                    writeCsv(writer, entity);
+                } else {
+                    writer.write(objectMapper.writeValueAsString(paymentMapper.toModel(entity)));
+                }
+                writer.write('\n');
+                count++;
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+        log.info("Exported {} payments", count);
+        return count;
+    }
+
+    private void detach(PaymentEntity entity) {
+        entityManager.detach(entity);
+        // parties are shared between rows, one already detached with an earlier payment is skipped
+        for (PartyEntity party : new PartyEntity[]{entity.getDebtor(), entity.getCreditor()}) {
+            if (party != null && entityManager.contains(party)) {
+                entityManager.detach(party);
+            }
+        }
+    }
+
+    private void writeCsv(Writer writer, PaymentEntity entity) throws IOException {
+        writer.write(entity.getPaymentId().toString());
+        writeCsvField(writer, Money.toDecimal(entity.getAmountMinor(), entity.getCurrency()));
+        writeCsvField(writer, entity.getCurrency());
+        writeCsvField(writer, entity.getStatus());
+        writeCsvField(writer, entity.getPaymentMethod());
+        writeCsvField(writer, entity.getDebtor() != null ? entity.getDebtor().getName() : null);
+        writeCsvField(writer, entity.getDebtorAccountNumber());
+        writeCsvField(writer, entity.getDebtor() != null ? entity.getDebtor().getBankCode() : null);
+        writeCsvField(writer, entity.getCreditor() != null ? entity.getCreditor().getName() : null);
+        writeCsvField(writer, entity.getCreditorAccountNumber());
+        writeCsvField(writer, entity.getCreditor() != null ? entity.getCreditor().getBankCode() : null);
+        writeCsvField(writer, entity.getCreatedAt());
+        writeCsvField(writer, entity.getUpdatedAt());
+    }
+
+    private void writeCsvField(Writer writer, Object value) throws IOException {
+        writer.write(',');
+        if (value == null) {
+            return;
+        }
+        String text = value.toString();
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+            writer.write(text);
+            return;
+        }
+        writer.write('"');
+        writer.write(text.replace("\"", "\"\""));
+        writer.write('"');
+    }
+}
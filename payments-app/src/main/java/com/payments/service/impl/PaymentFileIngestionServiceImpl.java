@@ -0,0 +1,211 @@
+package com.payments.service.impl;
+
+import com.payments.config.IngestionProperties;
+import com.payments.dto.IngestionJobState;
+import com.payments.dto.IngestionJobStatus;
+import com.payments.exception.InvalidPaymentFileException;
+import com.payments.exception.PaymentFileTooLargeException;
+import com.payments.ingest.IngestionProgress;
+import com.payments.ingest.PaymentFileIngester;
+import com.payments.service.PaymentFileIngestionService;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+/**
+ * Tracks payment file ingestion jobs. An upload is streamed to disk, so memory use does not depend on the file
+ * size, and handed to a single runner thread that ingests the files in the order they arrived. Jobs are kept in
+ * memory; files left over from before a restart are deleted on startup.
+ */
+@Slf4j
+@Service
+public class PaymentFileIngestionServiceImpl implements PaymentFileIngestionService {
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final PaymentFileIngester ingester;
+    private final IngestionProperties properties;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final ExecutorService runner =
+            Executors.newSingleThreadExecutor(Thread.ofPlatform().name("payment-file-runner").factory());
+
+    public PaymentFileIngestionServiceImpl(PaymentFileIngester ingester, IngestionProperties properties) {
+        this.ingester = ingester;
+        this.properties = properties;
+        deleteLeftovers();
+    }
+
+    @Override
+    public IngestionJobStatus submit(String fileName, InputStream content) throws IOException {
+        Files.createDirectories(properties.directory());
+        String jobId = UUID.randomUUID().toString();
+        Path upload = properties.directory().resolve(jobId + ".upload");
+        long size = store(content, upload);
+        // the runner has no security context, the job remembers who submitted it for the rate limits
+        Job job = new Job(jobId, fileName, size, upload, properties.directory().resolve(jobId + ".errors.csv"),
+                SecurityContextHolder.getContext().getAuthentication());
+        jobs.put(jobId, job);
+        runner.execute(() -> run(job));
+        log.info("Payment file {} of {} bytes queued as job {}", fileName, size, jobId);
+        return job.status();
+    }
+
+    @Override
+    public Optional<IngestionJobStatus> getJob(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId)).map(Job::status);
+    }
+
+    @Override
+    public Optional<Path> getErrorFile(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId))
+                .filter(job -> job.state == IngestionJobState.COMPLETED)
+                .map(job -> job.errorFile);
+    }
+
+    @Scheduled(fixedDelayString = "${payment.ingestion.purge-interval:1h}")
+    public void purgeFinishedJobs() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(properties.jobRetention());
+        jobs.values().removeIf(job -> {
+            if (job.completedAt == null || job.completedAt.isAfter(cutoff)) {
+                return false;
+            }
+            delete(job.errorFile);
+            return true;
+        });
+    }
+
+    @PreDestroy
+    public void close() {
+        runner.shutdownNow();
+    }
+
+    private long store(InputStream content, Path upload) throws IOException {
+        long maxSize = properties.maxFileSize().toBytes();
+        long size = 0;
+        try (OutputStream out = Files.newOutputStream(upload)) {
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            int read;
+            while ((read = content.read(buffer)) >= 0) {
+                size += read;
+                if (size > maxSize) {
+                    throw new PaymentFileTooLargeException("Payment files are limited to " + maxSize + " bytes");
+                }
+                out.write(buffer, 0, read);
+            }
+        } catch (IOException | RuntimeException e) {
+            delete(upload);
+            throw e;
+        }
+        return size;
+    }
+
+    private void run(Job job) {
+        job.started();
+        try {
+            ingester.ingest(job.upload, job.errorFile, job.submittedBy, job.progress);
+            job.finished(IngestionJobState.COMPLETED, null);
+        } catch (InvalidPaymentFileException e) {
+            log.warn("Payment file job {} rejected: {}", job.jobId, e.getMessage());
+            job.finished(IngestionJobState.FAILED, e.getMessage());
+        } catch (IOException | RuntimeException e) {
+            log.error("Payment file job {} failed", job.jobId, e);
+            job.finished(IngestionJobState.FAILED, "Payment file could not be ingested: " + e.getMessage());
+        } finally {
+            delete(job.upload);
+        }
+    }
+
+    private void deleteLeftovers() {
+        if (!Files.isDirectory(properties.directory())) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(properties.directory())) {
+            files.filter(file -> file.getFileName().toString().endsWith(".upload")
+                            || file.getFileName().toString().endsWith(".errors.csv"))
+                    .forEach(PaymentFileIngestionServiceImpl::delete);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot clean payment ingestion directory " + properties.directory(), e);
+        }
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Cannot delete {}: {}", file, e.getMessage());
+        }
+    }
+
+    private static final class Job {
+
+        private final String jobId;
+        private final String fileName;
+        private final long size;
+        private final Path upload;
+        private final Path errorFile;
+        private final Authentication submittedBy;
+        private final LocalDateTime submittedAt = LocalDateTime.now();
+        private final IngestionProgress progress = new IngestionProgress();
+
+        private volatile IngestionJobState state = IngestionJobState.QUEUED;
+        private volatile LocalDateTime startedAt;
+        private volatile LocalDateTime completedAt;
+        private volatile long startNanos;
+        private volatile long endNanos;
+        private volatile String error;
+
+        Job(String jobId, String fileName, long size, Path upload, Path errorFile, Authentication submittedBy) {
+            this.jobId = jobId;
+            this.fileName = fileName;
+            this.size = size;
+            this.upload = upload;
+            this.errorFile = errorFile;
+            this.submittedBy = submittedBy;
+        }
+
+        void started() {
+            startedAt = LocalDateTime.now();
+            startNanos = System.nanoTime();
+            state = IngestionJobState.RUNNING;
+        }
+
+        void finished(IngestionJobState finalState, String failure) {
+            endNanos = System.nanoTime();
+            completedAt = LocalDateTime.now();
+            error = failure;
+            state = finalState;
+        }
+
+        IngestionJobStatus status() {
+            IngestionJobState current = state;
+            long processed = progress.processedBytes();
+            long records = progress.records();
+            long elapsedNanos = current == IngestionJobState.QUEUED ? 0
+                    : (current == IngestionJobState.RUNNING ? System.nanoTime() : endNanos) - startNanos;
+            // headers and envelopes are not part of any chunk, a completed job is done regardless
+            int percent = current == IngestionJobState.COMPLETED ? 100
+                    : size == 0 ? 0 : (int) Math.min(99, processed * 100 / size);
+            return new IngestionJobStatus(jobId, fileName, current, progress.format(), submittedAt, startedAt,
+                    completedAt, size, processed, percent, records, progress.stored(), progress.failed(),
+                    elapsedNanos > 0 ? records * 1_000_000_000L / elapsedNanos : 0, error);
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package com.payments.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.payments.config.AsyncAcceptProperties;
+import com.payments.entity.PaymentEntity;
+import com.payments.exception.PaymentQueueFullException;
+import com.payments.journal.JournalEntry;
+import com.payments.journal.PaymentJournal;
+import com.payments.mapper.PaymentMapper;
+import com.payments.model.Payment;
+import com.payments.model.PaymentRequest;
+import com.payments.model.PaymentStatus;
+import com.payments.outbox.PaymentOutbox;
+import com.payments.repository.PaymentRepository;
+import com.payments.service.PartyService;
+import com.payments.service.PaymentIntakeService;
+import com.payments.service.PaymentStatisticsService;
+import com.payments.sharding.PaymentShards;
+import com.payments.util.Money;
+import com.payments.util.PaymentIdGenerator;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import tools.jackson.databind.ObjectMapper;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Asynchronous acceptance of payments. {@link #accept} appends the payment to the {@link PaymentJournal} and
+ * returns, a pool of workers drains the journaled payments into the database in batches. Bursts above the
+ * database write rate grow the backlog instead of the caller's latency.
+ * <p>
+ * Payments not yet stored are served from memory by {@link #findAccepted}, so polling the payment location
+ * works right after acceptance. A restart recovers the backlog from the journal, skipping payments that were
+ * already stored.
+ */
+@Slf4j
+@Service
+public class PaymentIntakeServiceImpl implements PaymentIntakeService, SmartLifecycle {
+
+    private static final int RECOVERY_CHUNK_SIZE = 1000;
+
+    private final PaymentMapper paymentMapper;
+    private final PaymentRepository repository;
+    private final PaymentOutbox paymentOutbox;
+    private final PartyService partyService;
+    private final PaymentStatisticsService paymentStatisticsService;
+    private final TransactionTemplate transactionTemplate;
+    private final PaymentShards paymentShards;
+    private final AsyncAcceptProperties properties;
+    private final PaymentJournal journal;
+    private final BlockingQueue<PendingPayment> queue = new LinkedBlockingQueue<>();
+    private final Map<String, Payment> pending = new ConcurrentHashMap<>();
+    private final Cache<String, Payment> rejected;
+    private final DistributionSummary batchSize;
+    private final Timer flushTimer;
+
+    private volatile boolean running;
+    private ExecutorService workers;
+
+    public PaymentIntakeServiceImpl(PaymentMapper paymentMapper,
+                                    PaymentRepository repository,
+                                    PaymentOutbox paymentOutbox,
+                                    PartyService partyService,
+                                    PaymentStatisticsService paymentStatisticsService,
+                                    TransactionTemplate transactionTemplate,
+                                    PaymentShards paymentShards,
+                                    AsyncAcceptProperties properties,
+                                    ObjectMapper objectMapper,
+                                    MeterRegistry meterRegistry) {
+        this.paymentMapper = paymentMapper;
+        this.repository = repository;
+        this.paymentOutbox = paymentOutbox;
+        this.partyService = partyService;
+        this.paymentStatisticsService = paymentStatisticsService;
+        this.transactionTemplate = transactionTemplate;
+        this.paymentShards = paymentShards;
+        this.properties = properties;
+        this.journal = new PaymentJournal(properties.journalDirectory(), properties.segmentSize().toBytes(),
+                properties.fsync(), objectMapper);
+        this.rejected = Caffeine.newBuilder()
+                .maximumSize(properties.maxPending())
+                .expireAfterWrite(properties.rejectedRetention())
+                .build();
+        Gauge.builder("payment.intake.pending", pending, Map::size)
+                .description("Accepted payments not yet stored")
+                .register(meterRegistry);
+        this.batchSize = DistributionSummary.builder("payment.intake.batch.size")
+                .description("Accepted payments stored per transaction")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("payment.intake.flush.time")
+                .description("Time to store one batch of accepted payments")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return properties.enabled();
+    }
+
+    @Override
+    public Payment accept(PaymentRequest paymentRequest) {
+        if (!running) {
+            throw new PaymentQueueFullException("Payment intake is not accepting payments");
+        }
+        if (pending.size() >= properties.maxPending()) {
+            throw new PaymentQueueFullException("Too many payments awaiting storage, retry later");
+        }
+        // rejected here, the storage worker could no longer report it to the caller
+        Money.toMinorUnits(paymentRequest.getAmount(), paymentRequest.getCurrency());
+        // in the precision of the database, the payment must not change its createdAt once it is stored
+        JournalEntry entry = new JournalEntry(paymentShards.nextPaymentId(),
+                LocalDateTime.now().truncatedTo(ChronoUnit.MICROS), paymentRequest);
+        long segment = journal.append(entry);
+        Payment accepted = toPendingModel(entry);
+        pending.put(accepted.getPaymentId(), accepted);
+        queue.add(new PendingPayment(entry, segment));
+        log.debug("Payment {} accepted for asynchronous storage", accepted.getPaymentId());
+        return paymentMapper.copy(accepted);
+    }
+
+    @Override
+    public Optional<Payment> findAccepted(String paymentId) {
+        // entries are kept under the canonical lowercase id, a path may spell it in upper case
+        Optional<String> key = PaymentIdGenerator.parse(paymentId).map(UUID::toString);
+        if (key.isEmpty()) {
+            return Optional.empty();
+        }
+        Payment payment = pending.get(key.get());
+        if (payment == null) {
+            payment = rejected.getIfPresent(key.get());
+        }
+        return Optional.ofNullable(payment).map(paymentMapper::copy);
+    }
+
+    @Override
+    public void start() {
+        if (!properties.enabled()) {
+            return;
+        }
+        recover(journal.open());
+        running = true;
+        int workerCount = Math.max(1, properties.workers());
+        workers = Executors.newFixedThreadPool(workerCount, Thread.ofPlatform().name("payment-intake-", 0).factory());
+        for (int i = 0; i < workerCount; i++) {
+            workers.execute(this::workLoop);
+        }
+        log.info("Payment intake started, workers={} batchSize={} backlog={}",
+                workerCount, properties.batchSize(), queue.size());
+    }
+
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        workers.shutdown();
+        try {
+            // payments still queued stay in the journal and are recovered on the next start
+            workers.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        journal.close();
+        log.info("Payment intake stopped, {} payments left in the journal", pending.size());
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void recover(List<PaymentJournal.Record> records) {
+        for (int from = 0; from < records.size(); from += RECOVERY_CHUNK_SIZE) {
+            List<PaymentJournal.Record> chunk = records.subList(from, Math.min(from + RECOVERY_CHUNK_SIZE, records.size()));
+            Set<UUID> stored = new HashSet<>();
+            paymentShards.partition(chunk.stream().map(r -> r.entry().paymentId()).toList(), id -> id)
+                    .forEach((shard, ids) -> stored.addAll(
+                            paymentShards.onShard(shard, () -> repository.findExistingPaymentIds(ids))));
+            for (PaymentJournal.Record record : chunk) {
+                if (stored.contains(record.entry().paymentId())) {
+                    journal.complete(record.segment());
+                } else {
+                    Payment accepted = toPendingModel(record.entry());
+                    pending.put(accepted.getPaymentId(), accepted);
+                    queue.add(new PendingPayment(record.entry(), record.segment()));
+                }
+            }
+        }
+    }
+
+    private void workLoop() {
+        int maxBatchSize = Math.max(1, properties.batchSize());
+        long pollIntervalNanos = properties.pollInterval().toNanos();
+        List<PendingPayment> batch = new ArrayList<>(maxBatchSize);
+
+        while (running) {
+            try {
+                PendingPayment first = queue.poll(pollIntervalNanos, TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatchSize - 1);
+                store(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Payment intake worker failed to store a batch, requeueing it", e);
+                queue.addAll(batch);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void store(List<PendingPayment> batch) throws InterruptedException {
+        // a transaction writes to one shard, a batch spanning several is stored once per shard
+        for (List<PendingPayment> shardBatch : paymentShards.partition(batch, payment -> payment.entry().paymentId()).values()) {
+            storeShard(shardBatch);
+        }
+    }
+
+    private void storeShard(List<PendingPayment> batch) throws InterruptedException {
+        batchSize.record(batch.size());
+        Timer.Sample sample = Timer.start();
+        try {
+            transactionTemplate.executeWithoutResult(status -> save(batch));
+            batch.forEach(this::stored);
+            return;
+        } catch (RuntimeException ex) {
+            log.warn("Storing {} accepted payments failed, retrying individually: {}", batch.size(), ex.getMessage());
+        } finally {
+            sample.stop(flushTimer);
+        }
+
+        List<PendingPayment> retry = new ArrayList<>();
+        for (PendingPayment payment : batch) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> save(List.of(payment)));
+                stored(payment);
+            } catch (DataIntegrityViolationException ex) {
+                UUID paymentId = payment.entry().paymentId();
+                if (paymentShards.onShardOf(paymentId, () -> repository.findByPaymentId(paymentId)).isPresent()) {
+                    stored(payment);
+                } else {
+                    reject(payment, ex);
+                }
+            } catch (RuntimeException ex) {
+                retry.add(payment);
+            }
+        }
+        if (!retry.isEmpty()) {
+            // most likely the database is unavailable, the payments stay journaled and are tried again
+            log.warn("{} accepted payments could not be stored, retrying in {}", retry.size(), properties.retryBackoff());
+            Thread.sleep(properties.retryBackoff());
+            queue.addAll(retry);
+        }
+    }
+
+    private void save(List<PendingPayment> batch) {
+        batch.forEach(payment -> paymentShards.bindForWrite(payment.entry().paymentId()));
+        // mapped per attempt, a failed attempt leaves ids on the entities it tried to persist
+        List<PaymentEntity> entities = batch.stream().map(payment -> toEntity(payment.entry())).toList();
+        partyService.resolveParties(entities);
+        List<PaymentEntity> saved = repository.saveAll(entities);
+        paymentOutbox.paymentsCreated(saved);
+        paymentStatisticsService.paymentsCreated(saved);
+        repository.flush();
+    }
+
+    private void stored(PendingPayment payment) {
+        pending.remove(payment.entry().paymentId().toString());
+        journal.complete(payment.segment());
+    }
+
+    private void reject(PendingPayment payment, RuntimeException cause) {
+        String paymentId = payment.entry().paymentId().toString();
+        log.error("Accepted payment {} was rejected by the database: {}", paymentId, cause.getMessage());
+        Payment failed = toPendingModel(payment.entry());
+        failed.setStatus(PaymentStatus.FAILED);
+        failed.setUpdatedAt(LocalDateTime.now());
+        rejected.put(paymentId, failed);
+        pending.remove(paymentId);
+        journal.complete(payment.segment());
+    }
+
+    private Payment toPendingModel(JournalEntry entry) {
+        return paymentMapper.toModel(toEntity(entry));
+    }
+
+    // stored with the time it was accepted rather than the time it is stored
+    private PaymentEntity toEntity(JournalEntry entry) {
+        PaymentEntity entity = paymentMapper.toEntity(entry.request(), entry.paymentId());
+        entity.setCreatedAt(entry.acceptedAt());
+        return entity;
+    }
+
+    private record PendingPayment(JournalEntry entry, long segment) {
+    }
+}
@@ -1,37 +1,358 @@
 package com.payments.service.impl;
 
+import com.payments.archive.PaymentArchive;
+import com.payments.cache.PaymentCache;
+import com.payments.cache.PaymentCacheInvalidator;
+import com.payments.config.PaymentBatchProperties;
+import com.payments.dto.PaymentCursor;
+import com.payments.dto.PaymentSearchFilter;
+import com.payments.dto.PaymentSnapshot;
 import com.payments.entity.PaymentEntity;
+import com.payments.exception.InvalidAmountException;
+import com.payments.exception.InvalidStatusTransitionException;
+import com.payments.exception.PaymentNotFoundException;
 import com.payments.mapper.PaymentMapper;
+import com.payments.model.BatchItemStatus;
+import com.payments.model.BatchPaymentResponse;
+import com.payments.model.BatchPaymentResult;
+import com.payments.model.BulkStatusTransitionResponse;
 import com.payments.model.Payment;
+import com.payments.model.PaymentPage;
 import com.payments.model.PaymentRequest;
+import com.payments.model.PaymentStatus;
+import com.payments.outbox.PaymentOutbox;
 import com.payments.repository.PaymentRepository;
+import com.payments.repository.PaymentSpecifications;
+import com.payments.service.LedgerService;
+import com.payments.service.PartyService;
 import com.payments.service.PaymentService;
+import com.payments.service.PaymentStatisticsService;
+import com.payments.sharding.PaymentShards;
+import com.payments.util.PaymentIdGenerator;
+import com.payments.util.PaymentStatusTransitions;
+import jakarta.persistence.EntityManager;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.IntStream;
 
 @Service
 @Transactional
 @AllArgsConstructor
 @Slf4j
 public class PaymentServiceImpl implements PaymentService {
+    private static final Sort KEYSET_ORDER = Sort.by(Sort.Direction.DESC, "createdAt", "id");
+    private static final Comparator<SearchRow> SEARCH_ORDER = Comparator.comparing(SearchRow::createdAt)
+            .thenComparing(SearchRow::id)
+            .reversed();
+
     private final PaymentMapper paymentMapper;
     private final PaymentRepository repository;
+    private final PaymentBatchProperties batchProperties;
+    private final TransactionTemplate transactionTemplate;
+    private final EntityManager entityManager;
+    private final PaymentCache paymentCache;
+    private final PaymentCacheInvalidator paymentCacheInvalidator;
+    private final PaymentOutbox paymentOutbox;
+    private final PartyService partyService;
+    private final LedgerService ledgerService;
+    private final PaymentStatisticsService paymentStatisticsService;
+    private final PaymentArchive paymentArchive;
+    private final PaymentShards paymentShards;
 
     @Override
     public Payment makePayment(PaymentRequest paymentRequest) {
         log.debug("Payment request received.");
-        PaymentEntity entity = paymentMapper.toEntity(paymentRequest);
+        UUID paymentId = paymentShards.nextPaymentId();
+        paymentShards.bindForWrite(paymentId);
+        PaymentEntity entity = paymentMapper.toEntity(paymentRequest, paymentId);
+        partyService.resolveParties(List.of(entity));
         PaymentEntity savedPayment = repository.save(entity);
+        paymentOutbox.paymentsCreated(List.of(savedPayment));
+        paymentStatisticsService.paymentsCreated(List.of(savedPayment));
         log.debug("payment stored successful");
         return paymentMapper.toModel(savedPayment);
     }
 
+    /**
+     * Chunks are stored in their own transaction so that a chunk costs a handful of
+     * JDBC batches. If a chunk fails it is replayed item by item to isolate the bad rows.
+     * Ids are assigned up front and the items split by shard, a chunk only holds items of one shard.
+     */
     @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public BatchPaymentResponse makePayments(List<PaymentRequest> paymentRequests) {
+        log.debug("Batch payment request received with {} items.", paymentRequests.size());
+        BatchPaymentResult[] results = new BatchPaymentResult[paymentRequests.size()];
+        int chunkSize = Math.max(1, batchProperties.chunkSize());
+        List<UUID> paymentIds = paymentRequests.stream().map(request -> paymentShards.nextPaymentId()).toList();
+        Map<Integer, List<Integer>> itemsByShard = paymentShards.partition(
+                IntStream.range(0, paymentRequests.size()).boxed().toList(), paymentIds::get);
+
+        for (List<Integer> items : itemsByShard.values()) {
+            for (int from = 0; from < items.size(); from += chunkSize) {
+                List<Integer> chunk = items.subList(from, Math.min(from + chunkSize, items.size()));
+                List<PaymentRequest> requests = chunk.stream().map(paymentRequests::get).toList();
+                List<UUID> ids = chunk.stream().map(paymentIds::get).toList();
+                try {
+                    List<Payment> saved = transactionTemplate.execute(status -> saveChunk(requests, ids));
+                    for (int i = 0; i < saved.size(); i++) {
+                        results[chunk.get(i)] = created(chunk.get(i), saved.get(i));
+                    }
+                } catch (RuntimeException ex) {
+                    log.warn("Batch chunk starting at item {} failed, retrying items individually: {}",
+                            chunk.getFirst(), ex.getMessage());
+                    entityManager.clear();
+                    for (int i = 0; i < chunk.size(); i++) {
+                        results[chunk.get(i)] = saveSingle(chunk.get(i), requests.get(i), ids.get(i));
+                    }
+                }
+            }
+        }
+
+        long succeeded = Arrays.stream(results).filter(result -> result.getStatus() == BatchItemStatus.CREATED).count();
+        BatchPaymentResponse response = new BatchPaymentResponse();
+        response.setTotal(results.length);
+        response.setSucceeded((int) succeeded);
+        response.setFailed(results.length - (int) succeeded);
+        response.setResults(Arrays.asList(results));
+        log.debug("Batch payment stored, {} of {} items succeeded", succeeded, results.length);
+        return response;
+    }
+
+    /**
+     * Lookups select a flat projection in a read-only transaction. Nothing is hydrated into the persistence
+     * context, so there is no entity snapshot and no dirty check, and Hibernate does not flush.
+     * Payments no longer in the table are read from the archive.
+     */
+    @Override
+    @Transactional(readOnly = true)
     public Optional<Payment> getPaymentById(String paymentId) {
-        return repository.findByPaymentId(paymentId).map(paymentMapper::toModel);
+        return paymentCache.get(paymentId, id -> PaymentIdGenerator.parse(id)
+                .flatMap(uuid -> {
+                    paymentShards.bindForRead(uuid);
+                    return repository.findRowByPaymentId(uuid).or(() -> paymentArchive.find(uuid));
+                })
+                .map(paymentMapper::toModel));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<LocalDateTime> getPaymentLastModified(String paymentId) {
+        Optional<Payment> cached = paymentCache.peek(paymentId);
+        if (cached.isPresent()) {
+            Payment payment = cached.get();
+            return Optional.of(payment.getUpdatedAt() != null ? payment.getUpdatedAt() : payment.getCreatedAt());
+        }
+        return PaymentIdGenerator.parse(paymentId).flatMap(uuid -> {
+            paymentShards.bindForRead(uuid);
+            return repository.findLastModifiedByPaymentId(uuid)
+                    .or(() -> paymentArchive.find(uuid).map(row -> row.updatedAt() != null ? row.updatedAt() : row.createdAt()));
+        });
+    }
+
+    /**
+     * Every shard returns its first page in parallel and the pages are merged. Ids are unique across shards, so
+     * {@code (createdAt, id)} orders all shards alike and the cursor applies to each of them unchanged.
+     */
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public PaymentPage searchPayments(PaymentSearchFilter filter, String cursor, int limit) {
+        PaymentCursor position = cursor == null ? null : PaymentCursor.decode(cursor);
+        Specification<PaymentEntity> spec = position == null ? PaymentSpecifications.matching(filter)
+                : PaymentSpecifications.matching(filter).and(PaymentSpecifications.before(position.createdAt(), position.id()));
+        // one extra row tells whether a next page exists without a count query
+        List<SearchRow> rows = paymentShards.queryEachShard(() -> repository.findBy(spec, query -> query
+                        .sortBy(KEYSET_ORDER)
+                        .project("debtor", "creditor")
+                        .limit(limit + 1)
+                        .all())
+                .stream()
+                .map(entity -> new SearchRow(entity.getCreatedAt(), entity.getId(), paymentMapper.toModel(entity)))
+                .toList())
+                .stream()
+                .flatMap(List::stream)
+                .sorted(SEARCH_ORDER)
+                .limit(limit + 1)
+                .toList();
+
+        boolean hasNext = rows.size() > limit;
+        List<SearchRow> pageRows = hasNext ? rows.subList(0, limit) : rows;
+        PaymentPage page = new PaymentPage();
+        page.setItems(pageRows.stream().map(SearchRow::payment).toList());
+        if (hasNext) {
+            SearchRow last = pageRows.getLast();
+            page.setNextCursor(new PaymentCursor(last.createdAt(), last.id()).encode());
+        }
+        return page;
+    }
+
+    @Override
+    public Payment updatePaymentStatus(String paymentId, PaymentStatus status, Long expectedVersion) {
+        UUID id = PaymentIdGenerator.parse(paymentId).orElseThrow(() -> new PaymentNotFoundException(paymentId));
+        paymentShards.bindForWrite(id);
+        PaymentEntity entity = repository.findByPaymentId(id)
+                .orElseThrow(() -> new PaymentNotFoundException(paymentId));
+        if (expectedVersion != null && !expectedVersion.equals(entity.getVersion())) {
+            throw new ObjectOptimisticLockingFailureException(PaymentEntity.class, paymentId);
+        }
+        if (entity.getStatus() == status) {
+            return paymentMapper.toModel(entity);
+        }
+        if (!PaymentStatusTransitions.isAllowed(entity.getStatus(), status)) {
+            throw new InvalidStatusTransitionException(entity.getStatus(), status);
+        }
+        PaymentStatus previousStatus = entity.getStatus();
+        entity.setStatus(status);
+        // flush here so a concurrent change fails this call and the returned version is the new one
+        PaymentEntity saved = repository.saveAndFlush(entity);
+        paymentOutbox.statusChanged(saved, previousStatus);
+        ledgerService.statusChanged(saved);
+        paymentStatisticsService.statusChanged(saved, previousStatus);
+        log.debug("Payment {} moved to {}", paymentId, status);
+        return paymentMapper.toModel(saved);
+    }
+
+    /**
+     * The payments of each shard are moved in a transaction of their own, a failure on one shard leaves the
+     * transitions already committed on others in place.
+     */
+    @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public BulkStatusTransitionResponse transitionPayments(List<String> paymentIds, PaymentStatus status,
+                                                           PaymentStatus expectedStatus) {
+        Set<PaymentStatus> from;
+        if (expectedStatus != null) {
+            if (!PaymentStatusTransitions.isAllowed(expectedStatus, status)) {
+                throw new InvalidStatusTransitionException(expectedStatus, status);
+            }
+            from = EnumSet.of(expectedStatus);
+        } else {
+            from = PaymentStatusTransitions.sourcesOf(status);
+            if (from.isEmpty()) {
+                throw new InvalidStatusTransitionException(status);
+            }
+        }
+
+        Set<String> requested = new LinkedHashSet<>(paymentIds);
+        Set<UUID> ids = new HashSet<>(requested.size());
+        requested.forEach(id -> PaymentIdGenerator.parse(id).ifPresent(ids::add));
+        // truncated to the column precision, so events carry the stored time
+        LocalDateTime updatedAt = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+        int updated = 0;
+        try {
+            for (List<UUID> shardIds : paymentShards.partition(ids, id -> id).values()) {
+                updated += transactionTemplate.execute(tx -> transition(shardIds, from, status, updatedAt));
+            }
+        } finally {
+            // the update bypasses the entity listener, evict under both the requested and the canonical form
+            Set<String> evicted = new HashSet<>(requested);
+            ids.forEach(id -> evicted.add(id.toString()));
+            paymentCacheInvalidator.evictAll(evicted);
+        }
+
+        log.debug("Bulk transition to {} updated {} of {} payments", status, updated, requested.size());
+        BulkStatusTransitionResponse response = new BulkStatusTransitionResponse();
+        response.setRequested(requested.size());
+        response.setUpdated(updated);
+        response.setSkipped(requested.size() - updated);
+        return response;
+    }
+
+    private int transition(List<UUID> ids, Set<PaymentStatus> from, PaymentStatus status, LocalDateTime updatedAt) {
+        ids.forEach(paymentShards::bindForWrite);
+        // one update per source status, so the payments each one moved had that status before
+        List<PaymentSnapshot> before = new ArrayList<>();
+        Set<UUID> remaining = new HashSet<>(ids);
+        for (PaymentStatus source : from) {
+            if (remaining.isEmpty() || repository.updateStatus(remaining, EnumSet.of(source), status, updatedAt) == 0) {
+                continue;
+            }
+            for (PaymentSnapshot moved : repository.findUpdatedSnapshots(remaining, status, updatedAt)) {
+                before.add(moved.withStatus(source));
+                remaining.remove(moved.paymentId());
+            }
+        }
+        if (before.isEmpty()) {
+            return 0;
+        }
+        List<UUID> changed = before.stream().map(PaymentSnapshot::paymentId).toList();
+        paymentOutbox.statusChanged(before, status, updatedAt);
+        ledgerService.statusChanged(changed, status, updatedAt);
+        paymentStatisticsService.statusChanged(before, status);
+        return before.size();
+    }
+
+    private List<Payment> saveChunk(List<PaymentRequest> chunk, List<UUID> paymentIds) {
+        paymentIds.forEach(paymentShards::bindForWrite);
+        List<PaymentEntity> entities = IntStream.range(0, chunk.size())
+                .mapToObj(i -> paymentMapper.toEntity(chunk.get(i), paymentIds.get(i)))
+                .toList();
+        partyService.resolveParties(entities);
+        List<PaymentEntity> saved = repository.saveAll(entities);
+        paymentOutbox.paymentsCreated(saved);
+        paymentStatisticsService.paymentsCreated(saved);
+        repository.flush();
+        List<Payment> payments = saved.stream().map(paymentMapper::toModel).toList();
+        // keep the persistence context flat when the request spans many chunks
+        entityManager.clear();
+        return payments;
+    }
+
+    private BatchPaymentResult saveSingle(int index, PaymentRequest request, UUID paymentId) {
+        try {
+            Payment payment = transactionTemplate.execute(status -> saveChunk(List.of(request), List.of(paymentId)).getFirst());
+            return created(index, payment);
+        } catch (InvalidAmountException ex) {
+            return failed(index, ex.getMessage());
+        } catch (DataIntegrityViolationException ex) {
+            log.warn("Batch item {} rejected: {}", index, ex.getMessage());
+            entityManager.clear();
+            return failed(index, "The data provided conflicts with existing records (e.g., duplicate entry).");
+        } catch (RuntimeException ex) {
+            log.error("Batch item {} failed", index, ex);
+            entityManager.clear();
+            return failed(index, "Payment could not be stored.");
+        }
+    }
+
+    private BatchPaymentResult created(int index, Payment payment) {
+        BatchPaymentResult result = new BatchPaymentResult();
+        result.setIndex(index);
+        result.setStatus(BatchItemStatus.CREATED);
+        result.setPayment(payment);
+        return result;
+    }
+
+    private BatchPaymentResult failed(int index, String error) {
+        BatchPaymentResult result = new BatchPaymentResult();
+        result.setIndex(index);
+        result.setStatus(BatchItemStatus.FAILED);
+        result.setError(error);
+        return result;
+    }
+
+    private record SearchRow(LocalDateTime createdAt, Long id, Payment payment) {
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,255 @@
+package com.payments.service.impl;
+
+import com.payments.archive.PaymentArchive;
+import com.payments.config.PaymentStatisticsProperties;
+import com.payments.dto.PaymentSnapshot;
+import com.payments.dto.PaymentStatisticsRow;
+import com.payments.entity.PaymentEntity;
+import com.payments.model.MinuteStatistics;
+import com.payments.model.PaymentMethod;
+import com.payments.model.PaymentStatistics;
+import com.payments.model.PaymentStatus;
+import com.payments.model.PaymentTotals;
+import com.payments.replica.PrimaryReads;
+import com.payments.repository.PaymentRepository;
+import com.payments.service.PaymentStatisticsService;
+import com.payments.sharding.PaymentShards;
+import com.payments.util.Money;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live payment totals per currency, status and payment method, overall and per minute of creation. Counts and
+ * amounts are striped {@link LongAdder}s, amounts in minor units of their currency, so concurrent writers do not
+ * contend and reads never touch the database. The minute buckets form a ring that reuses the slot of a minute once
+ * it falls out of the retention. Totals are rebuilt from the payments table and the archive on startup, before any
+ * payment can be written.
+ */
+@Slf4j
+@Service
+public class PaymentStatisticsServiceImpl implements PaymentStatisticsService, SmartInitializingSingleton {
+
+    private static final Comparator<StatsKey> KEY_ORDER = Comparator.comparing(StatsKey::currency)
+            .thenComparing(StatsKey::status)
+            .thenComparing(StatsKey::paymentMethod);
+
+    private final PaymentRepository repository;
+    private final PaymentArchive archive;
+    private final PaymentShards paymentShards;
+    private final PaymentStatisticsProperties properties;
+    private final ConcurrentMap<StatsKey, Totals> totals = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<MinuteBucket> minutes;
+
+    public PaymentStatisticsServiceImpl(PaymentRepository repository,
+                                        PaymentArchive archive,
+                                        PaymentShards paymentShards,
+                                        PaymentStatisticsProperties properties) {
+        this.repository = repository;
+        this.archive = archive;
+        this.paymentShards = paymentShards;
+        this.properties = properties;
+        this.minutes = new AtomicReferenceArray<>(Math.max(1, properties.retentionMinutes()));
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!properties.enabled()) {
+            return;
+        }
+        long start = System.nanoTime();
+        LocalDateTime since = minuteStart(currentMinute() - minutes.length() + 1);
+        List<PaymentStatisticsRow> overall = new ArrayList<>(archive.aggregateStatistics(null));
+        List<PaymentStatisticsRow> perMinute = new ArrayList<>(archive.aggregateStatistics(since));
+        // the totals are kept up to date from here on, a lagging replica would leave out the latest payments for good
+        PrimaryReads.call(true, () -> {
+            paymentShards.queryEachShard(repository::aggregateStatistics).forEach(overall::addAll);
+            paymentShards.queryEachShard(() -> repository.aggregateStatisticsPerMinute(since)).forEach(perMinute::addAll);
+            return null;
+        });
+        overall.forEach(row -> totalsOf(totals, keyOf(row)).add(row.count(), row.amountMinor()));
+        perMinute.forEach(row -> {
+            MinuteBucket bucket = bucketOf(epochMinute(row.minute()), true);
+            if (bucket != null) {
+                totalsOf(bucket.totals(), keyOf(row)).add(row.count(), row.amountMinor());
+            }
+        });
+        log.info("Payment statistics rebuilt in {} ms", (System.nanoTime() - start) / 1_000_000);
+    }
+
+    @Override
+    public void paymentsCreated(List<PaymentEntity> payments) {
+        afterCommit(() -> payments.forEach(payment -> add(
+                new StatsKey(payment.getCurrency(), payment.getStatus(), payment.getPaymentMethod()),
+                payment.getCreatedAt(), 1, payment.getAmountMinor(), true)));
+    }
+
+    @Override
+    public void statusChanged(PaymentEntity payment, PaymentStatus previousStatus) {
+        long amount = payment.getAmountMinor();
+        afterCommit(() -> move(payment.getCurrency(), payment.getPaymentMethod(), payment.getCreatedAt(), amount,
+                previousStatus, payment.getStatus()));
+    }
+
+    @Override
+    public void statusChanged(Collection<PaymentSnapshot> before, PaymentStatus status) {
+        afterCommit(() -> before.forEach(payment -> move(payment.currency(), payment.paymentMethod(),
+                payment.createdAt(), payment.amountMinor(), payment.status(), status)));
+    }
+
+    @Override
+    public PaymentStatistics getStatistics(int minuteCount) {
+        PaymentStatistics statistics = new PaymentStatistics();
+        statistics.setGeneratedAt(LocalDateTime.now());
+        statistics.setTotals(toModel(totals));
+        List<MinuteStatistics> recent = new ArrayList<>();
+        long current = currentMinute();
+        for (long minute = current; minute > current - Math.min(minuteCount, minutes.length()); minute--) {
+            MinuteBucket bucket = bucketOf(minute, false);
+            if (bucket == null) {
+                continue;
+            }
+            List<PaymentTotals> bucketTotals = toModel(bucket.totals());
+            if (!bucketTotals.isEmpty()) {
+                MinuteStatistics minuteStatistics = new MinuteStatistics();
+                minuteStatistics.setMinute(minuteStart(minute));
+                minuteStatistics.setTotals(bucketTotals);
+                recent.add(minuteStatistics);
+            }
+        }
+        statistics.setMinutes(recent);
+        return statistics;
+    }
+
+    // a rolled back write must not be counted, so updates are applied only once the transaction commits
+    private void afterCommit(Runnable update) {
+        if (!properties.enabled()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    update.run();
+                }
+            });
+        } else {
+            update.run();
+        }
+    }
+
+    private void move(String currency, PaymentMethod paymentMethod, LocalDateTime createdAt, long amount,
+                      PaymentStatus from, PaymentStatus to) {
+        if (from == to) {
+            return;
+        }
+        add(new StatsKey(currency, from, paymentMethod), createdAt, -1, -amount, false);
+        add(new StatsKey(currency, to, paymentMethod), createdAt, 1, amount, false);
+    }
+
+    /**
+     * Add to the overall totals and to the bucket of the creation minute. Status changes only update a bucket
+     * that is still retained, the payment was counted in it when it was created.
+     */
+    private void add(StatsKey key, LocalDateTime createdAt, long count, long amount, boolean createBucket) {
+        totalsOf(totals, key).add(count, amount);
+        if (createdAt != null) {
+            MinuteBucket bucket = bucketOf(epochMinute(createdAt), createBucket);
+            if (bucket != null) {
+                totalsOf(bucket.totals(), key).add(count, amount);
+            }
+        }
+    }
+
+    private MinuteBucket bucketOf(long minute, boolean create) {
+        if (minute <= currentMinute() - minutes.length()) {
+            return null;
+        }
+        int slot = (int) Math.floorMod(minute, minutes.length());
+        while (true) {
+            MinuteBucket bucket = minutes.get(slot);
+            if (bucket != null && bucket.minute() == minute) {
+                return bucket;
+            }
+            // the slot holds a later minute, this one is already out of the retention
+            if (bucket != null && bucket.minute() > minute || !create) {
+                return null;
+            }
+            MinuteBucket fresh = new MinuteBucket(minute, new ConcurrentHashMap<>());
+            if (minutes.compareAndSet(slot, bucket, fresh)) {
+                return fresh;
+            }
+        }
+    }
+
+    private static Totals totalsOf(ConcurrentMap<StatsKey, Totals> map, StatsKey key) {
+        return map.computeIfAbsent(key, k -> new Totals());
+    }
+
+    private static List<PaymentTotals> toModel(Map<StatsKey, Totals> map) {
+        List<PaymentTotals> result = new ArrayList<>(map.size());
+        map.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey(KEY_ORDER))
+                .forEach(entry -> {
+                    long count = entry.getValue().count.sum();
+                    if (count == 0) {
+                        return;
+                    }
+                    PaymentTotals paymentTotals = new PaymentTotals();
+                    paymentTotals.setCurrency(entry.getKey().currency());
+                    paymentTotals.setStatus(entry.getKey().status());
+                    paymentTotals.setPaymentMethod(entry.getKey().paymentMethod());
+                    paymentTotals.setCount(count);
+                    paymentTotals.setAmount(Money.toDecimal(entry.getValue().amount.sum(), entry.getKey().currency()));
+                    result.add(paymentTotals);
+                });
+        return result;
+    }
+
+    private static StatsKey keyOf(PaymentStatisticsRow row) {
+        return new StatsKey(row.currency(), row.status(), row.paymentMethod());
+    }
+
+    private static long currentMinute() {
+        return epochMinute(LocalDateTime.now());
+    }
+
+    private static long epochMinute(LocalDateTime time) {
+        return Math.floorDiv(time.toEpochSecond(ZoneOffset.UTC), 60);
+    }
+
+    private static LocalDateTime minuteStart(long minute) {
+        return LocalDateTime.ofEpochSecond(minute * 60, 0, ZoneOffset.UTC);
+    }
+
+    private record StatsKey(String currency, PaymentStatus status, PaymentMethod paymentMethod) {
+    }
+
+    private record MinuteBucket(long minute, ConcurrentMap<StatsKey, Totals> totals) {
+    }
+
+    private static final class Totals {
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder amount = new LongAdder();
+
+        void add(long count, long amount) {
+            this.count.add(count);
+            this.amount.add(amount);
+        }
+    }
+}
@@ -0,0 +1,444 @@
+package com.payments.sharding;
+
+import com.payments.config.ShardingProperties;
+import com.payments.entity.ShardSlotEntity;
+import com.payments.exception.ShardMigrationException;
+import com.payments.jdbc.SqlStatements;
+import com.payments.replica.PrimaryReads;
+import com.payments.repository.ShardSlotRepository;
+import com.payments.util.PaymentIdGenerator;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Places payments on shards. The low 10 bits of the random part of a payment id are its slot, one of
+ * {@link #SLOT_COUNT}, and every slot is owned by one shard, so the shard of a payment follows from its id alone.
+ * The slot owners are stored on shard 0 and only change when {@link ShardRebalancer} moves slots.
+ * <p>
+ * Everything written for a payment, its ledger entries and outbox events, lives on the payment's shard, and a
+ * transaction is bound to a single shard. Writers bind their transaction before the first statement; a
+ * write announces itself per slot, so a slot move can wait for the writes already running and reject new ones.
+ * <p>
+ * With sharding disabled there is one shard, the binding methods do nothing and fan-outs run inline.
+ */
+@Slf4j
+@Component
+public class PaymentShards {
+
+    public static final int SLOT_COUNT = 1024;
+
+    private static final int SLOT_MASK = SLOT_COUNT - 1;
+    private static final int[] ALL_SLOTS = IntStream.range(0, SLOT_COUNT).toArray();
+
+    private final boolean enabled;
+    private final int shardCount;
+    private final ShardSlotRepository slotRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final AtomicIntegerArray owners = new AtomicIntegerArray(SLOT_COUNT);
+    private final AtomicIntegerArray frozen = new AtomicIntegerArray(SLOT_COUNT);
+    private final AtomicIntegerArray inFlight = new AtomicIntegerArray(SLOT_COUNT);
+    private final ExecutorService fanOut;
+
+    private volatile int[][] slotsByShard;
+
+    public PaymentShards(ShardingProperties properties,
+                         ShardSlotRepository slotRepository,
+                         PlatformTransactionManager transactionManager) {
+        this.enabled = properties.enabled();
+        this.shardCount = enabled ? properties.shards().size() : 1;
+        this.slotRepository = slotRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        // platform threads, a virtual thread blocked in a synchronized logger or JDBC driver pins its carrier, and
+        // a few of them can leave the thread holding the monitor without a carrier to run on
+        this.fanOut = enabled
+                ? Executors.newCachedThreadPool(Thread.ofPlatform().name("payment-shard-", 0).daemon().factory())
+                : null;
+        if (enabled) {
+            loadOwners();
+        }
+        this.slotsByShard = groupSlots();
+    }
+
+    private void loadOwners() {
+        List<ShardSlotEntity> stored = onShard(ShardContext.DEFAULT_SHARD, () -> transactionTemplate.execute(status -> {
+            List<ShardSlotEntity> slots = slotRepository.findAll();
+            if (slots.isEmpty()) {
+                slots = IntStream.range(0, SLOT_COUNT)
+                        .mapToObj(slot -> new ShardSlotEntity(slot, slot % shardCount))
+                        .toList();
+                slotRepository.saveAll(slots);
+                log.info("Assigned {} payment slots to {} shards", SLOT_COUNT, shardCount);
+            }
+            return slots;
+        }));
+        if (stored.size() != SLOT_COUNT) {
+            throw new IllegalStateException("Expected " + SLOT_COUNT + " payment slots, found " + stored.size());
+        }
+        for (ShardSlotEntity slot : stored) {
+            if (slot.getShard() >= shardCount) {
+                throw new IllegalStateException("Payment slot " + slot.getSlot() + " is owned by shard "
+                        + slot.getShard() + " but only " + shardCount + " shards are configured");
+            }
+            owners.set(slot.getSlot(), slot.getShard());
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (fanOut != null) {
+            fanOut.shutdownNow();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int shardCount() {
+        return shardCount;
+    }
+
+    public static int slotOf(UUID paymentId) {
+        return (int) paymentId.getLeastSignificantBits() & SLOT_MASK;
+    }
+
+    /**
+     * Slot of rows keyed by a string, such as idempotency keys. {@link String#hashCode} is specified, so the
+     * slot is the same in every JVM.
+     */
+    public static int slotOf(String key) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & SLOT_MASK;
+    }
+
+    public int shardOf(UUID paymentId) {
+        return owners.get(slotOf(paymentId));
+    }
+
+    public int shardOf(String key) {
+        return owners.get(slotOf(key));
+    }
+
+    /**
+     * The shard the current transaction is bound to, binding it to the default shard if it has none yet.
+     */
+    public int currentShard() {
+        return enabled ? ShardContext.lookupKey() : ShardContext.DEFAULT_SHARD;
+    }
+
+    /**
+     * A new payment id. Inside a transaction already bound to a shard the id is placed on that shard, otherwise
+     * the random slot decides. Slots that are being moved are never handed out.
+     */
+    public UUID nextPaymentId() {
+        UUID id = PaymentIdGenerator.next();
+        if (!enabled) {
+            return id;
+        }
+        Integer bound = ShardContext.current();
+        int slot = slotOf(id);
+        if (frozen.get(slot) == 0 && (bound == null || owners.get(slot) == bound)) {
+            return id;
+        }
+        int[] candidates = bound == null ? ALL_SLOTS : slotsByShard[bound];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int attempt = 0; attempt < candidates.length; attempt++) {
+            int candidate = candidates[random.nextInt(candidates.length)];
+            if (frozen.get(candidate) == 0) {
+                return new UUID(id.getMostSignificantBits(), id.getLeastSignificantBits() & ~SLOT_MASK | candidate);
+            }
+        }
+        throw new ShardMigrationException("No payment slot of shard " + bound + " accepts writes, retry later");
+    }
+
+    /**
+     * Bind the current transaction to the shard of a payment it is about to write.
+     *
+     * @throws ShardMigrationException if the payment's slot is being moved to another shard
+     */
+    public void bindForWrite(UUID paymentId) {
+        if (enabled) {
+            enter(slotOf(paymentId));
+        }
+    }
+
+    /**
+     * Bind the current transaction to the shard of an idempotency key it is about to write.
+     */
+    public void bindForWrite(String key) {
+        if (enabled) {
+            enter(slotOf(key));
+        }
+    }
+
+    /**
+     * Bind the current transaction to the shard of a payment it is about to read.
+     */
+    public void bindForRead(UUID paymentId) {
+        if (enabled) {
+            ShardContext.bindTransaction(shardOf(paymentId));
+        }
+    }
+
+    /**
+     * Run work, typically a transaction, against one shard. Must not be called inside a transaction.
+     */
+    public <T> T onShard(int shard, Supplier<T> work) {
+        return enabled ? ShardContext.call(shard, work) : work.get();
+    }
+
+    public <T> T onShardOf(UUID paymentId, Supplier<T> work) {
+        return onShard(shardOf(paymentId), work);
+    }
+
+    /**
+     * Run work against every shard in parallel and wait for all of them. The work reads the primaries if the
+     * caller has to, and its statements count as the caller's.
+     *
+     * @return The results, indexed by shard
+     */
+    public <T> List<T> onEachShard(IntFunction<T> work) {
+        if (!enabled) {
+            return Collections.singletonList(work.apply(ShardContext.DEFAULT_SHARD));
+        }
+        List<Future<T>> futures = new ArrayList<>(shardCount);
+        for (int shard = 0; shard < shardCount; shard++) {
+            int current = shard;
+            Supplier<T> task = onShardAsCaller(current, () -> work.apply(current));
+            futures.add(fanOut.submit(task::get));
+        }
+        List<T> results = new ArrayList<>(shardCount);
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the shards", e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException("Shard query failed", e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * Run a query in a read-only transaction on every shard in parallel.
+     *
+     * @return The results, indexed by shard
+     */
+    public <T> List<T> queryEachShard(Supplier<T> query) {
+        return onEachShard(shard -> readOnlyTransaction.execute(status -> query.get()));
+    }
+
+    /**
+     * Stream the rows of a query from every shard, merged in the given order. Each shard is read in its own
+     * read-only transaction on its own thread, so the query must not depend on the caller's persistence context
+     * and the rows must be usable once detached. With sharding disabled the query runs inline in the caller's
+     * transaction. The stream must be closed.
+     *
+     * @param order The order the query returns its rows in
+     */
+    public <T> Stream<T> streamEachShard(Supplier<Stream<T>> query, Comparator<? super T> order) {
+        if (!enabled) {
+            return query.get();
+        }
+        ShardMerge<T> merge = new ShardMerge<>(shardCount, order);
+        for (int shard = 0; shard < shardCount; shard++) {
+            int current = shard;
+            Supplier<Void> task = onShardAsCaller(current, () -> readOnlyTransaction.execute(status -> {
+                try (Stream<T> rows = query.get()) {
+                    rows.forEach(row -> merge.put(current, row));
+                }
+                return null;
+            }));
+            fanOut.execute(() -> {
+                try {
+                    task.get();
+                    merge.end(current);
+                } catch (Throwable e) {
+                    merge.fail(current, e);
+                }
+            });
+        }
+        return StreamSupport.stream(merge, false).onClose(merge::cancel);
+    }
+
+    /**
+     * Work for a fan-out thread: runs on a shard, reading where the caller reads and counting its statements
+     * towards the caller's recording.
+     */
+    private static <T> Supplier<T> onShardAsCaller(int shard, Supplier<T> work) {
+        boolean primaryReads = PrimaryReads.isRequired();
+        SqlStatements.Recording recording = SqlStatements.current();
+        return () -> PrimaryReads.call(primaryReads,
+                () -> SqlStatements.call(recording, () -> ShardContext.call(shard, work)));
+    }
+
+    /**
+     * Split items by the shard of their payment, keeping their order within a shard.
+     */
+    public <T> Map<Integer, List<T>> partition(Collection<T> items, Function<T, UUID> paymentId) {
+        Map<Integer, List<T>> partitions = new TreeMap<>();
+        if (!enabled) {
+            partitions.put(ShardContext.DEFAULT_SHARD, new ArrayList<>(items));
+            return partitions;
+        }
+        for (T item : items) {
+            partitions.computeIfAbsent(shardOf(paymentId.apply(item)), shard -> new ArrayList<>()).add(item);
+        }
+        return partitions;
+    }
+
+    int[] slotsOf(int shard) {
+        return slotsByShard[shard].clone();
+    }
+
+    int ownerOf(int slot) {
+        return owners.get(slot);
+    }
+
+    void freeze(int[] slots) {
+        for (int slot : slots) {
+            frozen.set(slot, 1);
+        }
+    }
+
+    void unfreeze(int[] slots) {
+        for (int slot : slots) {
+            frozen.set(slot, 0);
+        }
+    }
+
+    /**
+     * Wait until no transaction that entered one of the slots is running any more.
+     *
+     * @return Whether the slots drained before the timeout
+     */
+    boolean awaitIdle(int[] slots, Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (true) {
+            boolean idle = true;
+            for (int slot : slots) {
+                if (inFlight.get(slot) != 0) {
+                    idle = false;
+                    break;
+                }
+            }
+            if (idle) {
+                return true;
+            }
+            if (System.nanoTime() >= deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Hand slots to another shard, stored on shard 0 before the routing changes.
+     */
+    void reassign(int[] slots, int shard) {
+        Set<Integer> moved = new HashSet<>();
+        for (int slot : slots) {
+            moved.add(slot);
+        }
+        onShard(ShardContext.DEFAULT_SHARD, () -> transactionTemplate.execute(status -> {
+            slotRepository.findAllById(moved).forEach(slot -> slot.setShard(shard));
+            return null;
+        }));
+        for (int slot : slots) {
+            owners.set(slot, shard);
+        }
+        slotsByShard = groupSlots();
+    }
+
+    private int[][] groupSlots() {
+        int[][] grouped = new int[shardCount][];
+        for (int shard = 0; shard < shardCount; shard++) {
+            int current = shard;
+            grouped[shard] = IntStream.range(0, SLOT_COUNT).filter(slot -> owners.get(slot) == current).toArray();
+        }
+        return grouped;
+    }
+
+    private void enter(int slot) {
+        WriteSlots entered = (WriteSlots) TransactionSynchronizationManager.getResource(this);
+        if (entered == null) {
+            if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+                throw new IllegalStateException("Payment writes must run in a transaction");
+            }
+            entered = new WriteSlots();
+            TransactionSynchronizationManager.bindResource(this, entered);
+            TransactionSynchronizationManager.registerSynchronization(entered);
+        }
+        if (entered.slots.add(slot)) {
+            inFlight.incrementAndGet(slot);
+            // counted in before the check, a move that froze the slot first sees this write and waits for it
+            if (frozen.get(slot) != 0) {
+                throw new ShardMigrationException("Payments of slot " + slot + " are being moved to another shard, retry later");
+            }
+        }
+        ShardContext.bindTransaction(owners.get(slot));
+    }
+
+    /**
+     * Slots written by the current transaction, released when it completes.
+     */
+    private final class WriteSlots implements TransactionSynchronization {
+
+        private final Set<Integer> slots = new HashSet<>();
+
+        @Override
+        public void suspend() {
+            TransactionSynchronizationManager.unbindResource(PaymentShards.this);
+        }
+
+        @Override
+        public void resume() {
+            TransactionSynchronizationManager.bindResource(PaymentShards.this, this);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(PaymentShards.this);
+            slots.forEach(inFlight::decrementAndGet);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.payments.sharding;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.function.Supplier;
+
+/**
+ * The shard the current thread talks to. A transaction is bound to one shard for its whole life, either
+ * explicitly before its first statement or implicitly to the default shard by the first connection it takes,
+ * so a transaction that would touch a second shard fails instead of silently writing to the wrong database.
+ */
+final class ShardContext {
+
+    static final int DEFAULT_SHARD = 0;
+
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+    private ShardContext() {
+    }
+
+    static Integer current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Run work outside of a transaction against one shard, transactions it starts are bound to that shard.
+     */
+    static <T> T call(int shard, Supplier<T> work) {
+        Integer previous = CURRENT.get();
+        CURRENT.set(shard);
+        try {
+            return work.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Bind the current transaction to a shard until it completes.
+     *
+     * @throws IllegalStateException if the transaction is already bound to another shard
+     */
+    static void bindTransaction(int shard) {
+        Integer current = CURRENT.get();
+        if (current != null) {
+            if (current != shard) {
+                throw new IllegalStateException("Transaction is bound to shard " + current
+                        + ", it cannot also use shard " + shard);
+            }
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("No transaction to bind shard " + shard + " to");
+        }
+        CURRENT.set(shard);
+        TransactionSynchronizationManager.registerSynchronization(new Binding(shard));
+    }
+
+    /**
+     * The shard a connection is taken from. A transaction that did not pick a shard before its first statement
+     * stays on the default shard.
+     */
+    static int lookupKey() {
+        Integer current = CURRENT.get();
+        if (current != null) {
+            return current;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            bindTransaction(DEFAULT_SHARD);
+        }
+        return DEFAULT_SHARD;
+    }
+
+    // a suspended transaction keeps its shard, the one running in between may pick another
+    private record Binding(int shard) implements TransactionSynchronization {
+
+        @Override
+        public void suspend() {
+            CURRENT.remove();
+        }
+
+        @Override
+        public void resume() {
+            CURRENT.set(shard);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            CURRENT.remove();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.payments.sharding;
+
+import com.payments.config.ReplicaProperties;
+import com.payments.config.ShardingProperties;
+import com.payments.jdbc.QueryMetrics;
+import com.payments.replica.ReplicaRouting;
+import com.payments.replica.ReplicaSet;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.jpa.boot.spi.IntegratorProvider;
+import org.hibernate.jpa.boot.spi.JpaSettings;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.hibernate.autoconfigure.HibernatePropertiesCustomizer;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replaces the single {@code spring.datasource} with one pool per shard behind a routing datasource. The routing
+ * datasource sits behind a lazy proxy: the transaction manager opens its connection when the transaction begins,
+ * the proxy defers taking a real one until the first statement, by which time the transaction is bound to its
+ * shard. With read replicas enabled, read-only transactions take their connection from the replicas of their shard.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "payment.sharding", name = "enabled", havingValue = "true")
+public class ShardDataSourceConfiguration {
+
+    @Bean
+    ShardRoutingDataSource shardRoutingDataSource(ShardingProperties properties) {
+        if (properties.shards().isEmpty()) {
+            throw new IllegalStateException("payment.sharding.enabled is set but no payment.sharding.shards are configured");
+        }
+        List<HikariDataSource> pools = new ArrayList<>();
+        for (ShardingProperties.Shard shard : properties.shards()) {
+            HikariDataSource pool = DataSourceBuilder.create()
+                    .type(HikariDataSource.class)
+                    .url(shard.url())
+                    .username(shard.username())
+                    .password(shard.password())
+                    .build();
+            pool.setPoolName("payment-shard-" + pools.size());
+            pool.setMaximumPoolSize(shard.maximumPoolSize());
+            pools.add(pool);
+        }
+        return new ShardRoutingDataSource(pools);
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "payment.replicas", name = "enabled", havingValue = "true")
+    ReplicaRouting replicaRouting(ShardRoutingDataSource shardRoutingDataSource, ShardingProperties shardingProperties,
+                                  ReplicaProperties replicaProperties, MeterRegistry meterRegistry) {
+        List<ReplicaSet> replicaSets = new ArrayList<>();
+        for (int shard = 0; shard < shardingProperties.shards().size(); shard++) {
+            replicaSets.add(new ReplicaSet("shard-" + shard, shardRoutingDataSource.shard(shard),
+                    shardingProperties.shards().get(shard).replicas(), replicaProperties, meterRegistry));
+        }
+        return new ReplicaRouting(replicaSets, replicaProperties);
+    }
+
+    @Bean
+    @Primary
+    DataSource dataSource(ShardRoutingDataSource shardRoutingDataSource, ObjectProvider<ReplicaRouting> replicaRouting,
+                          QueryMetrics queryMetrics) {
+        LazyConnectionDataSourceProxy dataSource =
+                new LazyConnectionDataSourceProxy(queryMetrics.instrument(shardRoutingDataSource));
+        replicaRouting.ifAvailable(routing -> dataSource.setReadOnlyDataSource(
+                queryMetrics.instrument(new ShardRoutingDataSource(routing.replicaSets()))));
+        return dataSource;
+    }
+
+    @Bean
+    HibernatePropertiesCustomizer shardSchemaCustomizer(ShardingProperties properties) {
+        ShardSchemaInitializer initializer = new ShardSchemaInitializer(properties.shards().size());
+        return hibernateProperties -> hibernateProperties.put(JpaSettings.INTEGRATOR_PROVIDER,
+                (IntegratorProvider) () -> List.of(initializer));
+    }
+}
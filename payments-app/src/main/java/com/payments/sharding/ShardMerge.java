@@ -0,0 +1,132 @@
+package com.payments.sharding;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * K-way merge of ordered row streams read by one producer thread per shard. Each producer fills a small bounded
+ * queue, so a slow consumer holds back the database cursors instead of buffering whole result sets.
+ */
+final class ShardMerge<T> implements Spliterator<T> {
+
+    private static final int QUEUE_CAPACITY = 256;
+    private static final Object END = new Object();
+
+    private final List<BlockingQueue<Object>> queues;
+    private final PriorityQueue<Head<T>> heads;
+    private volatile boolean cancelled;
+    private boolean started;
+
+    ShardMerge(int shardCount, Comparator<? super T> order) {
+        this.queues = new ArrayList<>(shardCount);
+        for (int shard = 0; shard < shardCount; shard++) {
+            queues.add(new ArrayBlockingQueue<>(QUEUE_CAPACITY));
+        }
+        this.heads = new PriorityQueue<>(shardCount, (a, b) -> order.compare(a.row(), b.row()));
+    }
+
+    /**
+     * Hand over the next row of a shard, blocks while the consumer is behind.
+     *
+     * @throws CancellationException once the consumer closed the stream, the producer should stop reading
+     */
+    void put(int shard, T row) {
+        offer(shard, row);
+    }
+
+    void end(int shard) {
+        offer(shard, END);
+    }
+
+    void fail(int shard, Throwable cause) {
+        if (!cancelled) {
+            offer(shard, new Failure(cause));
+        }
+    }
+
+    void cancel() {
+        cancelled = true;
+        queues.forEach(BlockingQueue::clear);
+    }
+
+    private void offer(int shard, Object element) {
+        try {
+            while (!queues.get(shard).offer(element, 100, TimeUnit.MILLISECONDS)) {
+                if (cancelled) {
+                    throw new CancellationException("Shard stream closed");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while streaming shard " + shard);
+        }
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        if (!started) {
+            started = true;
+            for (int shard = 0; shard < queues.size(); shard++) {
+                advance(shard);
+            }
+        }
+        Head<T> head = heads.poll();
+        if (head == null) {
+            return false;
+        }
+        advance(head.shard());
+        action.accept(head.row());
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void advance(int shard) {
+        Object next;
+        try {
+            next = queues.get(shard).take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel();
+            throw new CancellationException("Interrupted while merging shard streams");
+        }
+        if (next instanceof Failure failure) {
+            cancel();
+            if (failure.cause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException("Reading shard " + shard + " failed", failure.cause());
+        }
+        if (next != END) {
+            heads.add(new Head<>(shard, (T) next));
+        }
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        return null;
+    }
+
+    @Override
+    public long estimateSize() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL;
+    }
+
+    private record Head<T>(int shard, T row) {
+    }
+
+    private record Failure(Throwable cause) {
+    }
+}
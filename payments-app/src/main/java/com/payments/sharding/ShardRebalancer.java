@@ -0,0 +1,336 @@
+package com.payments.sharding;
+
+import com.payments.config.ShardingProperties;
+import com.payments.entity.IdempotencyKeyEntity;
+import com.payments.entity.LedgerEntryEntity;
+import com.payments.entity.OutboxEventEntity;
+import com.payments.entity.PartyEntity;
+import com.payments.entity.PaymentEntity;
+import com.payments.exception.ShardMigrationException;
+import com.payments.replica.PrimaryReads;
+import com.payments.repository.IdempotencyKeyRepository;
+import com.payments.repository.LedgerEntryRepository;
+import com.payments.repository.OutboxEventRepository;
+import com.payments.repository.PaymentRepository;
+import com.payments.service.LedgerService;
+import com.payments.service.PartyService;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * Moves payment slots, with everything stored for their payments, from one shard to another:
+ * <ol>
+ *     <li>the slots are frozen, new writes to them fail, and the move waits for the writes already running,</li>
+ *     <li>payments, ledger entries, outbox events and idempotency keys of the slots are copied to the target,
+ *     keeping their ids, rows the target already has are skipped,</li>
+ *     <li>the slots are handed to the target, from then on reads and writes go there,</li>
+ *     <li>the copies left on the source are deleted and the slots unfrozen.</li>
+ * </ol>
+ * Every table is scanned in keyset chunks and filtered by slot, a move reads the whole source shard. A move
+ * that fails before the slots change owner can be repeated, one that fails afterwards leaves copies on the source
+ * that {@link #cleanUp} removes. While a move runs, searches, exports and balances may see its rows on both
+ * shards. Only this instance learns the new owners, other instances pick them up when they restart.
+ */
+@Slf4j
+@Component
+public class ShardRebalancer {
+
+    private static final String PAYMENT_INSERT_SQL = "insert into payments (id, payment_id, user_name, amount_minor, "
+            + "currency, status, payment_method, debtor_party_id, debtor_account_number, creditor_party_id, "
+            + "creditor_account_number, created_at, updated_at, version) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String OUTBOX_INSERT_SQL = "insert into outbox_events (id, event_type, payment_id, status, "
+            + "previous_status, occurred_at, payload) values (?, ?, ?, ?, ?, ?, ?)";
+    private static final String IDEMPOTENCY_INSERT_SQL = "insert into idempotency_keys (principal, idempotency_key, "
+            + "request_hash, payment_id, response_body, created_at) values (?, ?, ?, ?, ?, ?)";
+
+    private final PaymentShards paymentShards;
+    private final PaymentRepository paymentRepository;
+    private final LedgerEntryRepository ledgerEntryRepository;
+    private final OutboxEventRepository outboxEventRepository;
+    private final IdempotencyKeyRepository idempotencyKeyRepository;
+    private final PartyService partyService;
+    private final LedgerService ledgerService;
+    private final EntityManager entityManager;
+    private final ShardingProperties properties;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final List<Table<?, ?>> tables;
+    private final Object moveLock = new Object();
+
+    public ShardRebalancer(PaymentShards paymentShards,
+                           PaymentRepository paymentRepository,
+                           LedgerEntryRepository ledgerEntryRepository,
+                           OutboxEventRepository outboxEventRepository,
+                           IdempotencyKeyRepository idempotencyKeyRepository,
+                           PartyService partyService,
+                           LedgerService ledgerService,
+                           EntityManager entityManager,
+                           ShardingProperties properties,
+                           PlatformTransactionManager transactionManager) {
+        this.paymentShards = paymentShards;
+        this.paymentRepository = paymentRepository;
+        this.ledgerEntryRepository = ledgerEntryRepository;
+        this.outboxEventRepository = outboxEventRepository;
+        this.idempotencyKeyRepository = idempotencyKeyRepository;
+        this.partyService = partyService;
+        this.ledgerService = ledgerService;
+        this.entityManager = entityManager;
+        this.properties = properties;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        // keysets start below every id, the pooled optimizer hands out ids from 2 - allocationSize on a new sequence
+        this.tables = List.of(
+                new Table<>("payments", Long.MIN_VALUE, paymentRepository::findByIdGreaterThanOrderByIdAsc, PaymentEntity::getId,
+                        payment -> PaymentShards.slotOf(payment.getPaymentId()), this::copyPayments,
+                        payments -> paymentRepository.deleteAllByIdInBatch(payments.stream().map(PaymentEntity::getId).toList())),
+                new Table<>("ledger_entries", Long.MIN_VALUE, ledgerEntryRepository::findByIdGreaterThanOrderByIdAsc,
+                        LedgerEntryEntity::getId, entry -> PaymentShards.slotOf(entry.getPaymentId()),
+                        this::copyLedgerEntries, ledgerService::removeEntries),
+                new Table<>("outbox_events", Long.MIN_VALUE, outboxEventRepository::findByIdGreaterThanOrderByIdAsc,
+                        OutboxEventEntity::getId, event -> PaymentShards.slotOf(event.getPaymentId()),
+                        this::copyOutboxEvents,
+                        events -> outboxEventRepository.deleteAllByIdInBatch(events.stream().map(OutboxEventEntity::getId).toList())),
+                new Table<>("idempotency_keys", new IdempotencyKeyEntity.Key("", ""), idempotencyKeyRepository::findAfter,
+                        IdempotencyKeyEntity::getId, key -> PaymentShards.slotOf(key.getIdempotencyKey()),
+                        this::copyIdempotencyKeys, idempotencyKeyRepository::deleteAllInBatch));
+    }
+
+    /**
+     * Move slots from one shard to another, the highest numbered slots of the source first.
+     *
+     * @param slotCount Number of slots to move, at most all slots of the source
+     * @return Rows moved per table
+     */
+    public MoveResult move(int source, int target, int slotCount) {
+        checkShard(source);
+        checkShard(target);
+        if (source == target || slotCount <= 0) {
+            throw new IllegalArgumentException("A move needs two different shards and at least one slot");
+        }
+        synchronized (moveLock) {
+            int[] owned = paymentShards.slotsOf(source);
+            int[] slots = Arrays.copyOfRange(owned, Math.max(0, owned.length - slotCount), owned.length);
+            if (slots.length == 0) {
+                throw new IllegalArgumentException("Shard " + source + " owns no slots");
+            }
+            Set<Integer> moving = new HashSet<>();
+            Arrays.stream(slots).forEach(moving::add);
+            long start = System.nanoTime();
+            log.info("Moving {} payment slots from shard {} to shard {}", slots.length, source, target);
+
+            paymentShards.freeze(slots);
+            try {
+                if (!paymentShards.awaitIdle(slots, properties.migrationDrainTimeout())) {
+                    throw new ShardMigrationException("Writes to the moved slots did not finish within "
+                            + properties.migrationDrainTimeout());
+                }
+                long[] copied = new long[tables.size()];
+                for (int i = 0; i < tables.size(); i++) {
+                    copied[i] = copy(tables.get(i), source, target, moving::contains);
+                }
+                paymentShards.reassign(slots, target);
+                tables.forEach(table -> delete(table, source));
+                MoveResult result = new MoveResult(source, target, slots.length, copied[0], copied[1], copied[2],
+                        copied[3], (System.nanoTime() - start) / 1_000_000);
+                log.info("Moved payment slots: {}", result);
+                return result;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ShardMigrationException("Interrupted while waiting for writes to the moved slots");
+            } finally {
+                paymentShards.unfreeze(slots);
+            }
+        }
+    }
+
+    /**
+     * Delete the rows a shard holds for slots it does not own, left behind by a move that failed.
+     *
+     * @return Rows deleted
+     */
+    public long cleanUp(int shard) {
+        checkShard(shard);
+        synchronized (moveLock) {
+            return tables.stream().mapToLong(table -> delete(table, shard)).sum();
+        }
+    }
+
+    private void checkShard(int shard) {
+        if (!paymentShards.isEnabled() || shard < 0 || shard >= paymentShards.shardCount()) {
+            throw new IllegalArgumentException("No payment shard " + shard);
+        }
+    }
+
+    private <T, K> long copy(Table<T, K> table, int source, int target, IntPredicate slots) {
+        return scan(table, source, slots, rows -> paymentShards.onShard(target, () -> transactionTemplate.execute(status -> {
+            table.copy().accept(rows);
+            return null;
+        })));
+    }
+
+    private <T, K> long delete(Table<T, K> table, int shard) {
+        long deleted = scan(table, shard, slot -> paymentShards.ownerOf(slot) != shard,
+                rows -> paymentShards.onShard(shard, () -> transactionTemplate.execute(status -> {
+                    table.delete().accept(rows);
+                    return null;
+                })));
+        if (deleted > 0) {
+            log.info("Deleted {} rows of {} from shard {}", deleted, table.name(), shard);
+        }
+        return deleted;
+    }
+
+    private <T, K> long scan(Table<T, K> table, int shard, IntPredicate slots, Consumer<List<T>> action) {
+        int chunkSize = properties.migrationChunkSize();
+        long rows = 0;
+        K after = table.start();
+        while (true) {
+            K from = after;
+            // a lagging replica would miss the latest rows of the slots
+            List<T> chunk = paymentShards.onShard(shard, () -> PrimaryReads.call(true,
+                    () -> readOnlyTransaction.execute(status -> table.chunkAfter().apply(from, Limit.of(chunkSize)))));
+            if (chunk.isEmpty()) {
+                return rows;
+            }
+            after = table.keyOf().apply(chunk.getLast());
+            List<T> selected = chunk.stream().filter(row -> slots.test(table.slotOf().applyAsInt(row))).toList();
+            if (!selected.isEmpty()) {
+                action.accept(selected);
+                rows += selected.size();
+            }
+            if (chunk.size() < chunkSize) {
+                return rows;
+            }
+        }
+    }
+
+    private void copyPayments(List<PaymentEntity> payments) {
+        Set<UUID> existing = paymentRepository.findExistingPaymentIds(payments.stream().map(PaymentEntity::getPaymentId).toList());
+        List<PaymentEntity> missing = payments.stream().filter(payment -> !existing.contains(payment.getPaymentId())).toList();
+        if (missing.isEmpty()) {
+            return;
+        }
+        // parties are rows of the source shard, they are resolved again among the parties of the target
+        missing.forEach(payment -> {
+            payment.setDebtor(copyOf(payment.getDebtor()));
+            payment.setCreditor(copyOf(payment.getCreditor()));
+        });
+        partyService.resolveParties(missing);
+        insert(PAYMENT_INSERT_SQL, missing, (insert, payment) -> {
+            insert.setLong(1, payment.getId());
+            insert.setObject(2, payment.getPaymentId());
+            insert.setString(3, payment.getUserName());
+            insert.setLong(4, payment.getAmountMinor());
+            insert.setString(5, payment.getCurrency());
+            insert.setString(6, payment.getStatus().name());
+            insert.setString(7, payment.getPaymentMethod().name());
+            insert.setObject(8, payment.getDebtor() != null ? payment.getDebtor().getId() : null);
+            insert.setString(9, payment.getDebtorAccountNumber());
+            insert.setObject(10, payment.getCreditor() != null ? payment.getCreditor().getId() : null);
+            insert.setString(11, payment.getCreditorAccountNumber());
+            insert.setTimestamp(12, timestamp(payment.getCreatedAt()));
+            insert.setTimestamp(13, timestamp(payment.getUpdatedAt()));
+            insert.setLong(14, payment.getVersion());
+        });
+    }
+
+    private void copyLedgerEntries(List<LedgerEntryEntity> entries) {
+        Set<Long> existing = new HashSet<>();
+        ledgerEntryRepository.findAllById(entries.stream().map(LedgerEntryEntity::getId).toList())
+                .forEach(entry -> existing.add(entry.getId()));
+        ledgerService.importEntries(entries.stream().filter(entry -> !existing.contains(entry.getId())).toList());
+    }
+
+    private void copyOutboxEvents(List<OutboxEventEntity> events) {
+        Set<Long> existing = new HashSet<>();
+        outboxEventRepository.findAllById(events.stream().map(OutboxEventEntity::getId).toList())
+                .forEach(event -> existing.add(event.getId()));
+        insert(OUTBOX_INSERT_SQL, events.stream().filter(event -> !existing.contains(event.getId())).toList(),
+                (insert, event) -> {
+                    insert.setLong(1, event.getId());
+                    insert.setString(2, event.getEventType().name());
+                    insert.setObject(3, event.getPaymentId());
+                    insert.setString(4, event.getStatus().name());
+                    insert.setString(5, event.getPreviousStatus() != null ? event.getPreviousStatus().name() : null);
+                    insert.setTimestamp(6, timestamp(event.getOccurredAt()));
+                    insert.setString(7, event.getPayload());
+                });
+    }
+
+    private void copyIdempotencyKeys(List<IdempotencyKeyEntity> keys) {
+        Set<IdempotencyKeyEntity.Key> existing = new HashSet<>();
+        idempotencyKeyRepository.findAllById(keys.stream().map(IdempotencyKeyEntity::getId).toList())
+                .forEach(key -> existing.add(key.getId()));
+        insert(IDEMPOTENCY_INSERT_SQL, keys.stream().filter(key -> !existing.contains(key.getId())).toList(),
+                (insert, key) -> {
+                    insert.setString(1, key.getPrincipal());
+                    insert.setString(2, key.getIdempotencyKey());
+                    insert.setString(3, key.getRequestHash());
+                    insert.setString(4, key.getPaymentId());
+                    insert.setString(5, key.getResponseBody());
+                    insert.setTimestamp(6, timestamp(key.getCreatedAt()));
+                });
+    }
+
+    /**
+     * Insert rows under their original ids with one JDBC batch, Hibernate would assign new ones.
+     */
+    private <T> void insert(String sql, List<T> rows, Binder<T> binder) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            try (PreparedStatement insert = connection.prepareStatement(sql)) {
+                for (T row : rows) {
+                    binder.bind(insert, row);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+        });
+    }
+
+    private static PartyEntity copyOf(PartyEntity party) {
+        return party == null ? null : new PartyEntity(null, party.getContentHash(), party.getName(),
+                party.getAccountNumber(), party.getBankCode(), party.getAddress(), party.getEmail(), party.getPhoneNumber());
+    }
+
+    private static Timestamp timestamp(LocalDateTime time) {
+        return time == null ? null : Timestamp.valueOf(time);
+    }
+
+    @FunctionalInterface
+    private interface Binder<T> {
+
+        void bind(PreparedStatement statement, T row) throws SQLException;
+    }
+
+    private record Table<T, K>(String name, K start, BiFunction<K, Limit, List<T>> chunkAfter, Function<T, K> keyOf,
+                               ToIntFunction<T> slotOf, Consumer<List<T>> copy, Consumer<List<T>> delete) {
+    }
+
+    public record MoveResult(int source, int target, int slots, long payments, long ledgerEntries,
+                             long outboxEvents, long idempotencyKeys, long durationMillis) {
+    }
+}
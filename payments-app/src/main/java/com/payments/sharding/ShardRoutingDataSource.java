@@ -0,0 +1,54 @@
+package com.payments.sharding;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hands out connections of the shard bound to the current thread by {@link ShardContext}.
+ */
+class ShardRoutingDataSource extends AbstractRoutingDataSource {
+
+    private final List<? extends DataSource> shards;
+
+    ShardRoutingDataSource(List<? extends DataSource> shards) {
+        this.shards = List.copyOf(shards);
+        Map<Object, Object> targets = new HashMap<>();
+        for (int shard = 0; shard < shards.size(); shard++) {
+            targets.put(shard, shards.get(shard));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(shards.get(ShardContext.DEFAULT_SHARD));
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return ShardContext.lookupKey();
+    }
+
+    DataSource shard(int shard) {
+        return shards.get(shard);
+    }
+
+    @PreDestroy
+    void close() {
+        for (DataSource shard : shards) {
+            if (shard instanceof Closeable closeable) {
+                try {
+                    closeable.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.payments.sharding;
+
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.SessionFactoryObserver;
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.model.relational.Namespace;
+import org.hibernate.boot.model.relational.Sequence;
+import org.hibernate.boot.model.relational.SqlStringGenerationContext;
+import org.hibernate.boot.spi.BootstrapContext;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.jdbc.spi.JdbcServices;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.tool.schema.spi.SchemaManagementToolCoordinator;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Hibernate manages the schema of the connection it boots with, which is shard 0. Once the session factory is
+ * up this applies the same schema action ({@code spring.jpa.hibernate.ddl-auto}) to every other shard, and moves
+ * the sequences of shard {@code n} to start at {@code n << 40}, so that ids stay unique across shards and rows
+ * keep their id when they are moved to another shard.
+ */
+@Slf4j
+class ShardSchemaInitializer implements Integrator, SessionFactoryObserver {
+
+    static final int SHARD_ID_SHIFT = 40;
+
+    private final int shardCount;
+    private transient Metadata metadata;
+
+    ShardSchemaInitializer(int shardCount) {
+        this.shardCount = shardCount;
+    }
+
+    @Override
+    public void integrate(Metadata metadata, BootstrapContext bootstrapContext, SessionFactoryImplementor sessionFactory) {
+        this.metadata = metadata;
+        sessionFactory.addObserver(this);
+    }
+
+    @Override
+    public void sessionFactoryCreated(SessionFactory factory) {
+        SessionFactoryImplementor sessionFactory = (SessionFactoryImplementor) factory;
+        var serviceRegistry = sessionFactory.getServiceRegistry();
+        var settings = serviceRegistry.requireService(ConfigurationService.class).getSettings();
+        for (int shard = 1; shard < shardCount; shard++) {
+            int current = shard;
+            ShardContext.call(shard, () -> {
+                SchemaManagementToolCoordinator.process(metadata, serviceRegistry, settings, action -> {
+                });
+                offsetSequences(sessionFactory, current);
+                return null;
+            });
+            log.info("Initialized schema of payment shard {}", shard);
+        }
+    }
+
+    private void offsetSequences(SessionFactoryImplementor sessionFactory, int shard) {
+        JdbcServices jdbcServices = sessionFactory.getJdbcServices();
+        Dialect dialect = jdbcServices.getDialect();
+        SqlStringGenerationContext names = sessionFactory.getSqlStringGenerationContext();
+        long start = (long) shard << SHARD_ID_SHIFT;
+        ConnectionProvider connections = sessionFactory.getServiceRegistry().requireService(ConnectionProvider.class);
+        try {
+            Connection connection = connections.getConnection();
+            try (Statement statement = connection.createStatement()) {
+                for (Namespace namespace : metadata.getDatabase().getNamespaces()) {
+                    for (Sequence sequence : namespace.getSequences()) {
+                        String name = names.format(sequence.getName());
+                        long next;
+                        try (ResultSet rs = statement.executeQuery(
+                                dialect.getSequenceSupport().getSequenceNextValString(name))) {
+                            rs.next();
+                            next = rs.getLong(1);
+                        }
+                        // a restarted shard already got past its start; the pooled optimizer hands out the
+                        // increment below the value it reads, so the restart leaves room for one increment
+                        if (next < start) {
+                            statement.execute(dialect.getSequenceSupport().getRestartSequenceString(
+                                    name, start + sequence.getIncrementSize()));
+                        }
+                    }
+                }
+            } finally {
+                connections.closeConnection(connection);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Cannot initialize the sequences of payment shard " + shard, e);
+        }
+    }
+}
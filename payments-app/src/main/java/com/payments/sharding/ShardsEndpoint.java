@@ -0,0 +1,49 @@
+package com.payments.sharding;
+
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * {@code /actuator/shards}: slots owned per shard, and the {@link ShardRebalancer} operations. Like every
+ * actuator endpoint it is only reachable once exposed, and the actuator paths are not authenticated, so it
+ * should only be exposed on a management port that is not public.
+ */
+@Component
+@Endpoint(id = "shards")
+public class ShardsEndpoint {
+
+    private final PaymentShards paymentShards;
+    private final ShardRebalancer shardRebalancer;
+
+    public ShardsEndpoint(PaymentShards paymentShards, ShardRebalancer shardRebalancer) {
+        this.paymentShards = paymentShards;
+        this.shardRebalancer = shardRebalancer;
+    }
+
+    @ReadOperation
+    public List<ShardSlots> shards() {
+        return IntStream.range(0, paymentShards.shardCount())
+                .mapToObj(shard -> new ShardSlots(shard, paymentShards.slotsOf(shard).length))
+                .toList();
+    }
+
+    @WriteOperation
+    public ShardRebalancer.MoveResult move(int source, int target, int slots) {
+        return shardRebalancer.move(source, target, slots);
+    }
+
+    @DeleteOperation
+    public long cleanUp(@Selector int shard) {
+        return shardRebalancer.cleanUp(shard);
+    }
+
+    public record ShardSlots(int shard, int slots) {
+    }
+}
@@ -0,0 +1,97 @@
+package com.payments.util;
+
+import com.payments.exception.InvalidAmountException;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.Currency;
+
+/**
+ * Money amounts as a primitive {@code long} of minor units of their currency, e.g. cents for USD and yen for JPY.
+ * Payments, ledger postings, statistics and archive segments keep amounts in this form, so summing and posting
+ * them is plain long arithmetic. Amounts are converted from and to {@link BigDecimal} only where they enter or
+ * leave the service.
+ * <p>
+ * The scale of a currency is its ISO 4217 number of fraction digits, looked up in a table indexed by the three
+ * letter code so that the lookup does not allocate. Codes the JDK does not know use two digits.
+ */
+public final class Money {
+
+    private static final int DEFAULT_SCALE = 2;
+    private static final byte[] SCALES = new byte[26 * 26 * 26];
+    private static final long[] POWERS_OF_TEN = {1, 10, 100, 1_000, 10_000, 100_000, 1_000_000};
+
+    static {
+        Arrays.fill(SCALES, (byte) DEFAULT_SCALE);
+        for (Currency currency : Currency.getAvailableCurrencies()) {
+            int index = index(currency.getCurrencyCode());
+            // pseudo-currencies such as XAU have no fraction digits defined
+            if (index >= 0 && currency.getDefaultFractionDigits() >= 0) {
+                SCALES[index] = (byte) currency.getDefaultFractionDigits();
+            }
+        }
+    }
+
+    private Money() {
+    }
+
+    /**
+     * Number of decimal places of the currency, i.e. how many minor units make one major unit as a power of ten.
+     */
+    public static int scale(String currency) {
+        int index = index(currency);
+        return index < 0 ? DEFAULT_SCALE : SCALES[index];
+    }
+
+    /**
+     * Convert a decimal amount to minor units of the currency. The conversion never rounds.
+     *
+     * @throws InvalidAmountException if the amount has more decimal places than the currency or does not fit
+     */
+    public static long toMinorUnits(BigDecimal amount, String currency) {
+        int scale = scale(currency);
+        try {
+            return amount.setScale(scale, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new InvalidAmountException("Amount " + amount.toPlainString() + " is not a valid " + currency
+                    + " amount, at most " + scale + " decimal places are allowed");
+        }
+    }
+
+    public static BigDecimal toDecimal(long minorUnits, String currency) {
+        return BigDecimal.valueOf(minorUnits, scale(currency));
+    }
+
+    /**
+     * Convert an amount held at a fixed scale to minor units of the currency.
+     *
+     * @throws ArithmeticException if the amount has digits the currency cannot hold or overflows
+     */
+    public static long rescale(long amount, int fromScale, String currency) {
+        int scale = scale(currency);
+        if (scale >= fromScale) {
+            return Math.multiplyExact(amount, POWERS_OF_TEN[scale - fromScale]);
+        }
+        long divisor = POWERS_OF_TEN[fromScale - scale];
+        if (amount % divisor != 0) {
+            throw new ArithmeticException("Amount " + amount + " at scale " + fromScale + " does not fit " + currency);
+        }
+        return amount / divisor;
+    }
+
+    private static int index(String code) {
+        if (code == null || code.length() != 3) {
+            return -1;
+        }
+        int index = 0;
+        for (int i = 0; i < 3; i++) {
+            char c = code.charAt(i);
+            if (c < 'A' || c > 'Z') {
+                return -1;
+            }
+            index = index * 26 + (c - 'A');
+        }
+        return index;
+    }
+}
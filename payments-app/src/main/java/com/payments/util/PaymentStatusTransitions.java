@@ -0,0 +1,65 @@
+package com.payments.util;
+
+import com.payments.model.PaymentStatus;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Allowed moves of the payment lifecycle.
+ * <pre>
+ * PENDING    -> PROCESSING, COMPLETED, FAILED, CANCELLED
+ * PROCESSING -> COMPLETED, FAILED
+ * COMPLETED  -> REFUNDED
+ * </pre>
+ * FAILED, REFUNDED and CANCELLED are final.
+ */
+public final class PaymentStatusTransitions {
+
+    private static final Map<PaymentStatus, Set<PaymentStatus>> ALLOWED = new EnumMap<>(PaymentStatus.class);
+
+    static {
+        for (PaymentStatus status : PaymentStatus.values()) {
+            ALLOWED.put(status, EnumSet.noneOf(PaymentStatus.class));
+        }
+        ALLOWED.get(PaymentStatus.PENDING).addAll(EnumSet.of(
+                PaymentStatus.PROCESSING, PaymentStatus.COMPLETED, PaymentStatus.FAILED, PaymentStatus.CANCELLED));
+        ALLOWED.get(PaymentStatus.PROCESSING).addAll(EnumSet.of(PaymentStatus.COMPLETED, PaymentStatus.FAILED));
+        ALLOWED.get(PaymentStatus.COMPLETED).add(PaymentStatus.REFUNDED);
+    }
+
+    private PaymentStatusTransitions() {
+    }
+
+    public static boolean isAllowed(PaymentStatus from, PaymentStatus to) {
+        return ALLOWED.get(from).contains(to);
+    }
+
+    /**
+     * Statuses a payment may be in to move to the given target, used as the filter of set-based updates.
+     */
+    public static Set<PaymentStatus> sourcesOf(PaymentStatus to) {
+        Set<PaymentStatus> sources = EnumSet.noneOf(PaymentStatus.class);
+        ALLOWED.forEach((from, targets) -> {
+            if (targets.contains(to)) {
+                sources.add(from);
+            }
+        });
+        return sources;
+    }
+
+    /**
+     * Statuses a payment never leaves.
+     */
+    public static Set<PaymentStatus> finalStatuses() {
+        Set<PaymentStatus> finals = EnumSet.noneOf(PaymentStatus.class);
+        ALLOWED.forEach((from, targets) -> {
+            if (targets.isEmpty()) {
+                finals.add(from);
+            }
+        });
+        return finals;
+    }
+}
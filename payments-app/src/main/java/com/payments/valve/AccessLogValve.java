@@ -24,6 +24,11 @@ public class AccessLogValve extends ValveBase {
     private static final Logger ACCESS_LOG = LoggerFactory.getLogger("ACCESS_LOG");
     private boolean logAccessInfo = true;
 
+    public AccessLogValve() {
+        // a valve without async support disables async processing (e.g. streaming exports) for every request
+        super(true);
+    }
+
     @Override
     public void invoke(Request request, Response response) throws IOException, ServletException {
         long startTime = System.currentTimeMillis();
@@ -0,0 +1,58 @@
+package com.payments;
+
+import org.springframework.test.context.DynamicPropertyRegistry;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+/**
+ * Token signing keys for application contexts started by tests. The keys are not part of the repository, they
+ * are generated once per test run into a temporary directory.
+ */
+public final class TestKeys {
+
+    private static Path directory;
+
+    private TestKeys() {
+    }
+
+    public static void register(DynamicPropertyRegistry registry) {
+        Path keys = directory();
+        registry.add("payment.security.iam.ssl-private-key-path", () -> keys.resolve("private-key-pkcs8.pem").toUri().toString());
+        registry.add("payment.security.iam.ssl-certificate-path", () -> keys.resolve("public-key.pem").toUri().toString());
+    }
+
+    private static synchronized Path directory() {
+        if (directory == null) {
+            try {
+                KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+                generator.initialize(2048);
+                KeyPair keyPair = generator.generateKeyPair();
+                Path keys = Files.createTempDirectory("payments-test-keys");
+                Files.writeString(keys.resolve("private-key-pkcs8.pem"), pem("PRIVATE KEY", keyPair.getPrivate().getEncoded()));
+                Files.writeString(keys.resolve("public-key.pem"), pem("PUBLIC KEY", keyPair.getPublic().getEncoded()));
+                keys.toFile().deleteOnExit();
+                keys.resolve("private-key-pkcs8.pem").toFile().deleteOnExit();
+                keys.resolve("public-key.pem").toFile().deleteOnExit();
+                directory = keys;
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("RSA not available", e);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot write test keys", e);
+            }
+        }
+        return directory;
+    }
+
+    private static String pem(String type, byte[] encoded) {
+        return "-----BEGIN " + type + "-----\n"
+                + Base64.getMimeEncoder(64, "\n".getBytes()).encodeToString(encoded)
+                + "\n-----END " + type + "-----\n";
+    }
+}
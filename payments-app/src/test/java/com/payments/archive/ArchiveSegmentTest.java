@@ -0,0 +1,180 @@
+package com.payments.archive;
+
+import com.payments.dto.PaymentRow;
+import com.payments.entity.PartyEntity;
+import com.payments.entity.PaymentEntity;
+import com.payments.model.PaymentMethod;
+import com.payments.model.PaymentStatus;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Segments written and read back, in the current format and in the fixed-scale format of version 1.
+ */
+class ArchiveSegmentTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2026, 3, 1, 9, 30, 0, 123_456_000);
+    // offset of the format version, after the magic number
+    private static final int VERSION_OFFSET = 4;
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void headerAndColumnsRoundTrip() throws IOException {
+        List<PaymentEntity> payments = payments();
+        ArchiveSegment written = ArchiveSegment.write(directory.resolve("segment.seg"), payments);
+        ArchiveSegment segment = ArchiveSegment.open(written.file());
+
+        assertThat(segment.rows()).isEqualTo(payments.size());
+        assertThat(segment.minCreatedAt()).isEqualTo(payments.getFirst().getCreatedAt());
+        assertThat(segment.maxCreatedAt()).isEqualTo(payments.getLast().getCreatedAt());
+        assertThat(segment.paymentIds()).containsExactlyElementsOf(values(payments, PaymentEntity::getPaymentId));
+        assertThat(segment.createdAt()).containsExactlyElementsOf(values(payments, PaymentEntity::getCreatedAt));
+        assertThat(segment.statuses()).containsExactlyElementsOf(values(payments, PaymentEntity::getStatus));
+        assertThat(segment.paymentMethods())
+                .containsExactlyElementsOf(values(payments, PaymentEntity::getPaymentMethod));
+        assertThat(segment.currencies()).containsExactlyElementsOf(values(payments, PaymentEntity::getCurrency));
+        assertThat(segment.amounts())
+                .containsExactly(payments.stream().mapToLong(PaymentEntity::getAmountMinor).toArray());
+
+        UUID lowest = payments.stream().map(PaymentEntity::getPaymentId).min(Comparator.naturalOrder()).orElseThrow();
+        UUID highest = payments.stream().map(PaymentEntity::getPaymentId).max(Comparator.naturalOrder()).orElseThrow();
+        assertThat(segment.mayContain(lowest)).isTrue();
+        assertThat(segment.mayContain(highest)).isTrue();
+        assertThat(segment.mayContain(new UUID(lowest.getMostSignificantBits() - 1, 0))).isFalse();
+        assertThat(segment.mayContain(new UUID(highest.getMostSignificantBits() + 1, 0))).isFalse();
+    }
+
+    @Test
+    void everyRowReadsBackOnItsOwn() throws IOException {
+        List<PaymentEntity> payments = payments();
+        ArchiveSegment segment = ArchiveSegment.open(
+                ArchiveSegment.write(directory.resolve("segment.seg"), payments).file());
+
+        // every row inflates each column only up to itself, the last one reads every column to its end
+        for (int i = payments.size() - 1; i >= 0; i--) {
+            PaymentEntity payment = payments.get(i);
+            assertThat(segment.row(i, payment.getPaymentId())).isEqualTo(row(payment, payment.getAmountMinor()));
+        }
+    }
+
+    @Test
+    void fixedScaleSegmentsAreRescaledToTheCurrency() throws IOException {
+        // version 1 held every amount at a scale of 2: 12.00 JPY, 1.23 BHD, 45.67 USD
+        List<PaymentEntity> payments = List.of(
+                payment(0, "JPY", 1200, START, null, null),
+                payment(1, "BHD", 123, START.plusSeconds(1), null, null),
+                payment(2, "USD", 4567, START.plusSeconds(2), null, null));
+        Path file = ArchiveSegment.write(directory.resolve("segment.seg"), payments).file();
+        setFormatVersion(file, 1);
+
+        ArchiveSegment segment = ArchiveSegment.open(file);
+
+        assertThat(segment.amounts()).containsExactly(12, 1230, 4567);
+        assertThat(segment.row(0, payments.get(0).getPaymentId()).amountMinor()).isEqualTo(12);
+        assertThat(segment.row(1, payments.get(1).getPaymentId()).amountMinor()).isEqualTo(1230);
+        assertThat(segment.row(2, payments.get(2).getPaymentId())).isEqualTo(row(payments.get(2), 4567));
+    }
+
+    @Test
+    void fixedScaleAmountsTheCurrencyCannotHoldAreRejected() throws IOException {
+        Path file = ArchiveSegment.write(directory.resolve("segment.seg"),
+                List.of(payment(0, "JPY", 1234, START, null, null))).file();
+        setFormatVersion(file, 1);
+
+        ArchiveSegment segment = ArchiveSegment.open(file);
+
+        assertThatThrownBy(segment::amounts).isInstanceOf(ArithmeticException.class);
+    }
+
+    @Test
+    void openRejectsOtherFiles() throws IOException {
+        Path notASegment = Files.write(directory.resolve("other.seg"), new byte[256]);
+        Path unknownVersion = ArchiveSegment.write(directory.resolve("segment.seg"),
+                List.of(payment(0, "USD", 100, START, null, null))).file();
+        setFormatVersion(unknownVersion, 3);
+
+        assertThatThrownBy(() -> ArchiveSegment.open(notASegment)).hasMessageContaining("Not an archive segment");
+        assertThatThrownBy(() -> ArchiveSegment.open(unknownVersion)).hasMessageContaining("Unsupported");
+    }
+
+    /**
+     * Payments in creation order with uneven gaps, also ones created in the same microsecond, without an update
+     * and without parties or with parties missing their optional fields.
+     */
+    private static List<PaymentEntity> payments() {
+        PartyEntity fullDebtor = new PartyEntity(null, null, "Debtor", "D-1", "BANKDEFF", "Street 1", "d@example.com",
+                "+4912345");
+        PartyEntity bareCreditor = new PartyEntity(null, null, "Creditor", "C-1", null, null, null, null);
+        List<PaymentEntity> payments = new ArrayList<>();
+        LocalDateTime createdAt = START;
+        String[] currencies = {"USD", "JPY", "BHD", "EUR", "XYZ"};
+        long[] gapsMicros = {0, 1, 0, 59_000_001, 86_400_000_000L, 7, 3_600_000_000L, 0};
+        for (int i = 0; i < gapsMicros.length; i++) {
+            createdAt = createdAt.plusNanos(gapsMicros[i] * 1_000);
+            LocalDateTime updatedAt = i % 3 == 0 ? null : createdAt.plusMinutes(i);
+            PartyEntity debtor = i % 4 == 1 ? null : fullDebtor;
+            PartyEntity creditor = i % 4 == 2 ? null : bareCreditor;
+            PaymentEntity payment = payment(i, currencies[i % currencies.length], 1_000L * i + i, createdAt, debtor,
+                    creditor);
+            payment.setUpdatedAt(updatedAt);
+            payments.add(payment);
+        }
+        return payments;
+    }
+
+    private static PaymentEntity payment(int i, String currency, long amountMinor, LocalDateTime createdAt,
+                                         PartyEntity debtor, PartyEntity creditor) {
+        PaymentEntity payment = new PaymentEntity();
+        // not in id order, the min/max ids are not those of the first and last row
+        payment.setPaymentId(new UUID(0x01a1_0000_0000_0000L + (i * 7919L % 13), i));
+        payment.setUserName("Admin");
+        payment.setAmountMinor(amountMinor);
+        payment.setCurrency(currency);
+        payment.setStatus(PaymentStatus.values()[i % PaymentStatus.values().length]);
+        payment.setPaymentMethod(PaymentMethod.values()[i % PaymentMethod.values().length]);
+        payment.setDebtor(debtor);
+        payment.setCreditor(creditor);
+        payment.setCreatedAt(createdAt);
+        payment.setVersion((long) i);
+        return payment;
+    }
+
+    private static <T> List<T> values(List<PaymentEntity> payments, Function<PaymentEntity, T> column) {
+        return payments.stream().map(column).toList();
+    }
+
+    private static PaymentRow row(PaymentEntity payment, long amountMinor) {
+        PartyEntity debtor = payment.getDebtor() != null ? payment.getDebtor() : new PartyEntity();
+        PartyEntity creditor = payment.getCreditor() != null ? payment.getCreditor() : new PartyEntity();
+        return new PaymentRow(payment.getPaymentId(), amountMinor, payment.getCurrency(), payment.getStatus(),
+                payment.getPaymentMethod(), payment.getCreatedAt(), payment.getUpdatedAt(), payment.getVersion(),
+                debtor.getName(), debtor.getAccountNumber(), debtor.getBankCode(), debtor.getAddress(),
+                debtor.getEmail(), debtor.getPhoneNumber(),
+                creditor.getName(), creditor.getAccountNumber(), creditor.getBankCode(), creditor.getAddress(),
+                creditor.getEmail(), creditor.getPhoneNumber());
+    }
+
+    private static void setFormatVersion(Path file, int version) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Short.BYTES).putShort(0, (short) version), VERSION_OFFSET);
+        }
+    }
+}
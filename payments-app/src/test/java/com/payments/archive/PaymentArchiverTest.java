@@ -0,0 +1,88 @@
+package com.payments.archive;
+
+import com.payments.config.ArchiveProperties;
+import com.payments.entity.PaymentEntity;
+import com.payments.model.PaymentMethod;
+import com.payments.model.PaymentStatus;
+import com.payments.repository.PartyRepository;
+import com.payments.repository.PaymentRepository;
+import com.payments.sharding.PaymentShards;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * A run that stopped between writing a segment and deleting its payments is completed by the next run.
+ */
+class PaymentArchiverTest {
+
+    private static final LocalDateTime CREATED_AT = LocalDateTime.of(2026, 1, 5, 10, 0);
+
+    @TempDir
+    private Path directory;
+
+    private final PaymentRepository repository = mock(PaymentRepository.class);
+    private final TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+    private final PaymentShards paymentShards = mock(PaymentShards.class);
+
+    @Test
+    void paymentsAlreadyArchivedAreOnlyDeleted() {
+        ArchiveProperties properties = new ArchiveProperties(true, directory, Duration.ofDays(30), 10);
+        PaymentArchive archive = new PaymentArchive(properties);
+        PaymentEntity archived = payment(1);
+        PaymentEntity remaining = payment(2);
+        // the earlier run wrote the first payment to a segment but its delete did not commit
+        archive.write(List.of(archived));
+        when(repository.findByStatusInAndCreatedAtBeforeOrderByCreatedAtAscIdAsc(any(), any(), any()))
+                .thenReturn(List.of(archived, remaining));
+        when(transactionTemplate.execute(any()))
+                .thenAnswer(invocation -> invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        when(paymentShards.shardCount()).thenReturn(1);
+        when(paymentShards.onShard(anyInt(), any()))
+                .thenAnswer(invocation -> invocation.<Supplier<?>>getArgument(1).get());
+
+        new PaymentArchiver(repository, mock(PartyRepository.class), archive, transactionTemplate, paymentShards,
+                properties, new SimpleMeterRegistry()).archive();
+
+        verify(repository).deleteAllByIdInBatch(List.of(archived.getId(), remaining.getId()));
+        assertThat(archive.segmentCount()).isEqualTo(2);
+        assertThat(archive.findArchived(List.of(archived.getPaymentId(), remaining.getPaymentId())))
+                .isEqualTo(Set.of(archived.getPaymentId(), remaining.getPaymentId()));
+        // reopened from disk, the second segment holds only the payment that was not archived yet
+        PaymentArchive reopened = new PaymentArchive(properties);
+        assertThat(reopened.aggregateStatistics(null))
+                .singleElement()
+                .satisfies(row -> assertThat(row.count()).isEqualTo(2L));
+    }
+
+    private static PaymentEntity payment(long id) {
+        PaymentEntity payment = new PaymentEntity();
+        payment.setId(id);
+        payment.setPaymentId(new UUID(0x01a1_0000_0000_0000L, id));
+        payment.setUserName("Admin");
+        payment.setAmountMinor(1_000);
+        payment.setCurrency("USD");
+        payment.setStatus(PaymentStatus.COMPLETED);
+        payment.setPaymentMethod(PaymentMethod.UPI);
+        payment.setCreatedAt(CREATED_AT.plusSeconds(id));
+        payment.setVersion(1L);
+        return payment;
+    }
+}
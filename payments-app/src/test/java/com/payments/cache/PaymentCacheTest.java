@@ -0,0 +1,66 @@
+package com.payments.cache;
+
+import com.payments.config.PaymentCacheProperties;
+import com.payments.config.ReplicaProperties;
+import com.payments.mapper.PaymentMapper;
+import com.payments.model.Payment;
+import com.payments.replica.PrimaryReads;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Which loads fill the payment cache, with and without read replicas.
+ */
+class PaymentCacheTest {
+
+    private static final String PAYMENT_ID = "01a14dbf-4093-7248-aaa8-cd5feee40d1f";
+
+    private final AtomicInteger loads = new AtomicInteger();
+    private final Function<String, Optional<Payment>> loader = id -> {
+        loads.incrementAndGet();
+        Payment payment = new Payment();
+        payment.setPaymentId(id);
+        return Optional.of(payment);
+    };
+
+    @Test
+    void loadsFillTheCacheWithoutReplicas() {
+        PaymentCache cache = cache(false);
+
+        cache.get(PAYMENT_ID, loader);
+        cache.get(PAYMENT_ID.toUpperCase(), loader);
+
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void replicaLoadsAreServedButOnlyPrimaryLoadsAreCached() {
+        PaymentCache cache = cache(true);
+
+        assertThat(cache.get(PAYMENT_ID, loader)).map(Payment::getPaymentId).contains(PAYMENT_ID);
+        cache.get(PAYMENT_ID, loader);
+        assertThat(loads).hasValue(2);
+        assertThat(cache.peek(PAYMENT_ID)).isEmpty();
+
+        PrimaryReads.call(true, () -> cache.get(PAYMENT_ID, loader));
+        cache.get(PAYMENT_ID, loader);
+
+        assertThat(loads).hasValue(3);
+        assertThat(cache.peek(PAYMENT_ID)).isPresent();
+    }
+
+    private static PaymentCache cache(boolean replicas) {
+        PaymentCacheProperties properties = new PaymentCacheProperties(true, 100, Duration.ofMinutes(1));
+        ReplicaProperties replicaProperties = new ReplicaProperties(replicas, List.of(), Duration.ofSeconds(5),
+                Duration.ofSeconds(1), Duration.ofSeconds(2), 3, Duration.ofSeconds(5), 100);
+        return new PaymentCache(properties, replicaProperties, new PaymentMapper(), new SimpleMeterRegistry());
+    }
+}
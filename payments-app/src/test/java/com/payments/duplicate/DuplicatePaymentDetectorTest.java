@@ -0,0 +1,153 @@
+package com.payments.duplicate;
+
+import com.payments.config.DuplicateDetectionProperties;
+import com.payments.exception.DuplicatePaymentException;
+import com.payments.model.Party;
+import com.payments.model.Payment;
+import com.payments.model.PaymentRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Identical requests are caught within the window and forgotten after it, on a made-up clock. A 60s window in six
+ * buckets of 10s each.
+ */
+class DuplicatePaymentDetectorTest {
+
+    private static final Duration WINDOW = Duration.ofSeconds(60);
+    private static final long START = 1_800_000_000_000L;
+
+    @Test
+    void identicalRequestIsFlaggedWithThePaymentItDuplicates() {
+        DuplicatePaymentDetector detector = detector(DuplicateDetectionProperties.Action.FLAG, 100);
+
+        DuplicatePaymentDetector.Result first = detector.execute(request("10.00"), payment("p-1"), START);
+        // the same amount written differently is the same payment
+        DuplicatePaymentDetector.Result second = detector.execute(request("10"), payment("p-2"), START + 1_000);
+        DuplicatePaymentDetector.Result other = detector.execute(request("10.01"), payment("p-3"), START + 2_000);
+
+        assertThat(first.duplicateOf()).isNull();
+        assertThat(second.payment().getPaymentId()).isEqualTo("p-2");
+        assertThat(second.duplicateOf()).isEqualTo("p-1");
+        assertThat(other.duplicateOf()).isNull();
+    }
+
+    @Test
+    void identicalRequestIsRejectedWhenConfigured() {
+        DuplicatePaymentDetector detector = detector(DuplicateDetectionProperties.Action.REJECT, 100);
+        detector.execute(request("10.00"), payment("p-1"), START);
+
+        assertThatThrownBy(() -> detector.execute(request("10.00"), payment("p-2"), START + 1_000))
+                .isInstanceOf(DuplicatePaymentException.class)
+                .hasMessageContaining("duplicate of payment p-1");
+    }
+
+    @Test
+    void paymentsAreForgottenOnceTheirBucketFallsOutOfTheWindow() {
+        DuplicatePaymentDetector detector = detector(DuplicateDetectionProperties.Action.FLAG, 100);
+        long bucketStart = START - START % 10_000;
+        detector.execute(request("10.00"), payment("p-1"), bucketStart + 9_999);
+
+        // the bucket of the first payment is the oldest one still in the window until the next window starts
+        assertThat(detector.execute(request("10.00"), payment("p-2"), bucketStart + 59_999).duplicateOf())
+                .isEqualTo("p-1");
+        assertThat(detector.execute(request("10.00"), payment("p-3"), bucketStart + 60_000).duplicateOf())
+                .isNull();
+        // the bucket reused for the slot no longer holds the first payment, the third one replaces it
+        assertThat(detector.execute(request("10.00"), payment("p-4"), bucketStart + 60_001).duplicateOf())
+                .isEqualTo("p-3");
+    }
+
+    @Test
+    void requestRacingAPaymentStillBeingStoredIsCaught() throws Exception {
+        DuplicatePaymentDetector detector = detector(DuplicateDetectionProperties.Action.REJECT, 100);
+        CountDownLatch storing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Supplier<Payment> slow = () -> {
+            storing.countDown();
+            awaitUninterruptibly(release);
+            return payment("p-1").get();
+        };
+
+        CompletableFuture<DuplicatePaymentDetector.Result> first =
+                CompletableFuture.supplyAsync(() -> detector.execute(request("10.00"), slow, START));
+        assertThat(storing.await(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThatThrownBy(() -> detector.execute(request("10.00"), payment("p-2"), START))
+                .isInstanceOf(DuplicatePaymentException.class)
+                .hasMessageContaining("still being processed");
+        release.countDown();
+        assertThat(first.get(10, TimeUnit.SECONDS).duplicateOf()).isNull();
+        assertThatThrownBy(() -> detector.execute(request("10.00"), payment("p-3"), START))
+                .hasMessageContaining("duplicate of payment p-1");
+    }
+
+    @Test
+    void failedPaymentIsNotRemembered() {
+        DuplicatePaymentDetector detector = detector(DuplicateDetectionProperties.Action.REJECT, 100);
+
+        assertThatThrownBy(() -> detector.execute(request("10.00"), () -> {
+            throw new IllegalStateException("storage down");
+        }, START)).hasMessage("storage down");
+
+        assertThat(detector.execute(request("10.00"), payment("p-1"), START).duplicateOf()).isNull();
+    }
+
+    @Test
+    void paymentsOverTheBucketCapacityAreNotTracked() {
+        // six entries over six buckets, one per bucket
+        DuplicatePaymentDetector detector = detector(DuplicateDetectionProperties.Action.FLAG, 6);
+        detector.execute(request("10.00"), payment("p-1"), START);
+        detector.execute(request("11.00"), payment("p-2"), START);
+
+        assertThat(detector.execute(request("10.00"), payment("p-3"), START).duplicateOf()).isEqualTo("p-1");
+        assertThat(detector.execute(request("11.00"), payment("p-4"), START).duplicateOf()).isNull();
+    }
+
+    private static DuplicatePaymentDetector detector(DuplicateDetectionProperties.Action action, int maxEntries) {
+        return new DuplicatePaymentDetector(new DuplicateDetectionProperties(true, action, WINDOW, 6, maxEntries),
+                new SimpleMeterRegistry());
+    }
+
+    private static Supplier<Payment> payment(String paymentId) {
+        return () -> {
+            Payment payment = new Payment();
+            payment.setPaymentId(paymentId);
+            return payment;
+        };
+    }
+
+    private static PaymentRequest request(String amount) {
+        PaymentRequest request = new PaymentRequest();
+        request.setAmount(new BigDecimal(amount));
+        request.setCurrency("USD");
+        request.setDebtor(party("D-1"));
+        request.setCreditor(party("C-1"));
+        return request;
+    }
+
+    private static Party party(String accountNumber) {
+        Party party = new Party();
+        party.setName("Party " + accountNumber);
+        party.setAccountNumber(accountNumber);
+        return party;
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
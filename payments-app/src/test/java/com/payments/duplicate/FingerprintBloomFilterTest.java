@@ -0,0 +1,73 @@
+package com.payments.duplicate;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Every fingerprint put is found again, and at capacity only a small share of the others is.
+ */
+class FingerprintBloomFilterTest {
+
+    private static final int CAPACITY = 10_000;
+
+    @Test
+    void fingerprintsPutAreAlwaysFound() {
+        FingerprintBloomFilter filter = new FingerprintBloomFilter(CAPACITY);
+        SplittableRandom random = new SplittableRandom(42);
+        long[] fingerprints = new long[CAPACITY];
+        for (int i = 0; i < fingerprints.length; i++) {
+            fingerprints[i] = random.nextLong();
+            filter.put(fingerprints[i]);
+        }
+
+        for (long fingerprint : fingerprints) {
+            assertThat(filter.mightContain(fingerprint)).isTrue();
+        }
+        // fingerprints with a zero or negative half, or one half only, pick bits the same way
+        long[] edgeCases = {0, -1, Long.MIN_VALUE, Long.MAX_VALUE, 0xFFFF_FFFFL, 0xFFFF_FFFF_0000_0000L};
+        for (long fingerprint : edgeCases) {
+            filter.put(fingerprint);
+            assertThat(filter.mightContain(fingerprint)).isTrue();
+        }
+    }
+
+    @Test
+    void falsePositivesStayNearOnePercentAtCapacity() {
+        FingerprintBloomFilter filter = new FingerprintBloomFilter(CAPACITY);
+        SplittableRandom random = new SplittableRandom(7);
+        Set<Long> fingerprints = new HashSet<>();
+        while (fingerprints.size() < CAPACITY) {
+            long fingerprint = random.nextLong();
+            fingerprints.add(fingerprint);
+            filter.put(fingerprint);
+        }
+
+        int checked = 0;
+        int falsePositives = 0;
+        while (checked < 100_000) {
+            long fingerprint = random.nextLong();
+            if (fingerprints.contains(fingerprint)) {
+                continue;
+            }
+            checked++;
+            if (filter.mightContain(fingerprint)) {
+                falsePositives++;
+            }
+        }
+
+        assertThat(falsePositives).isLessThan(checked * 2 / 100);
+    }
+
+    @Test
+    void emptyFilterContainsNothing() {
+        FingerprintBloomFilter filter = new FingerprintBloomFilter(1);
+
+        assertThat(filter.mightContain(0)).isFalse();
+        assertThat(filter.mightContain(new SplittableRandom(1).nextLong())).isFalse();
+    }
+}
@@ -0,0 +1,123 @@
+package com.payments.ingest;
+
+import com.payments.exception.InvalidPaymentFileException;
+import com.payments.model.PaymentMethod;
+import com.payments.model.PaymentRequest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
+
+/**
+ * A CSV file split into chunks of any size is read the same, with every record on its line of the file.
+ */
+class CsvPaymentFileParserTest {
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 16, 64, 10_000})
+    void chunksEndOnLineBreaks(int chunkSize) throws Exception {
+        ByteBuffer file = fixture("/ingest/payments.csv");
+        List<FileChunk> chunks = new CsvPaymentFileParser(file, 0).split(chunkSize);
+
+        assertThat(chunks.getFirst().start()).isEqualTo(firstLineLength(file));
+        assertThat(chunks.getLast().end()).isEqualTo(file.limit());
+        for (int i = 0; i < chunks.size(); i++) {
+            FileChunk chunk = chunks.get(i);
+            assertThat(chunk.index()).isEqualTo(i);
+            assertThat(chunk.linesBefore()).isEqualTo(i == 0 ? 1 : 0);
+            assertThat(file.get(chunk.end() - 1)).isEqualTo((byte) '\n');
+            if (i > 0) {
+                assertThat(chunk.start()).isEqualTo(chunks.get(i - 1).end());
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 16, 64, 10_000})
+    void recordsKeepTheirFileLine(int chunkSize) throws Exception {
+        CsvPaymentFileParser parser = new CsvPaymentFileParser(fixture("/ingest/payments.csv"), 0);
+        Map<Integer, PaymentRequest> instructions = new TreeMap<>();
+        Map<Integer, String> rejections = new TreeMap<>();
+
+        int chunkLine = 1;
+        for (FileChunk chunk : parser.split(chunkSize)) {
+            chunkLine += chunk.linesBefore();
+            ParsedChunk parsed = parser.parse(chunk);
+            for (ParsedChunk.Instruction instruction : parsed.instructions()) {
+                instructions.put(chunkLine + instruction.line(), instruction.request());
+            }
+            for (ParsedChunk.Rejection rejection : parsed.rejections()) {
+                rejections.put(chunkLine + rejection.line(), rejection.message());
+            }
+            chunkLine += parsed.lines();
+        }
+
+        // line 4 is blank, lines 8 and 9 are read but fail validation later
+        assertThat(instructions).containsOnlyKeys(2, 3, 6, 7, 8, 9, 10, 12, 13);
+        assertThat(rejections).containsExactly(
+                entry(5, "paymentMethod: unknown payment method: CHEQUE"),
+                entry(11, "unterminated quoted field 4"));
+        PaymentRequest quoted = instructions.get(6);
+        assertThat(quoted.getAmount()).isEqualTo(new BigDecimal("13.00"));
+        assertThat(quoted.getPaymentMethod()).isEqualTo(PaymentMethod.UPI);
+        assertThat(quoted.getDebtor().getName()).isEqualTo("Alice, Ltd");
+        assertThat(quoted.getCreditor().getAccountNumber()).isEqualTo("C-4");
+        assertThat(instructions.get(9).getCreditor().getName()).isNull();
+        assertThat(instructions.get(13).getPaymentMethod()).isEqualTo(PaymentMethod.WALLET);
+    }
+
+    @Test
+    void columnsAreFoundByHeaderInAnyOrderAndCase() {
+        String csv = "CREDITORNAME,creditorAccountNumber,ignored,amount,currency,paymentMethod,debtorName,"
+                + "debtorAccountNumber\r\nBob,C-1,x,5.00,EUR,net_banking,Alice,D-1\r\n";
+        CsvPaymentFileParser parser = new CsvPaymentFileParser(ByteBuffer.wrap(bytes(csv)), 0);
+
+        ParsedChunk parsed = parser.parse(parser.split(1).getFirst());
+
+        assertThat(parsed.rejections()).isEmpty();
+        PaymentRequest request = parsed.instructions().getFirst().request();
+        assertThat(request.getCreditor().getName()).isEqualTo("Bob");
+        assertThat(request.getDebtor().getAccountNumber()).isEqualTo("D-1");
+        assertThat(request.getPaymentMethod()).isEqualTo(PaymentMethod.NET_BANKING);
+    }
+
+    @Test
+    void headerMissingRequiredColumnsIsRejected() {
+        ByteBuffer file = ByteBuffer.wrap(bytes("amount,currency,debtorName\n1.00,USD,Alice\n"));
+
+        assertThatThrownBy(() -> new CsvPaymentFileParser(file, 0))
+                .isInstanceOf(InvalidPaymentFileException.class)
+                .hasMessageContaining("paymentMethod")
+                .hasMessageContaining("creditorAccountNumber");
+    }
+
+    private static int firstLineLength(ByteBuffer file) {
+        int i = 0;
+        while (file.get(i) != '\n') {
+            i++;
+        }
+        return i + 1;
+    }
+
+    private static ByteBuffer fixture(String name) throws IOException, URISyntaxException {
+        return ByteBuffer.wrap(Files.readAllBytes(Path.of(CsvPaymentFileParserTest.class.getResource(name).toURI())));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,114 @@
+package com.payments.ingest;
+
+import com.payments.exception.InvalidPaymentFileException;
+import com.payments.model.PaymentMethod;
+import com.payments.model.PaymentRequest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
+
+/**
+ * A pain.001 document split into chunks of any size is read the same, with every credit transfer on the line of its
+ * {@code <CdtTrfTxInf>} and the debtor of its own {@code <PmtInf>} block.
+ */
+class Pain001PaymentFileParserTest {
+
+    private static final byte[] TRANSACTION_START = "<CdtTrfTxInf>".getBytes(StandardCharsets.US_ASCII);
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 200, 10_000})
+    void chunksStartOnCreditTransfers(int chunkSize) throws Exception {
+        ByteBuffer file = fixture("/ingest/pain001.xml");
+        List<FileChunk> chunks = new Pain001PaymentFileParser(file).split(chunkSize);
+
+        // a chunk never spans two blocks, so there are at least as many chunks as blocks
+        assertThat(chunks).hasSizeBetween(2, 7);
+        if (chunkSize == 1) {
+            assertThat(chunks).hasSize(7);
+        }
+        for (int i = 0; i < chunks.size(); i++) {
+            FileChunk chunk = chunks.get(i);
+            assertThat(chunk.index()).isEqualTo(i);
+            assertThat(startsWith(file, chunk.start(), TRANSACTION_START)).isTrue();
+            if (i > 0) {
+                assertThat(chunk.start()).isGreaterThanOrEqualTo(chunks.get(i - 1).end());
+            }
+        }
+        assertThat(chunks.getFirst().linesBefore()).isEqualTo(22);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 200, 10_000})
+    void creditTransfersKeepTheirFileLine(int chunkSize) throws Exception {
+        Pain001PaymentFileParser parser = new Pain001PaymentFileParser(fixture("/ingest/pain001.xml"));
+        Map<Integer, PaymentRequest> instructions = new TreeMap<>();
+        Map<Integer, String> rejections = new TreeMap<>();
+
+        int chunkLine = 1;
+        for (FileChunk chunk : parser.split(chunkSize)) {
+            chunkLine += chunk.linesBefore();
+            ParsedChunk parsed = parser.parse(chunk);
+            for (ParsedChunk.Instruction instruction : parsed.instructions()) {
+                instructions.put(chunkLine + instruction.line(), instruction.request());
+            }
+            for (ParsedChunk.Rejection rejection : parsed.rejections()) {
+                rejections.put(chunkLine + rejection.line(), rejection.message());
+            }
+            chunkLine += parsed.lines();
+        }
+
+        assertThat(instructions).containsOnlyKeys(23, 33, 49, 54, 58, 63);
+        assertThat(rejections).containsExactly(entry(28, "amount: not a number: 12,50"));
+        PaymentRequest first = instructions.get(23);
+        assertThat(first.getAmount()).isEqualTo(new BigDecimal("10.00"));
+        assertThat(first.getCurrency()).isEqualTo("EUR");
+        assertThat(first.getPaymentMethod()).isEqualTo(PaymentMethod.WALLET);
+        assertThat(first.getDebtor().getName()).isEqualTo("Alice");
+        assertThat(first.getDebtor().getAccountNumber()).isEqualTo("DE02100100109307118603");
+        assertThat(first.getCreditor().getAccountNumber()).isEqualTo("C-1");
+        PaymentRequest last = instructions.get(63);
+        assertThat(last.getCurrency()).isEqualTo("JPY");
+        assertThat(last.getPaymentMethod()).isEqualTo(PaymentMethod.NET_BANKING);
+        assertThat(last.getDebtor().getName()).isEqualTo("Carol");
+        assertThat(last.getDebtor().getAccountNumber()).isEqualTo("D-2");
+        assertThat(instructions.get(54).getCreditor().getName()).isNull();
+    }
+
+    @Test
+    void documentWithoutPaymentInformationIsRejected() {
+        ByteBuffer file = ByteBuffer.wrap("<Document><CstmrCdtTrfInitn/></Document>".getBytes(StandardCharsets.UTF_8));
+
+        assertThatThrownBy(() -> new Pain001PaymentFileParser(file).split(1024))
+                .isInstanceOf(InvalidPaymentFileException.class)
+                .hasMessageContaining("No <PmtInf> block");
+    }
+
+    private static boolean startsWith(ByteBuffer file, int offset, byte[] prefix) {
+        for (int i = 0; i < prefix.length; i++) {
+            if (file.get(offset + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static ByteBuffer fixture(String name) throws IOException, URISyntaxException {
+        Path path = Path.of(Pain001PaymentFileParserTest.class.getResource(name).toURI());
+        return ByteBuffer.wrap(Files.readAllBytes(path));
+    }
+}
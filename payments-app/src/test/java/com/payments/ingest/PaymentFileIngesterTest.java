@@ -0,0 +1,124 @@
+package com.payments.ingest;
+
+import com.payments.config.IngestionProperties;
+import com.payments.config.PaymentBatchProperties;
+import com.payments.config.RateLimitProperties;
+import com.payments.dto.PaymentFileFormat;
+import com.payments.model.BatchItemStatus;
+import com.payments.model.BatchPaymentResponse;
+import com.payments.model.BatchPaymentResult;
+import com.payments.model.PaymentRequest;
+import com.payments.ratelimit.PaymentRateLimiter;
+import com.payments.service.PaymentService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Files split into many small chunks report every rejected instruction on its line of the file, whether it could
+ * not be read, was invalid or could not be stored.
+ */
+class PaymentFileIngesterTest {
+
+    private static final String REJECTED_ACCOUNT = "C-REJECTED";
+
+    @TempDir
+    private Path directory;
+
+    private final PaymentService paymentService = mock(PaymentService.class);
+    private PaymentFileIngester ingester;
+
+    @AfterEach
+    void close() {
+        if (ingester != null) {
+            ingester.close();
+        }
+    }
+
+    @Test
+    void csvRejectionsAreWrittenWithTheirFileLine() throws Exception {
+        IngestionProgress progress = ingest("/ingest/payments.csv");
+
+        assertThat(progress.format()).isEqualTo(PaymentFileFormat.CSV);
+        assertThat(progress.records()).isEqualTo(11);
+        assertThat(progress.stored()).isEqualTo(6);
+        assertThat(progress.failed()).isEqualTo(5);
+        assertThat(Files.readAllLines(directory.resolve("errors.csv"))).containsExactly(
+                "line,error",
+                "5,\"paymentMethod: unknown payment method: CHEQUE\"",
+                "8,\"amount: Amount 1.234 is not a valid USD amount, at most 2 decimal places are allowed\"",
+                "9,\"creditor.name: must not be null\"",
+                "10,\"creditor account C-REJECTED is closed\"",
+                "11,\"unterminated quoted field 4\"");
+    }
+
+    @Test
+    void pain001RejectionsAreWrittenWithTheirFileLine() throws Exception {
+        IngestionProgress progress = ingest("/ingest/pain001.xml");
+
+        assertThat(progress.format()).isEqualTo(PaymentFileFormat.PAIN_001);
+        assertThat(progress.records()).isEqualTo(7);
+        assertThat(progress.stored()).isEqualTo(4);
+        assertThat(progress.failed()).isEqualTo(3);
+        assertThat(Files.readAllLines(directory.resolve("errors.csv"))).containsExactly(
+                "line,error",
+                "28,\"amount: not a number: 12,50\"",
+                "54,\"creditor.name: must not be null\"",
+                "58,\"creditor account C-REJECTED is closed\"");
+    }
+
+    /**
+     * Ingest a fixture in chunks of about 64 bytes, stored two payments at a time by a service that fails the
+     * payments to {@value REJECTED_ACCOUNT}.
+     */
+    private IngestionProgress ingest(String fixture) throws IOException, URISyntaxException {
+        when(paymentService.makePayments(any())).thenAnswer(invocation -> store(invocation.getArgument(0)));
+        IngestionProperties properties = new IngestionProperties(directory, DataSize.ofMegabytes(1),
+                DataSize.ofBytes(64), 2, Duration.ofHours(1));
+        RateLimitProperties rateLimits = new RateLimitProperties(false, 1,
+                new RateLimitProperties.Limits(50, 100, 10, 20), Map.of());
+        ingester = new PaymentFileIngester(paymentService,
+                Validation.buildDefaultValidatorFactory().getValidator(), properties, new PaymentBatchProperties(2),
+                new PaymentRateLimiter(rateLimits, new SimpleMeterRegistry()), new SimpleMeterRegistry());
+
+        IngestionProgress progress = new IngestionProgress();
+        ingester.ingest(Path.of(getClass().getResource(fixture).toURI()), directory.resolve("errors.csv"), null,
+                progress);
+        return progress;
+    }
+
+    private static BatchPaymentResponse store(List<PaymentRequest> requests) {
+        List<BatchPaymentResult> results = new ArrayList<>();
+        int failed = 0;
+        for (int i = 0; i < requests.size(); i++) {
+            String account = requests.get(i).getCreditor().getAccountNumber();
+            BatchPaymentResult result;
+            if (REJECTED_ACCOUNT.equals(account)) {
+                result = new BatchPaymentResult(i, BatchItemStatus.FAILED);
+                result.setError("creditor account " + account + " is closed");
+                failed++;
+            } else {
+                result = new BatchPaymentResult(i, BatchItemStatus.CREATED);
+            }
+            results.add(result);
+        }
+        return new BatchPaymentResponse(requests.size(), requests.size() - failed, failed, results);
+    }
+}
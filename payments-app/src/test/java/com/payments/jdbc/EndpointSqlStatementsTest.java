@@ -0,0 +1,123 @@
+package com.payments.jdbc;
+
+import com.jayway.jsonpath.JsonPath;
+import com.payments.TestKeys;
+import com.payments.model.Party;
+import com.payments.model.PaymentMethod;
+import com.payments.model.PaymentRequest;
+import com.payments.service.PaymentService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * The SQL statements of read endpoints, counted over the whole request including the security filters. A change
+ * that adds a query to one of these endpoints, or turns a join into a query per row, fails here with the
+ * statements it executed.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+class EndpointSqlStatementsTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private PaymentService paymentService;
+
+    private String token;
+
+    @DynamicPropertySource
+    static void keys(DynamicPropertyRegistry registry) {
+        TestKeys.register(registry);
+    }
+
+    @BeforeEach
+    void logIn() throws Exception {
+        String username = "statements@example.com";
+        // the context is shared, the user already exists for every test but the first
+        mockMvc.perform(post("/users")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("""
+                        {"username": "%s", "password": "secret123", "roles": ["ADMIN", "USER"]}""".formatted(username)));
+        String response = mockMvc.perform(post("/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"username": "%s", "password": "secret123"}""".formatted(username)))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        token = JsonPath.read(response, "$.accessToken");
+    }
+
+    @Test
+    void getUsersReadsUsersWithTheirRolesInOneStatement() throws Exception {
+        StatementCounts counts = statements(get("/users"));
+
+        assertThat(counts.total()).as("%s", counts.byShape()).isEqualTo(1);
+        assertThat(counts.count("from users")).isEqualTo(1);
+    }
+
+    @Test
+    void getUserReadsTheUserOnceThenFromTheSecondLevelCache() throws Exception {
+        String created = mockMvc.perform(post("/users")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"username": "bob@example.com", "password": "secret123", "roles": ["USER"]}"""))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        Number id = JsonPath.read(created, "$.id");
+
+        StatementCounts first = statements(get("/users/{id}", id));
+        StatementCounts second = statements(get("/users/{id}", id));
+
+        assertThat(first.total()).as("%s", first.byShape()).isEqualTo(1);
+        assertThat(first.count("from users")).isEqualTo(1);
+        assertThat(second.total()).as("%s", second.byShape()).isZero();
+    }
+
+    @Test
+    void getPaymentReadsThePaymentWithItsPartiesOnceThenFromTheCache() throws Exception {
+        PaymentRequest request = new PaymentRequest();
+        request.setAmount(new BigDecimal("12.50"));
+        request.setCurrency("USD");
+        request.setPaymentMethod(PaymentMethod.UPI);
+        request.setDebtor(party("Debtor", "D-1"));
+        request.setCreditor(party("Creditor", "C-1"));
+        String paymentId = paymentService.makePayment(request).getPaymentId();
+
+        StatementCounts first = statements(get("/payments/{paymentId}", paymentId));
+        StatementCounts second = statements(get("/payments/{paymentId}", paymentId));
+
+        assertThat(first.total()).as("%s", first.byShape()).isEqualTo(1);
+        assertThat(first.count("from payments")).isEqualTo(1);
+        assertThat(second.total()).as("%s", second.byShape()).isZero();
+    }
+
+    private StatementCounts statements(MockHttpServletRequestBuilder request) throws Exception {
+        try (SqlStatements.Recording recording = SqlStatements.record()) {
+            mockMvc.perform(request.header(HttpHeaders.AUTHORIZATION, "Bearer " + token)).andExpect(status().isOk());
+            return recording.counts();
+        }
+    }
+
+    private static Party party(String name, String accountNumber) {
+        Party party = new Party();
+        party.setName(name);
+        party.setAccountNumber(accountNumber);
+        return party;
+    }
+}
@@ -0,0 +1,91 @@
+package com.payments.ratelimit;
+
+import com.payments.config.RateLimitProperties;
+import com.payments.exception.RateLimitExceededException;
+import com.payments.model.Party;
+import com.payments.model.PaymentRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatNoException;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * A batch takes one request per payment from the principal and from each debtor account. The rates are so low
+ * that nothing refills while a test runs.
+ */
+class PaymentRateLimiterTest {
+
+    // one payment every 1000 seconds
+    private static final double RATE = 0.001;
+    private static final Duration INTERVAL = Duration.ofSeconds(1_000);
+
+    @BeforeEach
+    void authenticate() {
+        SecurityContextHolder.getContext()
+                .setAuthentication(new TestingAuthenticationToken("alice", null, "ROLE_USER"));
+    }
+
+    @AfterEach
+    void clear() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void batchIsChargedToThePrincipalPerPayment() {
+        PaymentRateLimiter limiter = limiter(new RateLimitProperties.Limits(RATE, 5, RATE, 100));
+
+        limiter.acquire(List.of(request("D-1"), request("D-2"), request("D-3"), request("D-4"), request("D-5")));
+
+        assertThatThrownBy(() -> limiter.acquire(request("D-6")))
+                .isInstanceOf(RateLimitExceededException.class)
+                .hasMessageContaining("created by this client")
+                .extracting(e -> ((RateLimitExceededException) e).getRetryAfter())
+                .satisfies(retryAfter -> assertThat(retryAfter).isBetween(INTERVAL.minusSeconds(1), INTERVAL));
+    }
+
+    @Test
+    void batchIsChargedToEachDebtorByItsPayments() {
+        PaymentRateLimiter limiter = limiter(new RateLimitProperties.Limits(RATE, 100, RATE, 2));
+
+        // allowed while the bucket is not exhausted, then it stays exhausted for the two payments over the burst
+        limiter.acquire(List.of(request("D-1"), request("D-1"), request("D-1"), request("D-1"), request("D-2")));
+
+        assertThatThrownBy(() -> limiter.acquire(List.of(request("D-2"), request("D-1"))))
+                .isInstanceOf(RateLimitExceededException.class)
+                .hasMessageContaining("debiting account D-1")
+                .extracting(e -> ((RateLimitExceededException) e).getRetryAfter())
+                .satisfies(retryAfter -> assertThat(retryAfter)
+                        .isBetween(INTERVAL.multipliedBy(3).minusSeconds(1), INTERVAL.multipliedBy(3)));
+        assertThatNoException().isThrownBy(() -> limiter.acquire(request("D-3")));
+    }
+
+    @Test
+    void filesOfUnknownPrincipalsAreNotPaced() {
+        PaymentRateLimiter limiter = limiter(new RateLimitProperties.Limits(RATE, 1, RATE, 1));
+
+        assertThatNoException().isThrownBy(() -> limiter.await(null, 1_000));
+    }
+
+    private static PaymentRateLimiter limiter(RateLimitProperties.Limits limits) {
+        return new PaymentRateLimiter(new RateLimitProperties(true, 100, limits, Map.of()), new SimpleMeterRegistry());
+    }
+
+    private static PaymentRequest request(String debtorAccount) {
+        Party debtor = new Party();
+        debtor.setName("Debtor");
+        debtor.setAccountNumber(debtorAccount);
+        PaymentRequest request = new PaymentRequest();
+        request.setDebtor(debtor);
+        return request;
+    }
+}
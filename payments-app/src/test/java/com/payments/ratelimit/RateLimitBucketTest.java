@@ -0,0 +1,119 @@
+package com.payments.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * A bucket allows its burst at once, then one request per interval, and tells a rejected request how long to
+ * wait. Time is passed in, so every case runs on a made-up clock.
+ */
+class RateLimitBucketTest {
+
+    private static final long INTERVAL = 100;
+    private static final int BURST = 5;
+    private static final long TOLERANCE = (BURST - 1) * INTERVAL;
+
+    @Test
+    void burstIsAllowedAtOnceThenOneRequestPerInterval() {
+        RateLimitBucket bucket = new RateLimitBucket(0);
+
+        for (int i = 0; i < BURST; i++) {
+            assertThat(bucket.tryAcquire(0, INTERVAL, TOLERANCE)).isZero();
+        }
+        assertThat(bucket.tryAcquire(0, INTERVAL, TOLERANCE)).isEqualTo(INTERVAL);
+        assertThat(bucket.tryAcquire(40, INTERVAL, TOLERANCE)).isEqualTo(INTERVAL - 40);
+        assertThat(bucket.tryAcquire(INTERVAL, INTERVAL, TOLERANCE)).isZero();
+        assertThat(bucket.tryAcquire(INTERVAL, INTERVAL, TOLERANCE)).isEqualTo(INTERVAL);
+        assertThat(bucket.tryAcquire(2 * INTERVAL, INTERVAL, TOLERANCE)).isZero();
+    }
+
+    @Test
+    void rejectedRequestsDoNotDrainTheBucket() {
+        RateLimitBucket bucket = new RateLimitBucket(0);
+        for (int i = 0; i < BURST; i++) {
+            bucket.tryAcquire(0, INTERVAL, TOLERANCE);
+        }
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(bucket.tryAcquire(50, INTERVAL, TOLERANCE)).isEqualTo(INTERVAL - 50);
+        }
+        assertThat(bucket.tryAcquire(INTERVAL, INTERVAL, TOLERANCE)).isZero();
+    }
+
+    @Test
+    void idleBucketRefillsNoFurtherThanItsBurst() {
+        RateLimitBucket bucket = new RateLimitBucket(0);
+        long later = 1_000_000;
+
+        for (int i = 0; i < BURST; i++) {
+            assertThat(bucket.tryAcquire(later, INTERVAL, TOLERANCE)).isZero();
+        }
+        assertThat(bucket.tryAcquire(later, INTERVAL, TOLERANCE)).isEqualTo(INTERVAL);
+    }
+
+    @Test
+    void batchLargerThanTheBurstIsAllowedAndPaidOffAtTheSustainedRate() {
+        RateLimitBucket bucket = new RateLimitBucket(0);
+        int batch = 3 * BURST;
+
+        assertThat(bucket.tryAcquire(0, INTERVAL, TOLERANCE, batch)).isZero();
+        // the bucket is full again once the batch is paid off, a single request may run ahead by the tolerance
+        long retryAfter = batch * INTERVAL - TOLERANCE;
+        assertThat(bucket.tryAcquire(0, INTERVAL, TOLERANCE)).isEqualTo(retryAfter);
+        assertThat(bucket.tryAcquire(0, INTERVAL, TOLERANCE, batch)).isEqualTo(retryAfter);
+        assertThat(bucket.tryAcquire(retryAfter, INTERVAL, TOLERANCE)).isZero();
+    }
+
+    @Test
+    void batchIsRejectedWhileTheBucketIsExhausted() {
+        RateLimitBucket bucket = new RateLimitBucket(0);
+        assertThat(bucket.tryAcquire(0, INTERVAL, TOLERANCE, BURST)).isZero();
+
+        assertThat(bucket.tryAcquire(0, INTERVAL, TOLERANCE, 2)).isEqualTo(INTERVAL);
+        assertThat(bucket.tryAcquire(INTERVAL, INTERVAL, TOLERANCE, 2)).isZero();
+        assertThat(bucket.tryAcquire(INTERVAL, INTERVAL, TOLERANCE)).isEqualTo(2 * INTERVAL);
+    }
+
+    @Test
+    void concurrentRequestsAreAllowedNoMoreThanTheBurst() throws Exception {
+        RateLimitBucket bucket = new RateLimitBucket(0);
+        int threads = 8;
+        int requestsPerThread = 1_000;
+        long tolerance = (1_000 - 1) * INTERVAL;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            tasks.add(() -> {
+                start.await();
+                int allowed = 0;
+                for (int j = 0; j < requestsPerThread; j++) {
+                    if (bucket.tryAcquire(0, INTERVAL, tolerance) == 0) {
+                        allowed++;
+                    }
+                }
+                return allowed;
+            });
+        }
+
+        int allowed = 0;
+        try (ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+            List<Future<Integer>> results = new ArrayList<>();
+            tasks.forEach(task -> results.add(executor.submit(task)));
+            start.countDown();
+            for (Future<Integer> result : results) {
+                allowed += result.get();
+            }
+        }
+
+        assertThat(allowed).isEqualTo(1_000);
+    }
+}
@@ -0,0 +1,79 @@
+package com.payments.replica;
+
+import com.payments.TestKeys;
+import com.payments.jdbc.SqlStatements;
+import com.payments.model.UserRequest;
+import com.payments.service.UserService;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * User reads with a replica configured: the replica is the primary database itself, what matters is that
+ * read-only transactions may read it and so must not fill the second-level cache.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:replicareads",
+        "payment.replicas.enabled=true",
+        "payment.replicas.replicas[0].url=jdbc:h2:mem:replicareads",
+        "payment.replicas.replicas[0].username=sa",
+        "payment.replicas.replicas[0].password=sa"
+})
+class ReplicaReadsCacheModeTest {
+
+    @Autowired
+    private UserService userService;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @DynamicPropertySource
+    static void keys(DynamicPropertyRegistry registry) {
+        TestKeys.register(registry);
+    }
+
+    @Test
+    void replicaReadsDoNotFillTheCache() {
+        Long id = createUser("replica@example.com");
+        entityManagerFactory.getCache().evictAll();
+
+        assertThat(statementsOfGetUser(id)).isEqualTo(1);
+        assertThat(statementsOfGetUser(id)).isEqualTo(1);
+
+        PrimaryReads.call(true, () -> userService.getUserById(id));
+
+        assertThat(statementsOfGetUser(id)).isZero();
+    }
+
+    @Test
+    void replicaReadsUseWhatWritesPutInTheCache() {
+        Long id = createUser("written@example.com");
+        entityManagerFactory.getCache().evictAll();
+
+        userService.setUserEnabled(id, false);
+
+        assertThat(statementsOfGetUser(id)).isZero();
+        assertThat(userService.getUserById(id).isEnabled()).isFalse();
+    }
+
+    private Long createUser(String username) {
+        UserRequest request = new UserRequest();
+        request.setUsername(username);
+        request.setPassword("secret123");
+        request.setRoles(Set.of("USER"));
+        return userService.createUser(request).getId();
+    }
+
+    private long statementsOfGetUser(Long id) {
+        try (SqlStatements.Recording recording = SqlStatements.record()) {
+            userService.getUserById(id);
+            return recording.counts().total();
+        }
+    }
+}
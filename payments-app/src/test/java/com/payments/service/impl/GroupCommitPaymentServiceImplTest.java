@@ -0,0 +1,127 @@
+package com.payments.service.impl;
+
+import com.payments.config.GroupCommitProperties;
+import com.payments.exception.PaymentQueueFullException;
+import com.payments.mapper.PaymentMapper;
+import com.payments.model.Party;
+import com.payments.model.Payment;
+import com.payments.model.PaymentMethod;
+import com.payments.model.PaymentRequest;
+import com.payments.outbox.PaymentOutbox;
+import com.payments.repository.PaymentRepository;
+import com.payments.service.PartyService;
+import com.payments.service.PaymentService;
+import com.payments.service.PaymentStatisticsService;
+import com.payments.sharding.PaymentShards;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Callers of the group-commit writer never wait longer than the commit timeout, and fail at once when the writer
+ * is gone.
+ */
+class GroupCommitPaymentServiceImplTest {
+
+    private final PaymentRepository repository = mock(PaymentRepository.class);
+    private final TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+    private final PaymentShards paymentShards = mock(PaymentShards.class);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private GroupCommitPaymentServiceImpl service;
+
+    @AfterEach
+    void stop() {
+        release.countDown();
+        if (service != null && service.isRunning()) {
+            service.stop();
+        }
+    }
+
+    @Test
+    void callersFailOnceTheWriterDiesOfAnError() {
+        service = service(Duration.ofMinutes(1), 10);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation -> {
+            throw new AssertionError("writer killed");
+        });
+        service.start();
+
+        assertThatThrownBy(() -> service.makePayment(request()))
+                .isInstanceOf(PaymentQueueFullException.class)
+                .hasMessageContaining("writer stopped");
+        assertThat(service.isRunning()).isFalse();
+        assertThatThrownBy(() -> service.makePayment(request()))
+                .isInstanceOf(PaymentQueueFullException.class)
+                .hasMessageContaining("not accepting");
+    }
+
+    @Test
+    void callersGiveUpAfterTheCommitTimeout() throws Exception {
+        service = service(Duration.ofMillis(300), 1);
+        CountDownLatch writing = new CountDownLatch(1);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation -> {
+            writing.countDown();
+            release.await();
+            return invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null);
+        });
+        service.start();
+
+        // the first payment holds the writer, the second one is still queued when both time out
+        CompletableFuture<Payment> taken = CompletableFuture.supplyAsync(() -> service.makePayment(request()));
+        assertThat(writing.await(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThatThrownBy(() -> service.makePayment(request()))
+                .isInstanceOf(PaymentQueueFullException.class)
+                .hasMessageContaining("retry later");
+        assertThatThrownBy(() -> taken.get(10, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(PaymentQueueFullException.class)
+                .hasMessageContaining("outcome is unknown");
+    }
+
+    private GroupCommitPaymentServiceImpl service(Duration commitTimeout, int maxBatchSize) {
+        when(paymentShards.nextPaymentId()).thenAnswer(invocation -> UUID.randomUUID());
+        when(paymentShards.partition(anyCollection(), any()))
+                .thenAnswer(invocation -> Map.of(0, List.copyOf(invocation.<Collection<?>>getArgument(0))));
+        when(repository.saveAll(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        GroupCommitProperties properties = new GroupCommitProperties(true, maxBatchSize, Duration.ofMillis(1), 10,
+                Duration.ofMillis(100), commitTimeout);
+        return new GroupCommitPaymentServiceImpl(mock(PaymentService.class), new PaymentMapper(), repository,
+                mock(PaymentOutbox.class), mock(PartyService.class), mock(PaymentStatisticsService.class),
+                transactionTemplate, paymentShards, properties, new SimpleMeterRegistry());
+    }
+
+    private static PaymentRequest request() {
+        PaymentRequest request = new PaymentRequest();
+        request.setAmount(new BigDecimal("10.00"));
+        request.setCurrency("USD");
+        request.setPaymentMethod(PaymentMethod.UPI);
+        request.setDebtor(party("D-1"));
+        request.setCreditor(party("C-1"));
+        return request;
+    }
+
+    private static Party party(String accountNumber) {
+        Party party = new Party();
+        party.setName("Party " + accountNumber);
+        party.setAccountNumber(accountNumber);
+        return party;
+    }
+}
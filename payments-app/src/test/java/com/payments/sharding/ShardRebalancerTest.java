@@ -0,0 +1,337 @@
+package com.payments.sharding;
+
+import com.payments.TestKeys;
+import com.payments.entity.IdempotencyKeyEntity;
+import com.payments.entity.LedgerEntryEntity;
+import com.payments.entity.OutboxEventEntity;
+import com.payments.entity.PartyEntity;
+import com.payments.entity.PaymentEntity;
+import com.payments.model.AccountBalance;
+import com.payments.model.Party;
+import com.payments.model.Payment;
+import com.payments.model.PaymentMethod;
+import com.payments.model.PaymentRequest;
+import com.payments.model.PaymentStatus;
+import com.payments.repository.IdempotencyKeyRepository;
+import com.payments.repository.LedgerEntryRepository;
+import com.payments.repository.OutboxEventRepository;
+import com.payments.repository.PartyRepository;
+import com.payments.repository.PaymentRepository;
+import com.payments.service.IdempotencyService;
+import com.payments.service.LedgerService;
+import com.payments.service.PaymentService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.doThrow;
+
+/**
+ * Slot moves between three in-memory shards. Every test moves slots between its own pair of shards and picks the
+ * slots from the payments it created, so the tests do not depend on each other or on the random payment ids.
+ */
+@SpringBootTest(properties = {
+        "payment.sharding.enabled=true",
+        "payment.sharding.shards[0].url=jdbc:h2:mem:rebalancer0",
+        "payment.sharding.shards[0].username=sa",
+        "payment.sharding.shards[0].password=sa",
+        "payment.sharding.shards[1].url=jdbc:h2:mem:rebalancer1",
+        "payment.sharding.shards[1].username=sa",
+        "payment.sharding.shards[1].password=sa",
+        "payment.sharding.shards[2].url=jdbc:h2:mem:rebalancer2",
+        "payment.sharding.shards[2].username=sa",
+        "payment.sharding.shards[2].password=sa",
+        // small chunks so that every table is scanned in more than one
+        "payment.sharding.migration-chunk-size=7",
+        // events stay in the outbox to be moved
+        "payment.outbox.poll-interval=1h",
+        // lookups and repeated idempotency keys read the shards, not the in-memory caches
+        "payment.cache.enabled=false",
+        "payment.idempotency.cache-expiry=1ms"
+})
+class ShardRebalancerTest {
+
+    private static final int PAYMENTS = 60;
+
+    @Autowired
+    private ShardRebalancer rebalancer;
+    @Autowired
+    private PaymentShards paymentShards;
+    @Autowired
+    private PaymentService paymentService;
+    @Autowired
+    private IdempotencyService idempotencyService;
+    @Autowired
+    private PaymentRepository paymentRepository;
+    @Autowired
+    private LedgerEntryRepository ledgerEntryRepository;
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+    @Autowired
+    private IdempotencyKeyRepository idempotencyKeyRepository;
+    @Autowired
+    private PartyRepository partyRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @MockitoSpyBean
+    private LedgerService ledgerService;
+
+    @DynamicPropertySource
+    static void keys(DynamicPropertyRegistry registry) {
+        TestKeys.register(registry);
+    }
+
+    @Test
+    void moveKeepsIdsPartiesLedgerOutboxAndIdempotencyKeys() {
+        String account = "MOVE";
+        List<Payment> created = completedPayments(account);
+        int[] moving = movingSlots(created, 0);
+        Set<Integer> moved = Arrays.stream(moving).boxed().collect(Collectors.toSet());
+        List<String> movedKeys = keys("move-moved-", 3, key -> moved.contains(PaymentShards.slotOf(key)));
+        List<String> keptKeys = keys("move-kept-", 3, key -> !moved.contains(PaymentShards.slotOf(key)));
+        Map<String, PaymentRequest> requests = new HashMap<>();
+        Map<String, String> keyed = new HashMap<>();
+        for (String key : concat(movedKeys, keptKeys)) {
+            PaymentRequest request = request(account, PAYMENTS + requests.size());
+            requests.put(key, request);
+            keyed.put(key, idempotencyService.execute(key, request, () -> paymentService.makePayment(request)).getPaymentId());
+        }
+        Map<String, Payment> before = lookUp(created);
+        AccountBalance debtorBalance = ledgerService.getAccountBalance("D-" + account);
+        AccountBalance creditorBalance = ledgerService.getAccountBalance("C-" + account);
+        Rows source = rows(0);
+        Rows target = rows(1);
+
+        ShardRebalancer.MoveResult result = rebalancer.move(0, 1, moving.length);
+
+        assertThat(result.slots()).isEqualTo(moving.length);
+        assertThat(paymentShards.slotsOf(1)).contains(moving);
+        assertThat(paymentShards.slotsOf(0)).doesNotContain(moving);
+        Rows expected = source.inSlots(moved);
+        assertThat(result.payments()).isEqualTo(expected.payments().size());
+        assertThat(result.ledgerEntries()).isEqualTo(expected.ledgerEntries().size());
+        assertThat(result.outboxEvents()).isEqualTo(expected.outboxEvents().size());
+        assertThat(result.idempotencyKeys()).isEqualTo(expected.idempotencyKeys().size());
+        assertThat(result.payments()).isPositive();
+        assertThat(result.idempotencyKeys()).isEqualTo(movedKeys.size());
+
+        Rows sourceAfter = rows(0);
+        Rows targetAfter = rows(1);
+        assertThat(sourceAfter.inSlots(moved).isEmpty()).isTrue();
+        assertThat(sourceAfter.ids()).isEqualTo(source.notInSlots(moved).ids());
+        assertThat(targetAfter.ids()).isEqualTo(target.merge(expected).ids());
+        assertThat(targetAfter.inSlots(moved).ids()).isEqualTo(expected.ids());
+
+        // payments keep their ids, their parties are rows of the target
+        assertThat(lookUp(created)).isEqualTo(before);
+        Set<Long> targetParties = read(1, () -> partyRepository.findAll().stream()
+                .map(PartyEntity::getId).collect(Collectors.toSet()));
+        for (PaymentEntity payment : expected.payments()) {
+            PaymentEntity copy = targetAfter.payment(payment.getPaymentId());
+            assertThat(copy.getId()).isEqualTo(payment.getId());
+            assertThat(copy.getVersion()).isEqualTo(payment.getVersion());
+            assertThat(targetParties).contains(copy.getDebtor().getId(), copy.getCreditor().getId());
+        }
+        // the balance rows on the target are updated by the import, the amounts stay the same
+        assertThat(ledgerService.getAccountBalance("D-" + account)).usingRecursiveComparison()
+                .ignoringFieldsMatchingRegexes(".*updatedAt").isEqualTo(debtorBalance);
+        assertThat(ledgerService.getAccountBalance("C-" + account)).usingRecursiveComparison()
+                .ignoringFieldsMatchingRegexes(".*updatedAt").isEqualTo(creditorBalance);
+
+        // a repeated key is answered from the moved row, not by creating another payment
+        for (Map.Entry<String, String> entry : keyed.entrySet()) {
+            Payment replayed = idempotencyService.execute(entry.getKey(), requests.get(entry.getKey()), () -> {
+                throw new AssertionError("Key " + entry.getKey() + " was not found after the move");
+            });
+            assertThat(replayed.getPaymentId()).isEqualTo(entry.getValue());
+        }
+    }
+
+    @Test
+    void cleanUpRemovesRowsLeftOnTheSourceByAFailedMove() {
+        String account = "FAILED";
+        List<Payment> created = completedPayments(account);
+        int[] moving = movingSlots(created, 2);
+        Set<Integer> moved = Arrays.stream(moving).boxed().collect(Collectors.toSet());
+        Map<String, Payment> before = lookUp(created);
+        AccountBalance creditorBalance = ledgerService.getAccountBalance("C-" + account);
+        Rows source = rows(2);
+        Rows expected = source.inSlots(moved);
+        doThrow(new IllegalStateException("Deleting ledger entries failed"))
+                .doCallRealMethod()
+                .when(AopTestUtils.<LedgerService>getUltimateTargetObject(ledgerService)).removeEntries(any());
+
+        assertThatThrownBy(() -> rebalancer.move(2, 0, moving.length))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("Deleting ledger entries failed");
+
+        // the slots changed owner before the source was cleared, the copies on the target are used
+        assertThat(paymentShards.slotsOf(0)).contains(moving);
+        assertThat(lookUp(created)).isEqualTo(before);
+        Rows leftOver = rows(2).inSlots(moved);
+        assertThat(leftOver.ledgerEntries()).isNotEmpty();
+        assertThat(rows(0).inSlots(moved).ids()).isEqualTo(expected.ids());
+
+        long deleted = rebalancer.cleanUp(2);
+
+        assertThat(deleted).isEqualTo(leftOver.size());
+        assertThat(rows(2).inSlots(moved).isEmpty()).isTrue();
+        assertThat(rows(2).ids()).isEqualTo(source.notInSlots(moved).ids());
+        assertThat(rows(0).inSlots(moved).ids()).isEqualTo(expected.ids());
+        assertThat(lookUp(created)).isEqualTo(before);
+        // entries left on the source counted twice in the balances until they were deleted
+        assertThat(ledgerService.getAccountBalance("C-" + account)).usingRecursiveComparison()
+                .ignoringFieldsMatchingRegexes(".*updatedAt").isEqualTo(creditorBalance);
+        assertThat(rebalancer.cleanUp(2)).isZero();
+    }
+
+    /**
+     * Create completed payments between two accounts, with a ledger entry pair and two outbox events each.
+     */
+    private List<Payment> completedPayments(String account) {
+        List<Payment> payments = new ArrayList<>();
+        for (int i = 0; i < PAYMENTS; i++) {
+            Payment payment = paymentService.makePayment(request(account, i));
+            payments.add(paymentService.updatePaymentStatus(payment.getPaymentId(), PaymentStatus.COMPLETED, null));
+        }
+        return payments;
+    }
+
+    /**
+     * The slots a move of the source takes, chosen so that some of the given payments move and some stay.
+     */
+    private int[] movingSlots(List<Payment> payments, int source) {
+        int[] owned = paymentShards.slotsOf(source);
+        int[] used = payments.stream()
+                .mapToInt(payment -> PaymentShards.slotOf(UUID.fromString(payment.getPaymentId())))
+                .filter(slot -> Arrays.binarySearch(owned, slot) >= 0)
+                .sorted()
+                .toArray();
+        assertThat(used.length).isGreaterThan(1);
+        int first = used[used.length / 2];
+        return Arrays.stream(owned).filter(slot -> slot >= first).toArray();
+    }
+
+    private static List<String> keys(String prefix, int count, Predicate<String> accept) {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; keys.size() < count; i++) {
+            if (accept.test(prefix + i)) {
+                keys.add(prefix + i);
+            }
+        }
+        return keys;
+    }
+
+    private Map<String, Payment> lookUp(List<Payment> payments) {
+        return payments.stream().collect(Collectors.toMap(Payment::getPaymentId,
+                payment -> paymentService.getPaymentById(payment.getPaymentId()).orElseThrow()));
+    }
+
+    private Rows rows(int shard) {
+        return read(shard, () -> new Rows(paymentRepository.findAll(), ledgerEntryRepository.findAll(),
+                outboxEventRepository.findAll(), idempotencyKeyRepository.findAll()));
+    }
+
+    private <T> T read(int shard, Supplier<T> query) {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        return paymentShards.onShard(shard, () -> readOnly.execute(status -> query.get()));
+    }
+
+    private static PaymentRequest request(String account, int i) {
+        PaymentRequest request = new PaymentRequest();
+        request.setAmount(BigDecimal.valueOf(100 + i));
+        request.setCurrency("USD");
+        request.setPaymentMethod(PaymentMethod.NET_BANKING);
+        request.setDebtor(party("Debtor " + account, "D-" + account));
+        request.setCreditor(party("Creditor " + account + " " + (i % 5), "C-" + account));
+        return request;
+    }
+
+    private static Party party(String name, String accountNumber) {
+        Party party = new Party();
+        party.setName(name);
+        party.setAccountNumber(accountNumber);
+        party.setBankCode("BANK0001");
+        return party;
+    }
+
+    private static <T> List<T> concat(List<T> first, List<T> second) {
+        List<T> all = new ArrayList<>(first);
+        all.addAll(second);
+        return all;
+    }
+
+    /**
+     * Rows one shard holds for payments, compared by their ids.
+     */
+    private record Rows(List<PaymentEntity> payments, List<LedgerEntryEntity> ledgerEntries,
+                        List<OutboxEventEntity> outboxEvents, List<IdempotencyKeyEntity> idempotencyKeys) {
+
+        Rows inSlots(Set<Integer> slots) {
+            return filter(slots::contains);
+        }
+
+        Rows notInSlots(Set<Integer> slots) {
+            return filter(slot -> !slots.contains(slot));
+        }
+
+        Rows merge(Rows other) {
+            return new Rows(concat(payments, other.payments), concat(ledgerEntries, other.ledgerEntries),
+                    concat(outboxEvents, other.outboxEvents), concat(idempotencyKeys, other.idempotencyKeys));
+        }
+
+        boolean isEmpty() {
+            return size() == 0;
+        }
+
+        long size() {
+            return payments.size() + ledgerEntries.size() + outboxEvents.size() + idempotencyKeys.size();
+        }
+
+        List<Set<?>> ids() {
+            return List.of(ids(payments, PaymentEntity::getPaymentId), ids(ledgerEntries, LedgerEntryEntity::getId),
+                    ids(outboxEvents, OutboxEventEntity::getId), ids(idempotencyKeys, IdempotencyKeyEntity::getIdempotencyKey));
+        }
+
+        PaymentEntity payment(UUID paymentId) {
+            return payments.stream().filter(payment -> payment.getPaymentId().equals(paymentId)).findFirst().orElseThrow();
+        }
+
+        private Rows filter(IntPredicate slots) {
+            return new Rows(
+                    payments.stream().filter(payment -> slots.test(PaymentShards.slotOf(payment.getPaymentId()))).toList(),
+                    ledgerEntries.stream().filter(entry -> slots.test(PaymentShards.slotOf(entry.getPaymentId()))).toList(),
+                    outboxEvents.stream().filter(event -> slots.test(PaymentShards.slotOf(event.getPaymentId()))).toList(),
+                    idempotencyKeys.stream().filter(key -> slots.test(PaymentShards.slotOf(key.getIdempotencyKey()))).toList());
+        }
+
+        private static <T, K> Set<K> ids(List<T> rows, Function<T, K> id) {
+            return rows.stream().map(id).collect(Collectors.toSet());
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.payments.sharding;
+
+import com.payments.TestKeys;
+import com.payments.model.AccountStatement;
+import com.payments.model.LedgerEntry;
+import com.payments.model.Party;
+import com.payments.model.Payment;
+import com.payments.model.PaymentMethod;
+import com.payments.model.PaymentRequest;
+import com.payments.model.PaymentStatus;
+import com.payments.service.LedgerService;
+import com.payments.service.PaymentService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Statements of an account with postings on three in-memory shards are newest first, whatever shard an entry
+ * is on. Entry ids start at a different offset on every shard and so do not follow posting order.
+ */
+@SpringBootTest(properties = {
+        "payment.sharding.enabled=true",
+        "payment.sharding.shards[0].url=jdbc:h2:mem:statement0",
+        "payment.sharding.shards[0].username=sa",
+        "payment.sharding.shards[0].password=sa",
+        "payment.sharding.shards[1].url=jdbc:h2:mem:statement1",
+        "payment.sharding.shards[1].username=sa",
+        "payment.sharding.shards[1].password=sa",
+        "payment.sharding.shards[2].url=jdbc:h2:mem:statement2",
+        "payment.sharding.shards[2].username=sa",
+        "payment.sharding.shards[2].password=sa"
+})
+class ShardedAccountStatementTest {
+
+    private static final int PAYMENTS = 30;
+    private static final int PAGE_SIZE = 4;
+    private static final Comparator<LedgerEntry> NEWEST_FIRST = Comparator.comparing(LedgerEntry::getPostedAt)
+            .thenComparing(LedgerEntry::getEntryId)
+            .reversed();
+
+    @Autowired
+    private PaymentService paymentService;
+    @Autowired
+    private LedgerService ledgerService;
+    @Autowired
+    private PaymentShards paymentShards;
+
+    @DynamicPropertySource
+    static void keys(DynamicPropertyRegistry registry) {
+        TestKeys.register(registry);
+    }
+
+    @Test
+    void pagesAreNewestFirstAcrossShards() {
+        String account = "C-STATEMENT";
+        List<Payment> payments = new ArrayList<>();
+        for (int i = 0; i < PAYMENTS; i++) {
+            payments.add(paymentService.makePayment(request(i, account)));
+        }
+        // the highest shard posts first, so its entries are the oldest but have the highest ids
+        payments.sort(Comparator.comparingInt((Payment payment) -> shardOf(payment)).reversed());
+        assertThat(payments.stream().map(this::shardOf).distinct()).hasSizeGreaterThan(1);
+        payments.forEach(payment -> paymentService.updatePaymentStatus(payment.getPaymentId(),
+                PaymentStatus.COMPLETED, null));
+
+        List<LedgerEntry> entries = new ArrayList<>();
+        String cursor = null;
+        do {
+            AccountStatement page = ledgerService.getAccountStatement(account, cursor, PAGE_SIZE);
+            assertThat(page.getItems()).hasSizeLessThanOrEqualTo(PAGE_SIZE);
+            entries.addAll(page.getItems());
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+
+        assertThat(entries).hasSize(PAYMENTS);
+        assertThat(entries).isSortedAccordingTo(NEWEST_FIRST);
+        assertThat(entries.getFirst().getPaymentId()).isEqualTo(payments.getLast().getPaymentId());
+        assertThat(entries.getLast().getPaymentId()).isEqualTo(payments.getFirst().getPaymentId());
+    }
+
+    private int shardOf(Payment payment) {
+        return paymentShards.shardOf(UUID.fromString(payment.getPaymentId()));
+    }
+
+    private static PaymentRequest request(int i, String account) {
+        PaymentRequest request = new PaymentRequest();
+        request.setAmount(BigDecimal.valueOf(10 + i));
+        request.setCurrency("USD");
+        request.setPaymentMethod(PaymentMethod.UPI);
+        request.setDebtor(party("Debtor " + i, "D-" + i));
+        request.setCreditor(party("Creditor", account));
+        return request;
+    }
+
+    private static Party party(String name, String accountNumber) {
+        Party party = new Party();
+        party.setName(name);
+        party.setAccountNumber(accountNumber);
+        return party;
+    }
+}
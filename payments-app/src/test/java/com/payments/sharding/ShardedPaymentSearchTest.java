@@ -0,0 +1,161 @@
+package com.payments.sharding;
+
+import com.payments.TestKeys;
+import com.payments.dto.PaymentSearchFilter;
+import com.payments.entity.PaymentEntity;
+import com.payments.model.Party;
+import com.payments.model.Payment;
+import com.payments.model.PaymentMethod;
+import com.payments.model.PaymentPage;
+import com.payments.model.PaymentRequest;
+import com.payments.model.PaymentStatus;
+import com.payments.repository.PaymentRepository;
+import com.payments.service.PaymentService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Searches over three in-memory shards: the pages merge all shards newest first, and the cursor of a page
+ * continues every shard where the page ended.
+ */
+@SpringBootTest(properties = {
+        "payment.sharding.enabled=true",
+        "payment.sharding.shards[0].url=jdbc:h2:mem:search0",
+        "payment.sharding.shards[0].username=sa",
+        "payment.sharding.shards[0].password=sa",
+        "payment.sharding.shards[1].url=jdbc:h2:mem:search1",
+        "payment.sharding.shards[1].username=sa",
+        "payment.sharding.shards[1].password=sa",
+        "payment.sharding.shards[2].url=jdbc:h2:mem:search2",
+        "payment.sharding.shards[2].username=sa",
+        "payment.sharding.shards[2].password=sa"
+})
+class ShardedPaymentSearchTest {
+
+    private static final int PAYMENTS = 50;
+    private static final int PAGE_SIZE = 7;
+
+    @Autowired
+    private PaymentService paymentService;
+    @Autowired
+    private PaymentShards paymentShards;
+    @Autowired
+    private PaymentRepository paymentRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @DynamicPropertySource
+    static void keys(DynamicPropertyRegistry registry) {
+        TestKeys.register(registry);
+    }
+
+    @Test
+    void pagesMergeShardsNewestFirst() {
+        String account = "C-ALL";
+        createPayments(account);
+        PaymentSearchFilter filter = new PaymentSearchFilter(null, null, null, account, null, null);
+
+        List<Page> pages = search(filter);
+
+        assertThat(pages).hasSize((PAYMENTS + PAGE_SIZE - 1) / PAGE_SIZE);
+        assertThat(pages.subList(0, pages.size() - 1)).allSatisfy(page -> assertThat(page.paymentIds()).hasSize(PAGE_SIZE));
+        assertThat(pages.getLast().paymentIds()).hasSize(PAYMENTS % PAGE_SIZE);
+        assertThat(pages.getLast().nextCursor()).isNull();
+        assertThat(paymentIds(pages)).containsExactlyElementsOf(expectedOrder(account, null));
+    }
+
+    @Test
+    void filtersApplyOnEveryShard() {
+        String account = "C-FILTER";
+        List<Payment> created = createPayments(account);
+        for (int i = 0; i < created.size(); i += 3) {
+            paymentService.updatePaymentStatus(created.get(i).getPaymentId(), PaymentStatus.COMPLETED, null);
+        }
+        PaymentSearchFilter filter = new PaymentSearchFilter(PaymentStatus.COMPLETED, "USD", null, account, null, null);
+
+        List<Page> pages = search(filter);
+
+        List<String> expected = expectedOrder(account, PaymentStatus.COMPLETED);
+        assertThat(expected).hasSize((PAYMENTS + 2) / 3);
+        assertThat(paymentIds(pages)).containsExactlyElementsOf(expected);
+    }
+
+    /**
+     * Create payments to one creditor account, spread over more than one shard.
+     */
+    private List<Payment> createPayments(String account) {
+        List<Payment> payments = new ArrayList<>();
+        Set<Integer> shards = new HashSet<>();
+        for (int i = 0; i < PAYMENTS; i++) {
+            PaymentRequest request = new PaymentRequest();
+            request.setAmount(BigDecimal.valueOf(10 + i));
+            request.setCurrency("USD");
+            request.setPaymentMethod(PaymentMethod.UPI);
+            request.setDebtor(party("Debtor " + i, "D-" + i));
+            request.setCreditor(party("Creditor", account));
+            Payment payment = paymentService.makePayment(request);
+            payments.add(payment);
+            shards.add(paymentShards.shardOf(UUID.fromString(payment.getPaymentId())));
+        }
+        assertThat(shards).hasSizeGreaterThan(1);
+        return payments;
+    }
+
+    private List<Page> search(PaymentSearchFilter filter) {
+        List<Page> pages = new ArrayList<>();
+        String cursor = null;
+        do {
+            PaymentPage page = paymentService.searchPayments(filter, cursor, PAGE_SIZE);
+            cursor = page.getNextCursor();
+            pages.add(new Page(page.getItems().stream().map(Payment::getPaymentId).toList(), cursor));
+        } while (cursor != null);
+        return pages;
+    }
+
+    /**
+     * Payment ids of an account on all shards in search order, {@code (createdAt, id)} descending.
+     */
+    private List<String> expectedOrder(String account, PaymentStatus status) {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        List<PaymentEntity> payments = new ArrayList<>();
+        for (int shard = 0; shard < paymentShards.shardCount(); shard++) {
+            payments.addAll(paymentShards.onShard(shard, () -> readOnly.execute(tx -> paymentRepository.findAll())));
+        }
+        return payments.stream()
+                .filter(payment -> account.equals(payment.getCreditorAccountNumber()))
+                .filter(payment -> status == null || payment.getStatus() == status)
+                .sorted(Comparator.comparing(PaymentEntity::getCreatedAt).thenComparing(PaymentEntity::getId).reversed())
+                .map(payment -> payment.getPaymentId().toString())
+                .toList();
+    }
+
+    private static List<String> paymentIds(List<Page> pages) {
+        return pages.stream().flatMap(page -> page.paymentIds().stream()).toList();
+    }
+
+    private static Party party(String name, String accountNumber) {
+        Party party = new Party();
+        party.setName(name);
+        party.setAccountNumber(accountNumber);
+        return party;
+    }
+
+    private record Page(List<String> paymentIds, String nextCursor) {
+    }
+}
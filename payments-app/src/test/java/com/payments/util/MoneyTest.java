@@ -0,0 +1,87 @@
+package com.payments.util;
+
+import com.payments.exception.InvalidAmountException;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Amounts are converted to minor units of their currency's scale without ever rounding.
+ */
+class MoneyTest {
+
+    @Test
+    void scaleIsTheCurrencysFractionDigits() {
+        assertThat(Money.scale("USD")).isEqualTo(2);
+        assertThat(Money.scale("JPY")).isZero();
+        assertThat(Money.scale("BHD")).isEqualTo(3);
+        // unknown, pseudo and malformed codes use two digits
+        assertThat(Money.scale("XYZ")).isEqualTo(2);
+        assertThat(Money.scale("XAU")).isEqualTo(2);
+        assertThat(Money.scale("usd")).isEqualTo(2);
+        assertThat(Money.scale("US")).isEqualTo(2);
+        assertThat(Money.scale(null)).isEqualTo(2);
+    }
+
+    @Test
+    void toMinorUnitsUsesTheCurrencyScale() {
+        assertThat(Money.toMinorUnits(new BigDecimal("12.34"), "USD")).isEqualTo(1234);
+        assertThat(Money.toMinorUnits(new BigDecimal("12.3"), "USD")).isEqualTo(1230);
+        assertThat(Money.toMinorUnits(new BigDecimal("1200"), "JPY")).isEqualTo(1200);
+        assertThat(Money.toMinorUnits(new BigDecimal("1200.00"), "JPY")).isEqualTo(1200);
+        assertThat(Money.toMinorUnits(new BigDecimal("1.234"), "BHD")).isEqualTo(1234);
+        assertThat(Money.toMinorUnits(new BigDecimal("1.23"), "XYZ")).isEqualTo(123);
+    }
+
+    @Test
+    void toMinorUnitsRejectsMoreDecimalPlacesThanTheCurrencyHas() {
+        assertThatThrownBy(() -> Money.toMinorUnits(new BigDecimal("1.234"), "USD"))
+                .isInstanceOf(InvalidAmountException.class)
+                .hasMessage("Amount 1.234 is not a valid USD amount, at most 2 decimal places are allowed");
+        assertThatThrownBy(() -> Money.toMinorUnits(new BigDecimal("12.5"), "JPY"))
+                .isInstanceOf(InvalidAmountException.class)
+                .hasMessageContaining("at most 0 decimal places");
+        assertThatThrownBy(() -> Money.toMinorUnits(new BigDecimal("1.2345"), "BHD"))
+                .isInstanceOf(InvalidAmountException.class);
+    }
+
+    @Test
+    void toMinorUnitsRejectsAmountsThatOverflow() {
+        BigDecimal largest = BigDecimal.valueOf(Long.MAX_VALUE, 2);
+
+        assertThat(Money.toMinorUnits(largest, "USD")).isEqualTo(Long.MAX_VALUE);
+        assertThatThrownBy(() -> Money.toMinorUnits(largest.add(new BigDecimal("0.01")), "USD"))
+                .isInstanceOf(InvalidAmountException.class);
+        // fits as yen but not as fils
+        BigDecimal yen = BigDecimal.valueOf(Long.MAX_VALUE / 100);
+        assertThat(Money.toMinorUnits(yen, "JPY")).isEqualTo(Long.MAX_VALUE / 100);
+        assertThatThrownBy(() -> Money.toMinorUnits(yen, "BHD")).isInstanceOf(InvalidAmountException.class);
+    }
+
+    @Test
+    void toDecimalUsesTheCurrencyScale() {
+        assertThat(Money.toDecimal(1234, "USD")).isEqualTo(new BigDecimal("12.34"));
+        assertThat(Money.toDecimal(1234, "JPY")).isEqualTo(new BigDecimal("1234"));
+        assertThat(Money.toDecimal(1234, "BHD")).isEqualTo(new BigDecimal("1.234"));
+    }
+
+    @Test
+    void rescaleConvertsFromAFixedScale() {
+        assertThat(Money.rescale(4567, 2, "USD")).isEqualTo(4567);
+        assertThat(Money.rescale(1200, 2, "JPY")).isEqualTo(12);
+        assertThat(Money.rescale(123, 2, "BHD")).isEqualTo(1230);
+        assertThat(Money.rescale(-1200, 2, "JPY")).isEqualTo(-12);
+    }
+
+    @Test
+    void rescaleRejectsDigitsTheCurrencyCannotHold() {
+        assertThatThrownBy(() -> Money.rescale(1234, 2, "JPY"))
+                .isInstanceOf(ArithmeticException.class)
+                .hasMessageContaining("does not fit JPY");
+        assertThatThrownBy(() -> Money.rescale(Long.MAX_VALUE / 5, 2, "BHD"))
+                .isInstanceOf(ArithmeticException.class);
+    }
+}
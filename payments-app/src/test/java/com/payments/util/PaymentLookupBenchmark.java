@@ -0,0 +1,131 @@
+package com.payments.util;
+
+import com.payments.TestKeys;
+import com.payments.mapper.PaymentMapper;
+import com.payments.model.Party;
+import com.payments.model.Payment;
+import com.payments.model.PaymentMethod;
+import com.payments.model.PaymentRequest;
+import com.payments.repository.PaymentRepository;
+import com.payments.sharding.PaymentShards;
+import com.payments.service.PaymentService;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Compares the entity lookup path with the read-only projection path used by
+ * {@link PaymentService#getPaymentById(String)}, bypassing the payment cache.
+ * <p>
+ * Skipped by the regular build, run with
+ * {@code mvn test -Dtest=PaymentLookupBenchmark -Dbenchmark=true -Dsurefire.failIfNoSpecifiedTests=false}.
+ * Tune with {@code -Dbenchmark.payments} and {@code -Dbenchmark.iterations}.
+ */
+@Slf4j
+@SpringBootTest
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class PaymentLookupBenchmark {
+
+    @Autowired
+    private PaymentService paymentService;
+    @Autowired
+    private PaymentRepository repository;
+    @Autowired
+    private PaymentMapper paymentMapper;
+    @Autowired
+    private PaymentShards paymentShards;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @DynamicPropertySource
+    static void keys(DynamicPropertyRegistry registry) {
+        TestKeys.register(registry);
+    }
+
+    @Value("${benchmark.payments:1000}")
+    private int payments;
+
+    @Value("${benchmark.iterations:50000}")
+    private int iterations;
+
+    @Test
+    void compareLookupPaths() {
+        List<UUID> ids = seed();
+
+        TransactionTemplate readWrite = new TransactionTemplate(transactionManager);
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+
+        Function<UUID, Payment> entityPath = id -> readWrite.execute(status -> {
+            paymentShards.bindForRead(id);
+            return repository.findByPaymentId(id).map(paymentMapper::toModel).orElseThrow();
+        });
+        Function<UUID, Payment> projectionPath = id -> readOnly.execute(status -> {
+            paymentShards.bindForRead(id);
+            return repository.findRowByPaymentId(id).map(paymentMapper::toModel).orElseThrow();
+        });
+
+        // Warm up both paths before measuring either
+        measure(ids, entityPath, iterations);
+        measure(ids, projectionPath, iterations);
+
+        Result entity = measure(ids, entityPath, iterations);
+        Result projection = measure(ids, projectionPath, iterations);
+        log.info("Payment lookup over {} payments, {} iterations", ids.size(), iterations);
+        log.info("  entity     : {} us/op, {} bytes/op", "%.1f".formatted(entity.micros()), entity.bytes());
+        log.info("  projection : {} us/op, {} bytes/op", "%.1f".formatted(projection.micros()), projection.bytes());
+    }
+
+    private List<UUID> seed() {
+        List<UUID> ids = new ArrayList<>(payments);
+        for (int i = 0; i < payments; i++) {
+            PaymentRequest request = new PaymentRequest();
+            request.setAmount(BigDecimal.valueOf(100 + i));
+            request.setCurrency("USD");
+            request.setPaymentMethod(PaymentMethod.NET_BANKING);
+            request.setDebtor(party("Debtor " + i, "D" + i));
+            request.setCreditor(party("Creditor " + (i % 50), "C" + (i % 50)));
+            ids.add(UUID.fromString(paymentService.makePayment(request).getPaymentId()));
+        }
+        return ids;
+    }
+
+    private static Party party(String name, String accountNumber) {
+        Party party = new Party();
+        party.setName(name);
+        party.setAccountNumber(accountNumber);
+        party.setBankCode("BANK0001");
+        party.setAddress("1 Benchmark Street");
+        party.setEmail("party@example.com");
+        return party;
+    }
+
+    private static Result measure(List<UUID> ids, Function<UUID, Payment> lookup, int iterations) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            lookup.apply(ids.get(i % ids.size()));
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+        return new Result(elapsed / 1_000.0 / iterations, allocated / iterations);
+    }
+
+    private record Result(double micros, long bytes) {
+    }
+}